@@ -4,20 +4,23 @@ import java.util.HashMap;
 
 import javax.sql.DataSource;
 
+import org.hibernate.cfg.AvailableSettings;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import jakarta.persistence.EntityManagerFactory;
 import lombok.RequiredArgsConstructor;
+import ru.spb.tksoft.banking.service.DatabaseBulkhead;
 
 /**
  * DB JPA config.
@@ -38,6 +41,8 @@ public class BankDatabaseConfig {
 
     private final Environment environment;
 
+    private final ConfigurableListableBeanFactory beanFactory;
+
     /**
      * Create fabric of entities and sessions for banking.
      * 
@@ -54,6 +59,9 @@ public class BankDatabaseConfig {
         properties.put("hibernate.dialect",
                 environment.getProperty("spring.jpa.database-platform"));
 
+        // Entity listeners are Spring beans
+        properties.put(AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory));
+
         return builder.dataSource(dataSource)
                 .packages(
                         "ru.spb.tksoft.banking.entity")
@@ -61,15 +69,18 @@ public class BankDatabaseConfig {
     }
 
     /**
-     * Create transaction manager for banking.
+     * Create transaction manager for banking. Transactions of requests pass the database
+     * bulkhead, see {@link BulkheadJpaTransactionManager}.
      * 
      * @param entityManagerFactory Fabric of entities and sessions for banking.
+     * @param databaseBulkhead Database bulkhead.
      * @return Instance of transaction manager for banking.
      */
     @Bean(name = "bankingTransactionManager")
     public PlatformTransactionManager postgresTransactionManager(
-            @Qualifier("bankingEntityManagerFactory") EntityManagerFactory entityManagerFactory) {
+            @Qualifier("bankingEntityManagerFactory") EntityManagerFactory entityManagerFactory,
+            DatabaseBulkhead databaseBulkhead) {
 
-        return new JpaTransactionManager(entityManagerFactory);
+        return new BulkheadJpaTransactionManager(entityManagerFactory, databaseBulkhead);
     }
 }
@@ -0,0 +1,78 @@
+package ru.spb.tksoft.banking.configuration;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.web.context.request.RequestContextHolder;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.service.DatabaseBulkhead;
+
+/**
+ * Transactions of requests pass the {@link DatabaseBulkhead}: the permit is taken before the
+ * connection of the outermost transaction and released once the transaction completes, so a
+ * request holds it only while it works with the database, not while it is read or written.
+ * Transactions of jobs and workers, run without a request, do not pass the bulkhead. A request
+ * not admitted fails to begin the transaction and is handled by controller advice.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public class BulkheadJpaTransactionManager extends JpaTransactionManager {
+
+    /** Transaction holding the permit of the thread, one at most. */
+    private static final ThreadLocal<Object> ADMITTED = new ThreadLocal<>();
+
+    @NotNull
+    private final transient DatabaseBulkhead databaseBulkhead;
+
+    /**
+     * Constructor.
+     *
+     * @param entityManagerFactory Fabric of entities and sessions.
+     * @param databaseBulkhead Database bulkhead.
+     */
+    public BulkheadJpaTransactionManager(final EntityManagerFactory entityManagerFactory,
+            final DatabaseBulkhead databaseBulkhead) {
+
+        super(entityManagerFactory);
+        this.databaseBulkhead = databaseBulkhead;
+    }
+
+    @Override
+    protected void doBegin(final Object transaction, final TransactionDefinition definition) {
+
+        // Inner transactions of the request, new ones included, run under its permit
+        boolean admit = databaseBulkhead.isEnabled() && ADMITTED.get() == null
+                && RequestContextHolder.getRequestAttributes() != null;
+        if (admit) {
+            databaseBulkhead.acquire();
+            ADMITTED.set(transaction);
+        }
+
+        try {
+            super.doBegin(transaction, definition);
+        } catch (RuntimeException | Error e) {
+            if (admit) {
+                release();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(final Object transaction) {
+
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        } finally {
+            if (ADMITTED.get() == transaction) {
+                release();
+            }
+        }
+    }
+
+    private void release() {
+
+        ADMITTED.remove();
+        databaseBulkhead.release();
+    }
+}
@@ -1,16 +1,37 @@
 package ru.spb.tksoft.banking.configuration;
 
+import java.util.ArrayList;
+import java.util.List;
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 
 /**
  * Common DB config.
- * 
+ *
+ * Connections of read-only transactions go to the replica if it is configured with
+ * "spring.datasource.banking-replica", all others go to the primary, see
+ * {@link ReadOnlyRoutingDataSource}. Reads in read-only transactions may lag behind writes by
+ * the replication lag, and so may results cached from them.
+ *
+ * Users and their accounts may be partitioned over several databases, shards: the first shard is
+ * the primary (with its replica), others are listed in "spring.datasource.banking-shards". A
+ * connection goes to the shard of the current thread, see {@link ShardRoutingDataSource}. All
+ * shards share one entity manager factory, as they share the schema.
+ *
  * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
  */
 @Configuration
@@ -24,14 +45,75 @@ public class CommonDatabaseConfig {
     }
 
     /**
-     * Main datasource.
-     * 
+     * Primary datasource.
+     *
+     * @return Primary datasource.
+     */
+    @Bean(name = "bankPrimaryDataSource")
+    @ConfigurationProperties(prefix = "spring.datasource.banking")
+    public DataSource bankingPrimaryDataSource() {
+        return DataSourceBuilder.create().build();
+    }
+
+    /**
+     * Replica datasource, read-only.
+     *
+     * @return Replica datasource.
+     */
+    @Bean(name = "bankReplicaDataSource")
+    @ConditionalOnProperty(prefix = "spring.datasource.banking-replica", name = "jdbc-url")
+    @ConfigurationProperties(prefix = "spring.datasource.banking-replica")
+    public DataSource bankingReplicaDataSource() {
+        return DataSourceBuilder.create().build();
+    }
+
+    /**
+     * Shards: the primary with its replica, if configured, and other shards. Pools of other
+     * shards are owned by the returned data source and closed with it; if one of them fails to
+     * start, the ones started are closed.
+     *
+     * @param primary Primary datasource.
+     * @param replica Replica datasource, if configured.
+     * @param environment Environment with settings of other shards.
+     * @return Shards.
+     */
+    @Bean(name = "bankShards", destroyMethod = "close")
+    public ShardRoutingDataSource bankingShards(
+            @Qualifier("bankPrimaryDataSource") DataSource primary,
+            @Qualifier("bankReplicaDataSource") ObjectProvider<DataSource> replica,
+            Environment environment) {
+
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(new ReadOnlyRoutingDataSource(primary, replica.getIfAvailable(() -> primary)));
+
+        List<HikariConfig> configs = Binder.get(environment)
+                .bind("spring.datasource.banking-shards", Bindable.listOf(HikariConfig.class))
+                .orElse(List.of());
+        try {
+            for (HikariConfig config : configs) {
+                shards.add(new HikariDataSource(config));
+            }
+            return new ShardRoutingDataSource(shards);
+        } catch (RuntimeException e) {
+            try {
+                ShardRoutingDataSource.closeAll(shards.subList(1, shards.size()));
+            } catch (Exception closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Main datasource: shard of the current thread, primary or replica depending on the
+     * transaction.
+     *
+     * @param shards Shards.
      * @return Main datasource.
      */
     @Bean(name = "bankDataSource")
     @Primary
-    @ConfigurationProperties(prefix = "spring.datasource.banking")
-    public DataSource bankingDataSource() {
-        return DataSourceBuilder.create().build();
+    public DataSource bankingDataSource(@Qualifier("bankShards") ShardRoutingDataSource shards) {
+        return new LazyConnectionDataSourceProxy(shards);
     }
 }
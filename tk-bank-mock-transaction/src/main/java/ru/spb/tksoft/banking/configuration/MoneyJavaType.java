@@ -0,0 +1,75 @@
+package ru.spb.tksoft.banking.configuration;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.AbstractClassJavaType;
+import org.hibernate.type.descriptor.jdbc.JdbcType;
+import org.hibernate.type.descriptor.jdbc.JdbcTypeIndicators;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Hibernate Java type of {@link Money}: NUMERIC with the scale of money.
+ *
+ * Registered as a Java type rather than an attribute converter, see {@link MoneyTypeContributor},
+ * so Money is accepted not only in entity attributes and JPQL, but also as a parameter of native
+ * queries.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public final class MoneyJavaType extends AbstractClassJavaType<Money> {
+
+    /** Instance. */
+    public static final MoneyJavaType INSTANCE = new MoneyJavaType();
+
+    private MoneyJavaType() {
+        super(Money.class);
+    }
+
+    @Override
+    public JdbcType getRecommendedJdbcType(final JdbcTypeIndicators indicators) {
+        return indicators.getJdbcType(Types.NUMERIC);
+    }
+
+    @Override
+    public int getDefaultSqlScale(final Dialect dialect, final JdbcType jdbcType) {
+        return Money.SCALE;
+    }
+
+    @Override
+    public boolean areEqual(final Money one, final Money another) {
+        return one == null ? another == null : one.equals(another);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <X> X unwrap(final Money value, final Class<X> type, final WrapperOptions options) {
+
+        if (value == null) {
+            return null;
+        }
+        if (type.isInstance(value)) {
+            return (X) value;
+        }
+        if (type.isAssignableFrom(BigDecimal.class)) {
+            return (X) value.toBigDecimal();
+        }
+        throw unknownUnwrap(type);
+    }
+
+    @Override
+    public <X> Money wrap(final X value, final WrapperOptions options) {
+
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Money money) {
+            return money;
+        }
+        if (value instanceof BigDecimal decimal) {
+            return Money.valueOf(decimal);
+        }
+        throw unknownWrap(value.getClass());
+    }
+}
@@ -0,0 +1,22 @@
+package ru.spb.tksoft.banking.configuration;
+
+import org.hibernate.boot.model.TypeContributions;
+import org.hibernate.boot.model.TypeContributor;
+import org.hibernate.service.ServiceRegistry;
+
+/**
+ * Contributes {@link MoneyJavaType} to Hibernate: Money is mapped to NUMERIC everywhere, native
+ * query parameters included. Discovered by Hibernate as a Java service, see
+ * "META-INF/services/org.hibernate.boot.model.TypeContributor".
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public final class MoneyTypeContributor implements TypeContributor {
+
+    @Override
+    public void contribute(final TypeContributions typeContributions,
+            final ServiceRegistry serviceRegistry) {
+
+        typeContributions.contributeJavaType(MoneyJavaType.INSTANCE);
+    }
+}
@@ -0,0 +1,54 @@
+package ru.spb.tksoft.banking.configuration;
+
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Data source sending connections of read-only transactions to the replica and all others to
+ * the primary.
+ *
+ * The transaction is known only once it has begun, so the data source must be wrapped in
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: transaction managers
+ * get a connection at the beginning of a transaction, the proxy takes a real one on the first
+ * statement.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public class ReadOnlyRoutingDataSource extends AbstractRoutingDataSource {
+
+    /** Target data source. */
+    public enum Route {
+
+        /** Writes and reads outside of read-only transactions. */
+        PRIMARY,
+
+        /** Reads in read-only transactions. */
+        REPLICA
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param primary Primary data source.
+     * @param replica Replica data source, the primary if there is no replica.
+     */
+    public ReadOnlyRoutingDataSource(@NotNull final DataSource primary,
+            @NotNull final DataSource replica) {
+
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                        ? Route.REPLICA
+                        : Route.PRIMARY;
+    }
+}
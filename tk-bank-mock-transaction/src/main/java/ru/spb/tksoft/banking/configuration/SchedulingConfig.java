@@ -0,0 +1,39 @@
+package ru.spb.tksoft.banking.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Scheduler of jobs.
+ *
+ * Jobs are run by a pool of threads, so runs of a job never overlap: the scheduler Spring Boot
+ * uses with virtual threads ("spring.threads.virtual.enabled") starts a cron job on time even if
+ * its previous run is not finished. With virtual threads enabled, threads of the pool are virtual
+ * too.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Configuration
+public class SchedulingConfig {
+
+    /**
+     * @param builder Builder configured by "spring.task.scheduling".
+     * @param virtualThreads Virtual threads are enabled.
+     * @return Scheduler of jobs.
+     */
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(final ThreadPoolTaskSchedulerBuilder builder,
+            @Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads) {
+
+        ThreadPoolTaskScheduler scheduler = builder.build();
+        if (virtualThreads) {
+            scheduler.setThreadFactory(Thread.ofVirtual()
+                    .name(scheduler.getThreadNamePrefix(), 1)
+                    .factory());
+        }
+        return scheduler;
+    }
+}
@@ -0,0 +1,100 @@
+package ru.spb.tksoft.banking.configuration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.tools.ShardContext;
+
+/**
+ * Data source sending connections to the shard of the current thread, see {@link ShardContext}.
+ *
+ * As with {@link ReadOnlyRoutingDataSource}, the data source must be wrapped in
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, so that the shard is
+ * looked up on the first statement of a transaction.
+ *
+ * The first shard is a Spring bean; other shards are owned by this data source and closed with
+ * it.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    @NotNull
+    private final List<DataSource> shards;
+
+    /**
+     * Constructor.
+     *
+     * @param shards Data sources of shards, the first one holds the data not partitioned by
+     *        users.
+     * @throws IllegalArgumentException If there are no shards.
+     */
+    public ShardRoutingDataSource(@NotNull final List<DataSource> shards) {
+
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * @return Number of shards.
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    /**
+     * Close data sources of shards other than the first one. Every one is closed even if closing
+     * another one fails.
+     *
+     * @throws Exception on close error, the first one; others are suppressed by it.
+     */
+    @Override
+    public void close() throws Exception {
+        closeAll(shards.subList(1, shards.size()));
+    }
+
+    /**
+     * Close data sources, every one even if closing another one fails.
+     *
+     * @param dataSources Data sources, not closeable ones are skipped.
+     * @throws Exception on close error, the first one; others are suppressed by it.
+     */
+    static void closeAll(@NotNull final List<DataSource> dataSources) throws Exception {
+
+        Exception failure = null;
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -8,14 +8,27 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import ru.spb.tksoft.banking.dto.maintenance.AccrualInfoDto;
+import ru.spb.tksoft.banking.dto.maintenance.JournalReconciliationDto;
 import ru.spb.tksoft.banking.dto.maintenance.MaintenanceInfoDto;
+import ru.spb.tksoft.banking.dto.maintenance.SchedulerLeaseDto;
+import ru.spb.tksoft.banking.dto.maintenance.UserIndexCheckDto;
+import ru.spb.tksoft.banking.dto.maintenance.UserIndexInfoDto;
+import ru.spb.tksoft.banking.service.AccountStripes;
 import ru.spb.tksoft.banking.service.AuthServiceCached;
+import ru.spb.tksoft.banking.service.JournalService;
+import ru.spb.tksoft.banking.service.RawAccountService;
 import ru.spb.tksoft.banking.service.RawAccountServiceCached;
 import ru.spb.tksoft.banking.service.RawUserServiceCached;
+import ru.spb.tksoft.banking.service.SchedulerLeaseService;
+import ru.spb.tksoft.banking.service.UserBirthDateIndex;
+import ru.spb.tksoft.banking.service.UserNameIndex;
+import java.util.List;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
@@ -41,6 +54,24 @@ public class MaintenanceController {
     @NotNull
     private final RawUserServiceCached rawUserServiceCached;
 
+    @NotNull
+    private final RawAccountService rawAccountService;
+
+    @NotNull
+    private final SchedulerLeaseService schedulerLeaseService;
+
+    @NotNull
+    private final UserNameIndex userNameIndex;
+
+    @NotNull
+    private final UserBirthDateIndex userBirthDateIndex;
+
+    @NotNull
+    private final JournalService journalService;
+
+    @NotNull
+    private final AccountStripes accountStripes;
+
     /**
      * @return Application info.
      */
@@ -65,4 +96,101 @@ public class MaintenanceController {
         rawAccountServiceCached.clearCaches();
         rawUserServiceCached.clearCaches();
     }
+
+    /**
+     * @return Statistics of the last balance autoincrement run.
+     */
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Last balance autoincrement run",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @GetMapping("/accrual")
+    public AccrualInfoDto getAccrualInfo() {
+
+        return rawAccountService.getLastAccrualInfo();
+    }
+
+    /**
+     * @return Leases of scheduled jobs.
+     */
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Leases of scheduled jobs",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @GetMapping("/leases")
+    public List<SchedulerLeaseDto> getLeases() {
+
+        return schedulerLeaseService.getLeases();
+    }
+
+    /**
+     * @return State and memory footprint of in-memory user indexes.
+     */
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "In-memory user indexes",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @GetMapping("/user-indexes")
+    public List<UserIndexInfoDto> getUserIndexes() {
+
+        return List.of(userNameIndex.getInfo(), userBirthDateIndex.getInfo());
+    }
+
+    /**
+     * Check in-memory user indexes against the database.
+     * 
+     * @param repair Rebuild inconsistent indexes.
+     * @return Results of the check.
+     */
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Check in-memory user indexes against the database",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @PostMapping("/user-indexes/check")
+    public List<UserIndexCheckDto> checkUserIndexes(
+            @RequestParam(defaultValue = "false") boolean repair) {
+
+        return List.of(userNameIndex.check(repair), userBirthDateIndex.check(repair));
+    }
+
+    /**
+     * Reconcile account balances against the journal.
+     * 
+     * @param limit Maximum number of reported mismatches.
+     * @return Result of the reconciliation.
+     */
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Reconcile account balances against the journal",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @GetMapping("/journal/reconcile")
+    public JournalReconciliationDto reconcileJournal(
+            @RequestParam(defaultValue = "100") int limit) {
+
+        return journalService.reconcile(limit);
+    }
+
+    /**
+     * Make the account hot: credits go to sub-balances, see {@link AccountStripes}.
+     * 
+     * @param userId User ID.
+     * @param stripes Number of sub-balances, zero for a regular account.
+     */
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Operation(summary = "Set number of sub-balances of a hot account, zero for a regular one",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @PostMapping("/account/stripes")
+    public void setAccountStripes(@RequestParam long userId, @RequestParam int stripes) {
+
+        accountStripes.setStripes(userId, stripes);
+    }
+
+    /**
+     * Fold sub-balances of a hot account into its balance.
+     * 
+     * @param userId User ID.
+     */
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Operation(summary = "Fold sub-balances of a hot account",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @PostMapping("/account/stripes/fold")
+    public void foldAccountStripes(@RequestParam long userId) {
+
+        accountStripes.fold(userId);
+    }
 }
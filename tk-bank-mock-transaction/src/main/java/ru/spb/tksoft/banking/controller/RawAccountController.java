@@ -8,17 +8,23 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import ru.spb.tksoft.banking.dto.KeysetPageDto;
 import ru.spb.tksoft.banking.dto.RawAccountDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferBatchRequestDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferBatchResultDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferRequestDto;
+import ru.spb.tksoft.banking.service.IdempotencyStore;
 import ru.spb.tksoft.banking.service.RawAccountService;
 import ru.spb.tksoft.banking.service.RawAccountServiceCached;
-import java.math.BigDecimal;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import ru.spb.tksoft.banking.service.TransferQueue;
+import ru.spb.tksoft.banking.tools.Money;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
@@ -38,45 +44,109 @@ public class RawAccountController {
     @NotNull
     private final RawAccountService rawAccountService;
 
+    @NotNull
+    private final TransferQueue transferQueue;
+
     @ResponseStatus(HttpStatus.OK)
-    @Operation(summary = "Get all accounts, just data, without relations",
+    @Operation(summary = "Get all accounts, just data, without relations, by pages of keyset"
+            + " pagination: pass next_token of the previous page to get the next one",
             security = @SecurityRequirement(name = "bearerAuth"))
     @GetMapping("/list")
-    public Page<RawAccountDto> getRawAccountList(@AuthenticationPrincipal JwtUser user,
-            @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+    public KeysetPageDto<RawAccountDto> getRawAccountList(@AuthenticationPrincipal JwtUser user,
+            @RequestParam(required = false) String token,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean count) {
 
-        Pageable pageable = PageRequest.of(page, size);
-        return rawAccountServiceCached.getAllAccounts(pageable);
+        return rawAccountServiceCached.getAllAccounts(token, size, count);
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Get account of the given user",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @GetMapping("/my")
+    public RawAccountDto getRawAccount(@AuthenticationPrincipal JwtUser user) {
+
+        long userId = user.userId();
+        return rawAccountService.getAccount(userId);
     }
 
     @ResponseStatus(HttpStatus.OK)
     @Operation(summary = "Deposit money to account of the given user",
             security = @SecurityRequirement(name = "bearerAuth"))
     @PostMapping("/deposit")
-    public void deposit(@AuthenticationPrincipal JwtUser user, double amount) {
+    public void deposit(@AuthenticationPrincipal JwtUser user,
+            @RequestParam Money amount,
+            @RequestHeader(name = IdempotencyStore.HEADER, required = false)
+            String idempotencyKey) {
 
         long userId = user.userId();
-        rawAccountServiceCached.deposit(userId, BigDecimal.valueOf(amount));
+        rawAccountService.deposit(userId, amount, idempotencyKey);
     }
 
     @ResponseStatus(HttpStatus.OK)
     @Operation(summary = "Withdraw money from account of the given user",
             security = @SecurityRequirement(name = "bearerAuth"))
     @PostMapping("/withdraw")
-    public void withdraw(@AuthenticationPrincipal JwtUser user, double amount) {
+    public void withdraw(@AuthenticationPrincipal JwtUser user,
+            @RequestParam Money amount,
+            @RequestHeader(name = IdempotencyStore.HEADER, required = false)
+            String idempotencyKey) {
 
         long userId = user.userId();
-        rawAccountServiceCached.withdraw(userId, BigDecimal.valueOf(amount));
+        rawAccountService.withdraw(userId, amount, idempotencyKey);
     }
 
     @ResponseStatus(HttpStatus.OK)
     @Operation(summary = "Transfer money from one user's account to another",
             security = @SecurityRequirement(name = "bearerAuth"))
     @PostMapping("/transfer")
-    public void transfer(@AuthenticationPrincipal JwtUser user, long userIdTo, double amount) {
+    public void transfer(@AuthenticationPrincipal JwtUser user, long userIdTo,
+            @RequestParam Money amount,
+            @RequestHeader(name = IdempotencyStore.HEADER, required = false)
+            String idempotencyKey) {
+
+        long userId = user.userId();
+        rawAccountService.transfer(userId, userIdTo, amount, idempotencyKey);
+    }
+
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @Operation(summary = "Accept transfer of money from one user's account to another, to be"
+            + " settled asynchronously: poll its status by the returned ID",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @PostMapping("/transfer/async")
+    public TransferRequestDto transferAsync(@AuthenticationPrincipal JwtUser user,
+            long userIdTo,
+            @RequestParam Money amount,
+            @RequestHeader(name = IdempotencyStore.HEADER, required = false)
+            String idempotencyKey) {
+
+        long userId = user.userId();
+        return transferQueue.submit(userId, userIdTo, amount, idempotencyKey);
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Get status of an asynchronous transfer of the given user",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @GetMapping("/transfer/{id}")
+    public TransferRequestDto getTransfer(@AuthenticationPrincipal JwtUser user,
+            @PathVariable long id) {
+
+        long userId = user.userId();
+        return transferQueue.getRequest(userId, id);
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Transfer money from the account of the given user to several accounts"
+            + " in one transaction: all-or-nothing if atomic, otherwise failed transfers are"
+            + " skipped",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @PostMapping("/transfer/batch")
+    public TransferBatchResultDto transferBatch(@AuthenticationPrincipal JwtUser user,
+            @RequestBody TransferBatchRequestDto request,
+            @RequestHeader(name = IdempotencyStore.HEADER, required = false)
+            String idempotencyKey) {
 
         long userId = user.userId();
-        rawAccountServiceCached.transfer(userId, userIdTo, BigDecimal.valueOf(amount));
+        return rawAccountService.transferBatch(userId, request, idempotencyKey);
     }
 }
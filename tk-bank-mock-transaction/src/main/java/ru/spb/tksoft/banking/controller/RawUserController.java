@@ -10,13 +10,16 @@ import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import ru.spb.tksoft.banking.dto.RawContactItemDto;
 import ru.spb.tksoft.banking.dto.RawContactListDto;
+import ru.spb.tksoft.banking.dto.KeysetPageDto;
 import ru.spb.tksoft.banking.dto.RawUserDto;
 import ru.spb.tksoft.banking.service.RawUserService;
 import ru.spb.tksoft.banking.service.RawUserServiceCached;
+import ru.spb.tksoft.banking.tools.KeysetTools;
 import java.time.LocalDate;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -40,44 +43,62 @@ public class RawUserController {
     private final RawUserServiceCached rawUserServiceCached;
 
     @ResponseStatus(HttpStatus.OK)
-    @Operation(summary = "Get all users, just data, without relations",
+    @Operation(summary = "Get all users, just data, without relations, by pages of keyset"
+            + " pagination: pass next_token of the previous page to get the next one",
             security = @SecurityRequirement(name = "bearerAuth"))
     @GetMapping("/list")
-    public Page<RawUserDto> getRawUserList(@AuthenticationPrincipal JwtUser user,
-            @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+    public KeysetPageDto<RawUserDto> getRawUserList(@AuthenticationPrincipal JwtUser user,
+            @RequestParam(required = false) String token,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean count) {
 
-        Pageable pageable = PageRequest.of(page, size);
-        return rawUserService.getAllUsers(pageable);
+        return rawUserService.getAllUsers(token, size, count);
     }
 
     @ResponseStatus(HttpStatus.OK)
-    @Operation(summary = "Search users by name% pattern",
+    @Operation(summary = "Search users by name% pattern, total count only if requested",
             security = @SecurityRequirement(name = "bearerAuth"))
     @GetMapping("/search/name")
-    public Page<RawUserDto> findUsersByNameLike(@AuthenticationPrincipal JwtUser user,
+    public Slice<RawUserDto> findUsersByNameLike(@AuthenticationPrincipal JwtUser user,
             @RequestParam String namePrefix,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean count) {
 
-        Pageable pageable = PageRequest.of(page, size);
-        return rawUserService.findUsersByNameLike(namePrefix, pageable);
+        Pageable pageable = pageOf(page, size);
+        return rawUserService.findUsersByNameLike(namePrefix, pageable, count);
     }
 
     @ResponseStatus(HttpStatus.OK)
-    @Operation(summary = "Search users by date of birth equal and after",
+    @Operation(summary = "Search users by date of birth equal and after, total count only if requested",
             security = @SecurityRequirement(name = "bearerAuth"))
     @GetMapping("/search/age")
-    public Page<RawUserDto> findUsersByDateOfBirth(@AuthenticationPrincipal JwtUser user,
+    public Slice<RawUserDto> findUsersByDateOfBirth(@AuthenticationPrincipal JwtUser user,
             @RequestParam(required = true, defaultValue = "1900") int year,
             @RequestParam(required = true, defaultValue = "1") int month,
             @RequestParam(required = true, defaultValue = "1") int day,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean count) {
 
         LocalDate dateOfBirth = LocalDate.of(year, month, day);
-        Pageable pageable = PageRequest.of(page, size);
-        return rawUserService.findUsersByDateOfBirth(dateOfBirth, pageable);
+        Pageable pageable = pageOf(page, size);
+        return rawUserService.findUsersByDateOfBirth(dateOfBirth, pageable, count);
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Search users by date of birth in range, total count only if requested",
+            security = @SecurityRequirement(name = "bearerAuth"))
+    @GetMapping("/search/age/range")
+    public Slice<RawUserDto> findUsersByDateOfBirthBetween(@AuthenticationPrincipal JwtUser user,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean count) {
+
+        Pageable pageable = pageOf(page, size);
+        return rawUserService.findUsersByDateOfBirthBetween(from, to, pageable, count);
     }
 
     @ResponseStatus(HttpStatus.OK)
@@ -180,4 +201,8 @@ public class RawUserController {
         return rawUserServiceCached.updatePhone(user, phoneId, newPhone);
     }
 
+    /** Page request with the size clamped to {@link KeysetTools#MAX_PAGE_SIZE}. */
+    private static Pageable pageOf(final int page, final int size) {
+        return PageRequest.of(page, Math.min(size, KeysetTools.MAX_PAGE_SIZE));
+    }
 }
@@ -1,9 +1,19 @@
 package ru.spb.tksoft.banking.controller.advice;
 
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import ru.spb.tksoft.banking.exception.DatabaseBusyException;
+import ru.spb.tksoft.banking.exception.OperationNotAvailableException;
 import ru.spb.tksoft.common.controller.advice.AbstractBaseControllerAdvice;
+import ru.spb.tksoft.common.controller.dto.CommonErrorResponseDto;
+import ru.spb.tksoft.utils.log.LogEx;
 
 /**
  * Перехват исключений RecommendationController.
@@ -14,10 +24,49 @@ import ru.spb.tksoft.common.controller.advice.AbstractBaseControllerAdvice;
 @Order(Ordered.HIGHEST_PRECEDENCE)
 public class BankingControllerAdvice extends AbstractBaseControllerAdvice {
 
+    private static final Logger log = LoggerFactory.getLogger(BankingControllerAdvice.class);
+
     /**
      * Конструктор по умолчанию.
      */
     private BankingControllerAdvice() {
         super();
     }
+
+    /**
+     * Обработка OperationNotAvailableException: операция недоступна в текущем режиме.
+     * 
+     * @param e Исключение.
+     * @return DTO ошибки.
+     */
+    @ExceptionHandler(OperationNotAvailableException.class)
+    public ResponseEntity<CommonErrorResponseDto> handleOperationNotAvailable(
+            OperationNotAvailableException e) {
+
+        LogEx.error(log, LogEx.getThisMethodName(), LogEx.EXCEPTION_THROWN,
+                OperationNotAvailableException.CODE, e.getMessage());
+
+        return new ResponseEntity<>(
+                new CommonErrorResponseDto(OperationNotAvailableException.CODE, e.getMessage(),
+                        Arrays.toString(e.getStackTrace())),
+                HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Обработка DatabaseBusyException: запрос не допущен к базе данных.
+     * 
+     * @param e Исключение.
+     * @return DTO ошибки.
+     */
+    @ExceptionHandler(DatabaseBusyException.class)
+    public ResponseEntity<CommonErrorResponseDto> handleDatabaseBusy(DatabaseBusyException e) {
+
+        LogEx.error(log, LogEx.getThisMethodName(), LogEx.EXCEPTION_THROWN,
+                DatabaseBusyException.CODE, e.getMessage());
+
+        return new ResponseEntity<>(
+                new CommonErrorResponseDto(DatabaseBusyException.CODE, e.getMessage(),
+                        Arrays.toString(e.getStackTrace())),
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
 }
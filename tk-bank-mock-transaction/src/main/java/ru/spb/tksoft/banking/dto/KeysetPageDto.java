@@ -0,0 +1,38 @@
+package ru.spb.tksoft.banking.dto;
+
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Page of keyset (seek) pagination.
+ * 
+ * @param <T> Type of items.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"content", "size", "next_token", "total_elements"})
+public class KeysetPageDto<T> {
+
+    /** Items of the page. */
+    @NotNull
+    private List<T> content;
+
+    /** Requested page size. */
+    private int size;
+
+    /** Opaque token of the next page, null if this page is the last one. */
+    @JsonProperty("next_token")
+    private String nextToken;
+
+    /** Total number of items, null if not requested. */
+    @JsonProperty("total_elements")
+    private Long totalElements;
+}
@@ -1,13 +1,12 @@
 package ru.spb.tksoft.banking.dto;
 
-import java.math.BigDecimal;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
-import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.tools.Money;
 
 /**
  * Account DTO, just "account" data
@@ -30,13 +29,11 @@ public class RawAccountDto {
     private long userId;
 
     /** Balance. */
-    @DecimalMin(value = "0.0", inclusive = true)
     @NotNull
-    private BigDecimal balance;
+    private Money balance;
 
     /** Balance: limit for autoincrement. */
     @JsonProperty("balance_autolimit")
-    @DecimalMin(value = "0.0", inclusive = true)
     @NotNull
-    private BigDecimal balanceAutoLimit;
+    private Money balanceAutoLimit;
 }
@@ -2,6 +2,7 @@ package ru.spb.tksoft.banking.dto;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import jakarta.validation.constraints.NotBlank;
@@ -29,7 +30,8 @@ public class RawUserDto {
     @NotBlank
     private String name;
 
-    /** Password. */
+    /** Password, absent in search results. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @NotBlank
     private String password;
 
@@ -1,6 +1,5 @@
 package ru.spb.tksoft.banking.dto;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Set;
@@ -11,6 +10,7 @@ import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.tools.Money;
 
 /**
  * User DTO.
@@ -52,7 +52,7 @@ public class UserDto {
 
     /** Current balance. */
     @NotNull
-    private BigDecimal balance;
+    private Money balance;
 
     /** EMail set. */
     @NotNull
@@ -0,0 +1,43 @@
+package ru.spb.tksoft.banking.dto.maintenance;
+
+import java.time.Instant;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Statistics of the last balance autoincrement run.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"mode", "started_at", "duration_ms", "affected_rows", "chunks",
+        "failed_chunks"})
+public class AccrualInfoDto {
+
+    /** Mode of the run, null if there was no run yet. */
+    private String mode;
+
+    /** Start time of the run, null if there was no run yet. */
+    @JsonProperty("started_at")
+    private Instant startedAt;
+
+    /** Duration of the run, milliseconds. */
+    @JsonProperty("duration_ms")
+    private long durationMs;
+
+    /** Number of updated accounts. */
+    @JsonProperty("affected_rows")
+    private long affectedRows;
+
+    /** Number of processed chunks. */
+    private long chunks;
+
+    /** Number of chunks failed and skipped. */
+    @JsonProperty("failed_chunks")
+    private long failedChunks;
+}
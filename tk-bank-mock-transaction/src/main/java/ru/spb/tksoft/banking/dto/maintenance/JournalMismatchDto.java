@@ -0,0 +1,34 @@
+package ru.spb.tksoft.banking.dto.maintenance;
+
+import java.math.BigDecimal;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Account whose balance differs from the sum of its journal entries.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"user_id", "balance", "journal_balance"})
+public class JournalMismatchDto {
+
+    /** User ID. */
+    @JsonProperty("user_id")
+    private long userId;
+
+    /** Balance of the account. */
+    @NotNull
+    private BigDecimal balance;
+
+    /** Sum of journal entries of the account. */
+    @JsonProperty("journal_balance")
+    @NotNull
+    private BigDecimal journalBalance;
+}
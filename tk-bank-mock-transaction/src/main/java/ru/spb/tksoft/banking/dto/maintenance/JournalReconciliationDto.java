@@ -0,0 +1,41 @@
+package ru.spb.tksoft.banking.dto.maintenance;
+
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of the reconciliation of account balances against the journal. Counts are taken from
+ * one snapshot of the database.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"consistent", "accounts", "mismatched_accounts", "unbalanced_operations",
+        "mismatches"})
+public class JournalReconciliationDto {
+
+    /** No mismatches and no unbalanced operations. */
+    private boolean consistent;
+
+    /** Number of accounts. */
+    private long accounts;
+
+    /** Number of accounts whose balance differs from the sum of their journal entries. */
+    @JsonProperty("mismatched_accounts")
+    private long mismatchedAccounts;
+
+    /** Number of operations whose entries do not sum to zero. */
+    @JsonProperty("unbalanced_operations")
+    private long unbalancedOperations;
+
+    /** First mismatched accounts, ordered by user ID. */
+    @NotNull
+    private List<JournalMismatchDto> mismatches;
+}
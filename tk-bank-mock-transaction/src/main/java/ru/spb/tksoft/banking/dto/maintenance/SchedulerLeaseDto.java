@@ -0,0 +1,51 @@
+package ru.spb.tksoft.banking.dto.maintenance;
+
+import java.time.Instant;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lease of a scheduled job.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"job_name", "owner_id", "acquired_at", "renewed_at", "expires_at",
+        "expired", "owned_by_this_node"})
+public class SchedulerLeaseDto {
+
+    /** Job name. */
+    @JsonProperty("job_name")
+    @NotBlank
+    private String jobName;
+
+    /** Node owning the lease. */
+    @JsonProperty("owner_id")
+    @NotBlank
+    private String ownerId;
+
+    /** Time the current owner has acquired the lease. */
+    @JsonProperty("acquired_at")
+    private Instant acquiredAt;
+
+    /** Time the current owner has renewed the lease. */
+    @JsonProperty("renewed_at")
+    private Instant renewedAt;
+
+    /** Lease is free after this time. */
+    @JsonProperty("expires_at")
+    private Instant expiresAt;
+
+    /** Lease is expired and can be taken over by any node. */
+    private boolean expired;
+
+    /** Lease is owned by the node answering the request. */
+    @JsonProperty("owned_by_this_node")
+    private boolean ownedByThisNode;
+}
@@ -0,0 +1,39 @@
+package ru.spb.tksoft.banking.dto.maintenance;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of the consistency check of an in-memory user index against the database. Users changed
+ * during the check may be reported as inconsistent.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"name", "checked", "missing", "stale", "extra", "repaired"})
+public class UserIndexCheckDto {
+
+    /** Index name. */
+    @NotBlank
+    private String name;
+
+    /** Number of users in the database. */
+    private long checked;
+
+    /** Users in the database, but not in the index. */
+    private long missing;
+
+    /** Users indexed with outdated data. */
+    private long stale;
+
+    /** Users in the index, but not in the database. */
+    private long extra;
+
+    /** Index has been rebuilt because of inconsistency. */
+    private boolean repaired;
+}
@@ -0,0 +1,50 @@
+package ru.spb.tksoft.banking.dto.maintenance;
+
+import java.time.Instant;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * State and memory footprint of an in-memory user index.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"name", "enabled", "ready", "entries", "nodes", "estimated_bytes",
+        "built_at", "build_duration_ms"})
+public class UserIndexInfoDto {
+
+    /** Index name. */
+    @NotBlank
+    private String name;
+
+    /** Index is enabled in configuration. */
+    private boolean enabled;
+
+    /** Index is built and serves queries. */
+    private boolean ready;
+
+    /** Number of indexed users. */
+    private long entries;
+
+    /** Number of nodes or buckets of the index structure. */
+    private long nodes;
+
+    /** Approximate memory footprint of the index structure, bytes. */
+    @JsonProperty("estimated_bytes")
+    private long estimatedBytes;
+
+    /** Time of the last build, null if not built yet. */
+    @JsonProperty("built_at")
+    private Instant builtAt;
+
+    /** Duration of the last build, milliseconds. */
+    @JsonProperty("build_duration_ms")
+    private long buildDurationMs;
+}
@@ -0,0 +1,30 @@
+package ru.spb.tksoft.banking.dto.transfer;
+
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Batch of transfers from the account of the current user.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"atomic", "items"})
+public class TransferBatchRequestDto {
+
+    /**
+     * All-or-nothing: if any transfer fails, none is applied. Otherwise transfers are applied in
+     * order, failed ones are skipped.
+     */
+    private boolean atomic = true;
+
+    /** Transfers. */
+    @NotEmpty
+    private List<TransferItemDto> items;
+}
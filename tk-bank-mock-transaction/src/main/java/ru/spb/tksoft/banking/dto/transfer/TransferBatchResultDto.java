@@ -0,0 +1,40 @@
+package ru.spb.tksoft.banking.dto.transfer;
+
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Result of a batch of transfers.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"atomic", "applied", "failed", "total_amount", "items"})
+public class TransferBatchResultDto {
+
+    /** Batch is all-or-nothing. */
+    private boolean atomic;
+
+    /** Number of applied transfers. */
+    private int applied;
+
+    /** Number of failed transfers; skipped ones are not counted. */
+    private int failed;
+
+    /** Total amount of applied transfers. */
+    @JsonProperty("total_amount")
+    @NotNull
+    private Money totalAmount;
+
+    /** Results of transfers, in the order of the request. */
+    @NotNull
+    private List<TransferItemResultDto> items;
+}
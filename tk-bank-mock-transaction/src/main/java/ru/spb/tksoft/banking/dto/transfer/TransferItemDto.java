@@ -0,0 +1,30 @@
+package ru.spb.tksoft.banking.dto.transfer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Transfer of a batch: the source is the batch owner.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"to_user_id", "amount"})
+public class TransferItemDto {
+
+    /** Destination user ID. */
+    @JsonProperty("to_user_id")
+    @NotNull
+    private Long toUserId;
+
+    /** Amount. */
+    @NotNull
+    private Money amount;
+}
@@ -0,0 +1,35 @@
+package ru.spb.tksoft.banking.dto.transfer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Result of a transfer of a batch.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"index", "to_user_id", "amount", "status"})
+public class TransferItemResultDto {
+
+    /** Index of the transfer in the batch. */
+    private int index;
+
+    /** Destination user ID. */
+    @JsonProperty("to_user_id")
+    private Long toUserId;
+
+    /** Amount. */
+    private Money amount;
+
+    /** Status. */
+    @NotNull
+    private TransferItemStatus status;
+}
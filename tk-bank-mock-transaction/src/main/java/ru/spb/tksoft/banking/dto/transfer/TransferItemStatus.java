@@ -0,0 +1,27 @@
+package ru.spb.tksoft.banking.dto.transfer;
+
+/**
+ * Status of a transfer of a batch.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public enum TransferItemStatus {
+
+    /** Transfer is applied. */
+    APPLIED,
+
+    /**
+     * Transfer is invalid: not positive amount or transfer to the same account; in the ledger
+     * engine mode, also a new balance of the destination over the limit.
+     */
+    INVALID,
+
+    /** Destination account is not found. */
+    NOT_FOUND,
+
+    /** Not enough funds left for the transfer. */
+    INSUFFICIENT_FUNDS,
+
+    /** Valid transfer is not applied because another transfer of the atomic batch failed. */
+    SKIPPED
+}
@@ -0,0 +1,49 @@
+package ru.spb.tksoft.banking.dto.transfer;
+
+import java.time.Instant;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.entity.TransferRequestStatus;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Asynchronous transfer and its status.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonPropertyOrder({"id", "to_user_id", "amount", "status", "error", "created_at",
+        "finished_at"})
+public class TransferRequestDto {
+
+    /** Transfer ID. */
+    private Long id;
+
+    /** Destination user ID. */
+    @JsonProperty("to_user_id")
+    private Long toUserId;
+
+    /** Amount. */
+    private Money amount;
+
+    /** Status. */
+    @NotNull
+    private TransferRequestStatus status;
+
+    /** Reason of the failure. */
+    private String error;
+
+    /** Time of the request. */
+    @JsonProperty("created_at")
+    private Instant createdAt;
+
+    /** Time of completion or failure. */
+    @JsonProperty("finished_at")
+    private Instant finishedAt;
+}
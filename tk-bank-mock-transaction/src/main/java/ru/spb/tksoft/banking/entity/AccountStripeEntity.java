@@ -0,0 +1,48 @@
+package ru.spb.tksoft.banking.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Sub-balance of a hot account, see {@link ru.spb.tksoft.banking.service.AccountStripes}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "\"account_stripe\"")
+public class AccountStripeEntity {
+
+    /** Unique ID. */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** User ID of the account. */
+    @Column(name = "user_id", nullable = false)
+    @NotNull
+    private Long userId;
+
+    /** Number of the stripe, unique per account. */
+    @Column(name = "stripe", nullable = false)
+    @NotNull
+    private Integer stripe;
+
+    /** Sub-balance. */
+    @Column(name = "balance", nullable = false, precision = 15, scale = 2)
+    @NotNull
+    private Money balance;
+}
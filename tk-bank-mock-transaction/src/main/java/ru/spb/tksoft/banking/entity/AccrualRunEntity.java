@@ -0,0 +1,58 @@
+package ru.spb.tksoft.banking.entity;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Checkpoint of the chunked balance autoincrement run.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "\"accrual_run\"")
+public class AccrualRunEntity {
+
+    /** Unique ID. */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** Rate of growth, the same for the whole run. */
+    @Column(name = "rate", nullable = false)
+    @NotNull
+    private BigDecimal rate;
+
+    /** Account ID all chunks up to which are processed. */
+    @Column(name = "last_id", nullable = false)
+    @NotNull
+    private Long lastId;
+
+    /** Number of updated accounts. */
+    @Column(name = "updated_rows", nullable = false)
+    @NotNull
+    private Long updatedRows;
+
+    /** Start time. */
+    @Column(name = "started_at", nullable = false)
+    @NotNull
+    private Instant startedAt;
+
+    /** Finish time, null if the run is not finished. */
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+}
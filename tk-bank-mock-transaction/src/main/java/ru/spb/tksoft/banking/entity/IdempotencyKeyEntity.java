@@ -0,0 +1,72 @@
+package ru.spb.tksoft.banking.entity;
+
+import java.time.Instant;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Recorded outcome of a request with "Idempotency-Key" header.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "\"idempotency_key\"")
+public class IdempotencyKeyEntity {
+
+    /** Unique ID. */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** User ID. */
+    @Column(name = "user_id", nullable = false)
+    @NotNull
+    private Long userId;
+
+    /** Key, unique per user. */
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    @NotBlank
+    private String idempotencyKey;
+
+    /** Operation. */
+    @Column(name = "operation", nullable = false, length = 50)
+    @NotBlank
+    private String operation;
+
+    /** SHA-256 of the request, hex. */
+    @Column(name = "request_hash", nullable = false, length = 64)
+    @NotBlank
+    private String requestHash;
+
+    /** Response, JSON; null if the operation returns nothing. */
+    @Column(name = "response")
+    private String response;
+
+    /** The key is claimed by an operation in progress, the response is not recorded yet. */
+    @Column(name = "pending", nullable = false)
+    private boolean pending;
+
+    /** Time of the request. */
+    @Column(name = "created_at", nullable = false)
+    @NotNull
+    private Instant createdAt;
+
+    /** The key may be reused after this time. */
+    @Column(name = "expires_at", nullable = false)
+    @NotNull
+    private Instant expiresAt;
+}
@@ -0,0 +1,71 @@
+package ru.spb.tksoft.banking.entity;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+import org.hibernate.annotations.Immutable;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Entry of the append-only double-entry journal. Entries are written with JDBC batches, see
+ * {@link ru.spb.tksoft.banking.service.JournalWriter}, and are never changed.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@Entity
+@Immutable
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "\"journal\"")
+public class JournalEntryEntity {
+
+    /** Unique ID. */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** Operation ID: entries of an operation sum to zero. */
+    @Column(name = "tx_id", nullable = false)
+    @NotNull
+    private UUID txId;
+
+    /** Operation. */
+    @Column(name = "operation", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    @NotNull
+    private JournalOperation operation;
+
+    /** Ledger. */
+    @Column(name = "ledger", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    @NotNull
+    private JournalLedger ledger;
+
+    /** User ID of the account for ACCOUNT ledger, null otherwise. */
+    @Column(name = "user_id")
+    private Long userId;
+
+    /** Amount: positive increases the ledger, negative decreases it. */
+    @Column(name = "amount", nullable = false)
+    @NotNull
+    private BigDecimal amount;
+
+    /** Time of the entry. */
+    @Column(name = "created_at", nullable = false)
+    @NotNull
+    private Instant createdAt;
+}
@@ -0,0 +1,24 @@
+package ru.spb.tksoft.banking.entity;
+
+/**
+ * Ledger of journal entries.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public enum JournalLedger {
+
+    /** Account of a user: the sum of entries is the balance. */
+    ACCOUNT,
+
+    /** Money brought in and taken out by users. */
+    CASH,
+
+    /** Balance autoincrement paid by the bank. */
+    INTEREST,
+
+    /** Opening balances. */
+    EQUITY,
+
+    /** Money in flight between shards of the database. */
+    TRANSIT
+}
@@ -0,0 +1,27 @@
+package ru.spb.tksoft.banking.entity;
+
+/**
+ * Operation of journal entries.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public enum JournalOperation {
+
+    /** Balance existing when the journal was introduced, against EQUITY. */
+    OPENING,
+
+    /** Deposit, against CASH. */
+    DEPOSIT,
+
+    /** Withdraw, against CASH. */
+    WITHDRAW,
+
+    /** Transfer between accounts. */
+    TRANSFER,
+
+    /** Balance autoincrement, against INTEREST. */
+    ACCRUAL,
+
+    /** Rounding of a balance to minor units, against EQUITY. */
+    ROUNDING
+}
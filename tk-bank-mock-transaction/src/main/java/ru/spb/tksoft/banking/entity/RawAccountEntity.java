@@ -1,6 +1,6 @@
 package ru.spb.tksoft.banking.entity;
 
-import java.math.BigDecimal;
+import java.time.Instant;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
@@ -8,12 +8,12 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
-import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.tools.Money;
 
 /**
  * User's account, just data, without relations.
@@ -40,13 +40,16 @@ public class RawAccountEntity {
 
     /** Balance. */
     @Column(name = "balance", nullable = false, precision = 15, scale = 2)
-    @DecimalMin(value = "0.0", inclusive = true)
     @NotNull
-    private BigDecimal balance;
+    private Money balance;
 
     /** Balance: limit for autoincrement. */
     @Column(name = "balance_autolimit", nullable = false, precision = 15, scale = 2)
-    @DecimalMin(value = "0.0", inclusive = true)
     @NotNull
-    private BigDecimal balanceAutoLimit;
+    private Money balanceAutoLimit;
+
+    /** Time up to which the balance autoincrement is materialized. */
+    @Column(name = "last_accrual_at", nullable = false)
+    @NotNull
+    private Instant lastAccrualAt;
 }
@@ -0,0 +1,27 @@
+package ru.spb.tksoft.banking.entity;
+
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Listener of committed changes of users, e.g. in-memory indexes. Beans implementing it are
+ * notified by {@link RawUserEntityListener} after commit of the transaction that has changed the
+ * user. Changes done with native queries are not notified.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public interface RawUserChangeListener {
+
+    /**
+     * User has been created or updated.
+     *
+     * @param user Copy of the user entity.
+     */
+    void userSaved(@NotNull RawUserEntity user);
+
+    /**
+     * User has been removed.
+     *
+     * @param userId User ID.
+     */
+    void userRemoved(long userId);
+}
@@ -0,0 +1,75 @@
+package ru.spb.tksoft.banking.entity;
+
+import java.util.function.Consumer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * JPA listener of RawUserEntity, notifies {@link RawUserChangeListener} beans after commit.
+ *
+ * Instantiated by Spring through the Hibernate bean container, see BankDatabaseConfig.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public class RawUserEntityListener {
+
+    private final ObjectProvider<RawUserChangeListener> listeners;
+
+    /**
+     * Constructor.
+     *
+     * @param listeners Listeners of user changes, resolved lazily.
+     */
+    public RawUserEntityListener(final ObjectProvider<RawUserChangeListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * User has been inserted or updated.
+     *
+     * @param user User entity.
+     */
+    @PostPersist
+    @PostUpdate
+    public void saved(final RawUserEntity user) {
+
+        RawUserEntity copy = RawUserEntity.builder()
+                .id(user.getId())
+                .name(user.getName())
+                .password(user.getPassword())
+                .dateOfBirth(user.getDateOfBirth())
+                .build();
+        afterCommit(listener -> listener.userSaved(copy));
+    }
+
+    /**
+     * User has been removed.
+     *
+     * @param user User entity.
+     */
+    @PostRemove
+    public void removed(final RawUserEntity user) {
+
+        long userId = user.getId();
+        afterCommit(listener -> listener.userRemoved(userId));
+    }
+
+    private void afterCommit(final Consumer<RawUserChangeListener> notification) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            listeners.forEach(notification);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                listeners.forEach(notification);
+            }
+        });
+    }
+}
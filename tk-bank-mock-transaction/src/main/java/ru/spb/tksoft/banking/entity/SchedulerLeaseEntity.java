@@ -0,0 +1,53 @@
+package ru.spb.tksoft.banking.entity;
+
+import java.time.Instant;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lease of a scheduled job.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "\"scheduler_lease\"")
+public class SchedulerLeaseEntity {
+
+    /** Job name. */
+    @Id
+    @Column(name = "job_name", nullable = false, length = 100)
+    @NotBlank
+    private String jobName;
+
+    /** Node owning the lease. */
+    @Column(name = "owner_id", nullable = false, length = 200)
+    @NotBlank
+    private String ownerId;
+
+    /** Time the current owner has acquired the lease. */
+    @Column(name = "acquired_at", nullable = false)
+    @NotNull
+    private Instant acquiredAt;
+
+    /** Time the current owner has renewed the lease. */
+    @Column(name = "renewed_at", nullable = false)
+    @NotNull
+    private Instant renewedAt;
+
+    /** Lease is free after this time. */
+    @Column(name = "expires_at", nullable = false)
+    @NotNull
+    private Instant expiresAt;
+}
@@ -0,0 +1,65 @@
+package ru.spb.tksoft.banking.entity;
+
+import java.time.Instant;
+import java.util.UUID;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Transfer between shards as seen by one of them, see
+ * {@link ru.spb.tksoft.banking.service.ShardTransferService}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "\"shard_transfer\"")
+public class ShardTransferEntity {
+
+    /** Transfer ID, the same on both shards. */
+    @Id
+    private UUID id;
+
+    /** Source user ID. */
+    @Column(name = "from_user_id", nullable = false)
+    @NotNull
+    private Long fromUserId;
+
+    /** Destination user ID. */
+    @Column(name = "to_user_id", nullable = false)
+    @NotNull
+    private Long toUserId;
+
+    /** Amount. */
+    @Column(name = "amount", nullable = false, precision = 15, scale = 2)
+    @NotNull
+    private Money amount;
+
+    /** Status. */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    @NotNull
+    private ShardTransferStatus status;
+
+    /** Time of the debit or of the credit. */
+    @Column(name = "created_at", nullable = false)
+    @NotNull
+    private Instant createdAt;
+
+    /** Time of commit or abort; time of the credit on the destination shard. */
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+}
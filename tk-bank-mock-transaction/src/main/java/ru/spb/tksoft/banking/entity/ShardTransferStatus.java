@@ -0,0 +1,21 @@
+package ru.spb.tksoft.banking.entity;
+
+/**
+ * Status of a transfer between shards.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public enum ShardTransferStatus {
+
+    /** Source shard: debited, the credit is not confirmed yet. */
+    PREPARED,
+
+    /** Source shard: debited and credited. */
+    COMMITTED,
+
+    /** Source shard: the debit is returned, as the credit is impossible. */
+    ABORTED,
+
+    /** Destination shard: credited. */
+    APPLIED
+}
@@ -0,0 +1,78 @@
+package ru.spb.tksoft.banking.entity;
+
+import java.time.Instant;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Asynchronous transfer, see {@link ru.spb.tksoft.banking.service.TransferQueue}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "\"transfer_request\"")
+public class TransferRequestEntity {
+
+    /** Unique ID, the transfer ID for clients. */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** Source user ID. */
+    @Column(name = "from_user_id", nullable = false)
+    @NotNull
+    private Long fromUserId;
+
+    /** Destination user ID. */
+    @Column(name = "to_user_id", nullable = false)
+    @NotNull
+    private Long toUserId;
+
+    /** Amount. */
+    @Column(name = "amount", nullable = false, precision = 15, scale = 2)
+    @NotNull
+    private Money amount;
+
+    /** Status. */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    @NotNull
+    private TransferRequestStatus status;
+
+    /** Reason of the failure. */
+    @Column(name = "error", length = 255)
+    private String error;
+
+    /** Number of times claimed by workers. */
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    /** Time of the request. */
+    @Column(name = "created_at", nullable = false)
+    @NotNull
+    private Instant createdAt;
+
+    /** Time of the last claim by a worker. */
+    @Column(name = "claimed_at")
+    private Instant claimedAt;
+
+    /** Time of completion or failure. */
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+}
@@ -0,0 +1,21 @@
+package ru.spb.tksoft.banking.entity;
+
+/**
+ * Status of an asynchronous transfer.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public enum TransferRequestStatus {
+
+    /** Waiting for a worker. */
+    PENDING,
+
+    /** Claimed by a worker. */
+    PROCESSING,
+
+    /** Transferred. */
+    COMPLETED,
+
+    /** Rejected, see the error. */
+    FAILED
+}
@@ -0,0 +1,40 @@
+package ru.spb.tksoft.banking.exception;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.validation.constraints.NotBlank;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Too many requests are waiting for database connections, the request is not admitted.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public class DatabaseBusyException extends RuntimeException {
+
+    private static final Logger log = LoggerFactory.getLogger(DatabaseBusyException.class);
+
+    /** Error code. */
+    public static final int CODE = 5030;
+
+    /** Error message. */
+    public static final String MESSAGE = "Database is busy";
+
+    /** Default constructor. */
+    public DatabaseBusyException() {
+
+        super(MESSAGE);
+        LogEx.error(log, LogEx.getThisMethodName(), LogEx.EXCEPTION_THROWN, CODE, this);
+    }
+
+    /**
+     * Constructor with additional message.
+     * 
+     * @param message Additional error message.
+     */
+    public DatabaseBusyException(@NotBlank final String message) {
+
+        super(MESSAGE + ": " + message);
+        LogEx.error(log, LogEx.getThisMethodName(), LogEx.EXCEPTION_THROWN, CODE, this);
+    }
+}
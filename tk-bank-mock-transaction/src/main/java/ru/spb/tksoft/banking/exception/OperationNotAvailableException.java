@@ -0,0 +1,40 @@
+package ru.spb.tksoft.banking.exception;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.validation.constraints.NotBlank;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Operation is not available in the current mode of the service.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public class OperationNotAvailableException extends RuntimeException {
+
+    private static final Logger log = LoggerFactory.getLogger(OperationNotAvailableException.class);
+
+    /** Error code. */
+    public static final int CODE = 4090;
+
+    /** Error message. */
+    public static final String MESSAGE = "Operation is not available";
+
+    /** Default constructor. */
+    public OperationNotAvailableException() {
+
+        super(MESSAGE);
+        LogEx.error(log, LogEx.getThisMethodName(), LogEx.EXCEPTION_THROWN, CODE, this);
+    }
+
+    /**
+     * Constructor with additional message.
+     * 
+     * @param message Additional error message.
+     */
+    public OperationNotAvailableException(@NotBlank final String message) {
+
+        super(MESSAGE + ": " + message);
+        LogEx.error(log, LogEx.getThisMethodName(), LogEx.EXCEPTION_THROWN, CODE, this);
+    }
+}
@@ -0,0 +1,40 @@
+package ru.spb.tksoft.banking.exception;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.validation.constraints.NotBlank;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Too many asynchronous transfers are waiting, the transfer is not accepted.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public class TransferQueueFullException extends RuntimeException {
+
+    private static final Logger log = LoggerFactory.getLogger(TransferQueueFullException.class);
+
+    /** Error code. */
+    public static final int CODE = 4291;
+
+    /** Error message. */
+    public static final String MESSAGE = "Transfer queue is full";
+
+    /** Default constructor. */
+    public TransferQueueFullException() {
+
+        super(MESSAGE);
+        LogEx.error(log, LogEx.getThisMethodName(), LogEx.EXCEPTION_THROWN, CODE, this);
+    }
+
+    /**
+     * Constructor with additional message.
+     * 
+     * @param message Additional error message.
+     */
+    public TransferQueueFullException(@NotBlank final String message) {
+
+        super(MESSAGE + ": " + message);
+        LogEx.error(log, LogEx.getThisMethodName(), LogEx.EXCEPTION_THROWN, CODE, this);
+    }
+}
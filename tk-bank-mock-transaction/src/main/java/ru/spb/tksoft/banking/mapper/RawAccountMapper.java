@@ -4,6 +4,7 @@ import javax.annotation.concurrent.ThreadSafe;
 import jakarta.validation.constraints.NotNull;
 import ru.spb.tksoft.banking.dto.RawAccountDto;
 import ru.spb.tksoft.banking.entity.RawAccountEntity;
+import ru.spb.tksoft.banking.tools.Money;
 
 /**
  * Mapper for RawAccount*.
@@ -30,4 +31,20 @@ public final class RawAccountMapper {
                 entity.getUserId(),
                 entity.getBalance(), entity.getBalanceAutoLimit());
     }
+
+    /**
+     * Entity to DTO with given balance instead of the stored one.
+     * 
+     * @param entity user entity.
+     * @param balance balance to show, e.g. effective balance with lazy autoincrement.
+     * @return user DTO.
+     */
+    @NotNull
+    public static RawAccountDto toDto(@NotNull final RawAccountEntity entity,
+            @NotNull final Money balance) {
+
+        return new RawAccountDto(entity.getId(),
+                entity.getUserId(),
+                balance, entity.getBalanceAutoLimit());
+    }
 }
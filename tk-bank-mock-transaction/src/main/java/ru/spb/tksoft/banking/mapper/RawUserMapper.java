@@ -11,6 +11,7 @@ import ru.spb.tksoft.banking.dto.RawContactListDto;
 import ru.spb.tksoft.banking.dto.RawUserDto;
 import ru.spb.tksoft.banking.entity.RawUserEntity;
 import ru.spb.tksoft.banking.entity.UserContact;
+import ru.spb.tksoft.banking.repository.UserSearchRow;
 
 /**
  * Mapper for RawUser*.
@@ -38,6 +39,30 @@ public final class RawUserMapper {
                 entity.getDateOfBirth());
     }
 
+    /**
+     * RawUserEntity to DTO of search results, without the password.
+     * 
+     * @param entity Entity.
+     * @return DTO.
+     */
+    @NotNull
+    public static RawUserDto toSearchDto(@NotNull final RawUserEntity entity) {
+
+        return new RawUserDto(entity.getId(), entity.getName(), null, entity.getDateOfBirth());
+    }
+
+    /**
+     * UserSearchRow to DTO of search results, without the password.
+     * 
+     * @param row Row.
+     * @return DTO.
+     */
+    @NotNull
+    public static RawUserDto toDto(@NotNull final UserSearchRow row) {
+
+        return new RawUserDto(row.id(), row.name(), null, row.dateOfBirth());
+    }
+
     /** E-Mails title. */
     public static final String TITLE_EMAILS = "E-mails";
 
@@ -0,0 +1,34 @@
+package ru.spb.tksoft.banking.mapper;
+
+import javax.annotation.concurrent.ThreadSafe;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.dto.transfer.TransferRequestDto;
+import ru.spb.tksoft.banking.entity.TransferRequestEntity;
+
+/**
+ * Mapper for TransferRequest*.
+ *
+ * Converting {@code DTO from/to entity}.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@ThreadSafe
+public final class TransferRequestMapper {
+
+    private TransferRequestMapper() {}
+
+    /**
+     * Entity to DTO.
+     * 
+     * @param entity request entity.
+     * @return request DTO.
+     */
+    @NotNull
+    public static TransferRequestDto toDto(@NotNull final TransferRequestEntity entity) {
+
+        return new TransferRequestDto(entity.getId(),
+                entity.getToUserId(), entity.getAmount(),
+                entity.getStatus(), entity.getError(),
+                entity.getCreatedAt(), entity.getFinishedAt());
+    }
+}
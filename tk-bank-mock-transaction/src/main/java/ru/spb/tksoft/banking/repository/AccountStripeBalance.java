@@ -0,0 +1,21 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Sum of sub-balances of an account, see {@link AccountStripeRepository#sumByUserIds}.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public interface AccountStripeBalance {
+
+    /**
+     * @return User ID.
+     */
+    Long getUserId();
+
+    /**
+     * @return Sum of sub-balances.
+     */
+    BigDecimal getBalance();
+}
@@ -0,0 +1,102 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.spb.tksoft.banking.entity.AccountStripeEntity;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Repository of AccountStripeEntity: sub-balances of hot accounts.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Repository
+public interface AccountStripeRepository extends JpaRepository<AccountStripeEntity, Long> {
+
+    /**
+     * Credit a sub-balance, creating it if needed. Locks the stripe row only, not the account.
+     * 
+     * @param userId User id of the account.
+     * @param stripe Number of the stripe.
+     * @param amount Amount to credit.
+     * @return Number of updated sub-balances.
+     */
+    @Modifying
+    @Query(value = """
+                INSERT INTO account_stripe (user_id, stripe, balance)
+                VALUES (:userId, :stripe, :amount)
+                ON CONFLICT (user_id, stripe) DO UPDATE
+                SET balance = account_stripe.balance + EXCLUDED.balance
+            """, nativeQuery = true)
+    int credit(Long userId, int stripe, Money amount);
+
+    /**
+     * Move all sub-balances of the account to the balance of its row in one statement. The
+     * account row is expected to be locked by the caller before, so that rows are always locked
+     * in the same order: account, then its stripes.
+     * 
+     * @param userId User id of the account.
+     * @return Number of updated accounts: 0 if there is nothing to fold.
+     */
+    @Modifying
+    @Query(value = """
+                WITH old AS (
+                    SELECT s.id, s.balance FROM account_stripe s
+                    WHERE s.user_id = :userId
+                    AND s.balance > 0
+                    FOR UPDATE
+                ), folded AS (
+                    UPDATE account_stripe s
+                    SET balance = 0
+                    FROM old
+                    WHERE s.id = old.id
+                    RETURNING old.balance
+                )
+                UPDATE account a
+                SET balance = a.balance + (SELECT SUM(f.balance) FROM folded f)
+                WHERE a.user_id = :userId
+                AND EXISTS (SELECT 1 FROM folded)
+            """, nativeQuery = true)
+    int fold(Long userId);
+
+    /**
+     * @param userId User id of the account.
+     * @return Sum of sub-balances of the account, zero if there are none.
+     */
+    @Query(value = """
+                SELECT COALESCE(SUM(s.balance), 0) FROM account_stripe s
+                WHERE s.user_id = :userId
+            """, nativeQuery = true)
+    BigDecimal sumByUserId(Long userId);
+
+    /**
+     * @param userIds User ids of accounts.
+     * @return Sums of sub-balances of accounts which have sub-balances.
+     */
+    @Query(value = """
+                SELECT s.user_id AS "userId", SUM(s.balance) AS "balance"
+                FROM account_stripe s
+                WHERE s.user_id IN (:userIds)
+                GROUP BY s.user_id
+            """, nativeQuery = true)
+    List<AccountStripeBalance> sumByUserIds(Collection<Long> userIds);
+
+    /**
+     * @param afterUserId User id to start after.
+     * @param limit Maximum number of accounts.
+     * @return User ids of accounts with positive sub-balances, ordered.
+     */
+    @Query(value = """
+                SELECT DISTINCT s.user_id FROM account_stripe s
+                WHERE s.user_id > :afterUserId
+                AND s.balance > 0
+                ORDER BY s.user_id
+                LIMIT :limit
+            """, nativeQuery = true)
+    List<Long> findUserIdsToFold(long afterUserId, int limit);
+}
@@ -0,0 +1,42 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.spb.tksoft.banking.entity.AccrualRunEntity;
+
+/**
+ * Repository of AccrualRunEntity and its chunks.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Repository
+public interface AccrualRunRepository extends JpaRepository<AccrualRunEntity, Long> {
+
+    /**
+     * @return The latest unfinished run or empty.
+     */
+    @Query(nativeQuery = true, value = """
+            SELECT * FROM "accrual_run" r
+            WHERE r.finished_at IS NULL
+            ORDER BY r.id DESC
+            LIMIT 1""")
+    Optional<AccrualRunEntity> findUnfinished();
+
+    /**
+     * Records processed chunk. Must be called in the same transaction as the chunk update.
+     *
+     * @param runId Run ID.
+     * @param fromId Lower bound of the chunk, exclusive.
+     * @param toId Upper bound of the chunk, inclusive.
+     * @param updatedRows Number of updated accounts.
+     */
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            INSERT INTO "accrual_chunk" (run_id, from_id, to_id, updated_rows)
+            VALUES (:runId, :fromId, :toId, :updatedRows)
+            ON CONFLICT DO NOTHING""")
+    void insertChunk(Long runId, Long fromId, Long toId, int updatedRows);
+}
@@ -0,0 +1,158 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.time.Instant;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.spb.tksoft.banking.entity.IdempotencyKeyEntity;
+
+/**
+ * Repository of IdempotencyKeyEntity.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKeyEntity, Long> {
+
+    /**
+     * Find not expired outcome by key.
+     * 
+     * @param userId User id.
+     * @param idempotencyKey Key.
+     * @param now Current time.
+     * @return Outcome.
+     */
+    @Query(value = """
+                SELECT * FROM idempotency_key k
+                WHERE k.user_id = :userId
+                AND k.idempotency_key = :idempotencyKey
+                AND k.expires_at > :now
+            """, nativeQuery = true)
+    Optional<IdempotencyKeyEntity> findActive(long userId, String idempotencyKey, Instant now);
+
+    /**
+     * Record outcome unless the key is recorded already. An expired record of the key is
+     * replaced.
+     * 
+     * @param userId User id.
+     * @param idempotencyKey Key.
+     * @param operation Operation.
+     * @param requestHash Request hash.
+     * @param response Response, JSON.
+     * @param now Current time.
+     * @param expiresAt Expiration time.
+     * @return Number of recorded outcomes: 0 if the key is recorded by another transaction.
+     */
+    @Modifying
+    @Query(value = """
+                INSERT INTO idempotency_key (user_id, idempotency_key, operation, request_hash,
+                    response, created_at, expires_at)
+                VALUES (:userId, :idempotencyKey, :operation, :requestHash,
+                    :response, :now, :expiresAt)
+                ON CONFLICT (user_id, idempotency_key) DO UPDATE
+                SET operation = EXCLUDED.operation,
+                    request_hash = EXCLUDED.request_hash,
+                    response = EXCLUDED.response,
+                    pending = FALSE,
+                    created_at = EXCLUDED.created_at,
+                    expires_at = EXCLUDED.expires_at
+                WHERE idempotency_key.expires_at <= :now
+            """, nativeQuery = true)
+    int record(long userId, String idempotencyKey, String operation, String requestHash,
+            String response, Instant now, Instant expiresAt);
+
+    /**
+     * Delete the record of the key if it is expired, so that the key may be claimed.
+     * 
+     * @param userId User id.
+     * @param idempotencyKey Key.
+     * @param now Current time.
+     * @return Number of deleted records.
+     */
+    @Modifying
+    @Query(value = """
+                DELETE FROM idempotency_key
+                WHERE user_id = :userId
+                AND idempotency_key = :idempotencyKey
+                AND expires_at <= :now
+            """, nativeQuery = true)
+    int deleteExpiredKey(long userId, String idempotencyKey, Instant now);
+
+    /**
+     * Claim the key with a pending record. A concurrent claim of the same key fails on the
+     * unique constraint.
+     * 
+     * @param userId User id.
+     * @param idempotencyKey Key.
+     * @param operation Operation.
+     * @param requestHash Request hash.
+     * @param now Current time.
+     * @param expiresAt Expiration time.
+     * @return Number of claimed keys: 0 if the key is recorded already.
+     */
+    @Modifying
+    @Query(value = """
+                INSERT INTO idempotency_key (user_id, idempotency_key, operation, request_hash,
+                    pending, created_at, expires_at)
+                SELECT :userId, :idempotencyKey, :operation, :requestHash, TRUE, :now, :expiresAt
+                WHERE NOT EXISTS (
+                    SELECT 1 FROM idempotency_key k
+                    WHERE k.user_id = :userId
+                    AND k.idempotency_key = :idempotencyKey)
+            """, nativeQuery = true)
+    int claim(long userId, String idempotencyKey, String operation, String requestHash,
+            Instant now, Instant expiresAt);
+
+    /**
+     * Record outcome of the claimed key.
+     * 
+     * @param userId User id.
+     * @param idempotencyKey Key.
+     * @param response Response, JSON.
+     * @return Number of recorded outcomes.
+     */
+    @Modifying
+    @Query(value = """
+                UPDATE idempotency_key
+                SET response = :response, pending = FALSE
+                WHERE user_id = :userId
+                AND idempotency_key = :idempotencyKey
+                AND pending
+            """, nativeQuery = true)
+    int complete(long userId, String idempotencyKey, String response);
+
+    /**
+     * Release the claimed key, so that the request may be retried.
+     * 
+     * @param userId User id.
+     * @param idempotencyKey Key.
+     * @return Number of released keys.
+     */
+    @Modifying
+    @Query(value = """
+                DELETE FROM idempotency_key
+                WHERE user_id = :userId
+                AND idempotency_key = :idempotencyKey
+                AND pending
+            """, nativeQuery = true)
+    int release(long userId, String idempotencyKey);
+
+    /**
+     * Delete a batch of expired outcomes.
+     * 
+     * @param now Current time.
+     * @param limit Maximum number of deleted outcomes.
+     * @return Number of deleted outcomes.
+     */
+    @Modifying
+    @Query(value = """
+                DELETE FROM idempotency_key
+                WHERE id IN (
+                    SELECT k.id FROM idempotency_key k
+                    WHERE k.expires_at <= :now
+                    LIMIT :limit)
+            """, nativeQuery = true)
+    int deleteExpired(Instant now, int limit);
+}
@@ -0,0 +1,27 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Account whose balance differs from the sum of its journal entries, see
+ * {@link JournalRepository#findMismatches}.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public interface JournalMismatch {
+
+    /**
+     * @return User ID.
+     */
+    Long getUserId();
+
+    /**
+     * @return Balance of the account.
+     */
+    BigDecimal getBalance();
+
+    /**
+     * @return Sum of journal entries of the account.
+     */
+    BigDecimal getJournalBalance();
+}
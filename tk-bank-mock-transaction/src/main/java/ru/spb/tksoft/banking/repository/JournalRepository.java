@@ -0,0 +1,71 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.spb.tksoft.banking.entity.JournalEntryEntity;
+
+/**
+ * Repository of JournalEntryEntity. Entries are written by
+ * {@link ru.spb.tksoft.banking.service.JournalWriter}.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Repository
+public interface JournalRepository extends JpaRepository<JournalEntryEntity, Long> {
+
+    /**
+     * Balances of ACCOUNT ledger per account compared to balances of accounts, sub-balances of
+     * hot accounts included.
+     */
+    String MISMATCHES = """
+                FROM (
+                    SELECT a.user_id, a.balance + COALESCE(s.total, 0) AS balance
+                    FROM account a
+                    LEFT JOIN (
+                        SELECT s.user_id, SUM(s.balance) AS total
+                        FROM account_stripe s
+                        GROUP BY s.user_id) s ON s.user_id = a.user_id) a
+                FULL JOIN (
+                    SELECT j.user_id, SUM(j.amount) AS total
+                    FROM journal j
+                    WHERE j.ledger = 'ACCOUNT'
+                    GROUP BY j.user_id) j ON j.user_id = a.user_id
+                WHERE COALESCE(a.balance, 0) <> COALESCE(j.total, 0)
+            """;
+
+    /**
+     * Accounts whose balance differs from the sum of their journal entries. Journal entries of
+     * missing accounts are reported with zero balance.
+     * 
+     * @param limit Maximum number of accounts.
+     * @return Mismatches ordered by user id.
+     */
+    @Query(value = """
+                SELECT COALESCE(a.user_id, j.user_id) AS "userId",
+                    COALESCE(a.balance, 0) AS "balance",
+                    COALESCE(j.total, 0) AS "journalBalance"
+            """ + MISMATCHES + """
+                ORDER BY 1
+                LIMIT :limit
+            """, nativeQuery = true)
+    List<JournalMismatch> findMismatches(int limit);
+
+    /**
+     * @return Number of accounts whose balance differs from the sum of their journal entries.
+     */
+    @Query(value = "SELECT COUNT(*) " + MISMATCHES, nativeQuery = true)
+    long countMismatches();
+
+    /**
+     * @return Number of operations whose entries do not sum to zero.
+     */
+    @Query(value = """
+                SELECT COUNT(*) FROM (
+                    SELECT j.tx_id FROM journal j
+                    GROUP BY j.tx_id
+                    HAVING SUM(j.amount) <> 0) t
+            """, nativeQuery = true)
+    long countUnbalancedOperations();
+}
@@ -1,12 +1,21 @@
 package ru.spb.tksoft.banking.repository;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import jakarta.persistence.QueryHint;
 import ru.spb.tksoft.banking.entity.RawAccountEntity;
+import ru.spb.tksoft.banking.tools.Money;
 
 /**
  * Repository of RawAccountEntity.
@@ -27,7 +36,7 @@ public interface RawAccountRepository extends JpaRepository<RawAccountEntity, Lo
      */
     @Modifying
     @Query("UPDATE RawAccountEntity a SET a.balance = a.balance + :amount WHERE a.userId = :userId")
-    void deposit(Long userId, BigDecimal amount);
+    void deposit(Long userId, Money amount);
 
     /**
      * Withdraws amount from user account.
@@ -43,27 +52,328 @@ public interface RawAccountRepository extends JpaRepository<RawAccountEntity, Lo
             WHERE a.userId = :userId
             AND a.balance >= :amount
             """)
-    int withdraw(Long userId, BigDecimal amount);
+    int withdraw(Long userId, Money amount);
+
+    /**
+     * Locks accounts of the users in the order of user ids, so that transactions locking the same
+     * accounts never wait for each other in a cycle. Rows are locked as they come out of the sort.
+     * 
+     * @param userIds User ids.
+     * @return IDs of locked accounts.
+     */
+    @Query(value = """
+                SELECT a.id FROM account a
+                WHERE a.user_id IN (:userIds)
+                ORDER BY a.user_id
+                FOR UPDATE
+            """, nativeQuery = true)
+    List<Long> lockByUserIds(Collection<Long> userIds);
+
+    /**
+     * @param userId User id.
+     * @return Number of sub-balance stripes of the account, zero for a regular account.
+     */
+    @Query(value = "SELECT a.stripes FROM account a WHERE a.user_id = :userId",
+            nativeQuery = true)
+    Optional<Integer> findStripesByUserId(Long userId);
+
+    /**
+     * @param userId User id.
+     * @param stripes Number of sub-balance stripes, zero for a regular account.
+     * @return Number of updated accounts.
+     */
+    @Modifying
+    @Query(value = "UPDATE account SET stripes = :stripes WHERE user_id = :userId",
+            nativeQuery = true)
+    int updateStripes(Long userId, int stripes);
+
+    /**
+     * Transfers amount from one account to another in one statement. Both accounts are locked
+     * first in the order of user ids, as by {@link #lockByUserIds}, so that concurrent opposite
+     * transfers queue instead of deadlocking. The source is debited only if it has enough funds
+     * and the destination exists, the destination is credited only if the source is debited. All
+     * parts see the same snapshot, so the source balance is the one before the transfer.
+     * 
+     * @param fromUserId Source user id.
+     * @param toUserId Destination user id.
+     * @param amount Amount to transfer.
+     * @return Status of every part of the transfer.
+     */
+    @Query(value = """
+                WITH locked AS (
+                    SELECT a.id, a.user_id, a.balance FROM account a
+                    WHERE a.user_id IN (:fromUserId, :toUserId)
+                    ORDER BY a.user_id
+                    FOR UPDATE
+                ), src AS (
+                    SELECT l.id, l.balance FROM locked l WHERE l.user_id = :fromUserId
+                ), dst AS (
+                    SELECT l.id FROM locked l WHERE l.user_id = :toUserId
+                ), debit AS (
+                    UPDATE account a
+                    SET balance = a.balance - :amount
+                    FROM src, dst
+                    WHERE a.id = src.id
+                    AND src.balance >= :amount
+                    RETURNING a.id
+                ), credit AS (
+                    UPDATE account a
+                    SET balance = a.balance + :amount
+                    FROM debit
+                    WHERE a.user_id = :toUserId
+                    RETURNING a.id
+                )
+                SELECT
+                    (SELECT COUNT(*) FROM src) AS "sourceFound",
+                    (SELECT COUNT(*) FROM dst) AS "targetFound",
+                    (SELECT COUNT(*) FROM debit) AS "debited",
+                    (SELECT COUNT(*) FROM credit) AS "credited",
+                    (SELECT balance FROM src) AS "sourceBalance"
+            """, nativeQuery = true)
+    TransferResult transfer(Long fromUserId, Long toUserId, Money amount);
+
+    /**
+     * Journal entries of accrual statements: continues a WITH clause whose "updated" part
+     * returns user_id and delta of every updated account, and returns the number of updated
+     * accounts. Every changed account gets an ACCRUAL operation against INTEREST.
+     */
+    String JOURNAL_ACCRUAL = """
+                , journal_entries AS (
+                    INSERT INTO journal (tx_id, operation, ledger, user_id, amount)
+                    SELECT o.tx_id, 'ACCRUAL', e.ledger, e.user_id, e.amount
+                    FROM (
+                        SELECT gen_random_uuid() AS tx_id, u.user_id, u.delta
+                        FROM updated u
+                        WHERE u.delta <> 0) o
+                    CROSS JOIN LATERAL (VALUES
+                        ('ACCOUNT', o.user_id, o.delta),
+                        ('INTEREST', CAST(NULL AS bigint), -o.delta)) e (ledger, user_id, amount)
+                )
+                SELECT COUNT(*) FROM updated
+            """;
 
     /**
      * Grows account balance by specified rate, but not more than the specified limit. "AND
-     * (a.balance * (1 + :rate)) > 0" - protection from overflow.
+     * (a.balance * (1 + :rate)) > 0" - protection from overflow. The change is journaled, see
+     * {@link #JOURNAL_ACCRUAL}.
      * 
      * @param userId User id.
      * @param rate Rate to grow by.
      * @return Number of updated accounts. 1- success, 0 - fail.
      */
-    @Modifying
     @Query(value = """
-                UPDATE account
-                SET balance =
-                    CASE
-                        WHEN (balance * (1 + CAST(:rate AS numeric))) <= balance_autolimit
-                        THEN balance * (1 + CAST(:rate AS numeric))
-                        ELSE balance_autolimit
-                    END
-                WHERE user_id = :userId
-                AND (balance * (1 + CAST(:rate AS numeric))) > 0
-            """, nativeQuery = true)
+                WITH updated AS (
+                    UPDATE account a
+                    SET balance =
+                        CASE
+                            WHEN (a.balance * (1 + CAST(:rate AS numeric))) <= a.balance_autolimit
+                            THEN a.balance * (1 + CAST(:rate AS numeric))
+                            ELSE a.balance_autolimit
+                        END
+                    FROM (SELECT s.id, s.balance FROM account s
+                        WHERE s.user_id = :userId FOR UPDATE) old
+                    WHERE a.id = old.id
+                    AND (a.balance * (1 + CAST(:rate AS numeric))) > 0
+                    RETURNING a.user_id, a.balance - old.balance AS delta
+                )
+            """ + JOURNAL_ACCRUAL, nativeQuery = true)
     int growBalance(Long userId, BigDecimal rate);
+
+    /**
+     * Grows balances of given accounts by specified rate in one statement, if they are still
+     * eligible: positive balance which is less than the autoincrement limit, the same as
+     * {@link #growBalanceAll(BigDecimal)}. New balance is capped by the limit. Changes are
+     * journaled, see {@link #JOURNAL_ACCRUAL}.
+     * 
+     * @param userIds User ids.
+     * @param rate Rate to grow by.
+     * @return Number of updated accounts.
+     */
+    @Query(value = """
+                WITH updated AS (
+                    UPDATE account a
+                    SET balance =
+                        CASE
+                            WHEN (a.balance * (1 + CAST(:rate AS numeric))) <= a.balance_autolimit
+                            THEN a.balance * (1 + CAST(:rate AS numeric))
+                            ELSE a.balance_autolimit
+                        END,
+                        last_accrual_at = CURRENT_TIMESTAMP
+                    FROM (SELECT s.id, s.balance FROM account s
+                        WHERE s.user_id IN (:userIds)
+                        AND s.balance > 0
+                        AND s.balance < s.balance_autolimit
+                        FOR UPDATE) old
+                    WHERE a.id = old.id
+                    AND a.balance > 0
+                    AND a.balance < a.balance_autolimit
+                    RETURNING a.user_id, a.balance - old.balance AS delta
+                )
+            """ + JOURNAL_ACCRUAL, nativeQuery = true)
+    int growBalances(Collection<Long> userIds, BigDecimal rate);
+
+    /**
+     * Grows balances of all eligible accounts by specified rate in one statement. Eligible account
+     * has positive balance which is less than its autoincrement limit. New balance is capped by
+     * the limit, the same way as in {@link #growBalance(Long, BigDecimal)}. Changes are journaled,
+     * see {@link #JOURNAL_ACCRUAL}.
+     * 
+     * @param rate Rate to grow by.
+     * @return Number of updated accounts.
+     */
+    @Query(value = """
+                WITH updated AS (
+                    UPDATE account a
+                    SET balance =
+                        CASE
+                            WHEN (a.balance * (1 + CAST(:rate AS numeric))) <= a.balance_autolimit
+                            THEN a.balance * (1 + CAST(:rate AS numeric))
+                            ELSE a.balance_autolimit
+                        END,
+                        last_accrual_at = CURRENT_TIMESTAMP
+                    FROM (SELECT s.id, s.balance FROM account s
+                        WHERE s.balance > 0
+                        AND s.balance < s.balance_autolimit
+                        FOR UPDATE) old
+                    WHERE a.id = old.id
+                    AND a.balance > 0
+                    AND a.balance < a.balance_autolimit
+                    RETURNING a.user_id, a.balance - old.balance AS delta
+                )
+            """ + JOURNAL_ACCRUAL, nativeQuery = true)
+    int growBalanceAll(BigDecimal rate);
+
+    /** Fetch size of {@link #streamAccrualEligible()}. */
+    String STREAM_FETCH_SIZE = "500";
+
+    /**
+     * Forward-only cursor over accounts eligible for the autoincrement, ordered by ID. Rows are
+     * fetched from the database by batches of {@link #STREAM_FETCH_SIZE}, entities are read-only.
+     * Must be consumed and closed inside a transaction; the caller should detach consumed
+     * entities to keep the persistence context small.
+     * 
+     * @return Stream of eligible accounts.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")})
+    @Query("""
+            SELECT a FROM RawAccountEntity a
+            WHERE a.balance > 0
+            AND a.balance < a.balanceAutoLimit
+            ORDER BY a.id
+            """)
+    Stream<RawAccountEntity> streamAccrualEligible();
+
+    /**
+     * Keyset pagination over IDs of accounts eligible for the autoincrement: upper bound of the
+     * next chunk. Ineligible accounts are skipped with the partial index.
+     * 
+     * @param lastId Last processed account ID, exclusive.
+     * @param limit Chunk size.
+     * @return The greatest ID of the next chunk or null if there are no more accounts.
+     */
+    @Query(value = """
+                SELECT MAX(c.id) FROM (
+                    SELECT a.id FROM account a
+                    WHERE a.id > :lastId
+                    AND a.balance > 0
+                    AND a.balance < a.balance_autolimit
+                    ORDER BY a.id
+                    LIMIT :limit) c
+            """, nativeQuery = true)
+    Long findChunkUpperId(long lastId, int limit);
+
+    /**
+     * Grows balances of eligible accounts with IDs in (fromId, toId] by specified rate. Accounts
+     * already processed by chunks of the given accrual run are skipped. Changes are journaled, see
+     * {@link #JOURNAL_ACCRUAL}.
+     * 
+     * @param rate Rate to grow by.
+     * @param runId Accrual run ID.
+     * @param fromId Lower bound of IDs, exclusive.
+     * @param toId Upper bound of IDs, inclusive.
+     * @return Number of updated accounts.
+     */
+    @Query(value = """
+                WITH updated AS (
+                    UPDATE account a
+                    SET balance =
+                        CASE
+                            WHEN (a.balance * (1 + CAST(:rate AS numeric))) <= a.balance_autolimit
+                            THEN a.balance * (1 + CAST(:rate AS numeric))
+                            ELSE a.balance_autolimit
+                        END,
+                        last_accrual_at = CURRENT_TIMESTAMP
+                    FROM (SELECT s.id, s.balance FROM account s
+                        WHERE s.id > :fromId
+                        AND s.id <= :toId
+                        AND s.balance > 0
+                        AND s.balance < s.balance_autolimit
+                        AND NOT EXISTS (
+                            SELECT 1 FROM accrual_chunk c
+                            WHERE c.run_id = :runId
+                            AND s.id > c.from_id
+                            AND s.id <= c.to_id)
+                        FOR UPDATE OF s) old
+                    WHERE a.id = old.id
+                    AND a.balance > 0
+                    AND a.balance < a.balance_autolimit
+                    RETURNING a.user_id, a.balance - old.balance AS delta
+                )
+            """ + JOURNAL_ACCRUAL, nativeQuery = true)
+    int growBalanceRange(BigDecimal rate, long runId, long fromId, long toId);
+
+    /**
+     * Materializes lazy balance autoincrement of given accounts: balance grows by the rate for
+     * every whole period elapsed since the last accrual, but not above the limit, and the last
+     * accrual time moves forward by these periods. Must be the same as
+     * {@link ru.spb.tksoft.banking.service.AccrualCalculator#effectiveBalance}. Changes are
+     * journaled, see {@link #JOURNAL_ACCRUAL}.
+     * 
+     * @param userIds User ids.
+     * @param rate Rate to grow by for every period.
+     * @param periodSeconds Period, seconds.
+     * @param maxPeriods Maximum number of periods materialized at once.
+     * @param now Current time.
+     * @return Number of updated accounts.
+     */
+    @Query(value = """
+                WITH updated AS (
+                    UPDATE account a
+                    SET balance =
+                            CASE
+                                WHEN a.balance > 0 AND a.balance < a.balance_autolimit
+                                THEN LEAST(
+                                    ROUND(a.balance
+                                        * POWER(1 + CAST(:rate AS numeric), p.periods), 2),
+                                    a.balance_autolimit)
+                                ELSE a.balance
+                            END,
+                        last_accrual_at = a.last_accrual_at + make_interval(
+                            secs => CAST(p.periods * :periodSeconds AS double precision))
+                    FROM (
+                        SELECT s.id, s.balance, LEAST(:maxPeriods, FLOOR(EXTRACT(EPOCH FROM
+                            (CAST(:now AS timestamp with time zone) - s.last_accrual_at))
+                            / :periodSeconds)) AS periods
+                        FROM account s
+                        WHERE s.user_id IN (:userIds)
+                        FOR UPDATE) p
+                    WHERE a.id = p.id
+                    AND p.periods > 0
+                    RETURNING a.user_id, a.balance - p.balance AS delta
+                )
+            """ + JOURNAL_ACCRUAL, nativeQuery = true)
+    int settleAccrual(Collection<Long> userIds, BigDecimal rate, long periodSeconds,
+            long maxPeriods, Instant now);
+
+    /**
+     * Keyset pagination: page of accounts with IDs greater than the last ID of the previous page.
+     * 
+     * @param lastId Last ID of the previous page, 0 for the first page.
+     * @param limit Maximum number of rows.
+     * @return RawAccountEntity ordered by ID.
+     */
+    List<RawAccountEntity> findByIdGreaterThanOrderByIdAsc(Long lastId, Limit limit);
 }
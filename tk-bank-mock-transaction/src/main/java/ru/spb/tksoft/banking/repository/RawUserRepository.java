@@ -1,12 +1,20 @@
 package ru.spb.tksoft.banking.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import jakarta.persistence.QueryHint;
 import ru.spb.tksoft.banking.entity.RawUserEntity;
 
 /**
@@ -52,16 +60,82 @@ public interface RawUserRepository extends JpaRepository<RawUserEntity, Long> {
     Page<RawUserEntity> findAllRaw(Pageable pageable);
 
     /**
-     * @return Paginated list of RawUserEntity by user's name%.
+     * @return Paginated list of users by user's name%, with total count.
      */
-    @Query(value = "SELECT u FROM RawUserEntity u WHERE u.name LIKE :name%")
-    Page<RawUserEntity> findByNameLike(String name, Pageable pageable);
+    @Query(value = """
+            SELECT new ru.spb.tksoft.banking.repository.UserSearchRow(u.id, u.name, u.dateOfBirth)
+            FROM RawUserEntity u
+            WHERE u.name LIKE :name%
+            ORDER BY u.name""",
+            countQuery = "SELECT COUNT(u) FROM RawUserEntity u WHERE u.name LIKE :name%")
+    Page<UserSearchRow> findByNameLike(String name, Pageable pageable);
 
     /**
-     * @return Paginated list of RawUserEntity where user's birth date >= given value.
+     * @return Slice of users by user's name%, without count query.
      */
-    @Query(value = "SELECT u FROM RawUserEntity u WHERE u.dateOfBirth >= :dateOfBirth")
-    Page<RawUserEntity> findByBirthDateEqualAndAfter(LocalDate dateOfBirth, Pageable pageable);
+    @Query(value = """
+            SELECT new ru.spb.tksoft.banking.repository.UserSearchRow(u.id, u.name, u.dateOfBirth)
+            FROM RawUserEntity u
+            WHERE u.name LIKE :name%
+            ORDER BY u.name""")
+    Slice<UserSearchRow> findSliceByNameLike(String name, Pageable pageable);
+
+    /**
+     * @return Paginated list of users where user's birth date >= given value, with total count.
+     */
+    @Query(value = """
+            SELECT new ru.spb.tksoft.banking.repository.UserSearchRow(u.id, u.name, u.dateOfBirth)
+            FROM RawUserEntity u
+            WHERE u.dateOfBirth >= :dateOfBirth
+            ORDER BY u.dateOfBirth, u.id""",
+            countQuery = """
+                    SELECT COUNT(u) FROM RawUserEntity u
+                    WHERE u.dateOfBirth >= :dateOfBirth""")
+    Page<UserSearchRow> findByBirthDateEqualAndAfter(LocalDate dateOfBirth, Pageable pageable);
+
+    /**
+     * @return Slice of users where user's birth date >= given value, without count query.
+     */
+    @Query(value = """
+            SELECT new ru.spb.tksoft.banking.repository.UserSearchRow(u.id, u.name, u.dateOfBirth)
+            FROM RawUserEntity u
+            WHERE u.dateOfBirth >= :dateOfBirth
+            ORDER BY u.dateOfBirth, u.id""")
+    Slice<UserSearchRow> findSliceByBirthDateEqualAndAfter(LocalDate dateOfBirth,
+            Pageable pageable);
+
+    /**
+     * @return Paginated list of users where user's birth date is in range, with total count.
+     */
+    @Query(value = """
+            SELECT new ru.spb.tksoft.banking.repository.UserSearchRow(u.id, u.name, u.dateOfBirth)
+            FROM RawUserEntity u
+            WHERE u.dateOfBirth BETWEEN :from AND :to
+            ORDER BY u.dateOfBirth, u.id""",
+            countQuery = """
+                    SELECT COUNT(u) FROM RawUserEntity u
+                    WHERE u.dateOfBirth BETWEEN :from AND :to""")
+    Page<UserSearchRow> findByBirthDateBetween(LocalDate from, LocalDate to, Pageable pageable);
+
+    /**
+     * @return Slice of users where user's birth date is in range, without count query.
+     */
+    @Query(value = """
+            SELECT new ru.spb.tksoft.banking.repository.UserSearchRow(u.id, u.name, u.dateOfBirth)
+            FROM RawUserEntity u
+            WHERE u.dateOfBirth BETWEEN :from AND :to
+            ORDER BY u.dateOfBirth, u.id""")
+    Slice<UserSearchRow> findSliceByBirthDateBetween(LocalDate from, LocalDate to,
+            Pageable pageable);
+
+    /**
+     * @return Users found by ID, in no particular order.
+     */
+    @Query(value = """
+            SELECT new ru.spb.tksoft.banking.repository.UserSearchRow(u.id, u.name, u.dateOfBirth)
+            FROM RawUserEntity u
+            WHERE u.id IN :ids""")
+    List<UserSearchRow> findSearchRowsById(Collection<Long> ids);
 
     /**
      * @return RawUserEntity by user's exact name.
@@ -69,4 +143,25 @@ public interface RawUserRepository extends JpaRepository<RawUserEntity, Long> {
     @Query(nativeQuery = true,
             value = "SELECT * FROM \"user\" u WHERE u.name = ':name' LIMIT 1")
     Optional<RawUserEntity> findOneByNameExact(String name);
+
+    /**
+     * Keyset pagination: page of users with IDs greater than the last ID of the previous page.
+     * 
+     * @param lastId Last ID of the previous page, 0 for the first page.
+     * @param limit Maximum number of rows.
+     * @return RawUserEntity ordered by ID.
+     */
+    List<RawUserEntity> findByIdGreaterThanOrderByIdAsc(Long lastId, Limit limit);
+
+    /**
+     * Forward-only cursor over all users, ordered by ID, for building in-memory indexes. Must be
+     * consumed and closed inside a transaction; the caller should detach consumed entities.
+     * 
+     * @return Stream of RawUserEntity.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT u FROM RawUserEntity u ORDER BY u.id")
+    Stream<RawUserEntity> streamAll();
 }
@@ -0,0 +1,71 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.time.Instant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.spb.tksoft.banking.entity.SchedulerLeaseEntity;
+
+/**
+ * Repository of SchedulerLeaseEntity.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Repository
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLeaseEntity, String> {
+
+    /**
+     * Tries to take Postgres advisory lock until the end of the current transaction. PostgreSQL
+     * only.
+     *
+     * @param key Lock key.
+     * @return True if the lock is taken.
+     */
+    @Query(nativeQuery = true, value = "SELECT pg_try_advisory_xact_lock(:key)")
+    boolean tryAdvisoryXactLock(long key);
+
+    /**
+     * Renews the lease by its owner or takes over an expired lease.
+     *
+     * @return Number of updated leases: 1 - the lease is owned by the given node, 0 - not.
+     */
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            UPDATE "scheduler_lease"
+            SET acquired_at = CASE WHEN owner_id = :ownerId THEN acquired_at ELSE :now END,
+                owner_id = :ownerId,
+                renewed_at = :now,
+                expires_at = :expiresAt
+            WHERE job_name = :jobName
+            AND (owner_id = :ownerId OR expires_at < :now)""")
+    int claim(String jobName, String ownerId, Instant now, Instant expiresAt);
+
+    /**
+     * Creates the lease if there is no lease for the job yet. Portable SQL, no upsert: a node
+     * inserting the same lease concurrently makes it fail with a key violation instead.
+     *
+     * @return Number of created leases: 1 - the lease is owned by the given node, 0 - not.
+     */
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            INSERT INTO "scheduler_lease"
+                (job_name, owner_id, acquired_at, renewed_at, expires_at)
+            SELECT :jobName, :ownerId, :now, :now, :expiresAt
+            WHERE NOT EXISTS (
+                SELECT 1 FROM "scheduler_lease" WHERE job_name = :jobName)""")
+    int insertIfAbsent(String jobName, String ownerId, Instant now, Instant expiresAt);
+
+    /**
+     * Releases all leases of the node, so that other nodes can take over at once.
+     *
+     * @return Number of released leases.
+     */
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            UPDATE "scheduler_lease"
+            SET expires_at = :now
+            WHERE owner_id = :ownerId
+            AND expires_at > :now""")
+    int releaseAll(String ownerId, Instant now);
+}
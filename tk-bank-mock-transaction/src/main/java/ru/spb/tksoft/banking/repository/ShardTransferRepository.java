@@ -0,0 +1,106 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.spb.tksoft.banking.entity.ShardTransferEntity;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Repository of ShardTransferEntity.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Repository
+public interface ShardTransferRepository extends JpaRepository<ShardTransferEntity, UUID> {
+
+    /**
+     * Record a debit on the source shard.
+     * 
+     * @param id Transfer ID.
+     * @param fromUserId Source user ID.
+     * @param toUserId Destination user ID.
+     * @param amount Amount.
+     * @param now Current time.
+     * @return Number of inserted rows.
+     */
+    @Modifying
+    @Query(value = """
+                INSERT INTO shard_transfer (id, from_user_id, to_user_id, amount, status,
+                    created_at)
+                VALUES (:id, :fromUserId, :toUserId, :amount, 'PREPARED', :now)
+            """, nativeQuery = true)
+    int prepare(UUID id, long fromUserId, long toUserId, Money amount, Instant now);
+
+    /**
+     * Record a credit on the destination shard, unless it is recorded already. Portable SQL, no
+     * upsert: the same credit recorded concurrently makes it fail with a key violation instead,
+     * and the transfer is completed later, see
+     * {@link ru.spb.tksoft.banking.service.ShardTransferService}.
+     * 
+     * @param id Transfer ID.
+     * @param fromUserId Source user ID.
+     * @param toUserId Destination user ID.
+     * @param amount Amount.
+     * @param now Current time.
+     * @return Number of inserted rows: zero if the credit is applied already.
+     */
+    @Modifying
+    @Query(value = """
+                INSERT INTO shard_transfer (id, from_user_id, to_user_id, amount, status,
+                    created_at, finished_at)
+                SELECT :id, :fromUserId, :toUserId, :amount, 'APPLIED', :now, :now
+                WHERE NOT EXISTS (SELECT 1 FROM shard_transfer WHERE id = :id)
+            """, nativeQuery = true)
+    int apply(UUID id, long fromUserId, long toUserId, Money amount, Instant now);
+
+    /**
+     * Finish a prepared transfer on the source shard.
+     * 
+     * @param id Transfer ID.
+     * @param status COMMITTED or ABORTED.
+     * @param now Current time.
+     * @return Number of updated rows: zero if the transfer is finished already.
+     */
+    @Modifying
+    @Query(value = """
+                UPDATE shard_transfer
+                SET status = :status, finished_at = :now
+                WHERE id = :id AND status = 'PREPARED'
+            """, nativeQuery = true)
+    int finish(UUID id, String status, Instant now);
+
+    /**
+     * @param createdBefore Time.
+     * @param limit Maximum number of transfers.
+     * @return Transfers prepared before the time, oldest first.
+     */
+    @Query(value = """
+                SELECT * FROM shard_transfer
+                WHERE status = 'PREPARED' AND created_at < :createdBefore
+                ORDER BY created_at
+                LIMIT :limit
+            """, nativeQuery = true)
+    List<ShardTransferEntity> findPrepared(Instant createdBefore, int limit);
+
+    /**
+     * Delete a batch of transfers finished before the time.
+     * 
+     * @param finishedBefore Time.
+     * @param limit Maximum number of deleted transfers.
+     * @return Number of deleted transfers.
+     */
+    @Modifying
+    @Query(value = """
+                DELETE FROM shard_transfer
+                WHERE id IN (
+                    SELECT t.id FROM shard_transfer t
+                    WHERE t.finished_at < :finishedBefore
+                    LIMIT :limit)
+            """, nativeQuery = true)
+    int deleteFinished(Instant finishedBefore, int limit);
+}
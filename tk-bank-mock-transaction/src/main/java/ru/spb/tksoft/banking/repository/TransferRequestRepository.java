@@ -0,0 +1,106 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.spb.tksoft.banking.entity.TransferRequestEntity;
+
+/**
+ * Repository of TransferRequestEntity.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Repository
+public interface TransferRequestRepository extends JpaRepository<TransferRequestEntity, Long> {
+
+    /**
+     * Count unfinished requests, up to the limit.
+     * 
+     * @param limit Maximum count.
+     * @return Number of pending and processing requests, not more than the limit.
+     */
+    @Query(value = """
+                SELECT count(*) FROM (
+                    SELECT 1 FROM transfer_request
+                    WHERE status IN ('PENDING', 'PROCESSING')
+                    LIMIT :limit) t
+            """, nativeQuery = true)
+    int countUnfinished(int limit);
+
+    /**
+     * Claim a batch of pending requests and requests with expired claims, skipping requests
+     * being claimed by other workers.
+     * 
+     * @param now Current time.
+     * @param expiredBefore Claims before this time are expired.
+     * @param limit Maximum number of claimed requests.
+     * @return Claimed requests in the order of submission.
+     */
+    @Query(value = """
+                WITH claimed AS (
+                    UPDATE transfer_request t
+                    SET status = 'PROCESSING', claimed_at = :now, attempts = t.attempts + 1
+                    WHERE t.id IN (
+                        SELECT r.id FROM transfer_request r
+                        WHERE r.status = 'PENDING'
+                        OR (r.status = 'PROCESSING' AND r.claimed_at < :expiredBefore)
+                        ORDER BY r.id
+                        LIMIT :limit
+                        FOR UPDATE SKIP LOCKED)
+                    RETURNING t.*
+                )
+                SELECT * FROM claimed ORDER BY id
+            """, nativeQuery = true)
+    List<TransferRequestEntity> claim(Instant now, Instant expiredBefore, int limit);
+
+    /**
+     * Finish a claimed request.
+     * 
+     * @param id Request ID.
+     * @param status COMPLETED or FAILED.
+     * @param error Reason of the failure, null if completed.
+     * @param now Current time.
+     * @return Number of updated requests.
+     */
+    @Modifying
+    @Query(value = """
+                UPDATE transfer_request
+                SET status = :status, error = :error, finished_at = :now
+                WHERE id = :id AND status = 'PROCESSING'
+            """, nativeQuery = true)
+    int finish(long id, String status, String error, Instant now);
+
+    /**
+     * Return a claimed request to the queue.
+     * 
+     * @param id Request ID.
+     * @return Number of updated requests.
+     */
+    @Modifying
+    @Query(value = """
+                UPDATE transfer_request
+                SET status = 'PENDING'
+                WHERE id = :id AND status = 'PROCESSING'
+            """, nativeQuery = true)
+    int release(long id);
+
+    /**
+     * Delete a batch of requests finished before the time.
+     * 
+     * @param finishedBefore Time.
+     * @param limit Maximum number of deleted requests.
+     * @return Number of deleted requests.
+     */
+    @Modifying
+    @Query(value = """
+                DELETE FROM transfer_request
+                WHERE id IN (
+                    SELECT r.id FROM transfer_request r
+                    WHERE r.finished_at < :finishedBefore
+                    LIMIT :limit)
+            """, nativeQuery = true)
+    int deleteFinished(Instant finishedBefore, int limit);
+}
@@ -0,0 +1,36 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Result of the single-statement transfer, see {@link RawAccountRepository#transfer}.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public interface TransferResult {
+
+    /**
+     * @return Number of source accounts found: 0 or 1.
+     */
+    long getSourceFound();
+
+    /**
+     * @return Number of destination accounts found: 0 or 1.
+     */
+    long getTargetFound();
+
+    /**
+     * @return Number of debited accounts: 0 or 1.
+     */
+    long getDebited();
+
+    /**
+     * @return Number of credited accounts: 0 or 1.
+     */
+    long getCredited();
+
+    /**
+     * @return Balance of the source account before the transfer, null if not found.
+     */
+    BigDecimal getSourceBalance();
+}
@@ -0,0 +1,14 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Row of a user search: columns of the search indexes, the password is not read.
+ *
+ * @param id User ID.
+ * @param name Name.
+ * @param dateOfBirth Date of birth.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public record UserSearchRow(long id, String name, LocalDate dateOfBirth) {}
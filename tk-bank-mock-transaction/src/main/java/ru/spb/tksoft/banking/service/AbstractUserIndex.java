@@ -0,0 +1,396 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.dto.maintenance.UserIndexCheckDto;
+import ru.spb.tksoft.banking.dto.maintenance.UserIndexInfoDto;
+import ru.spb.tksoft.banking.entity.RawUserChangeListener;
+import ru.spb.tksoft.banking.entity.RawUserEntity;
+import ru.spb.tksoft.banking.repository.RawUserRepository;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Base of in-memory user indexes.
+ *
+ * The index state is built at startup by streaming the "user" table of every shard, and kept up
+ * to date by
+ * committed user changes, see {@link RawUserChangeListener}. Changes committed during the build
+ * are replayed on the new state before it replaces the old one. Until the index is built, queries
+ * return empty and callers go to the database.
+ *
+ * @param <S> Type of the index state, not thread safe: it is guarded by the index.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public abstract class AbstractUserIndex<S> implements RawUserChangeListener {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /** Result of the check of one user. */
+    protected enum CheckResult {
+        /** User is indexed with actual data. */
+        OK,
+        /** User is not indexed. */
+        MISSING,
+        /** User is indexed with outdated data. */
+        STALE,
+        /** User is not subject to this index. */
+        SKIPPED
+    }
+
+    @NotBlank
+    private final String name;
+
+    @NotNull
+    private final RawUserRepository rawUserRepository;
+
+    @NotNull
+    private final ShardRouter shardRouter;
+
+    @NotNull
+    private final TransactionTemplate streamTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private S state;
+    private boolean ready;
+    private List<Consumer<S>> pending;
+    private Instant builtAt;
+    private long buildDurationMs;
+
+    // Written under lock on every change, read by metrics without it
+    private volatile long entryCount;
+    private volatile long byteCount;
+
+    /**
+     * Constructor.
+     *
+     * @param name Index name.
+     * @param rawUserRepository User repository.
+     * @param shardRouter Shard router.
+     * @param transactionManager Transaction manager.
+     * @param enabled Index is enabled.
+     * @param meterRegistry Meter registry for footprint metrics.
+     */
+    protected AbstractUserIndex(
+            final String name,
+            final RawUserRepository rawUserRepository,
+            final ShardRouter shardRouter,
+            final PlatformTransactionManager transactionManager,
+            final boolean enabled,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        this.name = name;
+        this.rawUserRepository = rawUserRepository;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.state = createState();
+
+        streamTemplate = new TransactionTemplate(transactionManager);
+        streamTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        streamTemplate.setReadOnly(true);
+
+        meterRegistry.ifAvailable(registry -> {
+            Gauge.builder("banking.user.index.entries", this, index -> index.entryCount)
+                    .tag("index", name)
+                    .description("Number of indexed users")
+                    .register(registry);
+            Gauge.builder("banking.user.index.bytes", this, index -> index.byteCount)
+                    .tag("index", name)
+                    .description("Approximate memory footprint of the index")
+                    .baseUnit("bytes")
+                    .register(registry);
+        });
+    }
+
+    /**
+     * @return New empty state.
+     */
+    protected abstract S createState();
+
+    /**
+     * Index a new user or reindex an updated one.
+     *
+     * @param state State.
+     * @param user User.
+     */
+    protected abstract void put(S state, RawUserEntity user);
+
+    /**
+     * Remove user from the index, if indexed.
+     *
+     * @param state State.
+     * @param userId User ID.
+     */
+    protected abstract void remove(S state, long userId);
+
+    /**
+     * Called when all users are put into the new state, before changes committed during the
+     * build are replayed on it.
+     *
+     * @param state State.
+     */
+    protected void built(final S state) {
+        // nothing by default
+    }
+
+    /**
+     * Check the user against the index.
+     *
+     * @param state State.
+     * @param user User from the database.
+     * @return Result of the check.
+     */
+    protected abstract CheckResult check(S state, RawUserEntity user);
+
+    /**
+     * Called on every change, must not traverse the state.
+     *
+     * @param state State.
+     * @return Number of indexed users.
+     */
+    protected abstract long entries(S state);
+
+    /**
+     * @param state State.
+     * @return Number of nodes or buckets of the index structure.
+     */
+    protected abstract long nodes(S state);
+
+    /**
+     * Called on every change, must not traverse the state.
+     *
+     * @param state State.
+     * @return Approximate memory footprint of the index structure, bytes.
+     */
+    protected abstract long estimatedBytes(S state);
+
+    /**
+     * @return Index name.
+     */
+    @NotBlank
+    public String getName() {
+        return name;
+    }
+
+    /** Build the index on startup. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * Build the index from the database and replace the current one. Does nothing if the index is
+     * disabled or is being built.
+     */
+    public void rebuild() {
+
+        if (!enabled) {
+            return;
+        }
+
+        LogEx.trace(log, LogEx.getThisMethodName(), name, LogEx.STARTING);
+
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                LogEx.warn(log, LogEx.getThisMethodName(), name, "index is being built already");
+                return;
+            }
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long started = System.nanoTime();
+        S newState = createState();
+
+        try {
+            streamUsers(user -> put(newState, user));
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("Cannot build user index " + name, e);
+            return;
+        }
+
+        built(newState);
+
+        lock.writeLock().lock();
+        try {
+            pending.forEach(change -> change.accept(newState));
+            pending = null;
+
+            state = newState;
+            ready = true;
+            refreshCounters();
+            builtAt = Instant.now();
+            buildDurationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+            LogEx.info(log, LogEx.getThisMethodName(), name,
+                    "users: " + entries(state) + ", nodes: " + nodes(state)
+                            + ", duration, ms: " + buildDurationMs);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        LogEx.trace(log, LogEx.getThisMethodName(), name, LogEx.STOPPED);
+    }
+
+    /** Pass users of all shards to the action, one shard after another. */
+    private void streamUsers(final Consumer<RawUserEntity> action) {
+
+        shardRouter.runOnEach(() -> streamTemplate.executeWithoutResult(status -> {
+            try (Stream<RawUserEntity> users = rawUserRepository.streamAll()) {
+                users.forEach(user -> {
+                    action.accept(user);
+                    entityManager.detach(user);
+                });
+            }
+        }));
+    }
+
+    private void onChange(final Consumer<S> change) {
+
+        if (!enabled) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(change);
+            }
+            change.accept(state);
+            refreshCounters();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Called under the write lock. */
+    private void refreshCounters() {
+
+        entryCount = entries(state);
+        byteCount = estimatedBytes(state);
+    }
+
+    @Override
+    public void userSaved(@NotNull final RawUserEntity user) {
+        onChange(s -> put(s, user));
+    }
+
+    @Override
+    public void userRemoved(final long userId) {
+        onChange(s -> remove(s, userId));
+    }
+
+    /**
+     * Run the query on the index.
+     *
+     * @param query Query.
+     * @param <R> Type of the result.
+     * @return Result of the query or empty if the index is not ready.
+     */
+    @NotNull
+    protected <R> Optional<R> query(@NotNull final Function<S, R> query) {
+
+        lock.readLock().lock();
+        try {
+            return ready ? Optional.ofNullable(query.apply(state)) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return State and memory footprint of the index.
+     */
+    @NotNull
+    public UserIndexInfoDto getInfo() {
+
+        lock.readLock().lock();
+        try {
+            return new UserIndexInfoDto(name, enabled, ready, entries(state), nodes(state),
+                    estimatedBytes(state), builtAt, buildDurationMs);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Check the index against the database.
+     *
+     * @param repair Rebuild the index if it is inconsistent.
+     * @return Result of the check.
+     */
+    @NotNull
+    public UserIndexCheckDto check(final boolean repair) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), name, LogEx.STARTING);
+
+        long[] stats = new long[CheckResult.values().length];
+        streamUsers(user -> {
+            lock.readLock().lock();
+            try {
+                stats[check(state, user).ordinal()]++;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+
+        long checked = 0;
+        for (long count : stats) {
+            checked += count;
+        }
+        long missing = stats[CheckResult.MISSING.ordinal()];
+        long stale = stats[CheckResult.STALE.ordinal()];
+        long indexed = stats[CheckResult.OK.ordinal()] + stale;
+        long extra = Math.max(0, getInfo().getEntries() - indexed);
+
+        boolean inconsistent = missing > 0 || stale > 0 || extra > 0;
+        if (inconsistent) {
+            LogEx.warn(log, LogEx.getThisMethodName(), name, "index is inconsistent: missing "
+                    + missing + ", stale " + stale + ", extra " + extra);
+        }
+
+        boolean repaired = repair && inconsistent;
+        if (repaired) {
+            rebuild();
+        }
+
+        LogEx.trace(log, LogEx.getThisMethodName(), name, LogEx.STOPPED);
+        return new UserIndexCheckDto(name, checked, missing, stale, extra, repaired);
+    }
+}
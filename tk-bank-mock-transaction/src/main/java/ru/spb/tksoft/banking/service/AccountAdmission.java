@@ -0,0 +1,195 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.exception.AccountBusyException;
+import ru.spb.tksoft.banking.tools.HashTools;
+
+/**
+ * In-JVM admission of operations on accounts: operations on the same account are executed one
+ * at a time on this node, in the order of arrival, so they queue here instead of conflicting in
+ * the database as lock waits, serialization failures and retries.
+ *
+ * Accounts are mapped to a fixed number of stripes, every stripe is a fair semaphore with one
+ * permit. An operation on several accounts takes their stripes in ascending order, so operations
+ * never wait for each other in a cycle. An operation is rejected with
+ * {@link AccountBusyException} if too many operations are queued for a stripe already, or if it
+ * waits longer than the timeout.
+ *
+ * Not reentrant: an admitted operation must not request admission again.
+ *
+ * Metrics: "banking.account.admission.wait" is the time in the queue,
+ * "banking.account.admission.hold" is the time of the admitted operation, that is the database
+ * time with retries; "banking.account.admission.rejected" counts rejections by reason;
+ * "banking.account.admission.queued" is the number of waiting operations.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class AccountAdmission {
+
+    private static final String METRIC_WAIT = "banking.account.admission.wait";
+    private static final String METRIC_HOLD = "banking.account.admission.hold";
+    private static final String METRIC_REJECTED = "banking.account.admission.rejected";
+    private static final String METRIC_QUEUED = "banking.account.admission.queued";
+
+    private final boolean enabled;
+
+    @NotNull
+    private final Semaphore[] stripes;
+
+    private final int maxQueue;
+
+    private final long timeoutNanos;
+
+    @NotNull
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled Operations are admitted per account; otherwise they go straight through.
+     * @param stripes Number of stripes.
+     * @param maxQueue Maximum number of operations waiting for a stripe.
+     * @param timeout Maximum time of waiting for admission.
+     * @param meterRegistry Meter registry for admission metrics.
+     */
+    public AccountAdmission(
+            @Value("${banking.account-admission.enabled:true}") final boolean enabled,
+            @Value("${banking.account-admission.stripes:1024}") final int stripes,
+            @Value("${banking.account-admission.max-queue:100}") final int maxQueue,
+            @Value("${banking.account-admission.timeout:2s}") final Duration timeout,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (stripes < 1 || maxQueue < 0 || timeout.isNegative()) {
+            throw new IllegalArgumentException("Invalid account admission settings");
+        }
+
+        this.enabled = enabled;
+        this.stripes = new Semaphore[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Semaphore(1, true);
+        }
+        this.maxQueue = maxQueue;
+        this.timeoutNanos = timeout.toNanos();
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+
+        Gauge.builder(METRIC_QUEUED, this.stripes,
+                s -> Arrays.stream(s).mapToInt(Semaphore::getQueueLength).sum())
+                .description("Operations waiting for admission")
+                .register(this.meterRegistry);
+    }
+
+    /**
+     * Execute the operation once admitted for all the accounts.
+     *
+     * @param operation Name of the operation for metrics.
+     * @param userIds User IDs of the accounts.
+     * @param action Operation, executing its own transactions.
+     * @param <T> Type of the result.
+     * @return Result of the operation.
+     * @throws AccountBusyException If the operation is not admitted.
+     */
+    public <T> T execute(@NotBlank final String operation,
+            @NotNull final Collection<Long> userIds, @NotNull final Supplier<T> action) {
+
+        if (!enabled) {
+            return action.get();
+        }
+
+        int[] indexes = userIds.stream()
+                .mapToInt(this::stripeOf)
+                .sorted()
+                .distinct()
+                .toArray();
+
+        long started = System.nanoTime();
+        int acquired = 0;
+        try {
+            for (int index : indexes) {
+                acquire(operation, stripes[index], started);
+                acquired++;
+            }
+
+            long admitted = System.nanoTime();
+            timer(METRIC_WAIT, operation).record(admitted - started, TimeUnit.NANOSECONDS);
+            try {
+                return action.get();
+            } finally {
+                timer(METRIC_HOLD, operation).record(System.nanoTime() - admitted,
+                        TimeUnit.NANOSECONDS);
+            }
+
+        } finally {
+            for (int i = 0; i < acquired; i++) {
+                stripes[indexes[i]].release();
+            }
+        }
+    }
+
+    /**
+     * Execute the operation once admitted for all the accounts.
+     *
+     * @param operation Name of the operation for metrics.
+     * @param userIds User IDs of the accounts.
+     * @param action Operation, executing its own transactions.
+     * @throws AccountBusyException If the operation is not admitted.
+     */
+    public void run(@NotBlank final String operation, @NotNull final Collection<Long> userIds,
+            @NotNull final Runnable action) {
+
+        execute(operation, userIds, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private int stripeOf(final long userId) {
+        return HashTools.bucketOf(userId, stripes.length);
+    }
+
+    private void acquire(final String operation, final Semaphore stripe, final long started) {
+
+        if (stripe.getQueueLength() >= maxQueue) {
+            reject(operation, "queue");
+        }
+
+        try {
+            long left = timeoutNanos - (System.nanoTime() - started);
+            if (!stripe.tryAcquire(Math.max(left, 0), TimeUnit.NANOSECONDS)) {
+                reject(operation, "timeout");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject(operation, "interrupted");
+        }
+    }
+
+    private void reject(final String operation, final String reason) {
+
+        meterRegistry.counter(METRIC_REJECTED, "operation", operation, "reason", reason)
+                .increment();
+        throw new AccountBusyException(operation + ", " + reason);
+    }
+
+    private Timer timer(final String name, final String operation) {
+
+        return Timer.builder(name)
+                .tag("operation", operation)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,277 @@
+package ru.spb.tksoft.banking.service;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.cache.CacheMetricsRegistrar;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Tag;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.dto.KeysetPageDto;
+import ru.spb.tksoft.banking.dto.RawAccountDto;
+
+/**
+ * Fine-grained account caches.
+ *
+ * Accounts are cached by user ID ("accountByUser") and by page ("accountPage"). Every cached page
+ * is indexed by user IDs it contains, so a write to an account evicts only the account itself and
+ * pages with it. Evictions are done after commit of the writing transaction: before that, readers
+ * see the old balance in the database anyway.
+ *
+ * The page cache is built here, with the common cache specification, to drop index entries of
+ * pages evicted by size or expiry. The index is changed only within atomic operations on the page
+ * key, so a page is indexed exactly while it is cached.
+ *
+ * A value loaded concurrently with a write may be put into the cache after the write has evicted
+ * it. To prevent this, every eviction stamps the user ID stripe with a sequence number, and a
+ * value loaded before the stamp is not cached (or is evicted right after being cached).
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Component
+public class AccountCache {
+
+    /** Cache of accounts by user ID. */
+    public static final String ACCOUNT_BY_USER = "accountByUser";
+
+    /** Cache of account pages. */
+    public static final String ACCOUNT_PAGE = "accountPage";
+
+    private static final int STRIPES = 1024;
+
+    @NotNull
+    private final Cache byUser;
+
+    @NotNull
+    private final Cache pages;
+
+    /** The page cache as a map, for atomic operations on page keys. */
+    @NotNull
+    private final ConcurrentMap<Object, Object> pageMap;
+
+    /** User ID -> keys of cached pages containing the user account. */
+    private final ConcurrentMap<Long, Set<Object>> pagesByUser = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** User ID stripe -> sequence number of the latest eviction. */
+    private final AtomicLongArray evictedAt = new AtomicLongArray(STRIPES);
+
+    /**
+     * Constructor.
+     *
+     * @param cacheManager Cache manager, Caffeine based.
+     * @param spec Caffeine specification of the page cache.
+     * @param cacheMetricsRegistrar Registrar of cache metrics: caches are created on demand, so
+     *        they are not bound to metrics automatically.
+     */
+    public AccountCache(final CacheManager cacheManager,
+            @Value("${spring.cache.caffeine.spec:}") final String spec,
+            final ObjectProvider<CacheMetricsRegistrar> cacheMetricsRegistrar) {
+
+        if (!(cacheManager instanceof CaffeineCacheManager caffeineCacheManager)) {
+            throw new IllegalStateException("Account caches are not available");
+        }
+
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> pageCache = Caffeine.from(spec)
+                .evictionListener(this::onPageEvicted)
+                .build();
+        caffeineCacheManager.registerCustomCache(ACCOUNT_PAGE, pageCache);
+        pageMap = pageCache.asMap();
+
+        byUser = cacheManager.getCache(ACCOUNT_BY_USER);
+        pages = cacheManager.getCache(ACCOUNT_PAGE);
+        if (byUser == null || pages == null) {
+            throw new IllegalStateException("Account caches are not available");
+        }
+
+        cacheMetricsRegistrar.ifAvailable(registrar -> {
+            Tag managerTag = Tag.of("cache.manager", "cacheManager");
+            registrar.bindCacheToRegistry(byUser, managerTag);
+            registrar.bindCacheToRegistry(pages, managerTag);
+        });
+    }
+
+    private static int stripe(final long userId) {
+        return (int) (userId & (STRIPES - 1));
+    }
+
+    private boolean isEvictedSince(final long userId, final long loadedAt) {
+        return evictedAt.get(stripe(userId)) > loadedAt;
+    }
+
+    /**
+     * Get account of the user, load it on miss.
+     *
+     * @param userId User ID.
+     * @param loader Loader of the account.
+     * @return Account.
+     */
+    @NotNull
+    public RawAccountDto getAccount(final long userId,
+            @NotNull final Supplier<RawAccountDto> loader) {
+
+        RawAccountDto cached = byUser.get(userId, RawAccountDto.class);
+        if (cached != null) {
+            return cached;
+        }
+
+        long loadedAt = sequence.get();
+        RawAccountDto account = loader.get();
+
+        byUser.put(userId, account);
+        if (isEvictedSince(userId, loadedAt)) {
+            byUser.evict(userId);
+        }
+        return account;
+    }
+
+    /**
+     * Get page of accounts, load it on miss. Empty pages are not cached.
+     *
+     * @param key Key of the page.
+     * @param loader Loader of the page.
+     * @return Page of accounts.
+     */
+    @SuppressWarnings("unchecked")
+    @NotNull
+    public KeysetPageDto<RawAccountDto> getPage(@NotNull final Object key,
+            @NotNull final Supplier<KeysetPageDto<RawAccountDto>> loader) {
+
+        KeysetPageDto<RawAccountDto> cached = pages.get(key, KeysetPageDto.class);
+        if (cached != null) {
+            return cached;
+        }
+
+        long loadedAt = sequence.get();
+        KeysetPageDto<RawAccountDto> page = loader.get();
+        if (page.getContent().isEmpty()) {
+            return page;
+        }
+
+        pageMap.compute(key, (k, previous) -> {
+            if (previous != null) {
+                unindex(k, previous);
+            }
+            index(k, page);
+            return page;
+        });
+
+        if (page.getContent().stream()
+                .anyMatch(account -> isEvictedSince(account.getUserId(), loadedAt))) {
+            evictPage(key);
+        }
+        return page;
+    }
+
+    private void index(final Object key, final KeysetPageDto<?> page) {
+
+        page.getContent().forEach(account -> pagesByUser.compute(
+                ((RawAccountDto) account).getUserId(), (id, keys) -> {
+                    Set<Object> indexed = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                    indexed.add(key);
+                    return indexed;
+                }));
+    }
+
+    private void unindex(final Object key, final Object page) {
+
+        ((KeysetPageDto<?>) page).getContent().forEach(account -> pagesByUser.computeIfPresent(
+                ((RawAccountDto) account).getUserId(), (id, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                }));
+    }
+
+    private void onPageEvicted(final Object key, final Object page, final RemovalCause cause) {
+
+        // Called within the removal of the entry, atomically with it
+        if (key != null && page != null) {
+            unindex(key, page);
+        }
+    }
+
+    private void evictPage(final Object key) {
+
+        pageMap.computeIfPresent(key, (k, page) -> {
+            unindex(k, page);
+            return null;
+        });
+    }
+
+    /**
+     * @return Number of users with cached pages.
+     */
+    int getIndexedUserCount() {
+        return pagesByUser.size();
+    }
+
+    /**
+     * Evict accounts of the users and pages containing them. Within a transaction, eviction is
+     * done after commit.
+     *
+     * @param userIds User IDs.
+     */
+    public void evict(@NotNull final Collection<Long> userIds) {
+
+        afterCommit(() -> userIds.forEach(this::evictNow));
+    }
+
+    private void evictNow(final long userId) {
+
+        long seq = sequence.incrementAndGet();
+        evictedAt.accumulateAndGet(stripe(userId), seq, Math::max);
+
+        byUser.evict(userId);
+
+        Set<Object> keys = pagesByUser.get(userId);
+        if (keys != null) {
+            keys.forEach(this::evictPage);
+        }
+    }
+
+    /**
+     * Evict everything, e.g. after growth of all accounts. Within a transaction, eviction is done
+     * after commit.
+     */
+    public void clear() {
+
+        afterCommit(() -> {
+            long seq = sequence.incrementAndGet();
+            for (int i = 0; i < STRIPES; i++) {
+                evictedAt.accumulateAndGet(i, seq, Math::max);
+            }
+
+            byUser.clear();
+            pageMap.keySet().forEach(this::evictPage);
+        });
+    }
+
+    private static void afterCommit(final Runnable action) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,324 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.exception.InsufficientFundsException;
+import ru.spb.tksoft.banking.repository.AccountStripeBalance;
+import ru.spb.tksoft.banking.repository.AccountStripeRepository;
+import ru.spb.tksoft.banking.repository.RawAccountRepository;
+import ru.spb.tksoft.banking.tools.Money;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Sub-balances of hot accounts.
+ *
+ * An account with a non-zero number of stripes is hot: its credits go round-robin to one of its
+ * sub-balance rows ("account_stripe") instead of the account row, so concurrent credits lock
+ * different rows and do not queue. Debits are taken from the account row only; when it is short
+ * of funds, sub-balances are folded into it and the debit is repeated. Every row stays
+ * non-negative, so does the balance of the account: the balance of its row plus its
+ * sub-balances. A scheduled job folds sub-balances of all accounts, shard by shard, on the node
+ * owning the job lease.
+ *
+ * Sub-balances earn no autoincrement until folded.
+ *
+ * The number of stripes is cached for a short time. A stale value is harmless: a credit either
+ * goes to the account row or to a sub-balance, and both are counted in the balance.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class AccountStripes {
+
+    private final Logger log = LoggerFactory.getLogger(AccountStripes.class);
+
+    private static final String METRIC_FOLDS = "banking.account.stripe.folds";
+
+    @NotNull
+    private final RawAccountRepository rawAccountRepository;
+
+    @NotNull
+    private final AccountStripeRepository accountStripeRepository;
+
+    @NotNull
+    private final AccrualCalculator accrualCalculator;
+
+    @NotNull
+    private final AccountCache accountCache;
+
+    @NotNull
+    private final SchedulerLeaseService schedulerLeaseService;
+
+    @NotNull
+    private final ShardRouter shardRouter;
+
+    @NotNull
+    private final TransactionTemplate foldTemplate;
+
+    @NotNull
+    private final Cache<Long, Integer> stripeCounts;
+
+    private final AtomicInteger nextStripe = new AtomicInteger();
+
+    private final int maxStripes;
+
+    private final int compactionBatchSize;
+
+    @NotNull
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructor.
+     *
+     * @param rawAccountRepository Account repository.
+     * @param accountStripeRepository Sub-balance repository.
+     * @param accrualCalculator Autoincrement calculator.
+     * @param accountCache Account cache.
+     * @param schedulerLeaseService Lease service for the compaction job.
+     * @param shardRouter Shard router.
+     * @param transactionManager Transaction manager.
+     * @param maxStripes Maximum number of stripes of an account.
+     * @param cacheTtl Time to cache numbers of stripes.
+     * @param compactionBatchSize Number of accounts read at once by the compaction job.
+     * @param meterRegistry Meter registry for fold metrics.
+     */
+    public AccountStripes(
+            final RawAccountRepository rawAccountRepository,
+            final AccountStripeRepository accountStripeRepository,
+            final AccrualCalculator accrualCalculator,
+            final AccountCache accountCache,
+            final SchedulerLeaseService schedulerLeaseService,
+            final ShardRouter shardRouter,
+            final PlatformTransactionManager transactionManager,
+            @Value("${banking.account-stripes.max-stripes:64}") final int maxStripes,
+            @Value("${banking.account-stripes.cache-ttl:10s}") final Duration cacheTtl,
+            @Value("${banking.account-stripes.compaction-batch-size:1000}")
+            final int compactionBatchSize,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (maxStripes < 1 || compactionBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid account stripes settings");
+        }
+
+        this.rawAccountRepository = rawAccountRepository;
+        this.accountStripeRepository = accountStripeRepository;
+        this.accrualCalculator = accrualCalculator;
+        this.accountCache = accountCache;
+        this.schedulerLeaseService = schedulerLeaseService;
+        this.shardRouter = shardRouter;
+        this.maxStripes = maxStripes;
+        this.compactionBatchSize = compactionBatchSize;
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+
+        // Concurrent credits are not blocked by the fold, they wait for the stripe row and
+        // see its latest version
+        foldTemplate = new TransactionTemplate(transactionManager);
+        foldTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        foldTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        foldTemplate.setTimeout(5);
+
+        stripeCounts = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(cacheTtl)
+                .build();
+    }
+
+    /**
+     * @param userId User ID.
+     * @return Number of stripes of the account, zero for a regular or missing account.
+     */
+    public int getStripes(final long userId) {
+
+        return stripeCounts.get(userId,
+                id -> rawAccountRepository.findStripesByUserId(id).orElse(0));
+    }
+
+    /**
+     * Credit a sub-balance of a hot account, in the transaction of the caller.
+     *
+     * @param userId User ID.
+     * @param amount Amount, positive.
+     * @return False if the account is not hot, nothing is credited then.
+     */
+    public boolean credit(final long userId, @NotNull final Money amount) {
+
+        int stripes = getStripes(userId);
+        if (stripes == 0) {
+            return false;
+        }
+
+        int stripe = Math.floorMod(nextStripe.getAndIncrement(), stripes);
+        accountStripeRepository.credit(userId, stripe, amount);
+        return true;
+    }
+
+    /**
+     * @param userId User ID.
+     * @return Sum of sub-balances of the account.
+     */
+    @NotNull
+    public Money sum(final long userId) {
+        return Money.valueOf(accountStripeRepository.sumByUserId(userId));
+    }
+
+    /**
+     * @param userIds User IDs.
+     * @return Sums of sub-balances of accounts which have them.
+     */
+    @NotNull
+    public Map<Long, Money> sum(@NotNull final Collection<Long> userIds) {
+
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Long, Money> sums = new HashMap<>();
+        for (AccountStripeBalance balance : accountStripeRepository.sumByUserIds(userIds)) {
+            sums.put(balance.getUserId(), Money.valueOf(balance.getBalance()));
+        }
+        return sums;
+    }
+
+    /**
+     * Execute a debit of the account; if it fails with insufficient funds and the account is hot,
+     * fold its sub-balances and execute the debit once again.
+     *
+     * @param userId User ID of the debited account.
+     * @param debit Debit executing a whole transaction.
+     * @throws InsufficientFundsException If there are not enough funds with sub-balances too.
+     */
+    public void debitFolding(final long userId, @NotNull final Runnable debit) {
+
+        try {
+            debit.run();
+        } catch (InsufficientFundsException e) {
+            if (getStripes(userId) == 0 || !fold(userId, "shortage")) {
+                throw e;
+            }
+            debit.run();
+        }
+    }
+
+    /**
+     * Fold sub-balances of a hot account into the account row, in its own transaction. Does
+     * nothing for a regular account without sub-balances.
+     *
+     * @param userId User ID.
+     * @return True if anything has been folded.
+     */
+    public boolean fold(final long userId) {
+        return shardRouter.callFor(userId, () -> fold(userId, "request"));
+    }
+
+    private boolean fold(final long userId, final String reason) {
+
+        Boolean folded = foldTemplate.execute(status -> {
+
+            // Account row first, then its stripes, as in credits within transfers
+            if (rawAccountRepository.lockByUserIds(List.of(userId)).isEmpty()) {
+                return false;
+            }
+
+            accountCache.evict(List.of(userId));
+            if (accrualCalculator.isLazy()) {
+                rawAccountRepository.settleAccrual(List.of(userId), accrualCalculator.getRate(),
+                        accrualCalculator.getPeriodSeconds(), AccrualCalculator.MAX_PERIODS,
+                        Instant.now());
+            }
+            return accountStripeRepository.fold(userId) > 0;
+        });
+
+        if (Boolean.TRUE.equals(folded)) {
+            meterRegistry.counter(METRIC_FOLDS, "reason", reason).increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Set the number of stripes of an account. With zero stripes the account is regular again,
+     * its sub-balances are folded.
+     *
+     * @param userId User ID.
+     * @param stripes Number of stripes.
+     * @throws IllegalArgumentException If the number of stripes is invalid.
+     * @throws EntityNotFoundException If the account is not found.
+     */
+    public void setStripes(final long userId, final int stripes) {
+
+        if (stripes < 0 || stripes > maxStripes) {
+            throw new IllegalArgumentException(
+                    "Number of stripes must be from 0 to " + maxStripes);
+        }
+
+        shardRouter.runFor(userId, () -> {
+            Integer updated = foldTemplate.execute(
+                    status -> rawAccountRepository.updateStripes(userId, stripes));
+            if (updated == null || updated == 0) {
+                throw new EntityNotFoundException("Account not found");
+            }
+
+            stripeCounts.invalidate(userId);
+            if (stripes == 0) {
+                fold(userId, "disable");
+            }
+        });
+
+        LogEx.info(log, LogEx.getThisMethodName(), userId + ": " + stripes + " stripes");
+    }
+
+    /** Fold sub-balances of all accounts on the node owning the job lease. */
+    @Scheduled(cron = "${banking.account-stripes.compaction-cron:0/30 * * * * ?}")
+    public void compact() {
+        schedulerLeaseService.runIfLeader("accountStripeCompaction",
+                () -> shardRouter.runOnEach(this::foldAll));
+    }
+
+    private void foldAll() {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        long afterUserId = 0;
+        int folded = 0;
+        List<Long> userIds;
+        do {
+            userIds = accountStripeRepository.findUserIdsToFold(afterUserId,
+                    compactionBatchSize);
+            for (Long userId : userIds) {
+                try {
+                    if (fold(userId, "compaction")) {
+                        folded++;
+                    }
+                } catch (DataAccessException e) {
+                    // Next run folds it
+                    LogEx.warn(log, LogEx.getThisMethodName(), userId, e.getMessage());
+                }
+                afterUserId = userId;
+            }
+        } while (userIds.size() == compactionBatchSize);
+
+        LogEx.trace(log, LogEx.getThisMethodName(), "folded " + folded);
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+    }
+}
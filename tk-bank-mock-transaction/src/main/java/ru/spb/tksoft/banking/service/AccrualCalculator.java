@@ -0,0 +1,151 @@
+package ru.spb.tksoft.banking.service;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.entity.RawAccountEntity;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Lazy balance autoincrement.
+ *
+ * Every period of the autoincrement cron, the balance grows by the autoincrement rate, but not
+ * above the autoincrement limit. Instead of updating all accounts on every period, the number of
+ * periods elapsed since the last accrual is computed when the account is read (effective
+ * balance), and materialized when the account is written, see
+ * {@link ru.spb.tksoft.banking.repository.RawAccountRepository#settleAccrual}.
+ *
+ * The period is the interval between two consecutive cron fire times, so the cron is expected to
+ * fire at a fixed rate.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Component
+public class AccrualCalculator {
+
+    /**
+     * Maximum number of periods materialized at once. Keeps numeric power within limits, the rest
+     * is materialized by the next settlement. Must be the same in SQL and Java.
+     */
+    public static final long MAX_PERIODS = 100_000;
+
+    private final AccrualMode mode;
+
+    private final BigDecimal rate;
+
+    private final long periodSeconds;
+
+    /**
+     * Constructor.
+     *
+     * @param mode Autoincrement mode.
+     * @param rate Autoincrement rate.
+     * @param cron Autoincrement cron.
+     */
+    public AccrualCalculator(
+            @Value("${banking.autoincrement.mode:BULK}") final AccrualMode mode,
+            @Value("${banking.autoincrement.rate}") final double rate,
+            @Value("${banking.autoincrement.cron:0/30 * * * * ?}") final String cron) {
+
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+
+        this.mode = mode;
+        this.rate = BigDecimal.valueOf(rate);
+        this.periodSeconds = periodSeconds(CronExpression.parse(cron));
+    }
+
+    private static long periodSeconds(final CronExpression cron) {
+
+        LocalDateTime first = cron.next(LocalDateTime.of(2000, 1, 1, 0, 0));
+        LocalDateTime second = first != null ? cron.next(first) : null;
+        if (second == null) {
+            throw new IllegalArgumentException("Autoincrement cron must fire periodically");
+        }
+
+        long seconds = Duration.between(first, second).toSeconds();
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("Autoincrement period must be at least a second");
+        }
+        return seconds;
+    }
+
+    /**
+     * @return True if the autoincrement is lazy.
+     */
+    public boolean isLazy() {
+        return mode == AccrualMode.LAZY;
+    }
+
+    /**
+     * @return Autoincrement rate.
+     */
+    @NotNull
+    public BigDecimal getRate() {
+        return rate;
+    }
+
+    /**
+     * @return Autoincrement period, seconds.
+     */
+    public long getPeriodSeconds() {
+        return periodSeconds;
+    }
+
+    /**
+     * Number of whole periods elapsed since the last accrual, capped by {@link #MAX_PERIODS}.
+     *
+     * @param lastAccrualAt Time of the last accrual.
+     * @param now Current time.
+     * @return Number of periods.
+     */
+    public long periods(@NotNull final Instant lastAccrualAt, @NotNull final Instant now) {
+
+        long seconds = Duration.between(lastAccrualAt, now).toSeconds();
+        if (seconds <= 0) {
+            return 0;
+        }
+        return Math.min(seconds / periodSeconds, MAX_PERIODS);
+    }
+
+    /**
+     * Effective balance: stored balance with growth for elapsed periods.
+     *
+     * @param account Account.
+     * @param now Current time.
+     * @return Effective balance.
+     */
+    @NotNull
+    public Money effectiveBalance(@NotNull final RawAccountEntity account,
+            @NotNull final Instant now) {
+
+        Money balance = account.getBalance();
+        Money limit = account.getBalanceAutoLimit();
+
+        if (balance.signum() <= 0 || balance.compareTo(limit) >= 0 ||
+                account.getLastAccrualAt() == null) {
+            return balance;
+        }
+
+        long periods = periods(account.getLastAccrualAt(), now);
+        if (periods == 0) {
+            return balance;
+        }
+
+        // Capped before rounding to minor units: the product may not fit them
+        BigDecimal grown = balance.toBigDecimal()
+                .multiply(BigDecimal.ONE.add(rate).pow((int) periods, MathContext.DECIMAL64));
+        if (grown.compareTo(limit.toBigDecimal()) >= 0) {
+            return limit;
+        }
+        return Money.of(grown, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,315 @@
+package ru.spb.tksoft.banking.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.dto.maintenance.AccrualInfoDto;
+import ru.spb.tksoft.banking.entity.AccrualRunEntity;
+import ru.spb.tksoft.banking.entity.RawAccountEntity;
+import ru.spb.tksoft.banking.repository.AccrualRunRepository;
+import ru.spb.tksoft.banking.repository.RawAccountRepository;
+import ru.spb.tksoft.banking.tools.ShardContext;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Chunked balance autoincrement.
+ *
+ * Account table is split into ID ranges with keyset pagination. Ranges are processed in waves
+ * on a bounded worker pool, every chunk is committed in its own short transaction together with
+ * its checkpoint record. Checkpoint of the run is moved forward after every wave, so a run
+ * interrupted by restart is resumed where it has stopped.
+ *
+ * Row-by-row autoincrement streams eligible accounts with a forward-only cursor and grows every
+ * chunk of them with one statement in its own short transaction; accounts that are no longer
+ * eligible are skipped, as in the bulk mode. Memory stays flat regardless of the table size.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class AccrualEngine {
+
+    private final Logger log = LoggerFactory.getLogger(AccrualEngine.class);
+
+    @NotNull
+    private final RawAccountRepository rawAccountRepository;
+
+    @NotNull
+    private final AccrualRunRepository accrualRunRepository;
+
+    @NotNull
+    private final TransactionTemplate transactionTemplate;
+
+    @NotNull
+    private final TransactionTemplate streamTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @NotNull
+    private final ExecutorService executor;
+
+    private final int chunkSize;
+
+    private final int workers;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Constructor.
+     *
+     * @param rawAccountRepository Account repository.
+     * @param accrualRunRepository Checkpoint repository.
+     * @param transactionManager Transaction manager.
+     * @param chunkSize Number of accounts in one chunk or one commit of row-by-row run.
+     * @param workers Number of chunks processed concurrently.
+     */
+    public AccrualEngine(
+            final RawAccountRepository rawAccountRepository,
+            final AccrualRunRepository accrualRunRepository,
+            final PlatformTransactionManager transactionManager,
+            @Value("${banking.autoincrement.chunk-size:1000}") final int chunkSize,
+            @Value("${banking.autoincrement.workers:4}") final int workers) {
+
+        if (chunkSize <= 0 || workers <= 0) {
+            throw new IllegalArgumentException("Chunk size and workers must be positive");
+        }
+
+        this.rawAccountRepository = rawAccountRepository;
+        this.accrualRunRepository = accrualRunRepository;
+        this.chunkSize = chunkSize;
+        this.workers = workers;
+
+        // Same settings as for the account services: short REPEATABLE_READ transactions
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setTimeout(5);
+
+        // Cursor lives as long as the whole run, so no timeout here
+        streamTemplate = new TransactionTemplate(transactionManager);
+        streamTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        streamTemplate.setReadOnly(true);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "accrual-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Stop workers. */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Run or resume chunked autoincrement. If the previous run is unfinished, it is resumed with
+     * its own rate.
+     *
+     * @param rate Rate of growth for a new run.
+     * @return Statistics of the run or null if another run is in progress.
+     */
+    public AccrualInfoDto run(final BigDecimal rate) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        if (!running.compareAndSet(false, true)) {
+            LogEx.warn(log, LogEx.getThisMethodName(), "previous run is still in progress");
+            return null;
+        }
+
+        try {
+            return runChunks(rate);
+        } finally {
+            running.set(false);
+            LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+        }
+    }
+
+    /**
+     * Run row-by-row autoincrement over the streaming cursor of eligible accounts.
+     *
+     * @param rate Rate of growth.
+     * @return Statistics of the run or null if another run is in progress.
+     */
+    public AccrualInfoDto runRows(final BigDecimal rate) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        if (!running.compareAndSet(false, true)) {
+            LogEx.warn(log, LogEx.getThisMethodName(), "previous run is still in progress");
+            return null;
+        }
+
+        try {
+            Instant startedAt = Instant.now();
+            long started = System.nanoTime();
+
+            long[] stats = streamTemplate.execute(status -> streamRows(rate));
+
+            long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            return new AccrualInfoDto(AccrualMode.ROW.name(), startedAt, durationMs,
+                    stats[0], stats[1], stats[2]);
+        } finally {
+            running.set(false);
+            LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+        }
+    }
+
+    /**
+     * @return Updated rows, chunks, failed chunks.
+     */
+    private long[] streamRows(final BigDecimal rate) {
+
+        long[] stats = new long[3];
+        List<Long> userIds = new ArrayList<>(chunkSize);
+
+        try (Stream<RawAccountEntity> accounts = rawAccountRepository.streamAccrualEligible()) {
+            accounts.forEach(account -> {
+                userIds.add(account.getUserId());
+                entityManager.detach(account);
+
+                if (userIds.size() == chunkSize) {
+                    growRows(rate, userIds, stats);
+                }
+            });
+        }
+
+        if (!userIds.isEmpty()) {
+            growRows(rate, userIds, stats);
+        }
+        return stats;
+    }
+
+    private void growRows(final BigDecimal rate, final List<Long> userIds, final long[] stats) {
+
+        stats[1]++;
+        try {
+            stats[0] += transactionTemplate.execute(
+                    status -> rawAccountRepository.growBalances(userIds, rate));
+        } catch (Exception e) {
+            // Chunk is skipped in this run: its accounts will grow on the next one
+            stats[2]++;
+            log.error("Error while growing accounts chunk", e);
+        }
+        userIds.clear();
+    }
+
+    private AccrualInfoDto runChunks(final BigDecimal rate) {
+
+        Instant startedAt = Instant.now();
+        long started = System.nanoTime();
+
+        AccrualRunEntity run = transactionTemplate.execute(
+                status -> accrualRunRepository.findUnfinished()
+                        .orElseGet(() -> accrualRunRepository.save(AccrualRunEntity.builder()
+                                .rate(rate)
+                                .lastId(0L)
+                                .updatedRows(0L)
+                                .startedAt(startedAt)
+                                .build())));
+
+        if (run.getLastId() > 0) {
+            LogEx.info(log, LogEx.getThisMethodName(),
+                    "resuming run " + run.getId() + " from account id " + run.getLastId());
+        }
+
+        final long resumedRows = run.getUpdatedRows();
+        long lastId = run.getLastId();
+        long updatedRows = 0;
+        long chunks = 0;
+        long failedChunks = 0;
+        boolean exhausted = false;
+
+        while (!exhausted && !Thread.currentThread().isInterrupted()) {
+
+            List<Future<Integer>> wave = new ArrayList<>(workers);
+            long waveLastId = lastId;
+
+            for (int i = 0; i < workers; i++) {
+                final long fromId = waveLastId;
+                Long toId = rawAccountRepository.findChunkUpperId(fromId, chunkSize);
+                if (toId == null) {
+                    exhausted = true;
+                    break;
+                }
+
+                // Chunks run on the shard of the run
+                Supplier<Integer> chunk = ShardContext.wrap(() -> growChunk(run, fromId, toId));
+                wave.add(executor.submit(chunk::get));
+                waveLastId = toId;
+            }
+
+            for (Future<Integer> chunk : wave) {
+                chunks++;
+                try {
+                    updatedRows += chunk.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failedChunks++;
+                } catch (ExecutionException e) {
+                    // Chunk is skipped in this run: its accounts will grow on the next one
+                    failedChunks++;
+                    log.error("Error while growing accounts chunk of run " + run.getId(),
+                            e.getCause());
+                }
+            }
+
+            if (!wave.isEmpty()) {
+                lastId = waveLastId;
+                checkpoint(run, lastId, resumedRows + updatedRows, null);
+            }
+        }
+
+        if (exhausted) {
+            checkpoint(run, lastId, resumedRows + updatedRows, Instant.now());
+        }
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        return new AccrualInfoDto(AccrualMode.CHUNKED.name(), startedAt, durationMs,
+                updatedRows, chunks, failedChunks);
+    }
+
+    private int growChunk(final AccrualRunEntity run, final long fromId, final long toId) {
+
+        return transactionTemplate.execute(status -> {
+
+            int updated = rawAccountRepository.growBalanceRange(
+                    run.getRate(), run.getId(), fromId, toId);
+            accrualRunRepository.insertChunk(run.getId(), fromId, toId, updated);
+            return updated;
+        });
+    }
+
+    private void checkpoint(final AccrualRunEntity run, final long lastId,
+            final long updatedRows, final Instant finishedAt) {
+
+        run.setLastId(lastId);
+        run.setUpdatedRows(updatedRows);
+        run.setFinishedAt(finishedAt);
+        transactionTemplate.executeWithoutResult(status -> accrualRunRepository.save(run));
+    }
+}
@@ -0,0 +1,21 @@
+package ru.spb.tksoft.banking.service;
+
+/**
+ * Mode of the balance autoincrement.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public enum AccrualMode {
+
+    /** One set-based update of all eligible accounts in one transaction. */
+    BULK,
+
+    /** Eligible accounts streamed with a cursor and updated by chunks, one statement each. */
+    ROW,
+
+    /** Keyset-partitioned chunks processed in parallel, each in its own transaction. */
+    CHUNKED,
+
+    /** No periodic updates: growth is computed on read and persisted on write. */
+    LAZY
+}
@@ -38,6 +38,9 @@ public class AuthServiceCached {
     @NotNull
     private final RawUserRepository rawRserRepository;
 
+    @NotNull
+    private final ShardRouter shardRouter;
+
     /** Clear caches. */
     @CacheEvict(value = "token", allEntries = true)
     public void clearCaches() {
@@ -57,7 +60,10 @@ public class AuthServiceCached {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        Optional<RawUserEntity> userOptional = rawRserRepository.findOneByEmailExact(email);
+        Optional<RawUserEntity> userOptional =
+                shardRouter.readAll(() -> rawRserRepository.findOneByEmailExact(email)).stream()
+                        .flatMap(Optional::stream)
+                        .findFirst();
         if (userOptional.isEmpty()) {
             LogEx.trace(log, LogEx.getThisMethodName(), "User not found");
             return Optional.empty();
@@ -94,7 +100,8 @@ public class AuthServiceCached {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        boolean valid = rawRserRepository.findById(user.userId()).isPresent();
+        boolean valid = shardRouter.read(user.userId(),
+                () -> rawRserRepository.existsById(user.userId()));
         if (!valid) {
             LogEx.warn(log, LogEx.getThisMethodName(),
                     "User with given credentials is invalid");
@@ -0,0 +1,155 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.exception.DatabaseBusyException;
+
+/**
+ * Bound of requests working with the database at once.
+ *
+ * With requests served by virtual threads, nothing bounds their number but the number of
+ * connections: thousands of requests would wait in the connection pool up to its connection
+ * timeout, holding memory and locks taken so far. The bulkhead admits as many requests as there
+ * are connections for them, a fair semaphore; others wait for a short time and are rejected with
+ * {@link DatabaseBusyException}. Requests pass the bulkhead by their transactions, see
+ * {@link ru.spb.tksoft.banking.configuration.BulkheadJpaTransactionManager}. Jobs and workers do
+ * not pass the bulkhead: the number of permits is the pool size less the connections they need.
+ *
+ * Metrics: "banking.database.bulkhead.wait" is the time in the queue,
+ * "banking.database.bulkhead.rejected" counts rejected requests,
+ * "banking.database.bulkhead.queued" is the number of waiting requests.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class DatabaseBulkhead {
+
+    private static final String METRIC_REJECTED = "banking.database.bulkhead.rejected";
+
+    private final boolean enabled;
+
+    @NotNull
+    private final Semaphore permits;
+
+    private final int maxQueue;
+
+    private final long timeoutNanos;
+
+    @NotNull
+    private final MeterRegistry meterRegistry;
+
+    @NotNull
+    private final Timer wait;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled Requests are bounded; otherwise they go straight through.
+     * @param permits Number of requests working with the database at once.
+     * @param maxQueue Maximum number of waiting requests.
+     * @param timeout Maximum time of waiting.
+     * @param meterRegistry Meter registry for bulkhead metrics.
+     */
+    public DatabaseBulkhead(
+            @Value("${banking.database-bulkhead.enabled:false}") final boolean enabled,
+            @Value("${banking.database-bulkhead.permits:8}") final int permits,
+            @Value("${banking.database-bulkhead.max-queue:1000}") final int maxQueue,
+            @Value("${banking.database-bulkhead.timeout:2s}") final Duration timeout,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (permits < 1 || maxQueue < 0 || timeout.isNegative()) {
+            throw new IllegalArgumentException("Invalid database bulkhead settings");
+        }
+
+        this.enabled = enabled;
+        this.permits = new Semaphore(permits, true);
+        this.maxQueue = maxQueue;
+        this.timeoutNanos = timeout.toNanos();
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+
+        wait = Timer.builder("banking.database.bulkhead.wait")
+                .description("Time of waiting for admission to the database")
+                .publishPercentiles(0.5, 0.99)
+                .register(this.meterRegistry);
+        Gauge.builder("banking.database.bulkhead.queued", this.permits,
+                Semaphore::getQueueLength)
+                .description("Requests waiting for admission to the database")
+                .register(this.meterRegistry);
+    }
+
+    /**
+     * @return True if requests are bounded.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Wait for admission. Every successful call is paired with {@link #release()}.
+     *
+     * @throws DatabaseBusyException If the request is not admitted.
+     */
+    public void acquire() {
+
+        if (!enabled) {
+            return;
+        }
+
+        if (permits.getQueueLength() >= maxQueue) {
+            reject("queue");
+        }
+
+        long started = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                reject("timeout");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject("interrupted");
+        }
+        wait.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    /** Let the next request in. */
+    public void release() {
+
+        if (enabled) {
+            permits.release();
+        }
+    }
+
+    /**
+     * Execute the action once admitted.
+     *
+     * @param action Action.
+     * @param <T> Type of the result.
+     * @return Result of the action.
+     * @throws DatabaseBusyException If the action is not admitted.
+     */
+    public <T> T execute(@NotNull final Supplier<T> action) {
+
+        acquire();
+        try {
+            return action.get();
+        } finally {
+            release();
+        }
+    }
+
+    private void reject(final String reason) {
+
+        meterRegistry.counter(METRIC_REJECTED, "reason", reason).increment();
+        throw new DatabaseBusyException(reason);
+    }
+}
@@ -0,0 +1,226 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.tools.Money;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Group commit of concurrent deposits to the same account.
+ *
+ * The first deposit to an account opens a group and becomes its leader: it waits for the window,
+ * while concurrent deposits to the account join the group, then applies the sum of the group with
+ * one balance update and one commit, see {@link RawAccountServiceCached#depositAll}, and hands the
+ * outcome to every member. The group is applied earlier when it reaches the maximum size. No
+ * threads are added: every caller waits in its own thread, the leader does the work. Groups are
+ * admitted like other operations on the account, see {@link AccountAdmission}.
+ *
+ * The outcome is shared: if the transaction fails, every deposit of the group fails.
+ *
+ * Metrics: "banking.deposit.coalescing.group-size" (its total divided by its count is the
+ * coalescing ratio) and "banking.deposit.coalescing.queue-delay", the time from joining a group
+ * to its transaction start.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class DepositCoalescer {
+
+    private final Logger log = LoggerFactory.getLogger(DepositCoalescer.class);
+
+    /** Deposit waiting for its group. */
+    private record Pending(Money amount, long joinedAt, CompletableFuture<Void> outcome) {
+    }
+
+    /** Deposits to one account, applied together. */
+    private static final class Group {
+
+        private final Thread leader = Thread.currentThread();
+
+        private final List<Pending> deposits = new ArrayList<>();
+
+        /** Closed group is being applied and takes no more deposits. */
+        private boolean closed;
+    }
+
+    @NotNull
+    private final RawAccountServiceCached rawAccountServiceCached;
+
+    @NotNull
+    private final TransactionRetrier transactionRetrier;
+
+    @NotNull
+    private final AccountAdmission accountAdmission;
+
+    private final boolean enabled;
+
+    private final long windowNanos;
+
+    private final int maxSize;
+
+    @NotNull
+    private final Map<Long, Group> groups = new ConcurrentHashMap<>();
+
+    @NotNull
+    private final DistributionSummary groupSize;
+
+    @NotNull
+    private final Timer queueDelay;
+
+    /**
+     * Constructor.
+     *
+     * @param rawAccountServiceCached Account service.
+     * @param transactionRetrier Retrier of group transactions.
+     * @param accountAdmission Admission of group transactions.
+     * @param enabled Deposits are coalesced.
+     * @param window Time the leader waits for other deposits.
+     * @param maxSize Maximum number of deposits in a group.
+     * @param meterRegistry Meter registry for coalescing metrics.
+     */
+    public DepositCoalescer(
+            final RawAccountServiceCached rawAccountServiceCached,
+            final TransactionRetrier transactionRetrier,
+            final AccountAdmission accountAdmission,
+            @Value("${banking.deposit-coalescing.enabled:false}") final boolean enabled,
+            @Value("${banking.deposit-coalescing.window:2ms}") final Duration window,
+            @Value("${banking.deposit-coalescing.max-size:100}") final int maxSize,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (window.isNegative() || maxSize < 1) {
+            throw new IllegalArgumentException("Invalid deposit coalescing settings");
+        }
+
+        this.rawAccountServiceCached = rawAccountServiceCached;
+        this.transactionRetrier = transactionRetrier;
+        this.accountAdmission = accountAdmission;
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxSize = maxSize;
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        groupSize = DistributionSummary.builder("banking.deposit.coalescing.group-size")
+                .description("Deposits applied with one transaction")
+                .register(registry);
+        queueDelay = Timer.builder("banking.deposit.coalescing.queue-delay")
+                .description("Time from joining a group of deposits to its transaction")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    /**
+     * @return True if deposits are coalesced.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Process deposit together with concurrent deposits to the same account. Must be called
+     * without transaction.
+     *
+     * @param userId User ID.
+     * @param amount Amount.
+     * @throws IllegalArgumentException If the amount is not positive.
+     */
+    public void deposit(final long userId, @NotNull final Money amount) {
+
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+
+        var pending = new Pending(amount, System.nanoTime(), new CompletableFuture<>());
+        Group group = join(userId, pending);
+        if (group.leader == Thread.currentThread()) {
+            lead(userId, group);
+        }
+
+        try {
+            pending.outcome().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Group join(final long userId, final Pending pending) {
+
+        for (;;) {
+            Group group = groups.computeIfAbsent(userId, id -> new Group());
+            synchronized (group) {
+                if (!group.closed) {
+                    group.deposits.add(pending);
+                    if (group.deposits.size() >= maxSize) {
+                        close(userId, group);
+                        LockSupport.unpark(group.leader);
+                    }
+                    return group;
+                }
+            }
+        }
+    }
+
+    /** Called with the group monitor held. */
+    private void close(final long userId, final Group group) {
+
+        group.closed = true;
+        groups.remove(userId, group);
+    }
+
+    private void lead(final long userId, final Group group) {
+
+        long deadline = System.nanoTime() + windowNanos;
+        for (;;) {
+            synchronized (group) {
+                long left = deadline - System.nanoTime();
+                if (group.closed || left <= 0) {
+                    if (!group.closed) {
+                        close(userId, group);
+                    }
+                    break;
+                }
+            }
+            LockSupport.parkNanos(this, deadline - System.nanoTime());
+        }
+
+        // Closed group is not changed any more
+        long started = System.nanoTime();
+        List<Money> amounts = new ArrayList<>(group.deposits.size());
+        for (Pending pending : group.deposits) {
+            amounts.add(pending.amount());
+            queueDelay.record(started - pending.joinedAt(), TimeUnit.NANOSECONDS);
+        }
+        groupSize.record(amounts.size());
+
+        try {
+            accountAdmission.run("deposit-group", List.of(userId),
+                    () -> transactionRetrier.run("deposit-group",
+                            () -> rawAccountServiceCached.depositAll(userId, amounts)));
+            group.deposits.forEach(pending -> pending.outcome().complete(null));
+
+        } catch (RuntimeException e) {
+            LogEx.warn(log, LogEx.getThisMethodName(), userId,
+                    "group of " + amounts.size() + " deposits failed: " + e.getMessage());
+            group.deposits.forEach(pending -> pending.outcome().completeExceptionally(e));
+        }
+    }
+}
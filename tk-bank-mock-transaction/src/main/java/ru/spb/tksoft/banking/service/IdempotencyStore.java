@@ -0,0 +1,495 @@
+package ru.spb.tksoft.banking.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.entity.IdempotencyKeyEntity;
+import ru.spb.tksoft.banking.repository.IdempotencyKeyRepository;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Outcomes of money-moving requests by "Idempotency-Key" header.
+ *
+ * The outcome of a successful operation is recorded in the "idempotency_key" table in the same
+ * transaction as the operation, so money is never moved without the record. A retried request
+ * with the same key gets the recorded response without touching accounts; the same key with
+ * another request is rejected. Failed operations are not recorded and may be retried. If the
+ * same key is processed concurrently, the loser fails with {@link ConcurrencyFailureException}
+ * and is retried by {@link TransactionRetrier}, finding the recorded outcome.
+ *
+ * Operations applied outside the database transaction, by the ledger engine, cannot be rolled
+ * back with the record, so they claim the key first, see {@link #executeClaimed}: the record is
+ * pending while the operation runs, and concurrent requests with the key wait for its outcome.
+ *
+ * Recorded outcomes are kept in a hot tier in memory. Lookups are timed by tier with metric
+ * "banking.idempotency.lookup". Expired records are deleted by a scheduled job on the node
+ * owning its lease, see {@link SchedulerLeaseService}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class IdempotencyStore {
+
+    private final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    /** Header of the key. */
+    public static final String HEADER = "Idempotency-Key";
+
+    /** Maximum length of the key. */
+    public static final int MAX_KEY_LENGTH = 100;
+
+    private static final String METRIC_LOOKUP = "banking.idempotency.lookup";
+
+    private record Key(long userId, String idempotencyKey) {
+    }
+
+    private record Outcome(String requestHash, String response, boolean pending,
+            Instant expiresAt) {
+    }
+
+    /** Interval of checks of a key claimed by a concurrent request. */
+    private static final Duration CLAIM_POLL_INTERVAL = Duration.ofMillis(20);
+
+    @NotNull
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @NotNull
+    private final SchedulerLeaseService schedulerLeaseService;
+
+    @NotNull
+    private final ShardRouter shardRouter;
+
+    @NotNull
+    private final ObjectMapper objectMapper;
+
+    @NotNull
+    private final PlatformTransactionManager transactionManager;
+
+    @NotNull
+    private final TransactionTemplate cleanupTemplate;
+
+    @NotNull
+    private final Duration ttl;
+
+    private final int cleanupBatchSize;
+
+    @NotNull
+    private final Cache<Key, Outcome> hotTier;
+
+    @NotNull
+    private final Timer hotHits;
+
+    @NotNull
+    private final Timer databaseHits;
+
+    @NotNull
+    private final Timer misses;
+
+    /**
+     * Constructor.
+     *
+     * @param idempotencyKeyRepository Outcome repository.
+     * @param schedulerLeaseService Lease service for the cleanup job.
+     * @param shardRouter Shard router.
+     * @param objectMapper Mapper of responses.
+     * @param transactionManager Transaction manager.
+     * @param ttl Time to keep outcomes.
+     * @param hotMaxSize Maximum number of outcomes in memory.
+     * @param cleanupBatchSize Number of expired outcomes deleted in one transaction.
+     * @param meterRegistry Meter registry for lookup and hot tier metrics.
+     */
+    public IdempotencyStore(
+            final IdempotencyKeyRepository idempotencyKeyRepository,
+            final SchedulerLeaseService schedulerLeaseService,
+            final ShardRouter shardRouter,
+            final ObjectMapper objectMapper,
+            final PlatformTransactionManager transactionManager,
+            @Value("${banking.idempotency.ttl:24h}") final Duration ttl,
+            @Value("${banking.idempotency.hot-max-size:10000}") final int hotMaxSize,
+            @Value("${banking.idempotency.cleanup-batch-size:1000}") final int cleanupBatchSize,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Idempotency key TTL must be positive");
+        }
+        if (hotMaxSize < 0 || cleanupBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid idempotency store sizes");
+        }
+
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.schedulerLeaseService = schedulerLeaseService;
+        this.shardRouter = shardRouter;
+        this.objectMapper = objectMapper;
+        this.transactionManager = transactionManager;
+        this.ttl = ttl;
+        this.cleanupBatchSize = cleanupBatchSize;
+
+        cleanupTemplate = new TransactionTemplate(transactionManager);
+        cleanupTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        cleanupTemplate.setTimeout(30);
+
+        hotTier = Caffeine.newBuilder()
+                .maximumSize(hotMaxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        CaffeineCacheMetrics.monitor(registry, hotTier, "idempotency");
+        hotHits = lookupTimer(registry, "hot");
+        databaseHits = lookupTimer(registry, "database");
+        misses = lookupTimer(registry, "miss");
+    }
+
+    private static Timer lookupTimer(final MeterRegistry registry, final String tier) {
+
+        return Timer.builder(METRIC_LOOKUP)
+                .tag("tier", tier)
+                .description("Lookup of recorded outcomes by idempotency key")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    /**
+     * Execute the operation once per key.
+     *
+     * @param userId User ID.
+     * @param idempotencyKey Key; if null, the operation is executed without the store.
+     * @param operation Operation name.
+     * @param request Request, converted to JSON to tell requests apart.
+     * @param responseType Type of the response.
+     * @param timeoutSeconds Transaction timeout.
+     * @param action Operation, joins the transaction of the store.
+     * @param <T> Type of the response.
+     * @return Response of the operation, recorded or new.
+     * @throws IllegalArgumentException If the key is invalid or used with another request.
+     * @throws ConcurrencyFailureException If the key is being processed concurrently.
+     */
+    public <T> T execute(final long userId, final String idempotencyKey,
+            @NotBlank final String operation, @NotNull final Object request,
+            @NotNull final Class<T> responseType, final int timeoutSeconds,
+            @NotNull final Supplier<T> action) {
+
+        if (idempotencyKey == null) {
+            return action.get();
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency key must be 1 to "
+                    + MAX_KEY_LENGTH + " characters long");
+        }
+
+        var key = new Key(userId, idempotencyKey);
+        String requestHash = hash(operation, request);
+
+        Optional<Outcome> recorded = lookup(key);
+        if (recorded.isPresent()) {
+            return replay(recorded.get(), requestHash, operation, responseType);
+        }
+
+        var template = new TransactionTemplate(transactionManager);
+        template.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        template.setTimeout(timeoutSeconds);
+
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(ttl);
+        String[] response = new String[1];
+
+        T result = template.execute(status -> {
+            T r = action.get();
+            response[0] = toJson(r);
+            if (idempotencyKeyRepository.record(userId, idempotencyKey, operation, requestHash,
+                    response[0], now, expiresAt) == 0) {
+                throw new ConcurrencyFailureException(
+                        "Request with the idempotency key is being processed");
+            }
+            return r;
+        });
+
+        hotTier.put(key, new Outcome(requestHash, response[0], false, expiresAt));
+        return result;
+    }
+
+    private <T> T replay(final Outcome recorded, final String requestHash,
+            final String operation, final Class<T> responseType) {
+
+        if (!recorded.requestHash().equals(requestHash)) {
+            throw new IllegalArgumentException(
+                    "Idempotency key is already used with another request");
+        }
+        if (recorded.pending()) {
+            throw new ConcurrencyFailureException(
+                    "Request with the idempotency key is being processed");
+        }
+        LogEx.trace(log, LogEx.getThisMethodName(), operation, "replayed");
+        return fromJson(recorded.response(), responseType);
+    }
+
+    /**
+     * Execute the operation applied outside the database transaction once per key.
+     *
+     * The key is claimed with a pending record in its own transaction, then the operation is
+     * executed, then its outcome is recorded. A concurrent request with the key waits for the
+     * outcome up to the timeout. If the operation fails, the claim is released and the request
+     * may be retried; if its outcome is unknown ({@link IllegalStateException}), or the node
+     * fails before the outcome is recorded, the key stays pending until it expires, so the
+     * operation is never applied twice.
+     *
+     * @param userId User ID.
+     * @param idempotencyKey Key; if null, the operation is executed without the store.
+     * @param operation Operation name.
+     * @param request Request, converted to JSON to tell requests apart.
+     * @param responseType Type of the response.
+     * @param timeoutSeconds Maximum time to wait for a concurrent request with the key.
+     * @param action Operation, executed without transaction.
+     * @param <T> Type of the response.
+     * @return Response of the operation, recorded or new.
+     * @throws IllegalArgumentException If the key is invalid or used with another request.
+     * @throws ConcurrencyFailureException If the key is still being processed after the timeout.
+     */
+    public <T> T executeClaimed(final long userId, final String idempotencyKey,
+            @NotBlank final String operation, @NotNull final Object request,
+            @NotNull final Class<T> responseType, final int timeoutSeconds,
+            @NotNull final Supplier<T> action) {
+
+        if (idempotencyKey == null) {
+            return action.get();
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency key must be 1 to "
+                    + MAX_KEY_LENGTH + " characters long");
+        }
+
+        var key = new Key(userId, idempotencyKey);
+        String requestHash = hash(operation, request);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        Instant expiresAt;
+        for (;;) {
+            Optional<Outcome> recorded = lookup(key);
+            if (recorded.isPresent() && (!recorded.get().pending()
+                    || System.nanoTime() - deadline >= 0)) {
+                return replay(recorded.get(), requestHash, operation, responseType);
+            }
+
+            if (recorded.isEmpty()) {
+                Instant now = Instant.now();
+                expiresAt = now.plus(ttl);
+                if (claim(key, operation, requestHash, now, expiresAt)) {
+                    break;
+                }
+            } else {
+                sleep(CLAIM_POLL_INTERVAL);
+            }
+        }
+
+        T result;
+        try {
+            result = action.get();
+        } catch (IllegalStateException e) {
+            throw e; // outcome unknown, the key stays claimed
+        } catch (RuntimeException e) {
+            inTransaction(() -> idempotencyKeyRepository.release(userId, idempotencyKey));
+            throw e;
+        }
+
+        String response = toJson(result);
+        inTransaction(() -> idempotencyKeyRepository.complete(userId, idempotencyKey, response));
+        hotTier.put(key, new Outcome(requestHash, response, false, expiresAt));
+        return result;
+    }
+
+    /**
+     * Execute the operation without response applied outside the database transaction once per
+     * key, see {@link #executeClaimed(long, String, String, Object, Class, int, Supplier)}.
+     *
+     * @param userId User ID.
+     * @param idempotencyKey Key; if null, the operation is executed without the store.
+     * @param operation Operation name.
+     * @param request Request, converted to JSON to tell requests apart.
+     * @param timeoutSeconds Maximum time to wait for a concurrent request with the key.
+     * @param action Operation, executed without transaction.
+     */
+    public void runClaimed(final long userId, final String idempotencyKey,
+            @NotBlank final String operation, @NotNull final Object request,
+            final int timeoutSeconds, @NotNull final Runnable action) {
+
+        executeClaimed(userId, idempotencyKey, operation, request, Void.class, timeoutSeconds,
+                () -> {
+                    action.run();
+                    return null;
+                });
+    }
+
+    /** @return False if the key is claimed or recorded by another request. */
+    private boolean claim(final Key key, final String operation, final String requestHash,
+            final Instant now, final Instant expiresAt) {
+
+        try {
+            return inTransaction(() -> {
+                idempotencyKeyRepository.deleteExpiredKey(key.userId(), key.idempotencyKey(),
+                        now);
+                return idempotencyKeyRepository.claim(key.userId(), key.idempotencyKey(),
+                        operation, requestHash, now, expiresAt);
+            }) > 0;
+        } catch (DataIntegrityViolationException e) {
+            return false; // claimed concurrently
+        }
+    }
+
+    private int inTransaction(final Supplier<Integer> action) {
+
+        var template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer count = template.execute(status -> action.get());
+        return count != null ? count : 0;
+    }
+
+    private static void sleep(final Duration interval) {
+
+        try {
+            Thread.sleep(interval);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrencyFailureException("Interrupted waiting for the idempotency key");
+        }
+    }
+
+    /**
+     * Execute the operation without response once per key, see
+     * {@link #execute(long, String, String, Object, Class, int, Supplier)}.
+     *
+     * @param userId User ID.
+     * @param idempotencyKey Key; if null, the operation is executed without the store.
+     * @param operation Operation name.
+     * @param request Request, converted to JSON to tell requests apart.
+     * @param timeoutSeconds Transaction timeout.
+     * @param action Operation, joins the transaction of the store.
+     */
+    public void run(final long userId, final String idempotencyKey,
+            @NotBlank final String operation, @NotNull final Object request,
+            final int timeoutSeconds, @NotNull final Runnable action) {
+
+        execute(userId, idempotencyKey, operation, request, Void.class, timeoutSeconds, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private Optional<Outcome> lookup(final Key key) {
+
+        long started = System.nanoTime();
+
+        Outcome outcome = hotTier.getIfPresent(key);
+        if (outcome != null && outcome.expiresAt().isAfter(Instant.now())) {
+            hotHits.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            return Optional.of(outcome);
+        }
+
+        Optional<IdempotencyKeyEntity> entity = idempotencyKeyRepository.findActive(
+                key.userId(), key.idempotencyKey(), Instant.now());
+        if (entity.isEmpty()) {
+            misses.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            return Optional.empty();
+        }
+
+        outcome = new Outcome(entity.get().getRequestHash(), entity.get().getResponse(),
+                entity.get().isPending(), entity.get().getExpiresAt());
+        if (!outcome.pending()) {
+            hotTier.put(key, outcome);
+        }
+        databaseHits.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return Optional.of(outcome);
+    }
+
+    private String hash(final String operation, final Object request) {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Cannot hash request", e);
+        }
+    }
+
+    private String toJson(final Object response) {
+
+        if (response == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot record response", e);
+        }
+    }
+
+    private <T> T fromJson(final String response, final Class<T> responseType) {
+
+        if (response == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(response, responseType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot read recorded response", e);
+        }
+    }
+
+    /** Delete expired outcomes on the node owning the job lease. */
+    @Scheduled(cron = "${banking.idempotency.cleanup-cron:0 */5 * * * ?}")
+    public void cleanup() {
+        schedulerLeaseService.runIfLeader("idempotencyCleanup",
+                () -> shardRouter.runOnEach(this::deleteExpired));
+    }
+
+    private void deleteExpired() {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        Instant now = Instant.now();
+        long total = 0;
+        int deleted;
+        do {
+            Integer count = cleanupTemplate.execute(
+                    status -> idempotencyKeyRepository.deleteExpired(now, cleanupBatchSize));
+            deleted = count != null ? count : 0;
+            total += deleted;
+        } while (deleted == cleanupBatchSize);
+
+        if (total > 0) {
+            LogEx.info(log, LogEx.getThisMethodName(), "expired keys deleted: " + total);
+        }
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+    }
+}
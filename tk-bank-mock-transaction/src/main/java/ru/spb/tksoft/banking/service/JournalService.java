@@ -0,0 +1,125 @@
+package ru.spb.tksoft.banking.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.dto.maintenance.JournalMismatchDto;
+import ru.spb.tksoft.banking.dto.maintenance.JournalReconciliationDto;
+import ru.spb.tksoft.banking.repository.JournalRepository;
+import ru.spb.tksoft.banking.repository.RawAccountRepository;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Reconciliation of account balances against the journal, see {@link JournalWriter}.
+ * 
+ * With LAZY autoincrement, the balance is the stored one: growth not yet materialized is not
+ * journaled either.
+ * 
+ * Every shard is reconciled in its own transaction, see {@link ShardRouter}: journals of shards
+ * are balanced independently.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class JournalService {
+
+    private final Logger log = LoggerFactory.getLogger(JournalService.class);
+
+    /** Maximum number of reported mismatches. */
+    public static final int MAX_MISMATCHES = 1000;
+
+    @NotNull
+    private final JournalRepository journalRepository;
+
+    @NotNull
+    private final RawAccountRepository rawAccountRepository;
+
+    @NotNull
+    private final ShardRouter shardRouter;
+
+    @NotNull
+    private final TransactionTemplate reconcileTemplate;
+
+    /** Result of the reconciliation of one shard. */
+    private record ShardResult(long accounts, long mismatched, long unbalanced,
+            List<JournalMismatchDto> mismatches) {
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param journalRepository Journal repository.
+     * @param rawAccountRepository Account repository.
+     * @param shardRouter Shard router.
+     * @param transactionManager Transaction manager.
+     */
+    public JournalService(
+            final JournalRepository journalRepository,
+            final RawAccountRepository rawAccountRepository,
+            final ShardRouter shardRouter,
+            final PlatformTransactionManager transactionManager) {
+
+        this.journalRepository = journalRepository;
+        this.rawAccountRepository = rawAccountRepository;
+        this.shardRouter = shardRouter;
+
+        // Balances and the journal are read from one snapshot
+        reconcileTemplate = new TransactionTemplate(transactionManager);
+        reconcileTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        reconcileTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Reconcile account balances against the journal.
+     * 
+     * @param limit Maximum number of reported mismatches.
+     * @return Result of the reconciliation.
+     * @throws IllegalArgumentException If the limit is invalid.
+     */
+    @NotNull
+    public JournalReconciliationDto reconcile(int limit) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        if (limit < 0 || limit > MAX_MISMATCHES) {
+            throw new IllegalArgumentException(
+                    "Limit must be between 0 and " + MAX_MISMATCHES);
+        }
+
+        List<ShardResult> results = new ArrayList<>();
+        shardRouter.runOnEach(() -> results.add(reconcileTemplate.execute(status -> {
+            int shardLimit = limit - results.stream().mapToInt(r -> r.mismatches().size()).sum();
+            return new ShardResult(
+                    rawAccountRepository.count(),
+                    journalRepository.countMismatches(),
+                    journalRepository.countUnbalancedOperations(),
+                    journalRepository.findMismatches(shardLimit).stream()
+                            .map(m -> new JournalMismatchDto(m.getUserId(), m.getBalance(),
+                                    m.getJournalBalance()))
+                            .toList());
+        })));
+
+        long accounts = results.stream().mapToLong(ShardResult::accounts).sum();
+        long mismatched = results.stream().mapToLong(ShardResult::mismatched).sum();
+        long unbalanced = results.stream().mapToLong(ShardResult::unbalanced).sum();
+        var mismatches = results.stream()
+                .flatMap(r -> r.mismatches().stream())
+                .toList();
+
+        boolean consistent = mismatched == 0 && unbalanced == 0;
+        if (!consistent) {
+            LogEx.warn(log, LogEx.getThisMethodName(), "journal is inconsistent: accounts "
+                    + mismatched + ", operations " + unbalanced);
+        }
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+        return new JournalReconciliationDto(consistent, accounts, mismatched, unbalanced,
+                mismatches);
+    }
+}
@@ -0,0 +1,152 @@
+package ru.spb.tksoft.banking.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import jakarta.validation.constraints.NotNull;
+import lombok.RequiredArgsConstructor;
+import ru.spb.tksoft.banking.entity.JournalLedger;
+import ru.spb.tksoft.banking.entity.JournalOperation;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Batching writer of the double-entry journal.
+ *
+ * Entries are buffered per transaction and inserted with one JDBC batch right before the commit,
+ * inside the transaction: a rolled back operation leaves no entries, and a transaction with many
+ * operations (see {@link TransferBatchService}) pays for one round-trip. With
+ * "reWriteBatchedInserts" in the JDBC URL the batch is sent as multi-row inserts.
+ *
+ * Set-based balance autoincrement is journaled by the SQL statements themselves, see
+ * {@link ru.spb.tksoft.banking.repository.RawAccountRepository#JOURNAL_ACCRUAL}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Component
+@RequiredArgsConstructor
+public class JournalWriter {
+
+    private static final String INSERT = """
+            INSERT INTO journal (tx_id, operation, ledger, user_id, amount)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    @NotNull
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Entries of the current transaction. */
+    private final class Buffer implements TransactionSynchronization {
+
+        private final List<Object[]> rows = new ArrayList<>();
+
+        @Override
+        public void beforeCommit(final boolean readOnly) {
+
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT, rows);
+                rows.clear();
+            }
+        }
+
+        @Override
+        public void afterCompletion(final int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(JournalWriter.this);
+        }
+    }
+
+    private Buffer buffer() {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Journal is written in transactions only");
+        }
+
+        var buffer = (Buffer) TransactionSynchronizationManager.getResource(this);
+        if (buffer == null) {
+            buffer = new Buffer();
+            TransactionSynchronizationManager.bindResource(this, buffer);
+            TransactionSynchronizationManager.registerSynchronization(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Append a balanced operation: the amount moves from the debited ledger to the credited one.
+     *
+     * @param operation Operation.
+     * @param debitLedger Debited ledger.
+     * @param debitUserId User ID of the debited account, null if the ledger is not ACCOUNT.
+     * @param creditLedger Credited ledger.
+     * @param creditUserId User ID of the credited account, null if the ledger is not ACCOUNT.
+     * @param amount Amount, positive.
+     * @throws IllegalStateException If there is no transaction.
+     */
+    public void append(@NotNull final JournalOperation operation,
+            @NotNull final JournalLedger debitLedger, final Long debitUserId,
+            @NotNull final JournalLedger creditLedger, final Long creditUserId,
+            @NotNull final Money amount) {
+
+        UUID txId = UUID.randomUUID();
+        List<Object[]> rows = buffer().rows;
+        rows.add(new Object[] {txId, operation.name(), debitLedger.name(), debitUserId,
+                amount.negate().toBigDecimal()});
+        rows.add(new Object[] {txId, operation.name(), creditLedger.name(), creditUserId,
+                amount.toBigDecimal()});
+    }
+
+    /**
+     * @param userId User ID.
+     * @param amount Deposited amount.
+     */
+    public void deposit(final long userId, @NotNull final Money amount) {
+        append(JournalOperation.DEPOSIT, JournalLedger.CASH, null, JournalLedger.ACCOUNT, userId,
+                amount);
+    }
+
+    /**
+     * @param userId User ID.
+     * @param amount Withdrawn amount.
+     */
+    public void withdraw(final long userId, @NotNull final Money amount) {
+        append(JournalOperation.WITHDRAW, JournalLedger.ACCOUNT, userId, JournalLedger.CASH, null,
+                amount);
+    }
+
+    /**
+     * @param fromUserId Source user ID.
+     * @param toUserId Destination user ID.
+     * @param amount Transferred amount.
+     */
+    public void transfer(final long fromUserId, final long toUserId,
+            @NotNull final Money amount) {
+
+        append(JournalOperation.TRANSFER, JournalLedger.ACCOUNT, fromUserId,
+                JournalLedger.ACCOUNT, toUserId, amount);
+    }
+
+    /**
+     * Debit of a transfer to another shard of the database: the amount goes in flight.
+     *
+     * @param fromUserId Source user ID.
+     * @param amount Transferred amount.
+     */
+    public void transferOut(final long fromUserId, @NotNull final Money amount) {
+        append(JournalOperation.TRANSFER, JournalLedger.ACCOUNT, fromUserId,
+                JournalLedger.TRANSIT, null, amount);
+    }
+
+    /**
+     * Credit of a transfer from another shard of the database, or return of a debit: the amount
+     * comes from flight.
+     *
+     * @param toUserId Credited user ID.
+     * @param amount Transferred amount.
+     */
+    public void transferIn(final long toUserId, @NotNull final Money amount) {
+        append(JournalOperation.TRANSFER, JournalLedger.TRANSIT, null, JournalLedger.ACCOUNT,
+                toUserId, amount);
+    }
+}
@@ -1,7 +1,10 @@
 package ru.spb.tksoft.banking.service;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -12,13 +15,21 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
-import ru.spb.tksoft.banking.entity.RawAccountEntity;
-import ru.spb.tksoft.banking.repository.RawAccountRepository;
+import ru.spb.tksoft.banking.dto.RawAccountDto;
+import ru.spb.tksoft.banking.dto.maintenance.AccrualInfoDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferBatchRequestDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferBatchResultDto;
+import ru.spb.tksoft.banking.exception.OperationNotAvailableException;
+import ru.spb.tksoft.banking.service.ledger.LedgerEngine;
+import ru.spb.tksoft.banking.tools.Money;
 import ru.spb.tksoft.utils.log.LogEx;
 
 /**
  * Account service for raw "account" data. Methods without cached data.
  * 
+ * Operations run on the shard of the account, see {@link ShardRouter}; the autoincrement runs on
+ * every shard in turn.
+ * 
  * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
  */
 @Service
@@ -32,36 +43,339 @@ public class RawAccountService {
     private final Logger log = LoggerFactory.getLogger(RawAccountService.class);
 
     @NotNull
-    private final RawAccountRepository rawAccountRepository;
+    private final RawAccountServiceCached rawAccountServiceCached;
 
     @NotNull
-    private final RawAccountServiceCached rawAccountServiceCached;
+    private final AccrualEngine accrualEngine;
+
+    @NotNull
+    private final SchedulerLeaseService schedulerLeaseService;
+
+    @NotNull
+    private final TransactionRetrier transactionRetrier;
+
+    @NotNull
+    private final TransferBatchService transferBatchService;
+
+    @NotNull
+    private final IdempotencyStore idempotencyStore;
+
+    @NotNull
+    private final AccountStripes accountStripes;
+
+    @NotNull
+    private final DepositCoalescer depositCoalescer;
+
+    @NotNull
+    private final AccountAdmission accountAdmission;
+
+    @NotNull
+    private final LedgerEngine ledgerEngine;
+
+    @NotNull
+    private final ShardRouter shardRouter;
+
+    @NotNull
+    private final ShardTransferService shardTransferService;
 
     @Value("${banking.autoincrement.rate}")
     private double autoGrowRate = 0.1; // default value is 10%
 
+    @Value("${banking.autoincrement.mode:BULK}")
+    private AccrualMode autoGrowMode = AccrualMode.BULK;
+
+    /** Transaction timeout of single operations with idempotency key, seconds. */
+    private static final int SINGLE_TIMEOUT = 5;
+
+    /** Transaction timeout of batches with idempotency key, seconds. */
+    private static final int BATCH_TIMEOUT = 30;
+
+    private volatile AccrualInfoDto lastAccrualInfo = new AccrualInfoDto();
+
+    /**
+     * @return Statistics of the last autoincrement run.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    @NotNull
+    public AccrualInfoDto getLastAccrualInfo() {
+        return lastAccrualInfo;
+    }
+
+    /**
+     * Get account of the user on its shard, see {@link RawAccountServiceCached#getAccount}. In
+     * the ledger engine mode, the balance is the one of {@link LedgerEngine}: the database is
+     * behind it until the journal is written.
+     * 
+     * @param userId User ID.
+     * @return Account.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @NotNull
+    public RawAccountDto getAccount(Long userId) {
+
+        RawAccountDto account =
+                shardRouter.callFor(userId, () -> rawAccountServiceCached.getAccount(userId));
+        if (!ledgerEngine.isEnabled()) {
+            return account;
+        }
+
+        // Cached DTO is shared, so it is copied
+        return new RawAccountDto(account.getId(), account.getUserId(),
+                ledgerEngine.getBalance(userId), account.getBalanceAutoLimit());
+    }
+
+    /**
+     * Process deposit, see {@link RawAccountServiceCached#deposit}. The transaction is retried on
+     * concurrency failures, see {@link TransactionRetrier}; with the idempotency key, it is
+     * executed once, see {@link IdempotencyStore}. Without the key, the deposit may be applied
+     * together with concurrent ones, see {@link DepositCoalescer}. Operations on the account are
+     * admitted one at a time, see {@link AccountAdmission}. In the ledger engine mode, the deposit
+     * is executed by {@link LedgerEngine}.
+     * 
+     * @param userId User ID.
+     * @param amount Amount.
+     * @param idempotencyKey Idempotency key, may be null.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void deposit(Long userId, Money amount, String idempotencyKey) {
+
+        if (ledgerEngine.isEnabled()) {
+            idempotencyStore.runClaimed(userId, idempotencyKey, "deposit", List.of(amount),
+                    SINGLE_TIMEOUT, () -> ledgerEngine.deposit(userId, amount));
+            return;
+        }
+
+        shardRouter.runFor(userId, () -> {
+            // Outcome of a deposit with the key is recorded in its own transaction
+            if (idempotencyKey == null && depositCoalescer.isEnabled()) {
+                depositCoalescer.deposit(userId, amount);
+                return;
+            }
+
+            accountAdmission.run("deposit", List.of(userId), () -> transactionRetrier.run(
+                    "deposit", () -> idempotencyStore.run(userId, idempotencyKey, "deposit",
+                            List.of(amount), SINGLE_TIMEOUT,
+                            () -> rawAccountServiceCached.deposit(userId, amount))));
+        });
+    }
+
+    /**
+     * Process withdraw, see {@link RawAccountServiceCached#withdraw}. The transaction is retried
+     * on concurrency failures, see {@link TransactionRetrier}; with the idempotency key, it is
+     * executed once, see {@link IdempotencyStore}. Sub-balances of a hot account are folded if
+     * needed, see {@link AccountStripes}. Operations on the account are admitted one at a time,
+     * see {@link AccountAdmission}. In the ledger engine mode, the withdraw is executed by
+     * {@link LedgerEngine}.
+     * 
+     * @param userId User ID.
+     * @param amount Amount.
+     * @param idempotencyKey Idempotency key, may be null.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void withdraw(Long userId, Money amount, String idempotencyKey) {
+
+        if (ledgerEngine.isEnabled()) {
+            idempotencyStore.runClaimed(userId, idempotencyKey, "withdraw", List.of(amount),
+                    SINGLE_TIMEOUT, () -> ledgerEngine.withdraw(userId, amount));
+            return;
+        }
+
+        shardRouter.runFor(userId, () -> accountAdmission.run("withdraw", List.of(userId),
+                () -> transactionRetrier.run("withdraw", () -> accountStripes.debitFolding(userId,
+                        () -> idempotencyStore.run(userId, idempotencyKey, "withdraw",
+                                List.of(amount), SINGLE_TIMEOUT,
+                                () -> rawAccountServiceCached.withdraw(userId, amount))))));
+    }
+
+    /**
+     * Process transfer, see {@link RawAccountServiceCached#transfer}. The transaction is retried
+     * on concurrency failures, see {@link TransactionRetrier}; with the idempotency key, it is
+     * executed once, see {@link IdempotencyStore}. Sub-balances of a hot source account are
+     * folded if needed, see {@link AccountStripes}. Operations on both accounts are admitted one
+     * at a time, see {@link AccountAdmission}. In the ledger engine mode, the transfer is
+     * executed by {@link LedgerEngine}. Transfers between accounts on different shards are
+     * executed by {@link ShardTransferService}.
+     * 
+     * @param fromUserId From user ID.
+     * @param toUserId To user ID.
+     * @param amount Amount.
+     * @param idempotencyKey Idempotency key, may be null.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void transfer(Long fromUserId, Long toUserId, Money amount,
+            String idempotencyKey) {
+
+        if (ledgerEngine.isEnabled()) {
+            idempotencyStore.runClaimed(fromUserId, idempotencyKey, "transfer",
+                    List.of(toUserId, amount), SINGLE_TIMEOUT,
+                    () -> ledgerEngine.transfer(fromUserId, toUserId, amount));
+            return;
+        }
+
+        if (shardRouter.shardOf(fromUserId) != shardRouter.shardOf(toUserId)) {
+            shardTransferService.transfer(fromUserId, toUserId, amount, idempotencyKey);
+            return;
+        }
+
+        shardRouter.runFor(fromUserId, () -> accountAdmission.run("transfer",
+                List.of(fromUserId, toUserId), () -> transactionRetrier.run("transfer",
+                        () -> accountStripes.debitFolding(fromUserId, () -> idempotencyStore.run(
+                                fromUserId, idempotencyKey, "transfer",
+                                List.of(toUserId, amount), SINGLE_TIMEOUT,
+                                () -> rawAccountServiceCached.transfer(fromUserId, toUserId,
+                                        amount))))));
+    }
+
+    /**
+     * Process batch of transfers, see {@link TransferBatchService}. The transaction is retried on
+     * concurrency failures, see {@link TransactionRetrier}; with the idempotency key, it is
+     * executed once, see {@link IdempotencyStore}. Sub-balances of a hot source account are
+     * folded before the batch, see {@link AccountStripes}. Operations on the source account are
+     * admitted one at a time, see {@link AccountAdmission}; destinations are not, as a batch may
+     * involve any number of them.
+     * 
+     * A batch is one transaction, so its destinations are on the shard of the source, see
+     * {@link ShardRouter}. In the ledger engine mode, transfers of the batch are executed by
+     * {@link LedgerEngine} one by one and atomic batches are not available, see
+     * {@link TransferBatchService#transferBatchLedger}.
+     * 
+     * @param fromUserId From user ID.
+     * @param request Batch.
+     * @param idempotencyKey Idempotency key, may be null.
+     * @return Results of transfers.
+     * @throws OperationNotAvailableException If the batch is atomic in the ledger engine mode.
+     * @throws IllegalArgumentException If a destination is on another shard.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @NotNull
+    public TransferBatchResultDto transferBatch(Long fromUserId,
+            @NotNull TransferBatchRequestDto request, String idempotencyKey) {
+
+        if (ledgerEngine.isEnabled()) {
+            return idempotencyStore.executeClaimed(fromUserId, idempotencyKey, "transfer-batch",
+                    request, TransferBatchResultDto.class, BATCH_TIMEOUT,
+                    () -> transferBatchService.transferBatchLedger(fromUserId, request));
+        }
+
+        int shard = shardRouter.shardOf(fromUserId);
+        if (request.getItems() != null && request.getItems().stream()
+                .anyMatch(t -> t.getToUserId() != null
+                        && shardRouter.shardOf(t.getToUserId()) != shard)) {
+            throw new IllegalArgumentException(
+                    "Transfer batch destinations must be on the shard of the source account");
+        }
+
+        return shardRouter.call(shard, () -> accountAdmission.execute("transfer-batch",
+                List.of(fromUserId), () -> {
+                    if (accountStripes.getStripes(fromUserId) > 0) {
+                        transactionRetrier.run("fold", () -> accountStripes.fold(fromUserId));
+                    }
+
+                    return transactionRetrier.execute("transfer-batch",
+                            () -> idempotencyStore.execute(fromUserId, idempotencyKey,
+                                    "transfer-batch", request, TransferBatchResultDto.class,
+                                    BATCH_TIMEOUT,
+                                    () -> transferBatchService.transferBatch(fromUserId,
+                                            request)));
+                }));
+    }
+
+    /**
+     * Grow balances of all eligible accounts on the node owning the job lease, see
+     * {@link SchedulerLeaseService}. Runs without outer transaction: the lease and every mode
+     * manage their own transactions.
+     */
     @Scheduled(cron = "${banking.autoincrement.cron:0/30 * * * * ?}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     protected void autoGrow() {
 
+        if (autoGrowMode != AccrualMode.LAZY) {
+            schedulerLeaseService.runIfLeader("autoGrow", this::growAll);
+        }
+    }
+
+    /**
+     * Grow balances of all eligible accounts, shard by shard. Depending on the mode, it is either
+     * one set-based update, row-by-row or chunked processing, see {@link AccrualEngine}.
+     */
+    private void growAll() {
+
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        List<RawAccountEntity> accounts = rawAccountRepository.findAll();
         var rate = BigDecimal.valueOf(autoGrowRate);
+        List<AccrualInfoDto> shards = new ArrayList<>();
+        shardRouter.runOnEach(() -> shards.add(switch (autoGrowMode) {
+            case BULK -> growBulk(rate);
+            case ROW -> growRows(rate);
+            case CHUNKED -> growChunked(rate);
+            case LAZY -> null; // growth is materialized on write, see AccrualCalculator
+        }));
+        AccrualInfoDto info = combine(shards);
 
-        for (RawAccountEntity account : accounts) {
-            if (account.getBalance().compareTo(BigDecimal.ZERO) <= 0 ||
-                    account.getBalance().compareTo(account.getBalanceAutoLimit()) >= 0) {
-                continue;
-            }
-
-            try {
-                rawAccountServiceCached.grow(account.getUserId(), rate);
-                Thread.sleep(1000); // Sleep for a second to prevent excessive processing
-            } catch (Exception e) {
-                log.error("Error while growing account: " + account.getUserId(), e);
-            }
+        if (info != null) {
+            lastAccrualInfo = info;
+            LogEx.info(log, LogEx.getThisMethodName(),
+                    "mode: " + info.getMode()
+                            + ", accounts updated: " + info.getAffectedRows()
+                            + ", chunks: " + info.getChunks()
+                            + ", failed chunks: " + info.getFailedChunks()
+                            + ", duration, ms: " + info.getDurationMs());
         }
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
     }
+
+    /** @return Statistics of the run over all shards, null if it has not run on some. */
+    private static AccrualInfoDto combine(final List<AccrualInfoDto> shards) {
+
+        if (shards.contains(null)) {
+            return null;
+        }
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+
+        AccrualInfoDto first = shards.get(0);
+        long durationMs = 0;
+        long affectedRows = 0;
+        long chunks = 0;
+        long failedChunks = 0;
+        for (AccrualInfoDto shard : shards) {
+            durationMs += shard.getDurationMs();
+            affectedRows += shard.getAffectedRows();
+            chunks += shard.getChunks();
+            failedChunks += shard.getFailedChunks();
+        }
+        return new AccrualInfoDto(first.getMode(), first.getStartedAt(), durationMs,
+                affectedRows, chunks, failedChunks);
+    }
+
+    private AccrualInfoDto growBulk(final BigDecimal rate) {
+
+        Instant startedAt = Instant.now();
+        long started = System.nanoTime();
+
+        int updated = rawAccountServiceCached.growAll(rate);
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        return new AccrualInfoDto(AccrualMode.BULK.name(), startedAt, durationMs, updated, 1, 0);
+    }
+
+    private AccrualInfoDto growRows(final BigDecimal rate) {
+
+        AccrualInfoDto info = accrualEngine.runRows(rate);
+        if (info != null) {
+            rawAccountServiceCached.clearCaches(); // once per run
+        }
+        return info;
+    }
+
+    private AccrualInfoDto growChunked(final BigDecimal rate) {
+
+        AccrualInfoDto info = accrualEngine.run(rate);
+        if (info != null) {
+            rawAccountServiceCached.clearCaches(); // once per run
+        }
+        return info;
+    }
 }
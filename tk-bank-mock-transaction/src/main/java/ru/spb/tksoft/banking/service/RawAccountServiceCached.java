@@ -1,14 +1,15 @@
 package ru.spb.tksoft.banking.service;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.ConcurrencyFailureException;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
@@ -16,25 +17,29 @@ import org.springframework.transaction.annotation.Transactional;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import ru.spb.tksoft.banking.dto.KeysetPageDto;
 import ru.spb.tksoft.banking.dto.RawAccountDto;
 import ru.spb.tksoft.banking.entity.RawAccountEntity;
 import ru.spb.tksoft.banking.exception.InsufficientFundsException;
 import ru.spb.tksoft.banking.exception.NewBalanceLimitException;
 import ru.spb.tksoft.banking.mapper.RawAccountMapper;
 import ru.spb.tksoft.banking.repository.RawAccountRepository;
-import ru.spb.tksoft.banking.tools.PageTools;
+import ru.spb.tksoft.banking.repository.TransferResult;
+import ru.spb.tksoft.banking.tools.KeysetTools;
+import ru.spb.tksoft.banking.tools.Money;
 import ru.spb.tksoft.utils.log.LogEx;
 
 /**
  * Account service for raw "account" data. Cached methods.
  * 
+ * Every method declares its own transaction: writes run under REPEATABLE_READ on the primary,
+ * listing runs in read-only transactions, which go to the replica if it is configured, see
+ * {@link ru.spb.tksoft.banking.configuration.CommonDatabaseConfig}. Methods on one account are
+ * called on its shard, listing runs on all shards, see {@link ShardRouter}.
+ * 
  * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
  */
 @Service
-@Transactional(
-        isolation = Isolation.REPEATABLE_READ,
-        propagation = Propagation.REQUIRED,
-        timeout = 5)
 @RequiredArgsConstructor
 public class RawAccountServiceCached {
 
@@ -43,44 +48,170 @@ public class RawAccountServiceCached {
     @NotNull
     private final RawAccountRepository rawAccountRepository;
 
+    @NotNull
+    private final AccrualCalculator accrualCalculator;
+
+    @NotNull
+    private final AccountCache accountCache;
+
+    @NotNull
+    private final JournalWriter journalWriter;
+
+    @NotNull
+    private final ShardRouter shardRouter;
+
+    @NotNull
+    private final AccountStripes accountStripes;
+
     /** Clear caches. */
-    @CacheEvict(value = "account", allEntries = true)
     public void clearCaches() {
-        // ...
+        accountCache.clear();
+    }
+
+    /**
+     * Get account of the user. With lazy autoincrement, the balance is effective one and is not
+     * cached, as it changes over time. Sub-balances of hot accounts are included.
+     * 
+     * Read on the primary, not the replica: the owner reads the account right after own writes.
+     * 
+     * @param userId User ID.
+     * @return Account.
+     * @throws EntityNotFoundException If the account is not found.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, timeout = 5)
+    @NotNull
+    public RawAccountDto getAccount(Long userId) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        if (accrualCalculator.isLazy()) {
+            RawAccountEntity account = findAccount(userId);
+            return RawAccountMapper.toDto(account,
+                    accrualCalculator.effectiveBalance(account, Instant.now())
+                            .add(accountStripes.sum(userId)));
+        }
+
+        RawAccountDto dto = accountCache.getAccount(userId, () -> {
+            RawAccountEntity account = findAccount(userId);
+            return RawAccountMapper.toDto(account,
+                    account.getBalance().add(accountStripes.sum(userId)));
+        });
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPING);
+        return dto;
+    }
+
+    private RawAccountEntity findAccount(Long userId) {
+
+        return rawAccountRepository.findByUserId(userId)
+                .orElseThrow(() -> new EntityNotFoundException("Account not found"));
     }
 
     /**
-     * Get all accounts.
+     * Get all accounts with keyset pagination. With lazy autoincrement, balances are effective
+     * ones and are not cached, as they change over time. Sub-balances of hot accounts are
+     * included. Pages of all shards are merged.
      * 
-     * @return Paginated list of accounts.
+     * @param token Continuation token of the page, null for the first page.
+     * @param size Page size.
+     * @param count Count the total number of accounts.
+     * @return Page of accounts.
+     * @throws IllegalArgumentException If the token or the size is invalid.
      */
-    @Cacheable(value = "account", unless = "#result.isEmpty()",
-            key = "{#pageable.pageNumber, #pageable.pageSize, #pageable.sort}")
     @NotNull
-    public Page<RawAccountDto> getAllAccounts(Pageable pageable) {
+    public KeysetPageDto<RawAccountDto> getAllAccounts(String token, int size, boolean count) {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        List<RawAccountDto> dtos = rawAccountRepository.findAll().stream()
-                .map(RawAccountMapper::toDto).toList();
+        long lastId = KeysetTools.decodeToken(token);
+        Limit limit = KeysetTools.limitOf(size);
+
+        KeysetPageDto<RawAccountDto> page;
+        if (accrualCalculator.isLazy()) {
+            Instant now = Instant.now();
+            page = toPage(lastId, limit, size,
+                    a -> accrualCalculator.effectiveBalance(a, now));
+        } else {
+            page = accountCache.getPage(List.of(lastId, size),
+                    () -> toPage(lastId, limit, size, RawAccountEntity::getBalance));
+        }
+
+        if (count) {
+            // Cached page is shared, so the count goes to a copy
+            long total = shardRouter.readAll(rawAccountRepository::count).stream()
+                    .mapToLong(Long::longValue).sum();
+            page = new KeysetPageDto<>(page.getContent(), page.getSize(), page.getNextToken(),
+                    total);
+        }
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPING);
-        return PageTools.convertListToPage(dtos, pageable);
+        return page;
+    }
+
+    private KeysetPageDto<RawAccountDto> toPage(long lastId, Limit limit, int size,
+            Function<RawAccountEntity, Money> balance) {
+
+        List<RawAccountDto> accounts = KeysetTools.merge(shardRouter.readAll(
+                () -> toRows(lastId, limit, balance)), size, RawAccountDto::getId);
+
+        return KeysetTools.toPage(accounts, size, RawAccountDto::getId, Function.identity());
+    }
+
+    /** Rows of the page on the current shard. */
+    private List<RawAccountDto> toRows(long lastId, Limit limit,
+            Function<RawAccountEntity, Money> balance) {
+
+        List<RawAccountEntity> accounts =
+                rawAccountRepository.findByIdGreaterThanOrderByIdAsc(lastId, limit);
+        Map<Long, Money> stripes =
+                accountStripes.sum(accounts.stream().map(RawAccountEntity::getUserId).toList());
+
+        return accounts.stream()
+                .map(a -> RawAccountMapper.toDto(a, balance.apply(a)
+                        .add(stripes.getOrDefault(a.getUserId(), Money.ZERO))))
+                .toList();
     }
 
     /**
-     * Process deposit.
+     * Process deposit. Deposits to hot accounts go to sub-balances, see {@link AccountStripes}.
      * 
      * @param userId User ID.
      * @param amount Amount.
      */
-    @CacheEvict(value = "account", allEntries = true)
-    public void deposit(Long userId, BigDecimal amount) {
+    @Transactional(isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRED,
+            timeout = 5)
+    public void deposit(Long userId, Money amount) {
+        depositAll(userId, List.of(amount));
+    }
+
+    /**
+     * Process several deposits to one account with one balance update of their sum. Every deposit
+     * is journaled separately.
+     * 
+     * @param userId User ID.
+     * @param amounts Amounts.
+     * @throws IllegalArgumentException If an amount is not positive.
+     */
+    @Transactional(isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRED,
+            timeout = 5)
+    public void depositAll(Long userId, List<Money> amounts) {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        validateAmount(amount);
-        rawAccountRepository.deposit(userId, amount);
+        Money total = Money.ZERO;
+        for (Money amount : amounts) {
+            validateAmount(amount);
+            total = total.add(amount);
+        }
+
+        accountCache.evict(List.of(userId));
+        if (!accountStripes.credit(userId, total)) {
+            settleAccrual(userId);
+            rawAccountRepository.deposit(userId, total);
+        }
+        for (Money amount : amounts) {
+            journalWriter.deposit(userId, amount);
+        }
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
     }
@@ -93,12 +224,24 @@ public class RawAccountServiceCached {
      * @throws InsufficientFundsException If the amount is greater than the balance.
      * @throws ConcurrencyFailureException If the account has been concurrently modified.
      */
-    @CacheEvict(value = "account", allEntries = true)
-    public void withdraw(Long userId, BigDecimal amount) {
+    @Transactional(isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRED,
+            timeout = 5)
+    public void withdraw(Long userId, Money amount) {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
         validateAmount(amount);
+        accountCache.evict(List.of(userId));
+        settleAccrual(userId);
+        debit(userId, amount);
+        journalWriter.withdraw(userId, amount);
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+    }
+
+    /** Debit the account row; sub-balances of hot accounts are not touched. */
+    private void debit(Long userId, Money amount) {
+
         int updatedRows = rawAccountRepository.withdraw(userId, amount);
 
         if (updatedRows == 0) {
@@ -113,19 +256,31 @@ public class RawAccountServiceCached {
             throw new ConcurrencyFailureException(
                     "Concurrent modification detected for account: " + userId);
         }
-
-        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
     }
 
-    private void validateAmount(BigDecimal amount) {
+    private void validateAmount(Money amount) {
 
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+        if (!amount.isPositive()) {
             throw new IllegalArgumentException("Amount must be positive");
         }
     }
 
     /**
-     * Process transfer from one account to another.
+     * Materialize lazy autoincrement of accounts before they are written. Does nothing if the
+     * autoincrement is not lazy.
+     */
+    private void settleAccrual(Long... userIds) {
+
+        if (accrualCalculator.isLazy()) {
+            rawAccountRepository.settleAccrual(List.of(userIds),
+                    accrualCalculator.getRate(), accrualCalculator.getPeriodSeconds(),
+                    AccrualCalculator.MAX_PERIODS, Instant.now());
+        }
+    }
+
+    /**
+     * Process transfer from one account to another. Transfers to hot accounts go to
+     * sub-balances, see {@link AccountStripes}.
      * 
      * @param fromUserId From user ID.
      * @param toUserId To user ID.
@@ -133,9 +288,11 @@ public class RawAccountServiceCached {
      * @throws InsufficientFundsException If the amount is greater than the balance.
      * @throws ConcurrencyFailureException If the account has been concurrently modified.
      * @throws IllegalArgumentException If the fromAccountId and toAccountId are the same.
+     * @throws EntityNotFoundException If the source or the destination account is not found.
      */
-    @CacheEvict(value = "account", allEntries = true)
-    public void transfer(Long fromUserId, Long toUserId, BigDecimal amount) {
+    @Transactional(isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRED,
+            timeout = 5)
+    public void transfer(Long fromUserId, Long toUserId, Money amount) {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
@@ -146,24 +303,103 @@ public class RawAccountServiceCached {
             throw new IllegalArgumentException("Cannot transfer to the same account");
         }
 
-        // Withdraw from the source account
-        int withdrawResult = rawAccountRepository.withdraw(fromUserId, amount);
+        accountCache.evict(List.of(fromUserId, toUserId));
+
+        if (accountStripes.getStripes(toUserId) > 0) {
+            // Hot destination: its row is neither locked nor written
+            rawAccountRepository.lockByUserIds(List.of(fromUserId));
+            settleAccrual(fromUserId);
+            debit(fromUserId, amount);
+            accountStripes.credit(toUserId, amount);
+            journalWriter.transfer(fromUserId, toUserId, amount);
+
+            LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+            return;
+        }
+
+        if (accrualCalculator.isLazy()) {
+            // Settlement writes both accounts: lock them in a fixed order first, so that
+            // concurrent opposite transfers queue instead of deadlocking
+            rawAccountRepository.lockByUserIds(List.of(fromUserId, toUserId));
+            settleAccrual(fromUserId, toUserId);
+        }
 
-        if (withdrawResult == 0) {
-            RawAccountEntity fromAccount = rawAccountRepository.findByUserId(fromUserId)
-                    .orElseThrow(() -> new EntityNotFoundException("Source account not found"));
+        // Ordered locking, debit, credit and classification of failures in one round-trip
+        TransferResult result = rawAccountRepository.transfer(fromUserId, toUserId, amount);
 
-            if (fromAccount.getBalance().compareTo(amount) < 0) {
+        if (result.getSourceFound() == 0) {
+            throw new EntityNotFoundException("Source account not found");
+        }
+        if (result.getTargetFound() == 0) {
+            throw new EntityNotFoundException("Destination account not found");
+        }
+        if (result.getDebited() == 0) {
+            if (result.getSourceBalance().compareTo(amount.toBigDecimal()) < 0) {
                 throw new InsufficientFundsException(
                         "account with userId " + fromUserId);
             }
-
             throw new ConcurrencyFailureException(
                     "Concurrent modification detected for account: " + fromUserId);
         }
+        if (result.getCredited() == 0) {
+            // Rolls back the debit
+            throw new ConcurrencyFailureException(
+                    "Concurrent modification detected for account: " + toUserId);
+        }
+        journalWriter.transfer(fromUserId, toUserId, amount);
 
-        // Deposit into the destination account
-        rawAccountRepository.deposit(toUserId, amount);
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+    }
+
+    /**
+     * Debit of a transfer to an account on another shard, see {@link ShardTransferService}.
+     * 
+     * @param fromUserId From user ID.
+     * @param amount Amount.
+     * @throws InsufficientFundsException If the amount is greater than the balance.
+     * @throws ConcurrencyFailureException If the account has been concurrently modified.
+     * @throws EntityNotFoundException If the account is not found.
+     */
+    @Transactional(isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRED,
+            timeout = 5)
+    public void transferOut(Long fromUserId, Money amount) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        validateAmount(amount);
+        accountCache.evict(List.of(fromUserId));
+        settleAccrual(fromUserId);
+        debit(fromUserId, amount);
+        journalWriter.transferOut(fromUserId, amount);
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+    }
+
+    /**
+     * Credit of a transfer from an account on another shard, or return of its debit, see
+     * {@link ShardTransferService}. Credits to hot accounts go to sub-balances, see
+     * {@link AccountStripes}.
+     * 
+     * @param toUserId Credited user ID.
+     * @param amount Amount.
+     * @throws EntityNotFoundException If the account is not found.
+     */
+    @Transactional(isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRED,
+            timeout = 5)
+    public void transferIn(Long toUserId, Money amount) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        validateAmount(amount);
+        accountCache.evict(List.of(toUserId));
+        if (!accountStripes.credit(toUserId, amount)) {
+            if (rawAccountRepository.lockByUserIds(List.of(toUserId)).isEmpty()) {
+                throw new EntityNotFoundException("Account not found");
+            }
+            settleAccrual(toUserId);
+            rawAccountRepository.deposit(toUserId, amount);
+        }
+        journalWriter.transferIn(toUserId, amount);
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
     }
@@ -178,7 +414,8 @@ public class RawAccountServiceCached {
      * @throws ConcurrencyFailureException If the account has been concurrently modified.
      * @throws EntityNotFoundException If the account is not found.
      */
-    @CacheEvict(value = "account", allEntries = true)
+    @Transactional(isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRED,
+            timeout = 5)
     public void grow(Long userId, BigDecimal rate) {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
@@ -187,10 +424,12 @@ public class RawAccountServiceCached {
             throw new IllegalArgumentException("Rate must be positive");
         }
 
+        accountCache.evict(List.of(userId));
+
         RawAccountEntity account = rawAccountRepository.findByUserId(userId)
                 .orElseThrow(() -> new EntityNotFoundException("Account not found"));
 
-        if (account.getBalanceAutoLimit().compareTo(BigDecimal.ZERO) < 0) {
+        if (account.getBalanceAutoLimit().signum() < 0) {
             throw new IllegalArgumentException("Max limit cannot be negative");
         }
 
@@ -198,7 +437,8 @@ public class RawAccountServiceCached {
         int updated = rawAccountRepository.growBalance(userId, rate);
 
         if (updated == 0) {
-            BigDecimal newBalance = account.getBalance().multiply(BigDecimal.ONE.add(rate));
+            Money newBalance = account.getBalance()
+                    .multiply(BigDecimal.ONE.add(rate), RoundingMode.HALF_UP);
 
             if (newBalance.compareTo(account.getBalanceAutoLimit()) > 0) {
                 throw new NewBalanceLimitException();
@@ -210,4 +450,30 @@ public class RawAccountServiceCached {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
     }
+
+    /**
+     * Grow balances of all eligible accounts by a specified rate with one set-based update. Caches
+     * are cleared once for the whole run.
+     * 
+     * @param rate Rate of growth.
+     * @return Number of updated accounts.
+     * @throws IllegalArgumentException If the rate is invalid.
+     */
+    @Transactional(isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRED,
+            timeout = 5)
+    public int growAll(BigDecimal rate) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        if (rate.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+
+        accountCache.clear();
+
+        int updated = rawAccountRepository.growBalanceAll(rate);
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+        return updated;
+    }
 }
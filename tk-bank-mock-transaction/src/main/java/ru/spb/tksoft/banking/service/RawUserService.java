@@ -1,23 +1,39 @@
 package ru.spb.tksoft.banking.service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import ru.spb.tksoft.banking.dto.KeysetPageDto;
 import ru.spb.tksoft.banking.dto.RawUserDto;
 import ru.spb.tksoft.banking.mapper.RawUserMapper;
 import ru.spb.tksoft.banking.repository.RawUserRepository;
-import ru.spb.tksoft.banking.tools.PageTools;
+import ru.spb.tksoft.banking.repository.UserSearchRow;
+import ru.spb.tksoft.banking.tools.KeysetTools;
 import ru.spb.tksoft.utils.log.LogEx;
 
 /**
  * User service for raw "user" data.
  * 
+ * Users are partitioned over shards, see {@link ShardRouter}: queries run in read-only
+ * transactions on all shards, and their results are merged in the order of the query.
+ * 
  * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
  */
 @Service
@@ -29,59 +45,241 @@ public class RawUserService {
     @NotNull
     private final RawUserRepository rawUserRepository;
 
+    @NotNull
+    private final UserNameIndex userNameIndex;
+
+    @NotNull
+    private final UserBirthDateIndex userBirthDateIndex;
+
+    @NotNull
+    private final ShardRouter shardRouter;
+
+    /** Maximum end of a page merged from several shards: every shard returns rows up to it. */
+    private static final int MAX_MERGED_ROWS = 10_000;
+
+    private static final Comparator<UserSearchRow> BY_NAME =
+            Comparator.comparing(UserSearchRow::name);
+
+    private static final Comparator<UserSearchRow> BY_BIRTH_DATE =
+            Comparator.comparing(UserSearchRow::dateOfBirth)
+                    .thenComparingLong(UserSearchRow::id);
+
     /**
-     * Get all users.
+     * Get all users with keyset pagination.
      * 
-     * @return Paginated list of users.
+     * @param token Continuation token of the page, null for the first page.
+     * @param size Page size.
+     * @param count Count the total number of users.
+     * @return Page of users.
+     * @throws IllegalArgumentException If the token or the size is invalid.
      */
     @NotNull
-    public Page<RawUserDto> getAllUsers(Pageable pageable) {
+    public KeysetPageDto<RawUserDto> getAllUsers(String token, int size, boolean count) {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        List<RawUserDto> dtos = rawUserRepository.findAll().stream()
-                .map(RawUserMapper::toDto).toList();
+        long lastId = KeysetTools.decodeToken(token);
+        var limit = KeysetTools.limitOf(size);
+        List<RawUserDto> users = KeysetTools.merge(shardRouter.readAll(
+                () -> rawUserRepository.findByIdGreaterThanOrderByIdAsc(lastId, limit).stream()
+                        .map(RawUserMapper::toDto)
+                        .toList()),
+                size, RawUserDto::getId);
+        KeysetPageDto<RawUserDto> page =
+                KeysetTools.toPage(users, size, RawUserDto::getId, Function.identity());
+
+        if (count) {
+            page.setTotalElements(shardRouter.readAll(rawUserRepository::count).stream()
+                    .mapToLong(Long::longValue).sum());
+        }
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPING);
-        return PageTools.convertListToPage(dtos, pageable);
+        return page;
     }
 
     /**
-     * Find users by name%.
+     * Find users by name%. Served by {@link UserNameIndex} when it is ready, otherwise by the
+     * database: page of the repository is mapped as is, the count query runs only if requested.
      * 
-     * @return Paginated list of users.
+     * @param namePrefix Name prefix.
+     * @param pageable Page request.
+     * @param count Count the total number of found users.
+     * @return Page of users if counted, slice otherwise.
+     * @throws IllegalArgumentException If the page is too deep.
      */
     @NotNull
-    public Page<RawUserDto> findUsersByNameLike(
+    public Slice<RawUserDto> findUsersByNameLike(
             final String namePrefix,
-            final Pageable pageable) {
+            final Pageable pageable,
+            final boolean count) {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        List<RawUserDto> dtos = rawUserRepository.findByNameLike(namePrefix, pageable).stream()
-                .map(RawUserMapper::toDto).toList();
+        Optional<Slice<RawUserDto>> indexed =
+                userNameIndex.findByPrefix(namePrefix, pageable, count);
+        if (indexed.isPresent()) {
+            LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPING);
+            return indexed.get();
+        }
+
+        Slice<RawUserDto> found = find(p -> count
+                ? rawUserRepository.findByNameLike(namePrefix, p)
+                : rawUserRepository.findSliceByNameLike(namePrefix, p), pageable, BY_NAME);
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPING);
-        return PageTools.convertListToPage(dtos, pageable);
+        return found;
     }
 
     /**
-     * Find users by date of birth equal and after.
+     * Find users by date of birth equal and after. Served by {@link UserBirthDateIndex} when it is
+     * ready, otherwise by the database: page of the repository is mapped as is, the count query
+     * runs only if requested.
      * 
-     * @return Paginated list of users.
+     * @param dateOfBirth Minimal date of birth.
+     * @param pageable Page request.
+     * @param count Count the total number of found users.
+     * @return Page of users if counted, slice otherwise.
+     * @throws IllegalArgumentException If the page is too deep.
      */
     @NotNull
-    public Page<RawUserDto> findUsersByDateOfBirth(
+    public Slice<RawUserDto> findUsersByDateOfBirth(
             final LocalDate dateOfBirth,
-            final Pageable pageable) {
+            final Pageable pageable,
+            final boolean count) {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        List<RawUserDto> dtos =
-                rawUserRepository.findByBirthDateEqualAndAfter(dateOfBirth, pageable).stream()
-                        .map(RawUserMapper::toDto).toList();
+        Optional<Slice<RawUserDto>> indexed = findIndexedByDateOfBirth(
+                dateOfBirth, null, pageable, count);
+        if (indexed.isPresent()) {
+            LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPING);
+            return indexed.get();
+        }
+
+        Slice<RawUserDto> found = find(p -> count
+                ? rawUserRepository.findByBirthDateEqualAndAfter(dateOfBirth, p)
+                : rawUserRepository.findSliceByBirthDateEqualAndAfter(dateOfBirth, p),
+                pageable, BY_BIRTH_DATE);
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPING);
-        return PageTools.convertListToPage(dtos, pageable);
+        return found;
+    }
+
+    /**
+     * Find users by date of birth in range. Served by {@link UserBirthDateIndex} when it is ready,
+     * otherwise by the database.
+     * 
+     * @param from First date of birth, inclusive.
+     * @param to Last date of birth, inclusive.
+     * @param pageable Page request.
+     * @param count Count the total number of found users.
+     * @return Page of users if counted, slice otherwise.
+     * @throws IllegalArgumentException If the range is invalid or the page is too deep.
+     */
+    @NotNull
+    public Slice<RawUserDto> findUsersByDateOfBirthBetween(
+            final LocalDate from,
+            final LocalDate to,
+            final Pageable pageable,
+            final boolean count) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Start of the range must not be after its end");
+        }
+
+        Optional<Slice<RawUserDto>> indexed = findIndexedByDateOfBirth(from, to, pageable, count);
+        if (indexed.isPresent()) {
+            LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPING);
+            return indexed.get();
+        }
+
+        Slice<RawUserDto> found = find(p -> count
+                ? rawUserRepository.findByBirthDateBetween(from, to, p)
+                : rawUserRepository.findSliceByBirthDateBetween(from, to, p),
+                pageable, BY_BIRTH_DATE);
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPING);
+        return found;
+    }
+
+    /**
+     * User IDs of the page are taken from the index, users are loaded by primary key from all
+     * shards. Users removed in between are skipped.
+     */
+    private Optional<Slice<RawUserDto>> findIndexedByDateOfBirth(final LocalDate from,
+            final LocalDate to, final Pageable pageable, final boolean count) {
+
+        return userBirthDateIndex.findIds(from, to, pageable, count).map(ids -> {
+
+            Map<Long, RawUserDto> users = shardRouter.readAll(
+                    () -> rawUserRepository.findSearchRowsById(ids.getContent()).stream()
+                            .map(RawUserMapper::toDto)
+                            .toList())
+                    .stream()
+                    .flatMap(List::stream)
+                    .collect(Collectors.toMap(RawUserDto::getId, Function.identity()));
+
+            List<RawUserDto> content = ids.getContent().stream()
+                    .map(users::get)
+                    .filter(Objects::nonNull)
+                    .toList();
+
+            return ids instanceof Page<Long> page
+                    ? new PageImpl<>(content, pageable, page.getTotalElements())
+                    : new SliceImpl<>(content, pageable, ids.hasNext());
+        });
+    }
+
+    /**
+     * Run the page query on all shards and merge the pages. Every shard returns the rows up to
+     * the end of the page, so the page is cut from their merge; the total is the sum of totals
+     * if the query counts. Pages deeper than {@link #MAX_MERGED_ROWS} are rejected: keyset
+     * pagination serves them, see {@link #getAllUsers}.
+     * 
+     * @param query Page query of one shard, a page if counted, a slice otherwise.
+     * @param pageable Page request.
+     * @param order Order of the query.
+     * @return Page of users if counted, slice otherwise.
+     * @throws IllegalArgumentException If the page is too deep.
+     */
+    private Slice<RawUserDto> find(final Function<Pageable, Slice<UserSearchRow>> query,
+            final Pageable pageable, final Comparator<UserSearchRow> order) {
+
+        if (shardRouter.getShardCount() == 1) {
+            return shardRouter.readAll(() -> query.apply(pageable).map(RawUserMapper::toDto))
+                    .get(0);
+        }
+
+        if (pageable.getOffset() + pageable.getPageSize() > MAX_MERGED_ROWS) {
+            throw new IllegalArgumentException("Page must end within the first "
+                    + MAX_MERGED_ROWS + " rows with several shards");
+        }
+
+        int offset = (int) pageable.getOffset();
+        Pageable head = PageRequest.of(0, offset + pageable.getPageSize(), pageable.getSort());
+        List<Slice<UserSearchRow>> slices = shardRouter.readAll(() -> query.apply(head));
+
+        List<UserSearchRow> rows = new ArrayList<>();
+        boolean hasNext = false;
+        long total = 0;
+        for (Slice<UserSearchRow> slice : slices) {
+            rows.addAll(slice.getContent());
+            hasNext |= slice.hasNext();
+            total += slice instanceof Page<UserSearchRow> page ? page.getTotalElements() : 0;
+        }
+        rows.sort(order);
+        hasNext |= rows.size() > offset + pageable.getPageSize();
+
+        List<RawUserDto> content = rows.stream()
+                .skip(offset)
+                .limit(pageable.getPageSize())
+                .map(RawUserMapper::toDto)
+                .toList();
+
+        return slices.get(0) instanceof Page<UserSearchRow>
+                ? new PageImpl<>(content, pageable, total)
+                : new SliceImpl<>(content, pageable, hasNext);
     }
 }
@@ -2,6 +2,7 @@ package ru.spb.tksoft.banking.service;
 
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +34,10 @@ import ru.spb.tksoft.utils.log.LogEx;
 /**
  * User service for raw "user" data. Cached methods.
  * 
+ * Contacts of a user are read and written on the shard of the user, see {@link ShardRouter};
+ * lookups by contact and checks of contacts for uniqueness go to all shards. Uniqueness of
+ * contacts added concurrently to users on different shards is not enforced by the database.
+ * 
  * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
  */
 @Service
@@ -53,6 +58,9 @@ public class RawUserServiceCached {
     @NotNull
     private final CacheManager cacheManager;
 
+    @NotNull
+    private final ShardRouter shardRouter;
+
     private void clearCache(String name) {
 
         Cache cache = cacheManager.getCache(name);
@@ -84,7 +92,7 @@ public class RawUserServiceCached {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        RawUserEntity entity = rawUserRepository.findOneByEmailExact(email)
+        RawUserEntity entity = findFirst(() -> rawUserRepository.findOneByEmailExact(email))
                 .orElseThrow(() -> new EntityNotFoundException(
                         "User with given email not found"));
 
@@ -105,7 +113,7 @@ public class RawUserServiceCached {
 
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
-        RawUserEntity entity = rawUserRepository.findOneByPhoneExact(phone)
+        RawUserEntity entity = findFirst(() -> rawUserRepository.findOneByPhoneExact(phone))
                 .orElseThrow(() -> new EntityNotFoundException(
                         "User with given phone not found"));
 
@@ -127,8 +135,9 @@ public class RawUserServiceCached {
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
         long userId = user.userId();
-        Set<UserContact> emails = rawEmailDataRepository.findByUserId(userId)
-                .stream().collect(Collectors.toSet());
+        Set<UserContact> emails = shardRouter.read(userId,
+                () -> rawEmailDataRepository.findByUserId(userId).stream()
+                        .collect(Collectors.toSet()));
 
         return RawUserMapper.toDto(RawUserMapper.TITLE_EMAILS, userId, emails);
     }
@@ -145,8 +154,9 @@ public class RawUserServiceCached {
         LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
 
         long userId = user.userId();
-        Set<UserContact> phones = rawPhoneDataRepository.findByUserId(userId)
-                .stream().collect(Collectors.toSet());
+        Set<UserContact> phones = shardRouter.read(userId,
+                () -> rawPhoneDataRepository.findByUserId(userId).stream()
+                        .collect(Collectors.toSet()));
 
         return RawUserMapper.toDto(RawUserMapper.TITLE_PHONES, userId, phones);
     }
@@ -161,13 +171,13 @@ public class RawUserServiceCached {
     public RawContactItemDto addEmail(final JwtUser user, final String email) {
 
         long userId = user.userId();
-        Optional<RawEmailDataEntity> entity = rawEmailDataRepository.findEmailExact(email);
-        if (entity.isPresent()) {
+        if (findFirst(() -> rawEmailDataRepository.findEmailExact(email)).isPresent()) {
             throw new AlreadyExistsException("Email already exists");
         }
 
         RawEmailDataEntity newEmail = new RawEmailDataEntity(userId, email);
-        return RawUserMapper.toDto(rawEmailDataRepository.save(newEmail));
+        return shardRouter.callFor(userId,
+                () -> RawUserMapper.toDto(rawEmailDataRepository.save(newEmail)));
     }
 
     /**
@@ -180,13 +190,13 @@ public class RawUserServiceCached {
     public RawContactItemDto addPhone(final JwtUser user, final String phone) {
 
         long userId = user.userId();
-        Optional<RawPhoneDataEntity> entity = rawPhoneDataRepository.findPhoneExact(phone);
-        if (entity.isPresent()) {
+        if (findFirst(() -> rawPhoneDataRepository.findPhoneExact(phone)).isPresent()) {
             throw new AlreadyExistsException("Phone already exists");
         }
 
         var newPhone = new RawPhoneDataEntity(userId, phone);
-        return RawUserMapper.toDto(rawPhoneDataRepository.save(newPhone));
+        return shardRouter.callFor(userId,
+                () -> RawUserMapper.toDto(rawPhoneDataRepository.save(newPhone)));
     }
 
     /**
@@ -198,18 +208,20 @@ public class RawUserServiceCached {
     public void removeEmail(final JwtUser user, final long emailId) {
 
         long userId = user.userId();
-        RawEmailDataEntity entity = rawEmailDataRepository.findById(emailId)
-                .orElseThrow(() -> new EntityNotFoundException("Email not found"));
+        shardRouter.runFor(userId, () -> {
+            RawEmailDataEntity entity = rawEmailDataRepository.findById(emailId)
+                    .orElseThrow(() -> new EntityNotFoundException("Email not found"));
 
-        if (entity.getUserId() != userId) {
-            throw new ObjectNotOwnedException("Email does not belong to user");
-        }
+            if (entity.getUserId() != userId) {
+                throw new ObjectNotOwnedException("Email does not belong to user");
+            }
 
-        if (rawEmailDataRepository.countContacts(userId) <= 1) {
-            throw new LastObjectException("Can't delete the last email");
-        }
+            if (rawEmailDataRepository.countContacts(userId) <= 1) {
+                throw new LastObjectException("Can't delete the last email");
+            }
 
-        rawEmailDataRepository.delete(entity);
+            rawEmailDataRepository.delete(entity);
+        });
     }
 
     /**
@@ -221,18 +233,20 @@ public class RawUserServiceCached {
     public void removePhone(final JwtUser user, final long phoneId) {
 
         long userId = user.userId();
-        RawPhoneDataEntity entity = rawPhoneDataRepository.findById(phoneId)
-                .orElseThrow(() -> new EntityNotFoundException("Phone not found"));
+        shardRouter.runFor(userId, () -> {
+            RawPhoneDataEntity entity = rawPhoneDataRepository.findById(phoneId)
+                    .orElseThrow(() -> new EntityNotFoundException("Phone not found"));
 
-        if (rawEmailDataRepository.countContacts(userId) <= 1) {
-            throw new LastObjectException("Can't delete the last email");
-        }
+            if (rawEmailDataRepository.countContacts(userId) <= 1) {
+                throw new LastObjectException("Can't delete the last email");
+            }
 
-        if (entity.getUserId() != userId) {
-            throw new ObjectNotOwnedException("Phone does not belong to user");
-        }
+            if (entity.getUserId() != userId) {
+                throw new ObjectNotOwnedException("Phone does not belong to user");
+            }
 
-        rawPhoneDataRepository.delete(entity);
+            rawPhoneDataRepository.delete(entity);
+        });
     }
 
     /**
@@ -245,15 +259,17 @@ public class RawUserServiceCached {
             final String newEmail) {
 
         long userId = user.userId();
-        RawEmailDataEntity entity = rawEmailDataRepository.findById(emailId)
-                .orElseThrow(() -> new EntityNotFoundException("Email not found"));
+        return shardRouter.callFor(userId, () -> {
+            RawEmailDataEntity entity = rawEmailDataRepository.findById(emailId)
+                    .orElseThrow(() -> new EntityNotFoundException("Email not found"));
 
-        if (entity.getUserId() != userId) {
-            throw new ObjectNotOwnedException("Email does not belong to user");
-        }
+            if (entity.getUserId() != userId) {
+                throw new ObjectNotOwnedException("Email does not belong to user");
+            }
 
-        entity.setContactValue(newEmail);
-        return RawUserMapper.toDto(rawEmailDataRepository.save(entity));
+            entity.setContactValue(newEmail);
+            return RawUserMapper.toDto(rawEmailDataRepository.save(entity));
+        });
     }
 
     /**
@@ -266,14 +282,24 @@ public class RawUserServiceCached {
             final String newPhone) {
 
         long userId = user.userId();
-        RawPhoneDataEntity entity = rawPhoneDataRepository.findById(phoneId)
-                .orElseThrow(() -> new EntityNotFoundException("Phone not found"));
+        return shardRouter.callFor(userId, () -> {
+            RawPhoneDataEntity entity = rawPhoneDataRepository.findById(phoneId)
+                    .orElseThrow(() -> new EntityNotFoundException("Phone not found"));
 
-        if (entity.getUserId() != userId) {
-            throw new ObjectNotOwnedException("Phone does not belong to user");
-        }
+            if (entity.getUserId() != userId) {
+                throw new ObjectNotOwnedException("Phone does not belong to user");
+            }
+
+            entity.setContactValue(newPhone);
+            return RawUserMapper.toDto(rawPhoneDataRepository.save(entity));
+        });
+    }
+
+    /** @return Result of the lookup on the first shard where it is found. */
+    private <T> Optional<T> findFirst(final Supplier<Optional<T>> lookup) {
 
-        entity.setContactValue(newPhone);
-        return RawUserMapper.toDto(rawPhoneDataRepository.save(entity));
+        return shardRouter.readAll(lookup).stream()
+                .flatMap(Optional::stream)
+                .findFirst();
     }
 }
@@ -0,0 +1,213 @@
+package ru.spb.tksoft.banking.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.dto.maintenance.SchedulerLeaseDto;
+import ru.spb.tksoft.banking.repository.SchedulerLeaseRepository;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Single-leader execution of scheduled jobs on several nodes.
+ *
+ * Every job has a lease row owned by one node until it expires. On every tick the owner renews
+ * the lease and runs the job, other nodes skip the tick. If the owner fails, its lease expires
+ * and the first node ticking after that takes over. On PostgreSQL, the lease check is guarded
+ * by a transaction-level advisory lock, so that contending nodes do not queue on the lease row;
+ * on other databases (H2 in tests) the conditional update alone decides.
+ *
+ * Lease TTL must be greater than the job period and the longest job run. Lease times are taken
+ * from node clocks, which are expected to be synchronized.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class SchedulerLeaseService {
+
+    private final Logger log = LoggerFactory.getLogger(SchedulerLeaseService.class);
+
+    /** High half of advisory lock keys, to keep them apart from other users of advisory locks. */
+    private static final long ADVISORY_LOCK_NAMESPACE = 0x746b62L; // "tkb"
+
+    @NotNull
+    private final SchedulerLeaseRepository schedulerLeaseRepository;
+
+    @NotNull
+    private final DataSource dataSource;
+
+    @NotNull
+    private final TransactionTemplate transactionTemplate;
+
+    @NotBlank
+    private final String nodeId;
+
+    @NotNull
+    private final Duration leaseTtl;
+
+    private volatile Boolean advisoryLocksSupported;
+
+    /**
+     * Constructor.
+     *
+     * @param schedulerLeaseRepository Lease repository.
+     * @param dataSource Bank datasource.
+     * @param transactionManager Transaction manager.
+     * @param nodeId ID of this node, host name and random suffix if empty.
+     * @param leaseTtl Lease TTL.
+     */
+    public SchedulerLeaseService(
+            final SchedulerLeaseRepository schedulerLeaseRepository,
+            final DataSource dataSource,
+            final PlatformTransactionManager transactionManager,
+            @Value("${banking.scheduler.node-id:}") final String nodeId,
+            @Value("${banking.scheduler.lease-ttl:90s}") final Duration leaseTtl) {
+
+        if (leaseTtl.isNegative() || leaseTtl.isZero()) {
+            throw new IllegalArgumentException("Lease TTL must be positive");
+        }
+
+        this.schedulerLeaseRepository = schedulerLeaseRepository;
+        this.dataSource = dataSource;
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+        this.leaseTtl = leaseTtl;
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setTimeout(5);
+    }
+
+    private static String defaultNodeId() {
+
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * @return ID of this node.
+     */
+    @NotBlank
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Release leases of this node on shutdown, so that other nodes take over without waiting for
+     * the TTL.
+     */
+    @PreDestroy
+    public void releaseAll() {
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> schedulerLeaseRepository
+                    .releaseAll(nodeId, Instant.now()));
+        } catch (Exception e) {
+            log.warn("Cannot release scheduler leases of node " + nodeId, e);
+        }
+    }
+
+    /**
+     * Run the job if this node owns or takes over its lease.
+     *
+     * @param jobName Job name.
+     * @param job Job.
+     * @return True if the job has been run on this node.
+     */
+    public boolean runIfLeader(@NotBlank final String jobName, @NotNull final Runnable job) {
+
+        if (!tryAcquire(jobName)) {
+            LogEx.trace(log, LogEx.getThisMethodName(), jobName, "lease is owned by other node");
+            return false;
+        }
+
+        job.run();
+        return true;
+    }
+
+    /**
+     * Renew the lease of the job or take it over if it's free.
+     *
+     * @param jobName Job name.
+     * @return True if the lease is owned by this node.
+     */
+    public boolean tryAcquire(@NotBlank final String jobName) {
+
+        boolean advisory = isAdvisoryLocksSupported();
+
+        Boolean acquired;
+        try {
+            acquired = transactionTemplate.execute(status -> {
+
+                if (advisory
+                        && !schedulerLeaseRepository.tryAdvisoryXactLock(advisoryKey(jobName))) {
+                    return false; // other node is checking the lease right now
+                }
+
+                Instant now = Instant.now();
+                Instant expiresAt = now.plus(leaseTtl);
+
+                return schedulerLeaseRepository.claim(jobName, nodeId, now, expiresAt) > 0
+                        || schedulerLeaseRepository.insertIfAbsent(jobName, nodeId, now,
+                                expiresAt) > 0;
+            });
+        } catch (DataIntegrityViolationException e) {
+            acquired = false; // other node has created the lease at the same time
+        }
+
+        return Boolean.TRUE.equals(acquired);
+    }
+
+    /**
+     * @return Leases of all jobs.
+     */
+    @NotNull
+    public List<SchedulerLeaseDto> getLeases() {
+
+        Instant now = Instant.now();
+        return schedulerLeaseRepository.findAll().stream()
+                .map(lease -> new SchedulerLeaseDto(lease.getJobName(), lease.getOwnerId(),
+                        lease.getAcquiredAt(), lease.getRenewedAt(), lease.getExpiresAt(),
+                        lease.getExpiresAt().isBefore(now),
+                        nodeId.equals(lease.getOwnerId())))
+                .toList();
+    }
+
+    private static long advisoryKey(final String jobName) {
+        return (ADVISORY_LOCK_NAMESPACE << 32) | (jobName.hashCode() & 0xffffffffL);
+    }
+
+    private boolean isAdvisoryLocksSupported() {
+
+        if (advisoryLocksSupported == null) {
+            try (Connection connection = dataSource.getConnection()) {
+                advisoryLocksSupported = "PostgreSQL".equalsIgnoreCase(
+                        connection.getMetaData().getDatabaseProductName());
+            } catch (SQLException e) {
+                log.warn("Cannot detect database, advisory locks are not used", e);
+                return false;
+            }
+        }
+        return advisoryLocksSupported;
+    }
+}
@@ -0,0 +1,227 @@
+package ru.spb.tksoft.banking.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.configuration.ShardRoutingDataSource;
+import ru.spb.tksoft.banking.tools.HashTools;
+import ru.spb.tksoft.banking.tools.ShardContext;
+
+/**
+ * Routing of work to shards of the database.
+ *
+ * A user, the account, contacts, sub-balances, journal entries and idempotency keys of the user
+ * live on the shard chosen by the hash of the user ID. IDs of users and accounts are unique over
+ * all shards: rows moved to a shard keep their IDs. The number of shards is fixed, as moving
+ * users between shards is an offline operation.
+ *
+ * Work on one user runs on its shard, see {@link #callFor(long, Supplier)}; lists and searches
+ * are scattered over all shards and merged, see {@link #readAll(Supplier)}; scheduled jobs run
+ * on every shard in turn, see {@link #runOnEach(Runnable)}. Transfers between shards are
+ * described in {@link ShardTransferService}. Asynchronous transfers are queued on the shard of
+ * the source account. The data not partitioned by users, leases of jobs, lives on the first
+ * shard.
+ *
+ * The ledger engine keeps balances of one database and is not supported with several shards.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class ShardRouter {
+
+    private final int shardCount;
+
+    @NotNull
+    private final TransactionTemplate readTemplate;
+
+    /** Executor of scattered reads, null with one shard. */
+    private final ExecutorService executor;
+
+    /**
+     * Constructor.
+     *
+     * @param shards Shards.
+     * @param transactionManager Transaction manager.
+     * @param ledgerEngineEnabled Balance operations are executed by the ledger engine.
+     * @throws IllegalArgumentException If the ledger engine is enabled with several shards.
+     */
+    public ShardRouter(
+            @Qualifier("bankShards") final ShardRoutingDataSource shards,
+            final PlatformTransactionManager transactionManager,
+            @Value("${banking.ledger-engine.enabled:false}") final boolean ledgerEngineEnabled) {
+
+        shardCount = shards.getShardCount();
+        if (ledgerEngineEnabled && shardCount > 1) {
+            throw new IllegalArgumentException("Ledger engine does not support several shards");
+        }
+
+        // Replica of the first shard serves these reads if configured
+        readTemplate = new TransactionTemplate(transactionManager);
+        readTemplate.setReadOnly(true);
+        readTemplate.setTimeout(5);
+
+        if (shardCount > 1) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "shard-read-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    /** Stop readers. */
+    @PreDestroy
+    public void shutdown() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Number of shards.
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @param userId User ID.
+     * @return Shard of the user.
+     */
+    public int shardOf(final long userId) {
+        return HashTools.bucketOf(userId, shardCount);
+    }
+
+    /**
+     * Execute the action on the shard, see {@link ShardContext#call(int, Supplier)}.
+     *
+     * @param shard Shard.
+     * @param action Action, manages its own transactions.
+     * @param <T> Type of the result.
+     * @return Result of the action.
+     * @throws IllegalStateException If a transaction on another shard is active.
+     */
+    public <T> T call(final int shard, @NotNull final Supplier<T> action) {
+        return ShardContext.call(shard, action);
+    }
+
+    /**
+     * Run the action on the shard, see {@link ShardContext#call(int, Supplier)}.
+     *
+     * @param shard Shard.
+     * @param action Action, manages its own transactions.
+     * @throws IllegalStateException If a transaction on another shard is active.
+     */
+    public void run(final int shard, @NotNull final Runnable action) {
+
+        ShardContext.call(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Execute the action on the shard of the user.
+     *
+     * @param userId User ID.
+     * @param action Action, manages its own transactions.
+     * @param <T> Type of the result.
+     * @return Result of the action.
+     * @throws IllegalStateException If a transaction on another shard is active.
+     */
+    public <T> T callFor(final long userId, @NotNull final Supplier<T> action) {
+        return call(shardOf(userId), action);
+    }
+
+    /**
+     * Run the action on the shard of the user.
+     *
+     * @param userId User ID.
+     * @param action Action, manages its own transactions.
+     * @throws IllegalStateException If a transaction on another shard is active.
+     */
+    public void runFor(final long userId, @NotNull final Runnable action) {
+        run(shardOf(userId), action);
+    }
+
+    /**
+     * Execute the query in a read-only transaction on the shard of the user.
+     *
+     * @param userId User ID.
+     * @param query Query.
+     * @param <T> Type of the result.
+     * @return Result of the query.
+     * @throws IllegalStateException If a transaction on another shard is active.
+     */
+    public <T> T read(final long userId, @NotNull final Supplier<T> query) {
+        return callFor(userId, () -> readTemplate.execute(status -> query.get()));
+    }
+
+    /**
+     * Execute the query in read-only transactions on all shards, concurrently.
+     *
+     * @param query Query.
+     * @param <T> Type of the result.
+     * @return Results of the query by shard.
+     */
+    @NotNull
+    public <T> List<T> readAll(@NotNull final Supplier<T> query) {
+
+        if (executor == null) {
+            return Collections.singletonList(
+                    call(0, () -> readTemplate.execute(status -> query.get())));
+        }
+
+        List<CompletableFuture<T>> futures = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> call(shard, () -> readTemplate.execute(status -> query.get())),
+                    executor));
+        }
+
+        List<T> results = new ArrayList<>(shardCount);
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Run the action on every shard in turn, in the current thread.
+     *
+     * @param action Action, manages its own transactions.
+     * @throws IllegalStateException If a transaction is active.
+     */
+    public void runOnEach(@NotNull final Runnable action) {
+
+        for (int i = 0; i < shardCount; i++) {
+            run(i, action);
+        }
+    }
+}
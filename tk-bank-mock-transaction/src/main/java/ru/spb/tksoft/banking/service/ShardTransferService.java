@@ -0,0 +1,348 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.entity.ShardTransferEntity;
+import ru.spb.tksoft.banking.entity.ShardTransferStatus;
+import ru.spb.tksoft.banking.exception.InsufficientFundsException;
+import ru.spb.tksoft.banking.repository.RawAccountRepository;
+import ru.spb.tksoft.banking.repository.ShardTransferRepository;
+import ru.spb.tksoft.banking.tools.Money;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Transfers between accounts on different shards of the database, see {@link ShardRouter}.
+ *
+ * One transaction cannot span two databases, so a transfer takes three local transactions, each
+ * safe to repeat:
+ * <ol>
+ * <li>prepare, on the source shard: the debit and its record as PREPARED;</li>
+ * <li>apply, on the destination shard: the credit and its record as APPLIED, unless the record
+ * exists already;</li>
+ * <li>commit, on the source shard: the record becomes COMMITTED.</li>
+ * </ol>
+ * The client is answered after the first step: from then on the money is bound to arrive. If the
+ * node fails or the destination shard is unavailable after the first step, the recovery job
+ * completes prepared transfers older than the delay. If the destination account is gone, the
+ * debit is returned and the transfer becomes ABORTED.
+ *
+ * Until the second step the money is in flight: journals of both shards book it against the
+ * TRANSIT ledger, so every shard stays balanced, and the TRANSIT ledger over all shards sums to
+ * the prepared amounts.
+ *
+ * Metrics: "banking.shard.transfer" counts transfers by outcome of the attempt to complete them.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class ShardTransferService {
+
+    private final Logger log = LoggerFactory.getLogger(ShardTransferService.class);
+
+    private static final String METRIC_TRANSFERS = "banking.shard.transfer";
+
+    /** Transaction timeout of the debit with idempotency key, seconds. */
+    private static final int PREPARE_TIMEOUT = 5;
+
+    @NotNull
+    private final ShardRouter shardRouter;
+
+    @NotNull
+    private final ShardTransferRepository shardTransferRepository;
+
+    @NotNull
+    private final RawAccountRepository rawAccountRepository;
+
+    @NotNull
+    private final RawAccountServiceCached rawAccountServiceCached;
+
+    @NotNull
+    private final IdempotencyStore idempotencyStore;
+
+    @NotNull
+    private final TransactionRetrier transactionRetrier;
+
+    @NotNull
+    private final AccountStripes accountStripes;
+
+    @NotNull
+    private final AccountAdmission accountAdmission;
+
+    @NotNull
+    private final SchedulerLeaseService schedulerLeaseService;
+
+    @NotNull
+    private final TransactionTemplate transactionTemplate;
+
+    @NotNull
+    private final Duration recoveryDelay;
+
+    private final int batchSize;
+
+    @NotNull
+    private final Duration retention;
+
+    @NotNull
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructor.
+     *
+     * @param shardRouter Shard router.
+     * @param shardTransferRepository Transfer repository.
+     * @param rawAccountRepository Account repository.
+     * @param rawAccountServiceCached Account service debiting and crediting accounts.
+     * @param idempotencyStore Store of debits with idempotency key.
+     * @param transactionRetrier Retrier of transactions on concurrency failures.
+     * @param accountStripes Sub-balances of hot accounts.
+     * @param accountAdmission Admission of operations on accounts.
+     * @param schedulerLeaseService Lease service for the recovery job.
+     * @param transactionManager Transaction manager.
+     * @param recoveryDelay Age of prepared transfers completed by the recovery job.
+     * @param batchSize Number of transfers completed or deleted at once.
+     * @param retention Time finished transfers are kept.
+     * @param meterRegistry Meter registry for transfer metrics.
+     */
+    public ShardTransferService(
+            final ShardRouter shardRouter,
+            final ShardTransferRepository shardTransferRepository,
+            final RawAccountRepository rawAccountRepository,
+            final RawAccountServiceCached rawAccountServiceCached,
+            final IdempotencyStore idempotencyStore,
+            final TransactionRetrier transactionRetrier,
+            final AccountStripes accountStripes,
+            final AccountAdmission accountAdmission,
+            final SchedulerLeaseService schedulerLeaseService,
+            final PlatformTransactionManager transactionManager,
+            @Value("${banking.sharding.recovery-delay:1m}") final Duration recoveryDelay,
+            @Value("${banking.sharding.batch-size:100}") final int batchSize,
+            @Value("${banking.sharding.retention:7d}") final Duration retention,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (recoveryDelay.isNegative() || batchSize < 1 || retention.isNegative()) {
+            throw new IllegalArgumentException("Invalid shard transfer settings");
+        }
+
+        this.shardRouter = shardRouter;
+        this.shardTransferRepository = shardTransferRepository;
+        this.rawAccountRepository = rawAccountRepository;
+        this.rawAccountServiceCached = rawAccountServiceCached;
+        this.idempotencyStore = idempotencyStore;
+        this.transactionRetrier = transactionRetrier;
+        this.accountStripes = accountStripes;
+        this.accountAdmission = accountAdmission;
+        this.schedulerLeaseService = schedulerLeaseService;
+        this.recoveryDelay = recoveryDelay;
+        this.batchSize = batchSize;
+        this.retention = retention;
+
+        // Same settings as for the account services
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        transactionTemplate.setTimeout(5);
+
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    /**
+     * Transfer between accounts on different shards. Returns once the source account is debited;
+     * the destination account is credited right after that or by the recovery job.
+     *
+     * @param fromUserId From user ID.
+     * @param toUserId To user ID.
+     * @param amount Amount.
+     * @param idempotencyKey Idempotency key, may be null.
+     * @throws IllegalArgumentException If the amount is not positive or accounts are on the same
+     *         shard.
+     * @throws EntityNotFoundException If an account is not found.
+     * @throws InsufficientFundsException If there are not enough funds.
+     */
+    public void transfer(final long fromUserId, final long toUserId,
+            @NotNull final Money amount, final String idempotencyKey) {
+
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        int source = shardRouter.shardOf(fromUserId);
+        if (source == shardRouter.shardOf(toUserId)) {
+            throw new IllegalArgumentException("Accounts are on the same shard");
+        }
+
+        if (shardRouter.read(toUserId,
+                () -> rawAccountRepository.findByUserId(toUserId).isEmpty())) {
+            throw new EntityNotFoundException("Destination account not found");
+        }
+
+        // Set once the debit is committed. Stays null if the debit is replayed by the
+        // idempotency key (its first call completes it) or if every attempt is rolled back.
+        ShardTransferEntity[] prepared = new ShardTransferEntity[1];
+        shardRouter.run(source, () -> accountAdmission.run("transfer", List.of(fromUserId),
+                () -> transactionRetrier.run("transfer-out", () -> {
+                    prepared[0] = null;
+                    accountStripes.debitFolding(fromUserId,
+                            () -> idempotencyStore.run(fromUserId, idempotencyKey, "transfer",
+                                    List.of(toUserId, amount), PREPARE_TIMEOUT,
+                                    () -> prepare(fromUserId, toUserId, amount, prepared)));
+                })));
+
+        if (prepared[0] != null) {
+            complete(prepared[0]);
+        }
+    }
+
+    /**
+     * Debit in the transaction of the caller, or in its own one. The transfer is passed on after
+     * commit of the outermost transaction: the caller's one may still be rolled back.
+     */
+    private void prepare(final long fromUserId, final long toUserId, final Money amount,
+            final ShardTransferEntity[] prepared) {
+
+        var transfer = ShardTransferEntity.builder()
+                .id(UUID.randomUUID())
+                .fromUserId(fromUserId)
+                .toUserId(toUserId)
+                .amount(amount)
+                .status(ShardTransferStatus.PREPARED)
+                .createdAt(Instant.now())
+                .build();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            rawAccountServiceCached.transferOut(fromUserId, amount);
+            shardTransferRepository.prepare(transfer.getId(), fromUserId, toUserId, amount,
+                    transfer.getCreatedAt());
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            prepared[0] = transfer;
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Apply and commit a prepared transfer; failures are left to the recovery job.
+     *
+     * @return True if the transfer is finished.
+     */
+    private boolean complete(final ShardTransferEntity transfer) {
+
+        try {
+            boolean applied = shardRouter.callFor(transfer.getToUserId(), () -> accountAdmission
+                    .execute("transfer-in", List.of(transfer.getToUserId()),
+                            () -> transactionRetrier.execute("transfer-in", () -> apply(
+                                    transfer))));
+
+            finish(transfer, applied ? ShardTransferStatus.COMMITTED
+                    : ShardTransferStatus.ABORTED);
+            return true;
+
+        } catch (RuntimeException e) {
+            LogEx.warn(log, LogEx.getThisMethodName(), transfer.getId(), e.getMessage());
+            meterRegistry.counter(METRIC_TRANSFERS, "outcome", "delayed").increment();
+            return false;
+        }
+    }
+
+    /** @return False if the destination account is not found. */
+    private boolean apply(final ShardTransferEntity transfer) {
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (shardTransferRepository.apply(transfer.getId(), transfer.getFromUserId(),
+                        transfer.getToUserId(), transfer.getAmount(), Instant.now()) > 0) {
+                    rawAccountServiceCached.transferIn(transfer.getToUserId(),
+                            transfer.getAmount());
+                }
+            });
+            return true;
+        } catch (EntityNotFoundException e) {
+            return false;
+        }
+    }
+
+    /** Commit, or abort returning the debit, on the source shard. */
+    private void finish(final ShardTransferEntity transfer, final ShardTransferStatus status) {
+
+        shardRouter.runFor(transfer.getFromUserId(), () -> transactionRetrier.run(
+                "transfer-" + status.name().toLowerCase(),
+                () -> transactionTemplate.executeWithoutResult(tx -> {
+                    if (shardTransferRepository.finish(transfer.getId(), status.name(),
+                            Instant.now()) > 0 && status == ShardTransferStatus.ABORTED) {
+                        rawAccountServiceCached.transferIn(transfer.getFromUserId(),
+                                transfer.getAmount());
+                    }
+                })));
+
+        meterRegistry.counter(METRIC_TRANSFERS, "outcome", status.name()).increment();
+        if (status == ShardTransferStatus.ABORTED) {
+            LogEx.warn(log, LogEx.getThisMethodName(), transfer.getId(),
+                    "destination account not found, debit returned");
+        }
+    }
+
+    /**
+     * Complete transfers prepared before the delay and delete old finished ones, on every shard,
+     * on the node owning the job lease.
+     */
+    @Scheduled(cron = "${banking.sharding.recovery-cron:0/30 * * * * ?}")
+    public void recover() {
+        schedulerLeaseService.runIfLeader("shardTransferRecovery",
+                () -> shardRouter.runOnEach(this::recoverShard));
+    }
+
+    private void recoverShard() {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        Instant now = Instant.now();
+        List<ShardTransferEntity> transfers;
+        int completed = 0;
+        do {
+            transfers = transactionTemplate.execute(status -> shardTransferRepository
+                    .findPrepared(now.minus(recoveryDelay), batchSize));
+            if (transfers == null) {
+                break;
+            }
+            for (ShardTransferEntity transfer : transfers) {
+                if (!complete(transfer)) {
+                    // Destination shard is likely unavailable, the next run retries
+                    transfers = List.of();
+                    break;
+                }
+                completed++;
+            }
+        } while (transfers.size() == batchSize);
+
+        Instant finishedBefore = now.minus(retention);
+        int deleted;
+        do {
+            Integer count = transactionTemplate.execute(status -> shardTransferRepository
+                    .deleteFinished(finishedBefore, batchSize));
+            deleted = count != null ? count : 0;
+        } while (deleted == batchSize);
+
+        if (completed > 0) {
+            LogEx.info(log, LogEx.getThisMethodName(), "prepared transfers completed: "
+                    + completed);
+        }
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+    }
+}
@@ -0,0 +1,184 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Re-execution of whole transactions failed with serialization failures and deadlocks, that is
+ * {@link ConcurrencyFailureException} and its subclasses.
+ *
+ * Attempts are separated by exponential backoff with full jitter: a random pause up to the
+ * initial backoff doubled on every attempt, but not above the maximum backoff. Retries are
+ * limited by a shared budget: every call adds a fraction of a retry to it, every retry takes a
+ * whole one, so under persistent contention retries are a bounded share of the load instead of
+ * multiplying it.
+ *
+ * The action must start and commit its own transaction. Called inside a transaction, the action
+ * is executed once without retries: a part of the outer transaction cannot be re-executed.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class TransactionRetrier {
+
+    private final Logger log = LoggerFactory.getLogger(TransactionRetrier.class);
+
+    /** Budget units of one retry. */
+    private static final long RETRY_COST = 1000;
+
+    private static final String METRIC_ATTEMPTS = "banking.transaction.retry.attempts";
+    private static final String METRIC_RECOVERED = "banking.transaction.retry.recovered";
+    private static final String METRIC_GIVE_UPS = "banking.transaction.retry.give-ups";
+
+    private final int maxAttempts;
+
+    private final long initialBackoffMs;
+
+    private final long maxBackoffMs;
+
+    /** Budget units added by every call. */
+    private final long budgetDeposit;
+
+    /** Maximum budget, units. */
+    private final long budgetMax;
+
+    private final AtomicLong budget;
+
+    @NotNull
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructor.
+     *
+     * @param maxAttempts Maximum number of attempts, including the first one.
+     * @param initialBackoff Backoff of the first retry.
+     * @param maxBackoff Maximum backoff.
+     * @param budgetRatio Retries allowed per call, on average.
+     * @param budgetMax Maximum number of retries saved in the budget.
+     * @param meterRegistry Meter registry for retry metrics.
+     */
+    public TransactionRetrier(
+            @Value("${banking.transaction-retry.max-attempts:5}") final int maxAttempts,
+            @Value("${banking.transaction-retry.initial-backoff:10ms}")
+            final Duration initialBackoff,
+            @Value("${banking.transaction-retry.max-backoff:500ms}") final Duration maxBackoff,
+            @Value("${banking.transaction-retry.budget-ratio:0.1}") final double budgetRatio,
+            @Value("${banking.transaction-retry.budget-max:100}") final int budgetMax,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be positive");
+        }
+        if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("Invalid backoff");
+        }
+        if (budgetRatio < 0 || budgetMax < 0) {
+            throw new IllegalArgumentException("Retry budget cannot be negative");
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoff.toMillis();
+        this.maxBackoffMs = maxBackoff.toMillis();
+        this.budgetDeposit = Math.round(budgetRatio * RETRY_COST);
+        this.budgetMax = budgetMax * RETRY_COST;
+        this.budget = new AtomicLong(this.budgetMax);
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    /**
+     * Execute the action, retrying it on concurrency failures.
+     *
+     * @param operation Name of the operation for logs and metrics.
+     * @param action Action executing a whole transaction.
+     * @param <T> Type of the result.
+     * @return Result of the action.
+     * @throws ConcurrencyFailureException If attempts or the budget are exhausted.
+     */
+    public <T> T execute(@NotBlank final String operation, @NotNull final Supplier<T> action) {
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+
+        budget.updateAndGet(b -> Math.min(budgetMax, b + budgetDeposit));
+
+        for (int attempt = 1;; attempt++) {
+            try {
+                T result = action.get();
+                if (attempt > 1) {
+                    meterRegistry.counter(METRIC_RECOVERED, "operation", operation).increment();
+                }
+                return result;
+
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    giveUp(operation, "attempts", e);
+                    throw e;
+                }
+                if (budget.getAndUpdate(b -> b >= RETRY_COST ? b - RETRY_COST : b) < RETRY_COST) {
+                    giveUp(operation, "budget", e);
+                    throw e;
+                }
+
+                meterRegistry.counter(METRIC_ATTEMPTS, "operation", operation).increment();
+                LogEx.trace(log, LogEx.getThisMethodName(), operation,
+                        "retry " + attempt + ": " + e.getMessage());
+
+                if (!pause(attempt)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Execute the action, retrying it on concurrency failures.
+     *
+     * @param operation Name of the operation for logs and metrics.
+     * @param action Action executing a whole transaction.
+     * @throws ConcurrencyFailureException If attempts or the budget are exhausted.
+     */
+    public void run(@NotBlank final String operation, @NotNull final Runnable action) {
+
+        execute(operation, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void giveUp(final String operation, final String reason,
+            final ConcurrencyFailureException e) {
+
+        meterRegistry.counter(METRIC_GIVE_UPS, "operation", operation, "reason", reason)
+                .increment();
+        LogEx.warn(log, LogEx.getThisMethodName(), operation,
+                "giving up, " + reason + " exhausted: " + e.getMessage());
+    }
+
+    /** @return False if interrupted. */
+    private boolean pause(final int attempt) {
+
+        long cap = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
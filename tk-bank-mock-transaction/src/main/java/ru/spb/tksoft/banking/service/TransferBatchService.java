@@ -0,0 +1,344 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.dto.transfer.TransferBatchRequestDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferBatchResultDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferItemDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferItemResultDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferItemStatus;
+import ru.spb.tksoft.banking.exception.InsufficientFundsException;
+import ru.spb.tksoft.banking.exception.NewBalanceLimitException;
+import ru.spb.tksoft.banking.exception.OperationNotAvailableException;
+import ru.spb.tksoft.banking.repository.RawAccountRepository;
+import ru.spb.tksoft.banking.service.ledger.LedgerEngine;
+import ru.spb.tksoft.banking.tools.Money;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Batches of transfers from one account in one transaction.
+ *
+ * Transfers are validated up front. Then all involved accounts are locked in the order of user
+ * IDs, as in {@link RawAccountServiceCached#transfer}, and transfers are checked in order against
+ * the locked balances. Applied transfers are written as one JDBC batch of net balance changes,
+ * one update per account, so the number of statements does not depend on the number of
+ * transfers.
+ *
+ * In the ledger engine mode, balances are not written in the database directly: transfers of a
+ * batch are executed by {@link LedgerEngine} one by one, so only batches that are not atomic are
+ * available.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+@Transactional(
+        isolation = Isolation.REPEATABLE_READ,
+        propagation = Propagation.REQUIRED,
+        timeout = 30)
+public class TransferBatchService {
+
+    private final Logger log = LoggerFactory.getLogger(TransferBatchService.class);
+
+    private static final String SELECT_BALANCES =
+            "SELECT user_id, balance FROM account WHERE user_id IN (:userIds)";
+
+    private static final String UPDATE_BALANCE = """
+            UPDATE account SET balance = balance + :delta
+            WHERE user_id = :userId
+            AND balance + :delta >= 0
+            """;
+
+    @NotNull
+    private final RawAccountRepository rawAccountRepository;
+
+    @NotNull
+    private final AccrualCalculator accrualCalculator;
+
+    @NotNull
+    private final AccountCache accountCache;
+
+    @NotNull
+    private final JournalWriter journalWriter;
+
+    @NotNull
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @NotNull
+    private final LedgerEngine ledgerEngine;
+
+    private final int maxSize;
+
+    /**
+     * Constructor.
+     *
+     * @param rawAccountRepository Account repository.
+     * @param accrualCalculator Autoincrement calculator.
+     * @param accountCache Account cache.
+     * @param journalWriter Journal writer.
+     * @param jdbcTemplate JDBC template of the bank datasource.
+     * @param ledgerEngine Ledger engine.
+     * @param maxSize Maximum number of transfers in a batch.
+     */
+    public TransferBatchService(
+            final RawAccountRepository rawAccountRepository,
+            final AccrualCalculator accrualCalculator,
+            final AccountCache accountCache,
+            final JournalWriter journalWriter,
+            final NamedParameterJdbcTemplate jdbcTemplate,
+            final LedgerEngine ledgerEngine,
+            @Value("${banking.transfer.batch.max-size:10000}") final int maxSize) {
+
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size of transfer batch must be positive");
+        }
+
+        this.rawAccountRepository = rawAccountRepository;
+        this.accrualCalculator = accrualCalculator;
+        this.accountCache = accountCache;
+        this.journalWriter = journalWriter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.ledgerEngine = ledgerEngine;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Process batch of transfers.
+     *
+     * @param fromUserId Source user ID.
+     * @param request Batch.
+     * @return Results of transfers.
+     * @throws IllegalArgumentException If the batch is empty or too large.
+     * @throws EntityNotFoundException If the source account is not found.
+     * @throws ConcurrencyFailureException If an account has been concurrently modified.
+     */
+    @NotNull
+    public TransferBatchResultDto transferBatch(Long fromUserId,
+            @NotNull TransferBatchRequestDto request) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        List<TransferItemDto> items = validateSize(request);
+        boolean atomic = request.isAtomic();
+        TransferItemStatus[] statuses = new TransferItemStatus[items.size()];
+
+        // Validation up front, without database access
+        var userIds = new TreeSet<Long>();
+        userIds.add(fromUserId);
+        boolean invalid = false;
+        for (int i = 0; i < items.size(); i++) {
+            TransferItemDto item = items.get(i);
+            if (!isValid(fromUserId, item)) {
+                statuses[i] = TransferItemStatus.INVALID;
+                invalid = true;
+            } else {
+                userIds.add(item.getToUserId());
+            }
+        }
+        if (atomic && invalid) {
+            return toResult(items, statuses, atomic, null);
+        }
+
+        accountCache.evict(userIds);
+
+        rawAccountRepository.lockByUserIds(userIds);
+        if (accrualCalculator.isLazy()) {
+            rawAccountRepository.settleAccrual(userIds, accrualCalculator.getRate(),
+                    accrualCalculator.getPeriodSeconds(), AccrualCalculator.MAX_PERIODS,
+                    Instant.now());
+        }
+
+        Map<Long, Money> balances = new HashMap<>();
+        jdbcTemplate.query(SELECT_BALANCES, new MapSqlParameterSource("userIds", userIds),
+                rs -> {
+                    balances.put(rs.getLong("user_id"),
+                            Money.valueOf(rs.getBigDecimal("balance")));
+                });
+
+        Money available = balances.get(fromUserId);
+        if (available == null) {
+            throw new EntityNotFoundException("Source account not found");
+        }
+
+        // Transfers are checked in order against the locked balances
+        Map<Long, Money> deltas = new TreeMap<>();
+        Money total = Money.ZERO;
+        boolean failed = false;
+        for (int i = 0; i < items.size(); i++) {
+            if (statuses[i] != null) {
+                continue;
+            }
+
+            TransferItemDto item = items.get(i);
+            if (!balances.containsKey(item.getToUserId())) {
+                statuses[i] = TransferItemStatus.NOT_FOUND;
+                failed = true;
+            } else if (available.compareTo(item.getAmount()) < 0) {
+                statuses[i] = TransferItemStatus.INSUFFICIENT_FUNDS;
+                failed = true;
+            } else {
+                available = available.subtract(item.getAmount());
+                total = total.add(item.getAmount());
+                deltas.merge(item.getToUserId(), item.getAmount(), Money::add);
+                statuses[i] = TransferItemStatus.APPLIED;
+            }
+        }
+
+        if (atomic && failed) {
+            return toResult(items, statuses, atomic, null);
+        }
+
+        if (total.signum() > 0) {
+            deltas.put(fromUserId, total.negate());
+            applyDeltas(deltas);
+
+            // Every transfer is journaled, not the net changes
+            for (int i = 0; i < items.size(); i++) {
+                if (statuses[i] == TransferItemStatus.APPLIED) {
+                    TransferItemDto item = items.get(i);
+                    journalWriter.transfer(fromUserId, item.getToUserId(), item.getAmount());
+                }
+            }
+        }
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+        return toResult(items, statuses, atomic, total);
+    }
+
+    /**
+     * Process batch of transfers in the ledger engine mode, see {@link LedgerEngine}. Transfers
+     * are executed in order, each one durable once done; failed ones are skipped.
+     *
+     * @param fromUserId Source user ID.
+     * @param request Batch, not atomic.
+     * @return Results of transfers.
+     * @throws IllegalArgumentException If the batch is empty or too large.
+     * @throws OperationNotAvailableException If the batch is atomic.
+     * @throws EntityNotFoundException If the source account is not found.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @NotNull
+    public TransferBatchResultDto transferBatchLedger(Long fromUserId,
+            @NotNull TransferBatchRequestDto request) {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        List<TransferItemDto> items = validateSize(request);
+        if (request.isAtomic()) {
+            throw new OperationNotAvailableException(
+                    "atomic transfer batch in the ledger engine mode");
+        }
+
+        ledgerEngine.getBalance(fromUserId); // source account must exist
+
+        TransferItemStatus[] statuses = new TransferItemStatus[items.size()];
+        Money total = Money.ZERO;
+        for (int i = 0; i < items.size(); i++) {
+            TransferItemDto item = items.get(i);
+            if (!isValid(fromUserId, item)) {
+                statuses[i] = TransferItemStatus.INVALID;
+                continue;
+            }
+
+            try {
+                ledgerEngine.transfer(fromUserId, item.getToUserId(), item.getAmount());
+                total = total.add(item.getAmount());
+                statuses[i] = TransferItemStatus.APPLIED;
+            } catch (EntityNotFoundException e) {
+                statuses[i] = TransferItemStatus.NOT_FOUND;
+            } catch (InsufficientFundsException e) {
+                statuses[i] = TransferItemStatus.INSUFFICIENT_FUNDS;
+            } catch (NewBalanceLimitException e) {
+                statuses[i] = TransferItemStatus.INVALID;
+            }
+        }
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+        return toResult(items, statuses, false, total);
+    }
+
+    private List<TransferItemDto> validateSize(final TransferBatchRequestDto request) {
+
+        List<TransferItemDto> items = request.getItems();
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Transfer batch is empty");
+        }
+        if (items.size() > maxSize) {
+            throw new IllegalArgumentException(
+                    "Transfer batch is too large, max size is " + maxSize);
+        }
+        return items;
+    }
+
+    private static boolean isValid(final Long fromUserId, final TransferItemDto item) {
+
+        return item != null && item.getToUserId() != null && item.getAmount() != null
+                && item.getAmount().isPositive()
+                && !item.getToUserId().equals(fromUserId);
+    }
+
+    /** One batched update per account, in the order of user IDs. */
+    private void applyDeltas(final Map<Long, Money> deltas) {
+
+        var params = new ArrayList<SqlParameterSource>(deltas.size());
+        deltas.forEach((userId, delta) -> params.add(new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("delta", delta.toBigDecimal())));
+
+        int[] updated = jdbcTemplate.batchUpdate(UPDATE_BALANCE,
+                params.toArray(SqlParameterSource[]::new));
+
+        for (int count : updated) {
+            if (count == 0) {
+                // Rows are locked, so this is not expected; rolls back the whole batch
+                throw new ConcurrencyFailureException(
+                        "Concurrent modification detected for batch transfer");
+            }
+        }
+    }
+
+    /** Total is null if nothing is applied because of failures in the atomic batch. */
+    private static TransferBatchResultDto toResult(final List<TransferItemDto> items,
+            final TransferItemStatus[] statuses, final boolean atomic, final Money total) {
+
+        int applied = 0;
+        int failed = 0;
+        var results = new ArrayList<TransferItemResultDto>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            TransferItemStatus status = statuses[i];
+            if (status == null || (total == null && status == TransferItemStatus.APPLIED)) {
+                status = TransferItemStatus.SKIPPED;
+            }
+
+            if (status == TransferItemStatus.APPLIED) {
+                applied++;
+            } else if (status != TransferItemStatus.SKIPPED) {
+                failed++;
+            }
+
+            TransferItemDto item = items.get(i);
+            results.add(item == null
+                    ? new TransferItemResultDto(i, null, null, status)
+                    : new TransferItemResultDto(i, item.getToUserId(), item.getAmount(), status));
+        }
+        return new TransferBatchResultDto(atomic, applied, failed,
+                total != null ? total : Money.ZERO, results);
+    }
+}
@@ -0,0 +1,406 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.dto.transfer.TransferRequestDto;
+import ru.spb.tksoft.banking.entity.TransferRequestEntity;
+import ru.spb.tksoft.banking.entity.TransferRequestStatus;
+import ru.spb.tksoft.banking.exception.InsufficientFundsException;
+import ru.spb.tksoft.banking.exception.NewBalanceLimitException;
+import ru.spb.tksoft.banking.exception.ObjectNotOwnedException;
+import ru.spb.tksoft.banking.exception.TransferQueueFullException;
+import ru.spb.tksoft.banking.mapper.TransferRequestMapper;
+import ru.spb.tksoft.banking.repository.RawAccountRepository;
+import ru.spb.tksoft.banking.repository.TransferRequestRepository;
+import ru.spb.tksoft.banking.tools.Money;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Asynchronous transfers: accepted at once, settled by workers.
+ *
+ * A submitted transfer is validated and stored as a pending request ("transfer_request"), the
+ * client gets its ID and polls its status. The number of unfinished requests is bounded. Workers
+ * of every node claim batches of pending requests with "FOR UPDATE SKIP LOCKED" and settle them
+ * one by one as regular transfers, see {@link RawAccountService#transfer}, with the idempotency
+ * key derived from the request ID: a request claimed again after a crash or an expired claim is
+ * settled once.
+ *
+ * A transfer rejected by validation or for lack of funds fails at once; other errors return the
+ * request to the queue until the maximum number of attempts.
+ *
+ * Requests are stored on the shard of the source account, see {@link ShardRouter}; the maximum
+ * number of unfinished requests applies to every shard. Workers look for requests on all shards
+ * in turn.
+ *
+ * Metrics: "banking.transfer.queue.delay" is the time from submission to the first claim,
+ * "banking.transfer.queue.finished" counts finished requests by status.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class TransferQueue {
+
+    private final Logger log = LoggerFactory.getLogger(TransferQueue.class);
+
+    private static final String METRIC_FINISHED = "banking.transfer.queue.finished";
+
+    /** Prefix of idempotency keys of settlements. */
+    private static final String KEY_PREFIX = "transfer-request:";
+
+    /** Transaction timeout of submissions with idempotency key, seconds. */
+    private static final int SUBMIT_TIMEOUT = 5;
+
+    /** Maximum length of the stored error. */
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    @NotNull
+    private final TransferRequestRepository transferRequestRepository;
+
+    @NotNull
+    private final RawAccountRepository rawAccountRepository;
+
+    @NotNull
+    private final RawAccountService rawAccountService;
+
+    @NotNull
+    private final IdempotencyStore idempotencyStore;
+
+    @NotNull
+    private final SchedulerLeaseService schedulerLeaseService;
+
+    @NotNull
+    private final ShardRouter shardRouter;
+
+    @NotNull
+    private final TransactionTemplate transactionTemplate;
+
+    private final int workers;
+
+    private final int batchSize;
+
+    private final int maxPending;
+
+    private final long pollIntervalNanos;
+
+    @NotNull
+    private final Duration lease;
+
+    private final int maxAttempts;
+
+    @NotNull
+    private final Duration retention;
+
+    private final int cleanupBatchSize;
+
+    /** Signals local workers about new requests. */
+    @NotNull
+    private final Semaphore wakeUp = new Semaphore(0);
+
+    @NotNull
+    private final MeterRegistry meterRegistry;
+
+    @NotNull
+    private final Timer queueDelay;
+
+    private ExecutorService executor;
+
+    /**
+     * Constructor.
+     *
+     * @param transferRequestRepository Request repository.
+     * @param rawAccountRepository Account repository.
+     * @param rawAccountService Account service settling requests.
+     * @param idempotencyStore Store of submissions with idempotency key.
+     * @param schedulerLeaseService Lease service for the cleanup job.
+     * @param shardRouter Shard router.
+     * @param transactionManager Transaction manager.
+     * @param workers Number of workers on this node, zero to only accept requests.
+     * @param batchSize Number of requests claimed at once.
+     * @param maxPending Maximum number of unfinished requests on one shard.
+     * @param pollInterval Time an idle worker waits before looking for requests again.
+     * @param lease Time after which a claimed request may be claimed again.
+     * @param maxAttempts Maximum number of claims of a request.
+     * @param retention Time finished requests are kept.
+     * @param cleanupBatchSize Number of finished requests deleted in one transaction.
+     * @param meterRegistry Meter registry for queue metrics.
+     */
+    public TransferQueue(
+            final TransferRequestRepository transferRequestRepository,
+            final RawAccountRepository rawAccountRepository,
+            final RawAccountService rawAccountService,
+            final IdempotencyStore idempotencyStore,
+            final SchedulerLeaseService schedulerLeaseService,
+            final ShardRouter shardRouter,
+            final PlatformTransactionManager transactionManager,
+            @Value("${banking.transfer-queue.workers:4}") final int workers,
+            @Value("${banking.transfer-queue.batch-size:50}") final int batchSize,
+            @Value("${banking.transfer-queue.max-pending:10000}") final int maxPending,
+            @Value("${banking.transfer-queue.poll-interval:500ms}") final Duration pollInterval,
+            @Value("${banking.transfer-queue.lease:1m}") final Duration lease,
+            @Value("${banking.transfer-queue.max-attempts:5}") final int maxAttempts,
+            @Value("${banking.transfer-queue.retention:7d}") final Duration retention,
+            @Value("${banking.transfer-queue.cleanup-batch-size:1000}")
+            final int cleanupBatchSize,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (workers < 0 || batchSize < 1 || maxPending < 1 || pollInterval.isNegative()
+                || lease.isNegative() || maxAttempts < 1 || retention.isNegative()
+                || cleanupBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid transfer queue settings");
+        }
+
+        this.transferRequestRepository = transferRequestRepository;
+        this.rawAccountRepository = rawAccountRepository;
+        this.rawAccountService = rawAccountService;
+        this.idempotencyStore = idempotencyStore;
+        this.schedulerLeaseService = schedulerLeaseService;
+        this.shardRouter = shardRouter;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.pollIntervalNanos = pollInterval.toNanos();
+        this.lease = lease;
+        this.maxAttempts = maxAttempts;
+        this.retention = retention;
+        this.cleanupBatchSize = cleanupBatchSize;
+
+        // Short transactions of the queue itself, settlements manage their own
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        transactionTemplate.setTimeout(5);
+
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        queueDelay = Timer.builder("banking.transfer.queue.delay")
+                .description("Time from submission of a transfer to its first claim")
+                .publishPercentiles(0.5, 0.99)
+                .register(this.meterRegistry);
+    }
+
+    /**
+     * Accept a transfer for asynchronous settlement.
+     *
+     * @param fromUserId From user ID.
+     * @param toUserId To user ID.
+     * @param amount Amount.
+     * @param idempotencyKey Idempotency key, may be null.
+     * @return Accepted request.
+     * @throws IllegalArgumentException If the amount is not positive or accounts are the same.
+     * @throws EntityNotFoundException If the destination account is not found.
+     * @throws TransferQueueFullException If too many requests are unfinished.
+     */
+    @NotNull
+    public TransferRequestDto submit(final long fromUserId, final long toUserId,
+            @NotNull final Money amount, final String idempotencyKey) {
+
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        if (fromUserId == toUserId) {
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        }
+
+        if (shardRouter.read(toUserId,
+                () -> rawAccountRepository.findByUserId(toUserId).isEmpty())) {
+            throw new EntityNotFoundException("Destination account not found");
+        }
+
+        TransferRequestDto request = shardRouter.callFor(fromUserId,
+                () -> idempotencyStore.execute(fromUserId, idempotencyKey,
+                        "transfer-async", List.of(toUserId, amount), TransferRequestDto.class,
+                        SUBMIT_TIMEOUT, () -> transactionTemplate.execute(
+                                status -> enqueue(fromUserId, toUserId, amount))));
+
+        wakeUp.release();
+        return request;
+    }
+
+    private TransferRequestDto enqueue(final long fromUserId, final long toUserId,
+            final Money amount) {
+
+        if (transferRequestRepository.countUnfinished(maxPending) >= maxPending) {
+            throw new TransferQueueFullException(maxPending + " transfers are waiting");
+        }
+
+        TransferRequestEntity entity = transferRequestRepository.save(
+                TransferRequestEntity.builder()
+                        .fromUserId(fromUserId)
+                        .toUserId(toUserId)
+                        .amount(amount)
+                        .status(TransferRequestStatus.PENDING)
+                        .createdAt(Instant.now())
+                        .build());
+        return TransferRequestMapper.toDto(entity);
+    }
+
+    /**
+     * @param userId User ID.
+     * @param id Transfer ID.
+     * @return Transfer and its status.
+     * @throws EntityNotFoundException If the transfer is not found.
+     * @throws ObjectNotOwnedException If the transfer is not the user's one.
+     */
+    @NotNull
+    public TransferRequestDto getRequest(final long userId, final long id) {
+
+        TransferRequestEntity entity = shardRouter
+                .read(userId, () -> transferRequestRepository.findById(id))
+                .orElseThrow(() -> new EntityNotFoundException("Transfer not found"));
+        if (entity.getFromUserId() != userId) {
+            throw new ObjectNotOwnedException("Transfer does not belong to user");
+        }
+        return TransferRequestMapper.toDto(entity);
+    }
+
+    /** Start workers. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+
+        if (workers == 0) {
+            return;
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "transfer-queue-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+    }
+
+    /** Stop workers. Interrupted settlements are claimed again after the lease. */
+    @PreDestroy
+    public void shutdown() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void work() {
+
+        int shardCount = shardRouter.getShardCount();
+        int shard = 0;
+        int idleShards = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                shard = (shard + 1) % shardCount;
+                boolean found = shardRouter.call(shard, () -> {
+                    Instant now = Instant.now();
+                    List<TransferRequestEntity> batch = transactionTemplate.execute(
+                            status -> transferRequestRepository.claim(now, now.minus(lease),
+                                    batchSize));
+                    if (batch == null || batch.isEmpty()) {
+                        return false;
+                    }
+                    batch.forEach(this::settle);
+                    return true;
+                });
+
+                idleShards = found ? 0 : idleShards + 1;
+                if (idleShards >= shardCount) {
+                    idleShards = 0;
+                    wakeUp.tryAcquire(pollIntervalNanos, TimeUnit.NANOSECONDS);
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+            } catch (RuntimeException e) {
+                LogEx.warn(log, LogEx.getThisMethodName(), e.getMessage());
+                try {
+                    TimeUnit.NANOSECONDS.sleep(pollIntervalNanos);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void settle(final TransferRequestEntity request) {
+
+        if (request.getAttempts() == 1) {
+            queueDelay.record(Duration.between(request.getCreatedAt(), Instant.now()));
+        }
+
+        try {
+            rawAccountService.transfer(request.getFromUserId(), request.getToUserId(),
+                    request.getAmount(), KEY_PREFIX + request.getId());
+            finish(request, TransferRequestStatus.COMPLETED, null);
+
+        } catch (IllegalArgumentException | EntityNotFoundException
+                | InsufficientFundsException | NewBalanceLimitException e) {
+            finish(request, TransferRequestStatus.FAILED, e.getMessage());
+
+        } catch (RuntimeException e) {
+            if (request.getAttempts() >= maxAttempts) {
+                finish(request, TransferRequestStatus.FAILED, e.getMessage());
+                return;
+            }
+            LogEx.warn(log, LogEx.getThisMethodName(), request.getId(), e.getMessage());
+            transactionTemplate.executeWithoutResult(
+                    status -> transferRequestRepository.release(request.getId()));
+        }
+    }
+
+    private void finish(final TransferRequestEntity request, final TransferRequestStatus status,
+            final String error) {
+
+        String stored = error != null && error.length() > MAX_ERROR_LENGTH
+                ? error.substring(0, MAX_ERROR_LENGTH)
+                : error;
+        transactionTemplate.executeWithoutResult(tx -> transferRequestRepository.finish(
+                request.getId(), status.name(), stored, Instant.now()));
+        meterRegistry.counter(METRIC_FINISHED, "status", status.name()).increment();
+    }
+
+    /** Delete old finished requests on the node owning the job lease. */
+    @Scheduled(cron = "${banking.transfer-queue.cleanup-cron:0 0 * * * ?}")
+    public void cleanup() {
+        schedulerLeaseService.runIfLeader("transferRequestCleanup",
+                () -> shardRouter.runOnEach(this::deleteFinished));
+    }
+
+    private void deleteFinished() {
+
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STARTING);
+
+        Instant finishedBefore = Instant.now().minus(retention);
+        long total = 0;
+        int deleted;
+        do {
+            Integer count = transactionTemplate.execute(status -> transferRequestRepository
+                    .deleteFinished(finishedBefore, cleanupBatchSize));
+            deleted = count != null ? count : 0;
+            total += deleted;
+        } while (deleted == cleanupBatchSize);
+
+        LogEx.trace(log, LogEx.getThisMethodName(), "deleted " + total);
+        LogEx.trace(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+    }
+}
@@ -0,0 +1,194 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.entity.RawUserEntity;
+import ru.spb.tksoft.banking.repository.RawUserRepository;
+import ru.spb.tksoft.banking.tools.DayIndex;
+import ru.spb.tksoft.banking.tools.KeysetTools;
+
+/**
+ * In-memory index of user IDs by date of birth: sorted primitive arrays of (epoch day, user ID),
+ * see {@link DayIndex} and {@link AbstractUserIndex}. Users without date of birth are not
+ * indexed.
+ *
+ * Order of found IDs is the same as in the database search: by date of birth, then by ID.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class UserBirthDateIndex extends AbstractUserIndex<UserBirthDateIndex.State> {
+
+    /** Index name. */
+    public static final String NAME = "user-birth-date";
+
+    /** Index state. */
+    static final class State {
+
+        private final DayIndex index = new DayIndex();
+
+        /** Rows are appended unsorted while the state is being built. */
+        private boolean loading = true;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param rawUserRepository User repository.
+     * @param shardRouter Shard router.
+     * @param transactionManager Transaction manager.
+     * @param enabled Index is enabled.
+     * @param meterRegistry Meter registry for footprint metrics.
+     */
+    public UserBirthDateIndex(
+            final RawUserRepository rawUserRepository,
+            final ShardRouter shardRouter,
+            final PlatformTransactionManager transactionManager,
+            @Value("${banking.user-index.birth-date.enabled:true}") final boolean enabled,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        super(NAME, rawUserRepository, shardRouter, transactionManager, enabled, meterRegistry);
+    }
+
+    @Override
+    protected State createState() {
+        return new State();
+    }
+
+    @Override
+    protected void put(final State state, final RawUserEntity user) {
+
+        if (state.loading) {
+            if (user.getDateOfBirth() != null) {
+                state.index.append(epochDay(user.getDateOfBirth()), user.getId());
+            }
+            return;
+        }
+
+        state.index.removeId(user.getId());
+        if (user.getDateOfBirth() != null) {
+            state.index.insert(epochDay(user.getDateOfBirth()), user.getId());
+        }
+    }
+
+    @Override
+    protected void remove(final State state, final long userId) {
+
+        if (!state.loading) {
+            state.index.removeId(userId);
+        }
+    }
+
+    @Override
+    protected void built(final State state) {
+
+        state.index.sort();
+        state.loading = false;
+    }
+
+    @Override
+    protected CheckResult check(final State state, final RawUserEntity user) {
+
+        if (user.getDateOfBirth() == null) {
+            return CheckResult.SKIPPED;
+        }
+        if (state.loading) {
+            return CheckResult.MISSING;
+        }
+
+        // Row of a user with changed date of birth is counted as missing plus extra
+        return state.index.contains(epochDay(user.getDateOfBirth()), user.getId())
+                ? CheckResult.OK
+                : CheckResult.MISSING;
+    }
+
+    @Override
+    protected long entries(final State state) {
+        return state.index.size();
+    }
+
+    @Override
+    protected long nodes(final State state) {
+        return state.loading ? 0 : state.index.dayCount();
+    }
+
+    @Override
+    protected long estimatedBytes(final State state) {
+        return state.index.estimatedBytes();
+    }
+
+    private static int epochDay(final LocalDate date) {
+        return Math.toIntExact(date.toEpochDay());
+    }
+
+    /** Read-only view of found IDs in the buffer: an ID is boxed only when it is read. */
+    private static final class IdList extends AbstractList<Long> implements RandomAccess {
+
+        private final long[] ids;
+
+        private final int size;
+
+        IdList(final long[] ids, final int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        @Override
+        public Long get(final int index) {
+            return ids[Objects.checkIndex(index, size)];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Find IDs of users born in range of dates. IDs are copied into one buffer of the page size,
+     * the page is a view of it.
+     *
+     * @param from First date of birth, inclusive.
+     * @param to Last date of birth, inclusive; null for open range.
+     * @param pageable Page request, not larger than {@link KeysetTools#MAX_PAGE_SIZE}.
+     * @param count Return page with the total number of found users.
+     * @return Page of user IDs if counted, slice otherwise; empty if the index is not ready.
+     * @throws IllegalArgumentException If the page is too large.
+     */
+    @NotNull
+    public Optional<Slice<Long>> findIds(@NotNull final LocalDate from, final LocalDate to,
+            @NotNull final Pageable pageable, final boolean count) {
+
+        if (pageable.getPageSize() > KeysetTools.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(
+                    "Page size must be between 1 and " + KeysetTools.MAX_PAGE_SIZE);
+        }
+
+        int fromDay = epochDay(from);
+        int toDay = to != null ? epochDay(to) : Integer.MAX_VALUE;
+        long[] buffer = new long[pageable.getPageSize()];
+
+        return query(state -> {
+            int found = state.index.range(fromDay, toDay, pageable.getOffset(), buffer);
+            long total = state.index.count(fromDay, toDay);
+
+            var ids = new IdList(buffer, found);
+            return count
+                    ? new PageImpl<>(ids, pageable, total)
+                    : new SliceImpl<>(ids, pageable, pageable.getOffset() + found < total);
+        });
+    }
+}
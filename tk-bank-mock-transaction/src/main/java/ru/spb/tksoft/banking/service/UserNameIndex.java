@@ -0,0 +1,154 @@
+package ru.spb.tksoft.banking.service;
+
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.dto.RawUserDto;
+import ru.spb.tksoft.banking.entity.RawUserEntity;
+import ru.spb.tksoft.banking.mapper.RawUserMapper;
+import ru.spb.tksoft.banking.repository.RawUserRepository;
+import ru.spb.tksoft.banking.tools.RadixTrie;
+
+/**
+ * In-memory prefix index of user names: radix trie of names, see {@link AbstractUserIndex}.
+ *
+ * Users on different shards may share a name, so a user is keyed by the name followed by the ID,
+ * see {@link #keyOf}. Names are ordered by UTF-16 code units (like COLLATE "C"), which may differ
+ * from the database collation; users with the same name are ordered by ID.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class UserNameIndex extends AbstractUserIndex<UserNameIndex.State> {
+
+    /** Index name. */
+    public static final String NAME = "user-name";
+
+    /** Approximate size of an entry of names by ID, bytes. */
+    private static final int NAME_ENTRY_BYTES = 56;
+
+    /** Separator of the name and the ID in a key, ordered before any character of a name. */
+    private static final char KEY_SEPARATOR = '\0';
+
+    private static final HexFormat ID_FORMAT = HexFormat.of();
+
+    /** Index state. */
+    static final class State {
+
+        private final RadixTrie<RawUserDto> trie = new RadixTrie<>();
+
+        private final Map<Long, String> namesById = new HashMap<>();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param rawUserRepository User repository.
+     * @param shardRouter Shard router.
+     * @param transactionManager Transaction manager.
+     * @param enabled Index is enabled.
+     * @param meterRegistry Meter registry for footprint metrics.
+     */
+    public UserNameIndex(
+            final RawUserRepository rawUserRepository,
+            final ShardRouter shardRouter,
+            final PlatformTransactionManager transactionManager,
+            @Value("${banking.user-index.name.enabled:true}") final boolean enabled,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        super(NAME, rawUserRepository, shardRouter, transactionManager, enabled, meterRegistry);
+    }
+
+    @Override
+    protected State createState() {
+        return new State();
+    }
+
+    @Override
+    protected void put(final State state, final RawUserEntity user) {
+
+        remove(state, user.getId());
+        state.trie.put(keyOf(user.getName(), user.getId()), RawUserMapper.toSearchDto(user));
+        state.namesById.put(user.getId(), user.getName());
+    }
+
+    @Override
+    protected void remove(final State state, final long userId) {
+
+        String oldName = state.namesById.remove(userId);
+        if (oldName != null) {
+            state.trie.remove(keyOf(oldName, userId));
+        }
+    }
+
+    /**
+     * @param name User name.
+     * @param userId User ID.
+     * @return Key of the user: the name, the separator and the ID, hexadecimal of fixed width,
+     *         so that keys of a name are ordered by ID and start with any prefix of the name.
+     */
+    static String keyOf(final String name, final long userId) {
+        return name + KEY_SEPARATOR + ID_FORMAT.toHexDigits(userId);
+    }
+
+    @Override
+    protected CheckResult check(final State state, final RawUserEntity user) {
+
+        RawUserDto indexed = state.trie.get(keyOf(user.getName(), user.getId()));
+        if (indexed == null) {
+            return CheckResult.MISSING;
+        }
+        return indexed.equals(RawUserMapper.toSearchDto(user)) ? CheckResult.OK : CheckResult.STALE;
+    }
+
+    @Override
+    protected long entries(final State state) {
+        return state.trie.size();
+    }
+
+    @Override
+    protected long nodes(final State state) {
+        return state.trie.nodeCount();
+    }
+
+    @Override
+    protected long estimatedBytes(final State state) {
+        return state.trie.estimatedBytes() + (long) NAME_ENTRY_BYTES * state.namesById.size();
+    }
+
+    /**
+     * Find users by name prefix.
+     *
+     * @param namePrefix Name prefix.
+     * @param pageable Page request.
+     * @param count Return page with the total number of found users.
+     * @return Page if counted, slice otherwise; empty if the index is not ready.
+     */
+    @NotNull
+    public Optional<Slice<RawUserDto>> findByPrefix(@NotNull final String namePrefix,
+            @NotNull final Pageable pageable, final boolean count) {
+
+        return query(state -> {
+            List<RawUserDto> content = state.trie.findByPrefix(namePrefix,
+                    pageable.getOffset(), pageable.getPageSize());
+            long total = state.trie.countPrefix(namePrefix);
+
+            return count
+                    ? new PageImpl<>(content, pageable, total)
+                    : new SliceImpl<>(content, pageable,
+                            pageable.getOffset() + content.size() < total);
+        });
+    }
+}
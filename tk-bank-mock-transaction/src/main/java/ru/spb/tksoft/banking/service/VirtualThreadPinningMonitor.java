@@ -0,0 +1,135 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.constraints.NotNull;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Reporter of pinned virtual threads.
+ *
+ * A virtual thread blocking within a synchronized block or a native frame keeps its carrier
+ * thread: with a few carriers, one per core, some pinned threads in a driver or in Hibernate stop
+ * all requests. The JVM reports such blocking longer than the threshold as JFR events
+ * "jdk.VirtualThreadPinned"; the monitor streams them in-process, logs the top frames and
+ * records them as the "banking.virtual.thread.pinned" timer by the top application frame.
+ *
+ * Works with virtual threads enabled ("spring.threads.virtual.enabled").
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class VirtualThreadPinningMonitor {
+
+    private final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+
+    /** Number of logged frames. */
+    private static final int MAX_FRAMES = 8;
+
+    /** Packages of application frames. */
+    private static final String APPLICATION_PACKAGE = "ru.spb.tksoft.";
+
+    private final boolean enabled;
+
+    @NotNull
+    private final Duration threshold;
+
+    @NotNull
+    private final MeterRegistry meterRegistry;
+
+    private RecordingStream stream;
+
+    /**
+     * Constructor.
+     *
+     * @param virtualThreads Virtual threads are enabled.
+     * @param enabled Pinned threads are reported.
+     * @param threshold Minimum time of reported blocking.
+     * @param meterRegistry Meter registry for pinning metrics.
+     */
+    public VirtualThreadPinningMonitor(
+            @Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads,
+            @Value("${banking.virtual-threads.pinning-monitor:true}") final boolean enabled,
+            @Value("${banking.virtual-threads.pinning-threshold:20ms}") final Duration threshold,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (threshold.isNegative()) {
+            throw new IllegalArgumentException("Pinning threshold must not be negative");
+        }
+
+        this.enabled = virtualThreads && enabled;
+        this.threshold = threshold;
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    /** Start streaming events. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+
+        if (!enabled) {
+            return;
+        }
+
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, this::report);
+        stream.startAsync();
+
+        LogEx.info(log, LogEx.getThisMethodName(), "threshold " + threshold.toMillis() + " ms");
+    }
+
+    /** Stop streaming events. */
+    @PreDestroy
+    public void shutdown() {
+
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void report(final RecordedEvent event) {
+
+        List<RecordedFrame> frames = event.getStackTrace() != null
+                ? event.getStackTrace().getFrames()
+                : List.<RecordedFrame>of();
+
+        String site = frames.stream()
+                .map(VirtualThreadPinningMonitor::name)
+                .filter(name -> name.startsWith(APPLICATION_PACKAGE))
+                .findFirst()
+                .orElse("other");
+        Timer.builder("banking.virtual.thread.pinned")
+                .tag("site", site)
+                .description("Time virtual threads were blocked holding their carriers")
+                .register(meterRegistry)
+                .record(event.getDuration());
+
+        LogEx.warn(log, LogEx.getThisMethodName(),
+                "pinned for " + event.getDuration().toMillis() + " ms at "
+                        + frames.stream()
+                                .limit(MAX_FRAMES)
+                                .map(frame -> name(frame) + ":" + frame.getLineNumber())
+                                .collect(Collectors.joining(" <- ")));
+    }
+
+    private static String name(final RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+    }
+}
@@ -0,0 +1,169 @@
+package ru.spb.tksoft.banking.service.ledger;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.service.AccountCache;
+import ru.spb.tksoft.banking.service.JournalWriter;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Ledger engine state in the banking database: balances in "account" (with sub-balances, see
+ * {@link ru.spb.tksoft.banking.service.AccountStripes}), the double-entry journal and checkpoints
+ * of shards in "ledger_checkpoint".
+ *
+ * Records are written as net balance changes per account, applied in ascending order of user
+ * IDs, so writers of different shards crediting the same accounts do not deadlock. Changes are
+ * relative: concurrent autoincrement of balances in the database is not lost. Every change must
+ * update its account row, or the whole batch is rolled back.
+ *
+ * Changes are applied to account rows only, so an account is loaded with its sub-balances folded
+ * into its row: the balance seen by the engine is the balance of the row.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Component
+public class JdbcLedgerStore implements LedgerStore {
+
+    private static final String SELECT_BALANCE = """
+            SELECT balance FROM account WHERE user_id = ? FOR UPDATE
+            """;
+
+    private static final String FOLD_STRIPES = """
+            WITH folded AS (
+                UPDATE account_stripe SET balance = 0
+                WHERE user_id = ? AND balance > 0
+                RETURNING balance
+            )
+            UPDATE account SET balance = balance + (SELECT SUM(balance) FROM folded)
+            WHERE user_id = ? AND EXISTS (SELECT 1 FROM folded)
+            """;
+
+    private static final String UPDATE_BALANCE = """
+            UPDATE account SET balance = balance + ? WHERE user_id = ?
+            """;
+
+    private static final String SELECT_CHECKPOINT = """
+            SELECT seq FROM ledger_checkpoint WHERE shard = ?
+            """;
+
+    private static final String UPSERT_CHECKPOINT = """
+            INSERT INTO ledger_checkpoint (shard, seq) VALUES (?, ?)
+            ON CONFLICT (shard) DO UPDATE
+            SET seq = EXCLUDED.seq, updated_at = CURRENT_TIMESTAMP
+            """;
+
+    @NotNull
+    private final JdbcTemplate jdbcTemplate;
+
+    @NotNull
+    private final JournalWriter journalWriter;
+
+    @NotNull
+    private final AccountCache accountCache;
+
+    @NotNull
+    private final TransactionTemplate writeTemplate;
+
+    /**
+     * Constructor.
+     *
+     * @param jdbcTemplate JDBC template.
+     * @param journalWriter Journal writer.
+     * @param accountCache Account cache.
+     * @param transactionManager Transaction manager.
+     */
+    public JdbcLedgerStore(final JdbcTemplate jdbcTemplate, final JournalWriter journalWriter,
+            final AccountCache accountCache, final PlatformTransactionManager transactionManager) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.journalWriter = journalWriter;
+        this.accountCache = accountCache;
+
+        writeTemplate = new TransactionTemplate(transactionManager);
+        writeTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        writeTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        writeTemplate.setTimeout(30);
+    }
+
+    @Override
+    @NotNull
+    public OptionalLong loadBalance(final long userId) {
+
+        // Account row first, then its stripes, as in folds of AccountStripes
+        List<BigDecimal> balances = writeTemplate.execute(status -> {
+            List<BigDecimal> locked = jdbcTemplate.queryForList(SELECT_BALANCE,
+                    BigDecimal.class, userId);
+            if (locked.isEmpty() || jdbcTemplate.update(FOLD_STRIPES, userId, userId) == 0) {
+                return locked;
+            }
+            accountCache.evict(List.of(userId));
+            return jdbcTemplate.queryForList(SELECT_BALANCE, BigDecimal.class, userId);
+        });
+        return balances == null || balances.isEmpty()
+                ? OptionalLong.empty()
+                : OptionalLong.of(Money.valueOf(balances.getFirst()).getMinor());
+    }
+
+    @Override
+    public long loadCheckpoint(final int shard) {
+
+        List<Long> seqs = jdbcTemplate.queryForList(SELECT_CHECKPOINT, Long.class, shard);
+        return seqs.isEmpty() ? 0 : seqs.getFirst();
+    }
+
+    @Override
+    public void write(final int shard, @NotNull final List<LedgerRecord> records) {
+
+        Map<Long, Long> changes = new TreeMap<>();
+        for (LedgerRecord r : records) {
+            switch (r.operation()) {
+                case DEPOSIT -> changes.merge(r.userId(), r.amount(), Long::sum);
+                case WITHDRAW -> changes.merge(r.userId(), -r.amount(), Long::sum);
+                case TRANSFER -> {
+                    changes.merge(r.userId(), -r.amount(), Long::sum);
+                    changes.merge(r.counterpartyId(), r.amount(), Long::sum);
+                }
+            }
+        }
+
+        List<Object[]> updates = new ArrayList<>(changes.size());
+        changes.forEach((userId, change) -> {
+            if (change != 0) {
+                updates.add(new Object[] {Money.ofMinor(change).toBigDecimal(), userId});
+            }
+        });
+
+        writeTemplate.executeWithoutResult(status -> {
+            int[] counts = jdbcTemplate.batchUpdate(UPDATE_BALANCE, updates);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    throw new IllegalStateException(
+                            "Account not found: " + updates.get(i)[1]);
+                }
+            }
+
+            for (LedgerRecord r : records) {
+                Money amount = Money.ofMinor(r.amount());
+                switch (r.operation()) {
+                    case DEPOSIT -> journalWriter.deposit(r.userId(), amount);
+                    case WITHDRAW -> journalWriter.withdraw(r.userId(), amount);
+                    case TRANSFER -> journalWriter.transfer(r.userId(), r.counterpartyId(),
+                            amount);
+                }
+            }
+
+            jdbcTemplate.update(UPSERT_CHECKPOINT, shard, records.getLast().seq());
+            accountCache.evict(changes.keySet());
+        });
+    }
+}
@@ -0,0 +1,342 @@
+package ru.spb.tksoft.banking.service.ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.exception.AccountBusyException;
+import ru.spb.tksoft.banking.exception.InsufficientFundsException;
+import ru.spb.tksoft.banking.exception.NewBalanceLimitException;
+import ru.spb.tksoft.banking.service.AccrualMode;
+import ru.spb.tksoft.banking.tools.HashTools;
+import ru.spb.tksoft.banking.tools.Money;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Single-writer in-memory ledger engine, an optional mode of balance operations.
+ *
+ * Accounts are partitioned by user ID over shards, every shard is owned by one thread, see
+ * {@link LedgerShard}: operations are validated and applied in memory without locks, made
+ * durable in the journal file of the shard with group commit, and written to the database behind
+ * them, in batches. The database stays the source of truth for reads and for restarts: on start,
+ * journal records not yet in the database are written there first.
+ *
+ * A transfer within one shard is one operation. A transfer between shards takes two steps: the
+ * credited account is loaded by its shard (so it exists), then the debit is applied and made
+ * durable by the debited shard, and the credit is passed to the credited shard in memory. The
+ * database write of the debited shard includes the credit, so a transfer is written atomically;
+ * until the second step, the credited shard sees less money than there is, never more.
+ *
+ * Balances are owned by the engine: other writers of the database may only add to them. Scheduled
+ * autoincrement adds money the engine sees after restart; lazy autoincrement rewrites balances on
+ * write and is not supported. Transfer batches are not supported either.
+ *
+ * An operation not completed within the operation timeout fails, its outcome unknown: it may
+ * still be applied, as with a lost response.
+ *
+ * An operation with an idempotency key is applied after the key is claimed, see
+ * {@link ru.spb.tksoft.banking.service.IdempotencyStore#executeClaimed}, and its outcome is
+ * recorded once the operation is durable in the journal: after a crash or a timeout between the
+ * two, the key stays claimed and retries with it are rejected until it expires, so the operation
+ * is applied at most once.
+ *
+ * Metrics: "banking.ledger.group-size" is the number of commands per fsync,
+ * "banking.ledger.write" is the database write of a batch, "banking.ledger.queued" is the number
+ * of queued commands.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Service
+public class LedgerEngine implements SmartLifecycle {
+
+    private final Logger log = LoggerFactory.getLogger(LedgerEngine.class);
+
+    private final boolean enabled;
+
+    @NotNull
+    private final Path walDirectory;
+
+    private final long timeoutNanos;
+
+    private final long operationTimeoutNanos;
+
+    @NotNull
+    private final LedgerShard[] shards;
+
+    private volatile boolean running;
+
+    /**
+     * Constructor.
+     *
+     * @param store Database state.
+     * @param enabled Balance operations are executed by the engine.
+     * @param accrualMode Autoincrement mode.
+     * @param shards Number of shards, zero for the number of processors.
+     * @param queueCapacity Maximum number of queued commands of a shard.
+     * @param walDirectory Directory of journal files.
+     * @param segmentSize Size of a journal file, bytes.
+     * @param flushSize Number of records written to the database at once.
+     * @param flushInterval Maximum time records wait for the database.
+     * @param timeout Maximum time to wait for a place in a shard queue.
+     * @param operationTimeout Maximum time to wait for an operation to become durable.
+     * @param meterRegistry Meter registry for engine metrics.
+     */
+    public LedgerEngine(
+            final LedgerStore store,
+            @Value("${banking.ledger-engine.enabled:false}") final boolean enabled,
+            @Value("${banking.autoincrement.mode:BULK}") final AccrualMode accrualMode,
+            @Value("${banking.ledger-engine.shards:0}") final int shards,
+            @Value("${banking.ledger-engine.queue-capacity:65536}") final int queueCapacity,
+            @Value("${banking.ledger-engine.wal-directory:ledger}") @NotBlank
+            final String walDirectory,
+            @Value("${banking.ledger-engine.segment-size:67108864}") final long segmentSize,
+            @Value("${banking.ledger-engine.flush-size:1000}") final int flushSize,
+            @Value("${banking.ledger-engine.flush-interval:10ms}") final Duration flushInterval,
+            @Value("${banking.ledger-engine.timeout:1s}") final Duration timeout,
+            @Value("${banking.ledger-engine.operation-timeout:10s}")
+            final Duration operationTimeout,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+
+        if (shards < 0 || queueCapacity < 1 || segmentSize < LedgerWal.RECORD_BYTES
+                || flushSize < 1 || flushInterval.isNegative() || flushInterval.isZero()
+                || timeout.isNegative() || operationTimeout.isNegative()
+                || operationTimeout.isZero()) {
+            throw new IllegalArgumentException("Invalid ledger engine settings");
+        }
+        if (enabled && accrualMode == AccrualMode.LAZY) {
+            throw new IllegalArgumentException(
+                    "Ledger engine does not support lazy autoincrement");
+        }
+
+        this.enabled = enabled;
+        this.walDirectory = Path.of(walDirectory);
+        this.timeoutNanos = timeout.toNanos();
+        this.operationTimeoutNanos = operationTimeout.toNanos();
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        Timer writeTimer = Timer.builder("banking.ledger.write")
+                .description("Database write of a batch of ledger records")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        DistributionSummary groupSize = DistributionSummary.builder("banking.ledger.group-size")
+                .description("Ledger commands made durable with one fsync")
+                .register(registry);
+
+        int count = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        this.shards = new LedgerShard[enabled ? count : 0];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new LedgerShard(i, store, this.walDirectory, segmentSize,
+                    queueCapacity, flushSize, flushInterval.toNanos(), writeTimer, groupSize);
+        }
+
+        Gauge.builder("banking.ledger.queued", this.shards,
+                s -> Arrays.stream(s).mapToInt(LedgerShard::queued).sum())
+                .description("Queued ledger commands")
+                .register(registry);
+    }
+
+    /**
+     * @return True if balance operations are executed by the engine.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Recover and start shards. Started before the web server, stopped after it.
+     *
+     * @throws UncheckedIOException on journal error.
+     */
+    @Override
+    public void start() {
+
+        if (!enabled || running) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(walDirectory);
+            for (LedgerShard shard : shards) {
+                shard.start();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        running = true;
+        LogEx.info(log, LogEx.getThisMethodName(), shards.length + " shards started");
+    }
+
+    /** Apply queued operations, write them to the database and stop shards. */
+    @Override
+    public void stop() {
+
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        try {
+            for (LedgerShard shard : shards) {
+                shard.stop();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LogEx.info(log, LogEx.getThisMethodName(), LogEx.STOPPED);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Deposit, returns once durable.
+     *
+     * @param userId User ID.
+     * @param amount Amount, positive.
+     * @throws IllegalArgumentException If the amount is not positive.
+     * @throws EntityNotFoundException If the account is not found.
+     * @throws NewBalanceLimitException If the new balance would not fit the database.
+     * @throws AccountBusyException If the shard is overloaded.
+     */
+    public void deposit(final long userId, @NotNull final Money amount) {
+
+        validateAmount(amount);
+        apply(shardOf(userId), LedgerOperation.DEPOSIT, userId, 0, amount.getMinor(), true);
+    }
+
+    /**
+     * Withdraw, returns once durable.
+     *
+     * @param userId User ID.
+     * @param amount Amount, positive.
+     * @throws IllegalArgumentException If the amount is not positive.
+     * @throws EntityNotFoundException If the account is not found.
+     * @throws InsufficientFundsException If there are not enough funds.
+     * @throws AccountBusyException If the shard is overloaded.
+     */
+    public void withdraw(final long userId, @NotNull final Money amount) {
+
+        validateAmount(amount);
+        apply(shardOf(userId), LedgerOperation.WITHDRAW, userId, 0, amount.getMinor(), true);
+    }
+
+    /**
+     * Transfer, returns once durable.
+     *
+     * @param fromUserId User ID of the debited account.
+     * @param toUserId User ID of the credited account.
+     * @param amount Amount, positive.
+     * @throws IllegalArgumentException If the amount is not positive or accounts are the same.
+     * @throws EntityNotFoundException If an account is not found.
+     * @throws InsufficientFundsException If there are not enough funds.
+     * @throws NewBalanceLimitException If the credited balance would not fit the database.
+     * @throws AccountBusyException If a shard is overloaded.
+     */
+    public void transfer(final long fromUserId, final long toUserId,
+            @NotNull final Money amount) {
+
+        validateAmount(amount);
+        if (fromUserId == toUserId) {
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        }
+
+        LedgerShard source = shardOf(fromUserId);
+        LedgerShard target = shardOf(toUserId);
+        if (source == target) {
+            apply(source, LedgerOperation.TRANSFER, fromUserId, toUserId, amount.getMinor(),
+                    true);
+            return;
+        }
+
+        // Concurrent credits may pass the check together: then the database write fails and
+        // stops the debited shard rather than losing money
+        LedgerShard.checkLimit(load(target, toUserId), amount.getMinor());
+        apply(source, LedgerOperation.TRANSFER, fromUserId, toUserId, amount.getMinor(), false);
+        target.credit(toUserId, amount.getMinor());
+    }
+
+    /**
+     * @param userId User ID.
+     * @return Balance of the account as seen by the engine.
+     * @throws EntityNotFoundException If the account is not found.
+     */
+    @NotNull
+    public Money getBalance(final long userId) {
+        return Money.ofMinor(load(shardOf(userId), userId));
+    }
+
+    private LedgerShard shardOf(final long userId) {
+
+        if (!running) {
+            throw new IllegalStateException("Ledger engine is not running");
+        }
+        return shards[HashTools.bucketOf(userId, shards.length)];
+    }
+
+    private void apply(final LedgerShard shard, final LedgerOperation operation,
+            final long userId, final long counterpartyId, final long amount,
+            final boolean local) {
+
+        var done = new CompletableFuture<Void>();
+        shard.submit(new LedgerShard.Apply(operation, userId, counterpartyId, amount, local,
+                done), timeoutNanos);
+        join(done, operationTimeoutNanos);
+    }
+
+    private long load(final LedgerShard shard, final long userId) {
+
+        var done = new CompletableFuture<Long>();
+        shard.submit(new LedgerShard.Load(userId, done), timeoutNanos);
+        return join(done, operationTimeoutNanos);
+    }
+
+    private static <T> T join(final CompletableFuture<T> done, final long timeoutNanos) {
+
+        try {
+            return done.orTimeout(timeoutNanos, TimeUnit.NANOSECONDS).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof TimeoutException) {
+                throw new IllegalStateException("Ledger operation timed out, outcome unknown");
+            }
+            throw e;
+        }
+    }
+
+    private static void validateAmount(final Money amount) {
+
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+    }
+}
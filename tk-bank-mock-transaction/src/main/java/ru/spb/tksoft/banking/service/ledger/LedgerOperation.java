@@ -0,0 +1,34 @@
+package ru.spb.tksoft.banking.service.ledger;
+
+/**
+ * Operation of the ledger engine journal.
+ *
+ * Codes are written to journal files: new operations are added at the end only.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public enum LedgerOperation {
+
+    /** Credit of the account from outside. */
+    DEPOSIT,
+
+    /** Debit of the account to outside. */
+    WITHDRAW,
+
+    /** Debit of the account and credit of the counterparty account. */
+    TRANSFER;
+
+    /**
+     * @param code Code written to a journal file, see {@link #ordinal()}.
+     * @return Operation.
+     * @throws IllegalArgumentException If the code is unknown.
+     */
+    public static LedgerOperation of(final int code) {
+
+        LedgerOperation[] operations = values();
+        if (code < 0 || code >= operations.length) {
+            throw new IllegalArgumentException("Unknown ledger operation: " + code);
+        }
+        return operations[code];
+    }
+}
@@ -0,0 +1,18 @@
+package ru.spb.tksoft.banking.service.ledger;
+
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Applied operation of a ledger shard, as written to its journal and then to the database.
+ *
+ * @param seq Sequence number within the shard, ascending.
+ * @param operation Operation.
+ * @param userId User ID of the account of the shard.
+ * @param counterpartyId User ID of the credited account of a transfer, zero otherwise.
+ * @param amount Amount, minor units, positive.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public record LedgerRecord(long seq, @NotNull LedgerOperation operation, long userId,
+        long counterpartyId, long amount) {
+}
@@ -0,0 +1,547 @@
+package ru.spb.tksoft.banking.service.ledger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.validation.constraints.NotNull;
+import ru.spb.tksoft.banking.exception.AccountBusyException;
+import ru.spb.tksoft.banking.exception.InsufficientFundsException;
+import ru.spb.tksoft.banking.exception.NewBalanceLimitException;
+import ru.spb.tksoft.banking.tools.LongIntMap;
+import ru.spb.tksoft.utils.log.LogEx;
+
+/**
+ * Partition of accounts of the ledger engine, owned by one thread.
+ *
+ * Commands wait in a bounded queue. The shard thread takes all queued commands at once, applies
+ * them to balances in memory, appends records of the applied operations to its journal, makes
+ * them durable with one fsync and completes the commands: a group commit without locks. Records
+ * are handed to the writer thread of the shard in batches, by size or by time, and written to the
+ * database behind the operations, see {@link LedgerStore#write}.
+ *
+ * Balances are kept in minor units in a primitive array, accounts are found by user ID with
+ * {@link LongIntMap}. An account is loaded from the database when first used.
+ *
+ * A database write failing for a transient reason (connection, lock, timeout) is retried; any
+ * other failure stops the shard: its records stay in the journal, later batches are not written,
+ * queued and new commands fail. The next start writes the journal to the database again.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+final class LedgerShard implements Runnable {
+
+    private final Logger log = LoggerFactory.getLogger(LedgerShard.class);
+
+    /** Maximum number of commands applied with one fsync. */
+    private static final int MAX_GROUP = 1024;
+
+    /** Maximum time the shard thread waits for commands, so that it notices the stop. */
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** Maximum number of batches waiting for the writer. */
+    private static final int MAX_PENDING_BATCHES = 8;
+
+    /** Maximum balance, minor units: the column is DECIMAL(15, 2). */
+    static final long MAX_BALANCE = 999_999_999_999_999L;
+
+    /** Command of the shard. */
+    sealed interface Command permits Apply, Credit, Load {
+    }
+
+    /**
+     * Operation on an account of the shard, completed once durable.
+     *
+     * @param operation Operation.
+     * @param userId User ID of the account of the shard.
+     * @param counterpartyId User ID of the credited account of a transfer, zero otherwise.
+     * @param amount Amount, minor units.
+     * @param local Credited account of a transfer is in this shard too.
+     * @param done Outcome.
+     */
+    record Apply(LedgerOperation operation, long userId, long counterpartyId, long amount,
+            boolean local, CompletableFuture<Void> done) implements Command {
+    }
+
+    /**
+     * Credit of a transfer from another shard, in memory only: the transfer is durable in the
+     * journal of the debited shard already.
+     *
+     * @param userId User ID.
+     * @param amount Amount, minor units.
+     */
+    record Credit(long userId, long amount) implements Command {
+    }
+
+    /**
+     * Load of an account, completed with its balance.
+     *
+     * @param userId User ID.
+     * @param done Outcome: balance, minor units.
+     */
+    record Load(long userId, CompletableFuture<Long> done) implements Command {
+    }
+
+    private final int index;
+
+    @NotNull
+    private final LedgerStore store;
+
+    @NotNull
+    private final LedgerWal wal;
+
+    @NotNull
+    private final BlockingQueue<Command> queue;
+
+    private final int flushSize;
+
+    private final long flushIntervalNanos;
+
+    @NotNull
+    private final Timer writeTimer;
+
+    @NotNull
+    private final DistributionSummary groupSize;
+
+    @NotNull
+    private final LongIntMap slots = new LongIntMap();
+
+    private long[] balances = new long[1024];
+
+    private long nextSeq;
+
+    @NotNull
+    private List<LedgerRecord> unwritten = new ArrayList<>();
+
+    private long lastFlushAt = System.nanoTime();
+
+    @NotNull
+    private final AtomicLong writtenSeq = new AtomicLong();
+
+    @NotNull
+    private final Semaphore pendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+
+    @NotNull
+    private final ExecutorService writer;
+
+    private Thread thread;
+
+    private volatile boolean running;
+
+    private volatile boolean failed;
+
+    /**
+     * Constructor.
+     *
+     * @param index Shard index.
+     * @param store Database state.
+     * @param walDirectory Directory of journal files.
+     * @param segmentBytes Size of a journal segment.
+     * @param queueCapacity Maximum number of queued commands.
+     * @param flushSize Number of records to hand to the writer at once.
+     * @param flushIntervalNanos Maximum time records wait for the writer.
+     * @param writeTimer Timer of database writes.
+     * @param groupSize Summary of group commit sizes.
+     */
+    LedgerShard(final int index, @NotNull final LedgerStore store,
+            @NotNull final Path walDirectory, final long segmentBytes, final int queueCapacity,
+            final int flushSize, final long flushIntervalNanos, @NotNull final Timer writeTimer,
+            @NotNull final DistributionSummary groupSize) {
+
+        this.index = index;
+        this.store = store;
+        this.wal = new LedgerWal(walDirectory, index, segmentBytes);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = flushIntervalNanos;
+        this.writeTimer = writeTimer;
+        this.groupSize = groupSize;
+        this.writer = Executors.newSingleThreadExecutor(
+                r -> new Thread(r, "ledger-writer-" + index));
+    }
+
+    /**
+     * @return Number of queued commands.
+     */
+    int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Write records of the journal missing in the database, then start the shard thread.
+     *
+     * @throws IOException on journal error.
+     */
+    void start() throws IOException {
+
+        long checkpoint = store.loadCheckpoint(index);
+        List<LedgerRecord> records = wal.recover(checkpoint + 1);
+
+        List<LedgerRecord> missing = records.stream()
+                .filter(r -> r.seq() > checkpoint)
+                .toList();
+        if (!missing.isEmpty()) {
+            store.write(index, missing);
+            LogEx.info(log, LogEx.getThisMethodName(),
+                    "shard " + index + ": " + missing.size() + " records recovered");
+        }
+
+        long lastSeq = records.isEmpty() ? 0 : records.getLast().seq();
+        writtenSeq.set(Math.max(checkpoint, lastSeq));
+        nextSeq = writtenSeq.get() + 1;
+        wal.release(writtenSeq.get());
+
+        running = true;
+        thread = new Thread(this, "ledger-shard-" + index);
+        thread.start();
+    }
+
+    /**
+     * Apply queued commands, write the remaining records and stop.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void stop() throws InterruptedException {
+
+        running = false;
+        if (thread != null) {
+            thread.join();
+        }
+
+        writer.shutdown();
+        if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+            // Records stay in the journal and are written on the next start
+            writer.shutdownNow();
+        }
+
+        try {
+            wal.close();
+        } catch (IOException e) {
+            LogEx.warn(log, LogEx.getThisMethodName(), index, e.getMessage());
+        }
+    }
+
+    /**
+     * Queue the command.
+     *
+     * @param command Command.
+     * @param timeoutNanos Maximum time to wait for a place in the queue.
+     * @throws AccountBusyException If the queue stays full.
+     */
+    void submit(@NotNull final Command command, final long timeoutNanos) {
+
+        if (failed || !running) {
+            throw new IllegalStateException("Ledger shard " + index + " is not running");
+        }
+
+        try {
+            if (!queue.offer(command, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new AccountBusyException("ledger shard " + index);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AccountBusyException("ledger shard " + index + ", interrupted");
+        }
+    }
+
+    /**
+     * Queue the credit of a transfer from another shard. Waits for a place in the queue as long
+     * as needed: the transfer is done already.
+     *
+     * @param userId User ID.
+     * @param amount Amount, minor units.
+     */
+    void credit(final long userId, final long amount) {
+
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                queue.put(new Credit(userId, amount));
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+
+        List<Command> group = new ArrayList<>(MAX_GROUP);
+        List<CompletableFuture<Void>> durable = new ArrayList<>(MAX_GROUP);
+        try {
+            while ((running || !queue.isEmpty()) && !failed) {
+                Command first = queue.poll(Math.min(flushIntervalNanos, MAX_IDLE_NANOS),
+                        TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    group.add(first);
+                    queue.drainTo(group, MAX_GROUP - 1);
+                    groupSize.record(group.size());
+                }
+
+                for (Command command : group) {
+                    process(command, durable);
+                }
+                group.clear();
+
+                if (!durable.isEmpty()) {
+                    wal.sync();
+                    durable.forEach(done -> done.complete(null));
+                    durable.clear();
+                }
+
+                if (unwritten.size() >= flushSize || (!unwritten.isEmpty()
+                        && System.nanoTime() - lastFlushAt >= flushIntervalNanos)) {
+                    flush();
+                }
+                release();
+            }
+
+            if (!unwritten.isEmpty() && !failed) {
+                flush();
+            }
+            if (failed) {
+                failQueued(group, new IllegalStateException(
+                        "Ledger shard " + index + " failed to write to the database"));
+            }
+
+        } catch (IOException e) {
+            // Balances in memory are ahead of the journal: the shard stops, and the next start
+            // restores it from the journal and the database
+            failed = true;
+            LogEx.error(log, LogEx.getThisMethodName(), index, e);
+            var failure = new IllegalStateException("Ledger journal failed", e);
+            durable.forEach(done -> done.completeExceptionally(failure));
+            failQueued(group, failure);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Fail the commands of the group and the queued ones. */
+    private void failQueued(final List<Command> group, final RuntimeException failure) {
+
+        group.addAll(queue);
+        queue.clear();
+        group.forEach(command -> fail(command, failure));
+        group.clear();
+    }
+
+    private void process(final Command command, final List<CompletableFuture<Void>> durable)
+            throws IOException {
+
+        switch (command) {
+            case Apply apply -> {
+                LedgerRecord record;
+                try {
+                    record = apply(apply);
+                } catch (RuntimeException e) {
+                    apply.done().completeExceptionally(e);
+                    return;
+                }
+                wal.append(record);
+                unwritten.add(record);
+                durable.add(apply.done());
+            }
+            case Credit credit -> {
+                int slot = slotOf(credit.userId());
+                balances[slot] += credit.amount();
+            }
+            case Load load -> {
+                try {
+                    int slot = slotOf(load.userId()); // may grow the array
+                    load.done().complete(balances[slot]);
+                } catch (RuntimeException e) {
+                    load.done().completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /** Validate and apply the operation in memory. */
+    private LedgerRecord apply(final Apply apply) {
+
+        int slot = slotOf(apply.userId());
+        long amount = apply.amount();
+
+        switch (apply.operation()) {
+            case DEPOSIT -> {
+                checkLimit(balances[slot], amount);
+                balances[slot] += amount;
+            }
+            case WITHDRAW -> {
+                if (balances[slot] < amount) {
+                    throw new InsufficientFundsException();
+                }
+                balances[slot] -= amount;
+            }
+            case TRANSFER -> {
+                // Credited account of another shard is loaded there before, see LedgerEngine
+                int target = apply.local() ? slotOf(apply.counterpartyId()) : -1;
+                if (balances[slot] < amount) {
+                    throw new InsufficientFundsException();
+                }
+                if (target >= 0) {
+                    checkLimit(balances[target], amount);
+                }
+                balances[slot] -= amount;
+                if (target >= 0) {
+                    balances[target] += amount;
+                }
+            }
+        }
+
+        return new LedgerRecord(nextSeq++, apply.operation(), apply.userId(),
+                apply.counterpartyId(), amount);
+    }
+
+    /**
+     * @param balance Balance, minor units.
+     * @param amount Credited amount, minor units.
+     * @throws NewBalanceLimitException If the new balance does not fit the column.
+     */
+    static void checkLimit(final long balance, final long amount) {
+
+        if (amount > MAX_BALANCE - balance) {
+            throw new NewBalanceLimitException("balance is limited by the database");
+        }
+    }
+
+    private int slotOf(final long userId) {
+
+        int slot = slots.get(userId);
+        if (slot != LongIntMap.MISSING) {
+            return slot;
+        }
+
+        OptionalLong balance = store.loadBalance(userId);
+        if (balance.isEmpty()) {
+            throw new EntityNotFoundException("Account not found");
+        }
+
+        slot = slots.size();
+        if (slot == balances.length) {
+            balances = Arrays.copyOf(balances, slot * 2);
+        }
+        balances[slot] = balance.getAsLong();
+        slots.put(userId, slot);
+        return slot;
+    }
+
+    /** Delete journal segments written to the database. */
+    private void release() {
+
+        try {
+            wal.release(writtenSeq.get());
+        } catch (IOException e) {
+            // Deleted with the next segment
+            LogEx.warn(log, LogEx.getThisMethodName(), index, e.getMessage());
+        }
+    }
+
+    /**
+     * Hand records to the writer, waiting if it is behind.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void flush() throws InterruptedException {
+
+        List<LedgerRecord> records = unwritten;
+        unwritten = new ArrayList<>(flushSize);
+        lastFlushAt = System.nanoTime();
+
+        while (!pendingBatches.tryAcquire(MAX_IDLE_NANOS, TimeUnit.NANOSECONDS)) {
+            if (failed) {
+                return;
+            }
+        }
+        writer.execute(() -> {
+            try {
+                write(records);
+            } finally {
+                pendingBatches.release();
+            }
+        });
+    }
+
+    /**
+     * Write records to the database, retrying transient failures until written or stopped. Does
+     * nothing once the shard failed: records are written in order of the journal.
+     */
+    private void write(final List<LedgerRecord> records) {
+
+        for (long backoffMs = 10;; backoffMs = Math.min(backoffMs * 2, 1000)) {
+            if (failed) {
+                return;
+            }
+            try {
+                writeTimer.record(() -> store.write(index, records));
+                writtenSeq.set(records.getLast().seq());
+                return;
+
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    // Balances in memory are ahead of the database and may never get there
+                    failed = true;
+                    LogEx.error(log, LogEx.getThisMethodName(), index, e);
+                    return;
+                }
+                LogEx.warn(log, LogEx.getThisMethodName(), index,
+                        "write failed, retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    // Records stay in the journal and are written on the next start
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param e Failure of a database write.
+     * @return True if the write may succeed when retried.
+     */
+    static boolean isTransient(final RuntimeException e) {
+
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private static void fail(final Command command, final RuntimeException failure) {
+
+        switch (command) {
+            case Apply apply -> apply.done().completeExceptionally(failure);
+            case Load load -> load.done().completeExceptionally(failure);
+            case Credit credit -> {
+                // Lost with the memory state, restored on the next start
+            }
+        }
+    }
+}
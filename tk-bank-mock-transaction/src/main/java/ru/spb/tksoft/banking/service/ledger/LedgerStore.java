@@ -0,0 +1,37 @@
+package ru.spb.tksoft.banking.service.ledger;
+
+import java.util.List;
+import java.util.OptionalLong;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Persistent state behind the ledger engine, see {@link JdbcLedgerStore}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public interface LedgerStore {
+
+    /**
+     * Load the balance of the account, with its sub-balances folded into its row: the engine
+     * changes account rows only.
+     *
+     * @param userId User ID.
+     * @return Balance of the account, minor units, empty if there is no such account.
+     */
+    @NotNull
+    OptionalLong loadBalance(long userId);
+
+    /**
+     * @param shard Shard index.
+     * @return Sequence number of the last record of the shard written, zero if none.
+     */
+    long loadCheckpoint(int shard);
+
+    /**
+     * Write records of a shard and advance its checkpoint, atomically.
+     *
+     * @param shard Shard index.
+     * @param records Records in ascending order, not empty.
+     */
+    void write(int shard, @NotNull List<LedgerRecord> records);
+}
@@ -0,0 +1,231 @@
+package ru.spb.tksoft.banking.service.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32C;
+import javax.annotation.concurrent.NotThreadSafe;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Write-ahead journal of a ledger shard: append-only segment files of fixed-size records.
+ *
+ * Records are buffered by {@link #append} and made durable together by {@link #sync}, one write
+ * and one fsync for a group of operations. A segment is closed once it reaches its size and
+ * deleted once all its records are written to the database, see {@link #release}. A record is
+ * protected by a checksum: a torn record at the end of the last segment, left by a crash, is
+ * dropped on recovery.
+ *
+ * Segment files are named "shard-{shard}-{first sequence number}.wal".
+ *
+ * Not thread safe, used by the shard thread only.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@NotThreadSafe
+final class LedgerWal implements Closeable {
+
+    /** Sequence number, operation, user ID, counterparty ID, amount, checksum. */
+    static final int RECORD_BYTES = Long.BYTES + 1 + Long.BYTES * 3 + Integer.BYTES;
+
+    private static final int BUFFER_RECORDS = 4096;
+
+    /** Closed segment. */
+    private record Segment(Path path, long lastSeq) {
+    }
+
+    @NotNull
+    private final Path directory;
+
+    @NotNull
+    private final String prefix;
+
+    private final long segmentBytes;
+
+    @NotNull
+    private final Deque<Segment> closed = new ArrayDeque<>();
+
+    @NotNull
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_BYTES * BUFFER_RECORDS);
+
+    @NotNull
+    private final CRC32C crc = new CRC32C();
+
+    private Path currentPath;
+
+    private FileChannel current;
+
+    private long lastSeq;
+
+    /**
+     * Constructor.
+     *
+     * @param directory Directory of segment files.
+     * @param shard Shard index.
+     * @param segmentBytes Size of a segment to close it at.
+     */
+    LedgerWal(@NotNull final Path directory, final int shard, final long segmentBytes) {
+
+        this.directory = directory;
+        this.prefix = "shard-" + shard + "-";
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Read records of all segments and open the last segment for appending.
+     *
+     * @param nextSeq Sequence number of the next record if there are no segments.
+     * @return Records in ascending order.
+     * @throws IOException on file error.
+     */
+    @NotNull
+    List<LedgerRecord> recover(final long nextSeq) throws IOException {
+
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                prefix + "*.wal")) {
+            stream.forEach(paths::add);
+        }
+        paths.sort((a, b) -> Long.compare(firstSeqOf(a), firstSeqOf(b)));
+
+        List<LedgerRecord> records = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            int before = records.size();
+            long valid = read(path, records);
+            long segmentLastSeq = records.size() > before
+                    ? records.getLast().seq()
+                    : firstSeqOf(path) - 1;
+
+            if (i < paths.size() - 1) {
+                closed.addLast(new Segment(path, segmentLastSeq));
+            } else {
+                open(path);
+                current.truncate(valid);
+                current.position(valid);
+                lastSeq = segmentLastSeq;
+            }
+        }
+
+        if (current == null) {
+            open(directory.resolve(prefix + nextSeq + ".wal"));
+            lastSeq = nextSeq - 1;
+        }
+        return records;
+    }
+
+    /**
+     * Buffer the record.
+     *
+     * @param record Record with the sequence number above all previous ones.
+     * @throws IOException on file error.
+     */
+    void append(@NotNull final LedgerRecord record) throws IOException {
+
+        if (buffer.remaining() < RECORD_BYTES) {
+            writeBuffer();
+        }
+
+        int start = buffer.position();
+        buffer.putLong(record.seq())
+                .put((byte) record.operation().ordinal())
+                .putLong(record.userId())
+                .putLong(record.counterpartyId())
+                .putLong(record.amount());
+
+        crc.reset();
+        crc.update(buffer.slice(start, RECORD_BYTES - Integer.BYTES));
+        buffer.putInt((int) crc.getValue());
+
+        lastSeq = record.seq();
+    }
+
+    /**
+     * Make appended records durable. Closes the segment once it is full.
+     *
+     * @throws IOException on file error.
+     */
+    void sync() throws IOException {
+
+        writeBuffer();
+        current.force(false);
+
+        if (current.size() >= segmentBytes) {
+            current.close();
+            closed.addLast(new Segment(currentPath, lastSeq));
+            open(directory.resolve(prefix + (lastSeq + 1) + ".wal"));
+        }
+    }
+
+    /**
+     * Delete closed segments written to the database.
+     *
+     * @param writtenSeq Sequence number of the last record written to the database.
+     * @throws IOException on file error.
+     */
+    void release(final long writtenSeq) throws IOException {
+
+        while (!closed.isEmpty() && closed.peekFirst().lastSeq() <= writtenSeq) {
+            Files.deleteIfExists(closed.removeFirst().path());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void open(final Path path) throws IOException {
+
+        currentPath = path;
+        current = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        current.position(current.size());
+    }
+
+    private void writeBuffer() throws IOException {
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            current.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** @return Length of the valid part of the segment. */
+    private long read(final Path path, final List<LedgerRecord> records) throws IOException {
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (bytes.remaining() >= RECORD_BYTES) {
+            int start = bytes.position();
+            crc.reset();
+            crc.update(bytes.slice(start, RECORD_BYTES - Integer.BYTES));
+            if (bytes.getInt(start + RECORD_BYTES - Integer.BYTES) != (int) crc.getValue()) {
+                break;
+            }
+
+            records.add(new LedgerRecord(bytes.getLong(), LedgerOperation.of(bytes.get()),
+                    bytes.getLong(), bytes.getLong(), bytes.getLong()));
+            bytes.getInt();
+        }
+        return bytes.position();
+    }
+
+    private long firstSeqOf(final Path path) {
+
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - ".wal".length()));
+    }
+}
@@ -0,0 +1,303 @@
+package ru.spb.tksoft.banking.tools;
+
+import java.util.Arrays;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Sorted index of IDs by day, on primitive arrays.
+ *
+ * Rows (epoch day, ID) are kept in two parallel arrays sorted by day, then by ID: IDs of one day
+ * are a sorted run, and a range of days is a contiguous range of rows found with binary search.
+ * Range queries copy IDs into the caller's buffer and allocate nothing per row. A row takes 12
+ * bytes.
+ *
+ * Inserts and removals shift the arrays, so they are O(n): the index is for rarely changed data.
+ * For bulk loading, rows are appended unsorted with {@link #append(int, long)} and sorted once
+ * with {@link #sort()}.
+ *
+ * Not thread safe, callers synchronize.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@NotThreadSafe
+public final class DayIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Size of an array element: day and ID, bytes. */
+    private static final int ROW_BYTES = Integer.BYTES + Long.BYTES;
+
+    private int[] days = new int[INITIAL_CAPACITY];
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+
+    private int size;
+
+    private boolean sorted = true;
+
+    /**
+     * @return Number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of distinct days.
+     */
+    public int dayCount() {
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || days[i] != days[i - 1]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Memory footprint of the arrays, bytes.
+     */
+    public long estimatedBytes() {
+        return (long) ROW_BYTES * days.length;
+    }
+
+    private void ensureCapacity(final int capacity) {
+
+        if (capacity > days.length) {
+            int newCapacity = Math.max(capacity, days.length + (days.length >> 1));
+            days = Arrays.copyOf(days, newCapacity);
+            ids = Arrays.copyOf(ids, newCapacity);
+        }
+    }
+
+    private void checkSorted() {
+
+        if (!sorted) {
+            throw new IllegalStateException("Index is not sorted");
+        }
+    }
+
+    /**
+     * Append a row without keeping the order. {@link #sort()} must be called before any other
+     * operation.
+     *
+     * @param day Epoch day.
+     * @param id ID.
+     */
+    public void append(final int day, final long id) {
+
+        ensureCapacity(size + 1);
+        days[size] = day;
+        ids[size] = id;
+        size++;
+        sorted = false;
+    }
+
+    /**
+     * Sort appended rows.
+     */
+    public void sort() {
+
+        if (!sorted) {
+            sort(0, size - 1);
+            sorted = true;
+        }
+    }
+
+    /**
+     * Insert a row in order.
+     *
+     * @param day Epoch day.
+     * @param id ID.
+     * @return False if the row is already there.
+     */
+    public boolean insert(final int day, final long id) {
+
+        checkSorted();
+
+        int i = search(day, id);
+        if (i >= 0) {
+            return false;
+        }
+        i = -i - 1;
+
+        ensureCapacity(size + 1);
+        System.arraycopy(days, i, days, i + 1, size - i);
+        System.arraycopy(ids, i, ids, i + 1, size - i);
+        days[i] = day;
+        ids[i] = id;
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove the row with the ID, whatever its day is. Linear search.
+     *
+     * @param id ID.
+     * @return False if there is no such row.
+     */
+    public boolean removeId(final long id) {
+
+        checkSorted();
+
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                System.arraycopy(days, i + 1, days, i, size - i - 1);
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param day Epoch day.
+     * @param id ID.
+     * @return True if the row is there.
+     */
+    public boolean contains(final int day, final long id) {
+
+        checkSorted();
+        return search(day, id) >= 0;
+    }
+
+    /**
+     * Number of rows with days in range.
+     *
+     * @param fromDay First day, inclusive.
+     * @param toDay Last day, inclusive.
+     * @return Number of rows.
+     */
+    public int count(final int fromDay, final int toDay) {
+
+        checkSorted();
+        if (fromDay > toDay) {
+            return 0;
+        }
+        return lowerBound(toDay + 1L) - lowerBound(fromDay);
+    }
+
+    /**
+     * IDs of rows with days in range, ordered by day, then by ID.
+     *
+     * @param fromDay First day, inclusive.
+     * @param toDay Last day, inclusive.
+     * @param offset Number of rows to skip.
+     * @param buffer Buffer for IDs, its length is the maximum number of IDs.
+     * @return Number of IDs copied into the buffer.
+     */
+    public int range(final int fromDay, final int toDay, final long offset,
+            final long[] buffer) {
+
+        checkSorted();
+        if (fromDay > toDay) {
+            return 0;
+        }
+
+        int from = lowerBound(fromDay);
+        int to = lowerBound(toDay + 1L);
+        if (offset >= to - from) {
+            return 0;
+        }
+
+        int start = from + (int) offset;
+        int length = Math.min(buffer.length, to - start);
+        System.arraycopy(ids, start, buffer, 0, length);
+        return length;
+    }
+
+    /** @return The first row with day not less than the given one. */
+    private int lowerBound(final long day) {
+
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** @return Index of the row, or (-insertion point - 1). */
+    private int search(final int day, final long id) {
+
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(days[mid], ids[mid], day, id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int compare(final int day1, final long id1, final int day2, final long id2) {
+
+        int cmp = Integer.compare(day1, day2);
+        return cmp != 0 ? cmp : Long.compare(id1, id2);
+    }
+
+    /** Quicksort of both arrays by (day, ID). */
+    private void sort(int low, int high) {
+
+        while (high - low > 16) {
+            int mid = (low + high) >>> 1;
+            int pivotDay = days[mid];
+            long pivotId = ids[mid];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(days[i], ids[i], pivotDay, pivotId) < 0) {
+                    i++;
+                }
+                while (compare(days[j], ids[j], pivotDay, pivotId) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+
+            // Recurse into the smaller part, loop over the larger one
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(days[j - 1], ids[j - 1], days[j], ids[j]) > 0;
+                    j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private void swap(final int i, final int j) {
+
+        int day = days[i];
+        days[i] = days[j];
+        days[j] = day;
+
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+}
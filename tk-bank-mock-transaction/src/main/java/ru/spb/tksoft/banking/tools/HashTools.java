@@ -0,0 +1,37 @@
+package ru.spb.tksoft.banking.tools;
+
+/**
+ * Hash-related tools.
+ *
+ * Sequential IDs are spread by Fibonacci hashing: multiplied by 2^64 divided by the golden ratio,
+ * neighbouring IDs differ in their high bits.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public final class HashTools {
+
+    /** Multiplier spreading sequential IDs. */
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Private constructor.
+     */
+    private HashTools() {}
+
+    /**
+     * @param id ID.
+     * @return Spread ID, high bits are the best mixed.
+     */
+    public static long spread(final long id) {
+        return id * SPREAD;
+    }
+
+    /**
+     * @param id ID.
+     * @param buckets Number of buckets, positive.
+     * @return Bucket of the ID, from zero to the number of buckets less one.
+     */
+    public static int bucketOf(final long id, final int buckets) {
+        return Math.floorMod(Long.hashCode(spread(id)), buckets);
+    }
+}
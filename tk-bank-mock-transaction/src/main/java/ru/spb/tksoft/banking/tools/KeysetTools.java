@@ -0,0 +1,141 @@
+package ru.spb.tksoft.banking.tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import org.springframework.data.domain.Limit;
+import ru.spb.tksoft.banking.dto.KeysetPageDto;
+
+/**
+ * Keyset (seek) pagination tools.
+ *
+ * Pages are ordered by ID, a page is requested by the last ID of the previous page, so the cost
+ * of a page does not depend on its position. The last ID is passed to clients as an opaque
+ * continuation token.
+ * 
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public final class KeysetTools {
+
+    /** Maximum page size. */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String TOKEN_PREFIX = "id:";
+
+    /**
+     * Private constructor.
+     */
+    private KeysetTools() {}
+
+    /**
+     * Encodes the last ID of a page into a continuation token.
+     * 
+     * @param lastId the last ID of the page.
+     * @return the token.
+     */
+    public static String encodeToken(long lastId) {
+
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((TOKEN_PREFIX + lastId).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decodes a continuation token into the last ID of the previous page.
+     * 
+     * @param token the token, null or blank for the first page.
+     * @return the last ID, 0 for the first page.
+     * @throws IllegalArgumentException if the token is invalid.
+     */
+    public static long decodeToken(String token) {
+
+        if (token == null || token.isBlank()) {
+            return 0;
+        }
+
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token),
+                    StandardCharsets.US_ASCII);
+            if (!value.startsWith(TOKEN_PREFIX)) {
+                throw new IllegalArgumentException("Invalid continuation token");
+            }
+
+            long lastId = Long.parseLong(value.substring(TOKEN_PREFIX.length()));
+            if (lastId < 0) {
+                throw new IllegalArgumentException("Invalid continuation token");
+            }
+            return lastId;
+
+        } catch (IllegalArgumentException e) { // NumberFormatException as well
+            throw new IllegalArgumentException("Invalid continuation token", e);
+        }
+    }
+
+    /**
+     * Limit of the query for the page: one more row than the page size, to detect the next page
+     * without counting.
+     * 
+     * @param size the page size.
+     * @return the limit.
+     * @throws IllegalArgumentException if the page size is invalid.
+     */
+    public static Limit limitOf(int size) {
+
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(
+                    "Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return Limit.of(size + 1);
+    }
+
+    /**
+     * Converts rows fetched with {@link #limitOf(int)} to a page.
+     * 
+     * @param rows the rows ordered by ID.
+     * @param size the page size.
+     * @param idOf the ID of a row.
+     * @param mapper the row mapper.
+     * @param <E> the type of the rows.
+     * @param <T> the type of the page items.
+     * @return the page without the total number of items.
+     */
+    public static <E, T> KeysetPageDto<T> toPage(List<E> rows, int size,
+            ToLongFunction<E> idOf, Function<E, T> mapper) {
+
+        boolean hasNext = rows.size() > size;
+        List<E> pageRows = hasNext ? rows.subList(0, size) : rows;
+
+        String nextToken = hasNext
+                ? encodeToken(idOf.applyAsLong(pageRows.get(pageRows.size() - 1)))
+                : null;
+
+        return new KeysetPageDto<>(pageRows.stream().map(mapper).toList(), size, nextToken,
+                null);
+    }
+
+    /**
+     * Merges rows of several databases fetched with {@link #limitOf(int)} into rows of one
+     * page, for {@link #toPage(List, int, ToLongFunction, Function)}. IDs are unique over the
+     * databases.
+     * 
+     * @param parts the rows of every database ordered by ID.
+     * @param size the page size.
+     * @param idOf the ID of a row.
+     * @param <E> the type of the rows.
+     * @return the first rows ordered by ID, at most the limit of the page.
+     */
+    public static <E> List<E> merge(List<List<E>> parts, int size, ToLongFunction<E> idOf) {
+
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+
+        List<E> rows = new ArrayList<>();
+        parts.forEach(rows::addAll);
+        rows.sort(Comparator.comparingLong(idOf));
+        return rows.size() > size + 1 ? rows.subList(0, size + 1) : rows;
+    }
+}
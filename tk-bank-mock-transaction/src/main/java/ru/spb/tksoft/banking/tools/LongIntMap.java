@@ -0,0 +1,107 @@
+package ru.spb.tksoft.banking.tools;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Map of long keys to non-negative int values, on primitive arrays.
+ *
+ * Open addressing with linear probing: a lookup reads two arrays and allocates nothing. Values
+ * are stored plus one, so zero marks a free cell. The table is at most half full and doubles when
+ * it would be more. Entries are never removed.
+ *
+ * Not thread safe, callers synchronize.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@NotThreadSafe
+public final class LongIntMap {
+
+    /** Result of {@link #get(long)} for a missing key. */
+    public static final int MISSING = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    private int[] values = new int[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * @return Number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key Key.
+     * @return Value, {@link #MISSING} if there is no such key.
+     */
+    public int get(final long key) {
+
+        int mask = keys.length - 1;
+        for (int i = cell(key, mask); values[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i] - 1;
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Put or replace the value of the key.
+     *
+     * @param key Key.
+     * @param value Value, not negative.
+     * @throws IllegalArgumentException If the value is negative.
+     */
+    public void put(final long key, final int value) {
+
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative");
+        }
+
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        if (insert(keys, values, key, value + 1)) {
+            size++;
+        }
+    }
+
+    private void grow() {
+
+        long[] newKeys = new long[keys.length * 2];
+        int[] newValues = new int[values.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != 0) {
+                insert(newKeys, newValues, keys[i], values[i]);
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    /** @return True if the key is new. */
+    private static boolean insert(final long[] keys, final int[] values, final long key,
+            final int stored) {
+
+        int mask = keys.length - 1;
+        int i = cell(key, mask);
+        while (values[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = stored;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = stored;
+        return true;
+    }
+
+    private static int cell(final long key, final int mask) {
+        return (int) (HashTools.spread(key) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,189 @@
+package ru.spb.tksoft.banking.tools;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import javax.annotation.concurrent.Immutable;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Amount of money: fixed-point number of minor units (kopecks) in a {@code long}.
+ *
+ * Addition, subtraction and comparison are done on the {@code long} and allocate at most the
+ * result, instead of {@link BigDecimal} arithmetic with its scale alignment and intermediate
+ * objects. Conversions from decimal numbers and multiplication take an explicit rounding mode;
+ * overflow throws {@link ArithmeticException} instead of wrapping around.
+ *
+ * The scale is the same as of the balance columns, {@link #SCALE}. In JSON, an amount is a
+ * decimal number; deserialization and parsing reject more fraction digits than the scale.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@Immutable
+public final class Money implements Comparable<Money> {
+
+    /** Number of fraction digits. */
+    public static final int SCALE = 2;
+
+    /** Zero amount. */
+    public static final Money ZERO = new Money(0);
+
+    private final long minor;
+
+    private Money(final long minor) {
+        this.minor = minor;
+    }
+
+    /**
+     * @param minor Amount in minor units.
+     * @return Amount.
+     */
+    @NotNull
+    public static Money ofMinor(final long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    /**
+     * @param amount Decimal amount.
+     * @param roundingMode Rounding of fraction digits beyond the scale.
+     * @return Amount.
+     * @throws ArithmeticException If rounding is necessary with {@link RoundingMode#UNNECESSARY}
+     *         or the amount is out of range.
+     */
+    @NotNull
+    public static Money of(@NotNull final BigDecimal amount,
+            @NotNull final RoundingMode roundingMode) {
+
+        return ofMinor(amount.setScale(SCALE, roundingMode).unscaledValue().longValueExact());
+    }
+
+    /**
+     * Exact conversion, e.g. of values read from the database.
+     *
+     * @param amount Decimal amount with no more fraction digits than the scale.
+     * @return Amount.
+     * @throws ArithmeticException If the amount has more fraction digits or is out of range.
+     */
+    @JsonCreator
+    @NotNull
+    public static Money valueOf(@NotNull final BigDecimal amount) {
+        return of(amount, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Parse decimal amount, e.g. a request parameter.
+     *
+     * @param amount Decimal amount with no more fraction digits than the scale.
+     * @return Amount.
+     * @throws NumberFormatException If the amount is not a number.
+     * @throws ArithmeticException If the amount has more fraction digits or is out of range.
+     */
+    @NotNull
+    public static Money valueOf(@NotNull final String amount) {
+        return valueOf(new BigDecimal(amount.trim()));
+    }
+
+    /**
+     * @return Amount in minor units.
+     */
+    public long getMinor() {
+        return minor;
+    }
+
+    /**
+     * @return Decimal amount with the scale {@link #SCALE}.
+     */
+    @JsonValue
+    @NotNull
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    /**
+     * @param other Amount.
+     * @return Sum.
+     * @throws ArithmeticException On overflow.
+     */
+    @NotNull
+    public Money add(@NotNull final Money other) {
+        return other.minor == 0 ? this : ofMinor(Math.addExact(minor, other.minor));
+    }
+
+    /**
+     * @param other Amount.
+     * @return Difference.
+     * @throws ArithmeticException On overflow.
+     */
+    @NotNull
+    public Money subtract(@NotNull final Money other) {
+        return other.minor == 0 ? this : ofMinor(Math.subtractExact(minor, other.minor));
+    }
+
+    /**
+     * @return Negated amount.
+     * @throws ArithmeticException On overflow.
+     */
+    @NotNull
+    public Money negate() {
+        return ofMinor(Math.negateExact(minor));
+    }
+
+    /**
+     * @param factor Factor, e.g. 1 + rate.
+     * @param roundingMode Rounding of the product to minor units.
+     * @return Product.
+     * @throws ArithmeticException If rounding is necessary with {@link RoundingMode#UNNECESSARY}
+     *         or the product is out of range.
+     */
+    @NotNull
+    public Money multiply(@NotNull final BigDecimal factor,
+            @NotNull final RoundingMode roundingMode) {
+
+        return ofMinor(BigDecimal.valueOf(minor).multiply(factor)
+                .setScale(0, roundingMode).longValueExact());
+    }
+
+    /**
+     * @return -1, 0 or 1 as the amount is negative, zero or positive.
+     */
+    public int signum() {
+        return Long.signum(minor);
+    }
+
+    /**
+     * @return True if the amount is greater than zero.
+     */
+    public boolean isPositive() {
+        return minor > 0;
+    }
+
+    /**
+     * @param other Amount.
+     * @return The lesser of two amounts.
+     */
+    @NotNull
+    public Money min(@NotNull final Money other) {
+        return minor <= other.minor ? this : other;
+    }
+
+    @Override
+    public int compareTo(final Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof Money other && minor == other.minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
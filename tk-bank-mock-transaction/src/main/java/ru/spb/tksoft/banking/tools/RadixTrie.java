@@ -0,0 +1,396 @@
+package ru.spb.tksoft.banking.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Radix (compressed prefix) tree of string keys.
+ *
+ * Keys are ordered by UTF-16 code units, as {@link String#compareTo(String)} does. Every node
+ * keeps the number of keys in its subtree, so prefix queries skip whole subtrees on paging and
+ * the number of keys with a prefix is known without traversal. The number of nodes and the
+ * memory footprint are kept up to date by every change, so they are read in constant time.
+ *
+ * Not thread safe, callers synchronize.
+ *
+ * @param <V> Type of values.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@NotThreadSafe
+public final class RadixTrie<V> {
+
+    /** Approximate size of a node without label and child arrays, bytes. */
+    private static final int NODE_BYTES = 40;
+
+    /** Approximate size of an array header, bytes. */
+    private static final int ARRAY_BYTES = 16;
+
+    /** Approximate size of a string without its characters, bytes. */
+    private static final int STRING_BYTES = 40;
+
+    private static final char[] NO_KEYS = new char[0];
+
+    private static final Node<?>[] NO_CHILDREN = new Node<?>[0];
+
+    private static final class Node<V> {
+
+        /** Label of the edge to this node. */
+        private String label;
+
+        /** First characters of child labels, sorted. */
+        private char[] keys = NO_KEYS;
+
+        @SuppressWarnings("unchecked")
+        private Node<V>[] children = (Node<V>[]) NO_CHILDREN;
+
+        /** Number of keys in the subtree. */
+        private int count;
+
+        /** Value if a key ends here, null otherwise. */
+        private V value;
+
+        private Node(final String label) {
+            this.label = label;
+        }
+
+        private int indexOf(final char c) {
+            return Arrays.binarySearch(keys, c);
+        }
+
+        private void insertChild(final int index, final Node<V> child) {
+
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+
+            System.arraycopy(keys, index, keys, index + 1, keys.length - index - 1);
+            System.arraycopy(children, index, children, index + 1, children.length - index - 1);
+
+            keys[index] = child.label.charAt(0);
+            children[index] = child;
+        }
+
+        private void removeChild(final int index) {
+
+            char[] newKeys = new char[keys.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            keys = newKeys;
+
+            Node<V>[] newChildren = Arrays.copyOf(children, children.length - 1);
+            System.arraycopy(children, index + 1, newChildren, index,
+                    children.length - index - 1);
+            children = newChildren;
+        }
+    }
+
+    private final Node<V> root = new Node<>("");
+
+    private int nodes = 1;
+
+    private long bytes = bytesOf(root);
+
+    /**
+     * @return Number of keys.
+     */
+    public int size() {
+        return root.count;
+    }
+
+    /**
+     * @return Number of nodes.
+     */
+    public int nodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Approximate memory footprint of the tree structure, values are not counted.
+     *
+     * @return Size, bytes.
+     */
+    public long estimatedBytes() {
+        return bytes;
+    }
+
+    /** @return Footprint of the node itself, without its subtree. */
+    private static long bytesOf(final Node<?> node) {
+
+        long size = NODE_BYTES + STRING_BYTES + 2L * node.label.length();
+        if (node.children.length > 0) {
+            size += 2L * ARRAY_BYTES + 2L * node.keys.length + 4L * node.children.length;
+        }
+        return size;
+    }
+
+    /**
+     * Get value of the key.
+     *
+     * @param key Key.
+     * @return Value or null.
+     */
+    public V get(final String key) {
+
+        Node<V> node = root;
+        int pos = 0;
+        while (pos < key.length()) {
+            int i = node.indexOf(key.charAt(pos));
+            if (i < 0) {
+                return null;
+            }
+            node = node.children[i];
+            if (!key.startsWith(node.label, pos)) {
+                return null;
+            }
+            pos += node.label.length();
+        }
+        return node.value;
+    }
+
+    /**
+     * Put value of the key.
+     *
+     * @param key Key.
+     * @param value Value, not null.
+     * @return Previous value or null.
+     */
+    public V put(final String key, final V value) {
+
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null");
+        }
+
+        Node<V> node = root;
+        List<Node<V>> path = new ArrayList<>();
+        int pos = 0;
+
+        while (pos < key.length()) {
+            path.add(node);
+
+            char c = key.charAt(pos);
+            int i = node.indexOf(c);
+            if (i < 0) {
+                Node<V> leaf = new Node<>(key.substring(pos));
+                leaf.value = value;
+                leaf.count = 1;
+                bytes -= bytesOf(node);
+                node.insertChild(-i - 1, leaf);
+                bytes += bytesOf(node) + bytesOf(leaf);
+                nodes++;
+                path.forEach(n -> n.count++);
+                return null;
+            }
+
+            Node<V> child = node.children[i];
+            int common = commonPrefix(child.label, key, pos);
+            if (common < child.label.length()) {
+                // Split the edge: node -> middle -> child
+                Node<V> middle = new Node<>(child.label.substring(0, common));
+                bytes -= bytesOf(child);
+                child.label = child.label.substring(common);
+                middle.insertChild(0, child);
+                middle.count = child.count;
+                node.children[i] = middle;
+                bytes += bytesOf(child) + bytesOf(middle);
+                nodes++;
+                child = middle;
+            }
+
+            node = child;
+            pos += common;
+        }
+
+        V previous = node.value;
+        node.value = value;
+        if (previous == null) {
+            node.count++;
+            path.forEach(n -> n.count++);
+        }
+        return previous;
+    }
+
+    private static int commonPrefix(final String label, final String key, final int pos) {
+
+        int max = Math.min(label.length(), key.length() - pos);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(pos + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Remove the key.
+     *
+     * @param key Key.
+     * @return Removed value or null.
+     */
+    public V remove(final String key) {
+
+        Node<V> node = root;
+        List<Node<V>> path = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        int pos = 0;
+
+        while (pos < key.length()) {
+            int i = node.indexOf(key.charAt(pos));
+            if (i < 0) {
+                return null;
+            }
+            Node<V> child = node.children[i];
+            if (!key.startsWith(child.label, pos)) {
+                return null;
+            }
+            path.add(node);
+            indexes.add(i);
+            node = child;
+            pos += child.label.length();
+        }
+
+        V removed = node.value;
+        if (removed == null) {
+            return null;
+        }
+
+        node.value = null;
+        node.count--;
+        path.forEach(n -> n.count--);
+
+        // Drop the emptied leaf, then merge a pass-through node with its only child
+        if (!path.isEmpty()) {
+            Node<V> parent = path.get(path.size() - 1);
+            int index = indexes.get(indexes.size() - 1);
+
+            if (node.children.length == 0) {
+                bytes -= bytesOf(node) + bytesOf(parent);
+                parent.removeChild(index);
+                bytes += bytesOf(parent);
+                nodes--;
+                if (parent != root && parent.value == null && parent.children.length == 1) {
+                    mergeWithChild(parent);
+                }
+            } else if (node.children.length == 1) {
+                mergeWithChild(node);
+            }
+        }
+        return removed;
+    }
+
+    private void mergeWithChild(final Node<V> node) {
+
+        Node<V> child = node.children[0];
+        bytes -= bytesOf(node) + bytesOf(child);
+        node.label = node.label + child.label;
+        node.keys = child.keys;
+        node.children = child.children;
+        node.value = child.value;
+        node.count = child.count;
+        bytes += bytesOf(node);
+        nodes--;
+    }
+
+    /**
+     * Number of keys starting with the prefix.
+     *
+     * @param prefix Prefix.
+     * @return Number of keys.
+     */
+    public int countPrefix(final String prefix) {
+
+        Node<V> node = findPrefix(prefix);
+        return node == null ? 0 : node.count;
+    }
+
+    /**
+     * Values of keys starting with the prefix, in key order.
+     *
+     * @param prefix Prefix.
+     * @param offset Number of values to skip.
+     * @param limit Maximum number of values.
+     * @return Values.
+     */
+    public List<V> findByPrefix(final String prefix, final long offset, final int limit) {
+
+        Node<V> node = findPrefix(prefix);
+        if (node == null || offset >= node.count || limit <= 0) {
+            return List.of();
+        }
+
+        List<V> values = new ArrayList<>(Math.min(limit, node.count));
+        collect(node, offset, limit, values);
+        return values;
+    }
+
+    /** Subtree of keys with the prefix: the prefix may end inside the label of its root. */
+    private Node<V> findPrefix(final String prefix) {
+
+        Node<V> node = root;
+        int pos = 0;
+        while (pos < prefix.length()) {
+            int i = node.indexOf(prefix.charAt(pos));
+            if (i < 0) {
+                return null;
+            }
+            node = node.children[i];
+            int common = commonPrefix(node.label, prefix, pos);
+            if (common < node.label.length() && pos + common < prefix.length()) {
+                return null;
+            }
+            pos += common;
+        }
+        return node;
+    }
+
+    /** @return Number of values still to skip. */
+    private long collect(final Node<V> node, long offset, final int limit,
+            final List<V> values) {
+
+        if (node.value != null) {
+            if (offset > 0) {
+                offset--;
+            } else {
+                values.add(node.value);
+            }
+        }
+
+        for (Node<V> child : node.children) {
+            if (values.size() >= limit) {
+                break;
+            }
+            if (offset >= child.count) {
+                offset -= child.count;
+            } else {
+                offset = collect(child, offset, limit, values);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Visit all keys and values in key order.
+     *
+     * @param visitor Visitor.
+     */
+    public void forEach(final BiConsumer<String, V> visitor) {
+        forEach(root, new StringBuilder(), visitor);
+    }
+
+    private void forEach(final Node<V> node, final StringBuilder key,
+            final BiConsumer<String, V> visitor) {
+
+        int length = key.length();
+        key.append(node.label);
+
+        if (node.value != null) {
+            visitor.accept(key.toString(), node.value);
+        }
+        for (Node<V> child : node.children) {
+            forEach(child, key, visitor);
+        }
+
+        key.setLength(length);
+    }
+}
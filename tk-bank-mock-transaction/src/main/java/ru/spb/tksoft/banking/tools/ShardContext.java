@@ -0,0 +1,86 @@
+package ru.spb.tksoft.banking.tools;
+
+import java.util.function.Supplier;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Shard of the database used by the current thread.
+ *
+ * Connections are routed by the shard set here when they are taken, that is on the first
+ * statement of a transaction, see
+ * {@link ru.spb.tksoft.banking.configuration.ShardRoutingDataSource}. So the shard is set before
+ * a transaction begins and is not changed until it ends: entering another shard within a
+ * transaction is an error. Without a shard set, the first shard is used: it holds the data not
+ * partitioned by users.
+ *
+ * Other threads do not see the shard of the caller: tasks passed to them are wrapped with
+ * {@link #wrap(Supplier)}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public final class ShardContext {
+
+    /** Shard used without a shard set. */
+    public static final int DEFAULT_SHARD = 0;
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Private constructor.
+     */
+    private ShardContext() {}
+
+    /**
+     * @return Shard of the current thread.
+     */
+    public static int current() {
+
+        Integer shard = CURRENT.get();
+        return shard != null ? shard : DEFAULT_SHARD;
+    }
+
+    /**
+     * Execute the action on the shard and restore the previous shard.
+     *
+     * @param shard Shard.
+     * @param action Action.
+     * @param <T> Type of the result.
+     * @return Result of the action.
+     * @throws IllegalStateException If a transaction on another shard is active.
+     */
+    public static <T> T call(final int shard, @NotNull final Supplier<T> action) {
+
+        Integer previous = CURRENT.get();
+        if (shard == current()) {
+            return action.get();
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException(
+                    "Cannot enter shard " + shard + " within a transaction on shard " + current());
+        }
+
+        CURRENT.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * @param task Task to be run by another thread.
+     * @param <T> Type of the result.
+     * @return Task running on the shard of the current thread.
+     */
+    @NotNull
+    public static <T> Supplier<T> wrap(@NotNull final Supplier<T> task) {
+
+        int shard = current();
+        return () -> call(shard, task);
+    }
+}
@@ -0,0 +1,10 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Partial index of accounts eligible for the balance autoincrement: positive balance below the
+-- autoincrement limit. Used by keyset pagination of CHUNKED mode and by the streaming cursor of
+-- ROW mode, ineligible accounts are not even visited.
+
+-- changeSet kostusonline:f1052754-4b78-5526-86a3-22692407bf08 runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_account_accrual_eligible ON "account" (id)
+WHERE balance > 0 AND balance < balance_autolimit;
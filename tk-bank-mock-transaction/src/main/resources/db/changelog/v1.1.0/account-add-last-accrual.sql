@@ -0,0 +1,8 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Time up to which the balance autoincrement is materialized (LAZY mode, see AccrualCalculator).
+
+-- changeSet kostusonline:d0dd73a5-9526-51de-997c-48e82078dcdd runOnChange:true
+ALTER TABLE "account"
+ADD COLUMN IF NOT EXISTS "last_accrual_at" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP;
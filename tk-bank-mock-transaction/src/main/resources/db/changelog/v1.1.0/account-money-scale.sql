@@ -0,0 +1,23 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Balances are amounts of money with two fraction digits (see Money), as declared in the entity.
+-- Balances grown by autoincrement before this change may have more digits: they are rounded,
+-- and the rounding is journaled as ROUNDING operations against EQUITY first, so the journal
+-- still reconciles with the balances.
+
+-- changeSet kostusonline:541da1be-e17d-5978-9c6f-a3c3656ae18b runOnChange:true
+INSERT INTO "journal" ("tx_id", "operation", "ledger", "user_id", "amount")
+SELECT o.tx_id, 'ROUNDING', e.ledger, e.user_id, e.amount
+FROM (
+    SELECT gen_random_uuid() AS tx_id, a.user_id, ROUND(a.balance, 2) - a.balance AS delta
+    FROM "account" a
+    WHERE ROUND(a.balance, 2) <> a.balance) o
+CROSS JOIN LATERAL (VALUES
+    ('ACCOUNT', o.user_id, o.delta),
+    ('EQUITY', CAST(NULL AS BIGINT), -o.delta)) e (ledger, user_id, amount);
+
+-- changeSet kostusonline:87348ce8-6a70-5a1b-92ec-b4fe3c576ce6 runOnChange:true
+ALTER TABLE "account"
+ALTER COLUMN "balance" TYPE DECIMAL(15, 2) USING ROUND("balance", 2),
+ALTER COLUMN "balance_autolimit" TYPE DECIMAL(15, 2) USING ROUND("balance_autolimit", 2);
@@ -0,0 +1,25 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Hot accounts (see AccountStripes): credits go to one of "stripes" sub-balance rows instead of
+-- the account row, so concurrent credits do not queue on one row lock. Debits are taken from the
+-- account row only, and sub-balances are folded into it when needed and by a scheduled job.
+-- The balance of an account is the balance of its row plus its sub-balances.
+-- Zero stripes is a regular account.
+
+-- changeSet kostusonline:0c6a660b-85d7-5331-8aad-a704240c7eb3 runOnChange:true
+ALTER TABLE "account"
+ADD COLUMN IF NOT EXISTS "stripes" INTEGER NOT NULL DEFAULT 0 CHECK ("stripes" >= 0);
+
+-- changeSet kostusonline:6d2e8747-e61d-5690-89bd-05e44df5dd71 runOnChange:true
+CREATE TABLE IF NOT EXISTS "account_stripe" (
+    id BIGINT PRIMARY KEY NOT NULL GENERATED ALWAYS AS IDENTITY,
+    "user_id" BIGINT NOT NULL,
+    "stripe" INTEGER NOT NULL CHECK ("stripe" >= 0),
+    "balance" DECIMAL(15, 2) NOT NULL DEFAULT 0 CHECK ("balance" >= 0),
+    UNIQUE ("user_id", "stripe"),
+    FOREIGN KEY ("user_id") REFERENCES "account" ("user_id") ON DELETE CASCADE
+);
+
+-- changeSet kostusonline:c684252e-31ea-5722-94be-070cdf134960 runOnChange:true
+GRANT ALL ON "account_stripe" TO bank_god;
@@ -0,0 +1,34 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Checkpoints of the chunked balance autoincrement (see AccrualEngine).
+-- Run with empty "finished_at" is unfinished and will be resumed from "last_id".
+-- Chunk is recorded in the same transaction as its update, so a resumed run never grows
+-- the same account twice.
+
+-- changeSet kostusonline:3ff0989e-7c7b-5a15-9b1e-5114d6ac54d7 runOnChange:true
+CREATE TABLE IF NOT EXISTS "accrual_run" (
+    id BIGINT PRIMARY KEY NOT NULL GENERATED ALWAYS AS IDENTITY,
+    "rate" DECIMAL NOT NULL CHECK ("rate" > 0),
+    "last_id" BIGINT NOT NULL DEFAULT 0,
+    "updated_rows" BIGINT NOT NULL DEFAULT 0,
+    "started_at" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    "finished_at" TIMESTAMP WITH TIME ZONE
+);
+
+-- changeSet kostusonline:7c566fa2-fb1d-5834-b6bf-03ee7e6e6bdd runOnChange:true
+GRANT ALL ON "accrual_run" TO bank_god;
+
+-- changeSet kostusonline:ce636481-f81f-5127-b0c3-28181a496ff9 runOnChange:true
+CREATE TABLE IF NOT EXISTS "accrual_chunk" (
+    "run_id" BIGINT NOT NULL,
+    "from_id" BIGINT NOT NULL, -- exclusive
+    "to_id" BIGINT NOT NULL, -- inclusive
+    "updated_rows" INT NOT NULL DEFAULT 0,
+    "completed_at" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY ("run_id", "from_id"),
+    FOREIGN KEY ("run_id") REFERENCES "accrual_run" ("id") ON DELETE CASCADE
+);
+
+-- changeSet kostusonline:ece705fc-796c-58e1-8199-196703dbe2f1 runOnChange:true
+GRANT ALL ON "accrual_chunk" TO bank_god;
@@ -0,0 +1,28 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Outcomes of money-moving requests by "Idempotency-Key" header (see IdempotencyStore).
+-- A key is unique per user; the outcome is recorded in the same transaction as the operation.
+-- Operations applied outside the database transaction (the ledger engine) claim the key first:
+-- the record is pending until the outcome is recorded.
+-- Expired keys are deleted by a scheduled job.
+
+-- changeSet kostusonline:bbcb93f2-fedf-5b88-98c7-f47664ea8bc1 runOnChange:true
+CREATE TABLE IF NOT EXISTS "idempotency_key" (
+    id BIGINT PRIMARY KEY NOT NULL GENERATED ALWAYS AS IDENTITY,
+    "user_id" BIGINT NOT NULL,
+    "idempotency_key" VARCHAR(100) NOT NULL,
+    "operation" VARCHAR(50) NOT NULL,
+    "request_hash" VARCHAR(64) NOT NULL,
+    "response" TEXT,
+    "pending" BOOLEAN NOT NULL DEFAULT FALSE,
+    "created_at" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    "expires_at" TIMESTAMP WITH TIME ZONE NOT NULL,
+    UNIQUE ("user_id", "idempotency_key")
+);
+
+-- changeSet kostusonline:92715ae2-eb1a-59cb-8b1a-5c901a25b234 runOnChange:true
+GRANT ALL ON "idempotency_key" TO bank_god;
+
+-- changeSet kostusonline:f7d68da0-0d3b-5ef0-a0ba-3b00516b520d runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_idempotency_key_expires_at ON "idempotency_key" ("expires_at");
@@ -0,0 +1,42 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Append-only double-entry journal of balance changes (see JournalWriter).
+-- Every operation ("tx_id") is a balanced set of entries: amounts sum to zero.
+-- Entries of ledger ACCOUNT belong to accounts of users, their sum is the account balance;
+-- other ledgers (CASH, INTEREST, EQUITY) are counterparties outside the bank and have no user.
+-- Existing balances are recorded as OPENING operations against EQUITY.
+
+-- changeSet kostusonline:6aecec00-cb78-5d9f-97d2-3647805f369d runOnChange:true
+CREATE TABLE IF NOT EXISTS "journal" (
+    id BIGINT PRIMARY KEY NOT NULL GENERATED ALWAYS AS IDENTITY,
+    "tx_id" UUID NOT NULL,
+    "operation" VARCHAR(20) NOT NULL,
+    "ledger" VARCHAR(20) NOT NULL,
+    "user_id" BIGINT,
+    "amount" DECIMAL NOT NULL,
+    "created_at" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CHECK (("ledger" = 'ACCOUNT') = ("user_id" IS NOT NULL))
+);
+
+-- changeSet kostusonline:c33c94af-b901-5244-bc8e-75bfa7eda272 runOnChange:true
+GRANT ALL ON "journal" TO bank_god;
+
+-- changeSet kostusonline:1e90b90c-e2ff-5f78-9d26-e72d5bbb2130 runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_journal_user_id ON "journal" ("user_id") INCLUDE ("amount")
+WHERE "user_id" IS NOT NULL;
+
+-- changeSet kostusonline:88943783-0002-5eaf-acd6-806cf945bf3e runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_journal_tx_id ON "journal" ("tx_id");
+
+-- changeSet kostusonline:3a076252-243b-58da-b162-19a3c812bede runOnChange:true
+INSERT INTO "journal" ("tx_id", "operation", "ledger", "user_id", "amount")
+SELECT o.tx_id, 'OPENING', e.ledger, e.user_id, e.amount
+FROM (
+    SELECT gen_random_uuid() AS tx_id, a.user_id, a.balance
+    FROM "account" a
+    WHERE a.balance <> 0
+    AND NOT EXISTS (SELECT 1 FROM "journal" j WHERE j.user_id = a.user_id)) o
+CROSS JOIN LATERAL (VALUES
+    ('ACCOUNT', o.user_id, o.balance),
+    ('EQUITY', CAST(NULL AS BIGINT), -o.balance)) e (ledger, user_id, amount);
@@ -0,0 +1,16 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Checkpoints of the ledger engine shards (see LedgerEngine).
+-- "seq" is the sequence number of the last journal record of the shard written to the database,
+-- in the same transaction as the balances. Records above it are written on start.
+
+-- changeSet kostusonline:b9a378e3-6c97-5186-a621-bfe1297603b0 runOnChange:true
+CREATE TABLE IF NOT EXISTS "ledger_checkpoint" (
+    "shard" INT PRIMARY KEY NOT NULL CHECK ("shard" >= 0),
+    "seq" BIGINT NOT NULL DEFAULT 0,
+    "updated_at" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- changeSet kostusonline:fe0b9f0e-5e39-551b-8112-8020f5d520d9 runOnChange:true
+GRANT ALL ON "ledger_checkpoint" TO bank_god;
@@ -0,0 +1,17 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Leases of scheduled jobs for running several nodes (see SchedulerLeaseService).
+-- Lease is owned by one node until "expires_at"; the owner renews it on every tick.
+
+-- changeSet kostusonline:f5c8991e-1308-5cb1-a6f0-7da9b70dd0d2 runOnChange:true
+CREATE TABLE IF NOT EXISTS "scheduler_lease" (
+    "job_name" VARCHAR(100) PRIMARY KEY NOT NULL,
+    "owner_id" VARCHAR(200) NOT NULL,
+    "acquired_at" TIMESTAMP WITH TIME ZONE NOT NULL,
+    "renewed_at" TIMESTAMP WITH TIME ZONE NOT NULL,
+    "expires_at" TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- changeSet kostusonline:d03d20db-b362-56fa-81b1-d0554c2c396b runOnChange:true
+GRANT ALL ON "scheduler_lease" TO bank_god;
@@ -0,0 +1,31 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Transfers between shards of the database (see ShardTransferService).
+-- Every shard of the database has the table. On the shard of the source account, the debit is
+-- recorded as PREPARED in the transaction of the debit, and becomes COMMITTED once the credit is
+-- applied, or ABORTED once the debit is returned. On the shard of the destination account, the
+-- credit is recorded as APPLIED in the transaction of the credit: the ID makes it applied once.
+-- Money in flight is journaled against the TRANSIT ledger on both shards.
+
+-- changeSet kostusonline:714ba428-d87d-5851-ae0d-d0e1b176d9b4 runOnChange:true
+CREATE TABLE IF NOT EXISTS "shard_transfer" (
+    id UUID PRIMARY KEY NOT NULL,
+    "from_user_id" BIGINT NOT NULL,
+    "to_user_id" BIGINT NOT NULL,
+    "amount" DECIMAL(15,2) NOT NULL CHECK ("amount" > 0),
+    "status" VARCHAR(20) NOT NULL,
+    "created_at" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    "finished_at" TIMESTAMP WITH TIME ZONE
+);
+
+-- changeSet kostusonline:dfe1cc7d-fdba-513a-aa41-4324359e9fe5 runOnChange:true
+GRANT ALL ON "shard_transfer" TO bank_god;
+
+-- changeSet kostusonline:22e66ca9-3c7d-5f1b-bcf6-e2ea1945ef53 runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_shard_transfer_prepared ON "shard_transfer" ("created_at")
+    WHERE "status" = 'PREPARED';
+
+-- changeSet kostusonline:45dbe0e2-2d66-5966-9bc4-11a4a2e0ead1 runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_shard_transfer_finished_at ON "shard_transfer" ("finished_at")
+    WHERE "finished_at" IS NOT NULL;
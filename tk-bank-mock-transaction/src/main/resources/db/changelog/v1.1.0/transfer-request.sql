@@ -0,0 +1,34 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Queue of asynchronous transfers (see TransferQueue).
+-- Workers claim pending requests with FOR UPDATE SKIP LOCKED, so any number of them on any
+-- number of nodes take different requests. A request claimed longer than the lease ago is
+-- claimed again; it is settled once by its idempotency key.
+-- Finished requests are deleted by a scheduled job after the retention time.
+
+-- changeSet kostusonline:0c846f10-bc18-5cf2-93a5-9f2762c3fa20 runOnChange:true
+CREATE TABLE IF NOT EXISTS "transfer_request" (
+    id BIGINT PRIMARY KEY NOT NULL GENERATED ALWAYS AS IDENTITY,
+    "from_user_id" BIGINT NOT NULL,
+    "to_user_id" BIGINT NOT NULL,
+    "amount" DECIMAL(15,2) NOT NULL CHECK ("amount" > 0),
+    "status" VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    "error" VARCHAR(255),
+    "attempts" INT NOT NULL DEFAULT 0,
+    "created_at" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    "claimed_at" TIMESTAMP WITH TIME ZONE,
+    "finished_at" TIMESTAMP WITH TIME ZONE,
+    FOREIGN KEY ("from_user_id") REFERENCES "account" ("user_id") ON DELETE CASCADE
+);
+
+-- changeSet kostusonline:b7f91698-b8f0-5518-b6a3-ef7c64430968 runOnChange:true
+GRANT ALL ON "transfer_request" TO bank_god;
+
+-- changeSet kostusonline:98d1489c-64c1-5c0f-82be-62e747e0f9c3 runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_transfer_request_unfinished ON "transfer_request" ("id")
+    WHERE "status" IN ('PENDING', 'PROCESSING');
+
+-- changeSet kostusonline:2d637747-0507-5504-adce-72545bf24442 runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_transfer_request_finished_at ON "transfer_request" ("finished_at")
+    WHERE "finished_at" IS NOT NULL;
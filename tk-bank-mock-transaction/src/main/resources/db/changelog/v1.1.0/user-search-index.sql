@@ -0,0 +1,15 @@
+-- liquibase formatted sql
+
+-- Notes:
+-- Covering indexes for user search, see RawUserRepository: name% prefix search and search by
+-- date of birth. Search reads id, name and date of birth only (see UserSearchRow), so a page is
+-- read with index-only scan; passwords are not copied into the indexes.
+-- text_pattern_ops makes LIKE 'prefix%' indexable regardless of the database collation.
+
+-- changeSet kostusonline:2b024fb9-fe62-56a3-aa1d-0d29a993f09e runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_user_name_pattern ON "user" ("name" text_pattern_ops)
+INCLUDE (id, "date_of_birth");
+
+-- changeSet kostusonline:3f230471-349e-583e-8be5-827811db8178 runOnChange:true
+CREATE INDEX IF NOT EXISTS idx_user_date_of_birth ON "user" ("date_of_birth", id)
+INCLUDE ("name");
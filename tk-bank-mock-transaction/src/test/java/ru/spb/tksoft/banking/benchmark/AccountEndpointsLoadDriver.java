@@ -0,0 +1,165 @@
+package ru.spb.tksoft.banking.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.spb.tksoft.banking.dto.auth.AuthResponseDto;
+import ru.spb.tksoft.banking.dto.auth.LoginRequestDto;
+
+/**
+ * Load test of the account endpoints of a running node: bursts of concurrent clients reading the
+ * account and depositing to it, "/account/my" and "/account/deposit".
+ *
+ * Run the node twice, with platform threads and with virtual ones, and the driver against each:
+ * <ul>
+ * <li>{@code --spring.threads.virtual.enabled=false}: Tomcat serves at most 200 requests at
+ * once, the others queue in its accept backlog;</li>
+ * <li>{@code --spring.threads.virtual.enabled=true}: every request has a thread, transactions
+ * of requests are bounded by the database bulkhead, rejected ones are answered with 503.</li>
+ * </ul>
+ * Clients log in as the test users, see "insert-test-data.sql", and are virtual threads, so the
+ * driver itself is not the bound. Reported are throughput, latency percentiles and the number of
+ * responses by status.
+ *
+ * Run with test classpath:
+ * {@code java ... AccountEndpointsLoadDriver [base URL] [clients] [requests per client]}, by
+ * default "http://localhost:8092/tk-bank-mock-transaction", 2000 clients, 10 requests each.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+public final class AccountEndpointsLoadDriver {
+
+    private static final List<String> USERS = List.of("Anton", "Ivan", "Olga", "Sergey");
+
+    private static final String PASSWORD = "12345678";
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String baseUrl;
+
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    private AccountEndpointsLoadDriver(final String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    private String login(final String name) throws IOException, InterruptedException {
+
+        String body = objectMapper.writeValueAsString(
+                new LoginRequestDto(name + "@gmail.com", PASSWORD));
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login of " + name + " failed: " + response.body());
+        }
+        return objectMapper.readValue(response.body(), AuthResponseDto.class).getToken();
+    }
+
+    /** @return Latency of the request, nanoseconds. */
+    private long send(final String token, final boolean deposit)
+            throws IOException, InterruptedException {
+
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .header("Authorization", "Bearer " + token)
+                .timeout(REQUEST_TIMEOUT);
+        if (deposit) {
+            request.uri(URI.create(baseUrl + "/account/deposit?amount=0.01"))
+                    .POST(HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.uri(URI.create(baseUrl + "/account/my")).GET();
+        }
+
+        long started = System.nanoTime();
+        int status = client.send(request.build(), HttpResponse.BodyHandlers.discarding())
+                .statusCode();
+        long latency = System.nanoTime() - started;
+
+        statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        return latency;
+    }
+
+    private void run(final int clients, final int requests)
+            throws IOException, InterruptedException, ExecutionException {
+
+        List<String> tokens = new ArrayList<>(USERS.size());
+        for (String user : USERS) {
+            tokens.add(login(user));
+        }
+
+        long[] latencies = new long[clients * requests];
+        long started = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(clients);
+            for (int c = 0; c < clients; c++) {
+                String token = tokens.get(c % tokens.size());
+                int first = c * requests;
+                futures.add(executor.submit(() -> {
+                    for (int r = 0; r < requests; r++) {
+                        latencies[first + r] = send(token, (r & 1) == 0);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+
+        Arrays.sort(latencies);
+        System.out.printf("clients: %d, requests: %d, duration, ms: %d, requests/s: %.0f%n",
+                clients, latencies.length, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                latencies.length * 1e9 / elapsed);
+        System.out.printf("latency, ms: p50 %d, p99 %d, max %d%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.99),
+                TimeUnit.NANOSECONDS.toMillis(latencies[latencies.length - 1]));
+        System.out.println("responses by status: " + new TreeMap<>(statuses));
+    }
+
+    private static long percentile(final long[] sorted, final double p) {
+        return TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.min(sorted.length - 1,
+                Math.round(p * sorted.length))]);
+    }
+
+    /**
+     * Run the load test.
+     *
+     * @param args Base URL, number of clients, number of requests per client; all optional.
+     * @throws Exception on login or request error.
+     */
+    public static void main(String[] args) throws Exception {
+
+        String baseUrl = args.length > 0 ? args[0]
+                : "http://localhost:8092/tk-bank-mock-transaction";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        new AccountEndpointsLoadDriver(baseUrl).run(clients, requests);
+    }
+}
@@ -0,0 +1,173 @@
+package ru.spb.tksoft.banking.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.spb.tksoft.banking.service.AccrualMode;
+import ru.spb.tksoft.banking.service.ledger.LedgerEngine;
+import ru.spb.tksoft.banking.service.ledger.LedgerRecord;
+import ru.spb.tksoft.banking.service.ledger.LedgerStore;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Load test of the ledger engine: throughput of transfers between random accounts by the number
+ * of shards, that is of cores busy with balances. Throughput per core is the score divided by the
+ * number of shards.
+ *
+ * Journals are real files with fsync in a temporary directory, so the score depends on the disk;
+ * the database is replaced with a map, so it does not. Callers are many, as HTTP threads are, and
+ * wait for their operations: a shard makes a whole group of them durable with one fsync.
+ *
+ * Run from IDE or with test classpath: {@code java ... LedgerEngineBenchmark}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class LedgerEngineBenchmark {
+
+    private static final int ACCOUNTS = 100_000;
+
+    private static final long INITIAL_BALANCE = 1_000_000_00L;
+
+    @Param({"1", "2", "4"})
+    private int shards;
+
+    private Path walDirectory;
+
+    private MapStore store;
+
+    private LedgerEngine engine;
+
+    /** Database replaced with a map of balances. */
+    private static final class MapStore implements LedgerStore {
+
+        private final Map<Long, Long> balances = new ConcurrentHashMap<>();
+
+        @Override
+        public OptionalLong loadBalance(final long userId) {
+
+            Long balance = balances.get(userId);
+            return balance == null ? OptionalLong.empty() : OptionalLong.of(balance);
+        }
+
+        @Override
+        public long loadCheckpoint(final int shard) {
+            return 0;
+        }
+
+        @Override
+        public void write(final int shard, final List<LedgerRecord> records) {
+
+            for (LedgerRecord r : records) {
+                switch (r.operation()) {
+                    case DEPOSIT -> balances.merge(r.userId(), r.amount(), Long::sum);
+                    case WITHDRAW -> balances.merge(r.userId(), -r.amount(), Long::sum);
+                    case TRANSFER -> {
+                        balances.merge(r.userId(), -r.amount(), Long::sum);
+                        balances.merge(r.counterpartyId(), r.amount(), Long::sum);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Create accounts and start the engine.
+     *
+     * @throws IOException on file error.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        walDirectory = Files.createTempDirectory("ledger-benchmark");
+        store = new MapStore();
+        for (long userId = 1; userId <= ACCOUNTS; userId++) {
+            store.balances.put(userId, INITIAL_BALANCE);
+        }
+
+        engine = new LedgerEngine(store, true, AccrualMode.BULK, shards, 65536,
+                walDirectory.toString(), 64L << 20, 1000, Duration.ofMillis(10),
+                Duration.ofSeconds(10), Duration.ofSeconds(10),
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        engine.start();
+    }
+
+    /**
+     * Stop the engine, check the total of balances and delete journals.
+     *
+     * @throws IOException on file error.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        engine.stop();
+
+        long total = store.balances.values().stream().mapToLong(Long::longValue).sum();
+        if (total != INITIAL_BALANCE * ACCOUNTS) {
+            throw new IllegalStateException("Total of balances changed: " + total);
+        }
+
+        try (Stream<Path> paths = Files.walk(walDirectory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /** Transfer of 0.01 between random accounts. */
+    @Benchmark
+    public void transfer() {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = random.nextLong(1, ACCOUNTS + 1);
+        long to = random.nextLong(1, ACCOUNTS);
+        engine.transfer(from, to >= from ? to + 1 : to, Money.ofMinor(1));
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Not used.
+     * @throws RunnerException on benchmark error.
+     */
+    public static void main(String[] args) throws RunnerException {
+
+        new Runner(new OptionsBuilder()
+                .include(LedgerEngineBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
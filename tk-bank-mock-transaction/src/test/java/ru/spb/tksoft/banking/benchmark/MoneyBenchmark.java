@@ -0,0 +1,159 @@
+package ru.spb.tksoft.banking.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Amounts of the account hot path: previous {@link BigDecimal} against current {@link Money}.
+ *
+ * Arithmetic is the one of a transfer batch (see TransferBatchService): validation of the amount,
+ * check against the available balance, debit and total. JSON is a round-trip of an array of
+ * amounts, as in batch requests and responses.
+ *
+ * Run from IDE or with test classpath: {@code java ... MoneyBenchmark}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoneyBenchmark {
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BigDecimal[] decimals;
+
+    private Money[] amounts;
+
+    private BigDecimal decimalBalance;
+
+    private Money balance;
+
+    private String decimalsJson;
+
+    private String amountsJson;
+
+    /**
+     * Create random amounts up to 1000.00, with a balance enough for all of them.
+     *
+     * @throws JsonProcessingException on serialization error.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+
+        decimals = new BigDecimal[size];
+        amounts = new Money[size];
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            long minor = ThreadLocalRandom.current().nextLong(1, 100_000);
+            decimals[i] = BigDecimal.valueOf(minor, Money.SCALE);
+            amounts[i] = Money.ofMinor(minor);
+            total += minor;
+        }
+        decimalBalance = BigDecimal.valueOf(total, Money.SCALE);
+        balance = Money.ofMinor(total);
+
+        decimalsJson = objectMapper.writeValueAsString(decimals);
+        amountsJson = objectMapper.writeValueAsString(amounts);
+    }
+
+    /**
+     * Previous path: transfer batch arithmetic on BigDecimal.
+     *
+     * @return Total.
+     */
+    @Benchmark
+    public BigDecimal transferBatchBigDecimal() {
+
+        BigDecimal available = decimalBalance;
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal amount : decimals) {
+            if (amount.compareTo(BigDecimal.ZERO) > 0 && available.compareTo(amount) >= 0) {
+                available = available.subtract(amount);
+                total = total.add(amount);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Current path: transfer batch arithmetic on Money.
+     *
+     * @return Total.
+     */
+    @Benchmark
+    public Money transferBatchMoney() {
+
+        Money available = balance;
+        Money total = Money.ZERO;
+        for (Money amount : amounts) {
+            if (amount.isPositive() && available.compareTo(amount) >= 0) {
+                available = available.subtract(amount);
+                total = total.add(amount);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Previous path: JSON round-trip of BigDecimal amounts.
+     *
+     * @return Serialized amounts.
+     * @throws JsonProcessingException on serialization error.
+     */
+    @Benchmark
+    public String jsonBigDecimal() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(
+                objectMapper.readValue(decimalsJson, BigDecimal[].class));
+    }
+
+    /**
+     * Current path: JSON round-trip of Money amounts.
+     *
+     * @return Serialized amounts.
+     * @throws JsonProcessingException on serialization error.
+     */
+    @Benchmark
+    public String jsonMoney() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(
+                objectMapper.readValue(amountsJson, Money[].class));
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Not used.
+     * @throws RunnerException on benchmark error.
+     */
+    public static void main(String[] args) throws RunnerException {
+
+        new Runner(new OptionsBuilder()
+                .include(MoneyBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
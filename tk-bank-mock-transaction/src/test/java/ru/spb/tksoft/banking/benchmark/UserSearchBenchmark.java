@@ -0,0 +1,196 @@
+package ru.spb.tksoft.banking.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import ru.spb.tksoft.banking.dto.RawUserDto;
+import ru.spb.tksoft.banking.tools.PageTools;
+
+/**
+ * User search by name prefix: previous path (page query, count query, re-paging of the page
+ * contents) against the current one (slice query without count), on in-memory H2 with the same
+ * SQL as Hibernate issues for RawUserRepository.
+ *
+ * Run from IDE or with test classpath: {@code java ... UserSearchBenchmark}.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserSearchBenchmark {
+
+    private static final int USERS = 200_000;
+
+    private static final String NAME_PREFIX = "user-1";
+
+    private static final String SELECT = """
+            SELECT u.id, u.name, u.date_of_birth FROM "user" u
+            WHERE u.name LIKE ? ORDER BY u.name
+            OFFSET ? ROWS FETCH FIRST ? ROWS ONLY""";
+
+    private static final String COUNT = """
+            SELECT COUNT(u.id) FROM "user" u
+            WHERE u.name LIKE ?""";
+
+    @Param({"0", "10", "1000"})
+    private int page;
+
+    @Param({"10", "100"})
+    private int size;
+
+    private Connection connection;
+
+    /**
+     * Create and fill the database.
+     *
+     * @throws SQLException on database error.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+
+        connection = DriverManager.getConnection("jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE IF NOT EXISTS "user" (
+                        id BIGINT PRIMARY KEY,
+                        name VARCHAR(500) NOT NULL UNIQUE,
+                        password VARCHAR(500) NOT NULL,
+                        date_of_birth DATE)""");
+            statement.execute("DELETE FROM \"user\"");
+        }
+
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO \"user\" (id, name, password, date_of_birth) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < USERS; i++) {
+                insert.setLong(1, i + 1L);
+                insert.setString(2, String.format("user-%06d", i));
+                insert.setString(3, "password-" + i);
+                insert.setObject(4, LocalDate.of(1950, 1, 1).plusDays(i % 20_000));
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Drop the database.
+     *
+     * @throws SQLException on database error.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    /**
+     * Previous path: page with count, then the page contents are paged once again.
+     *
+     * @return Page of users.
+     * @throws SQLException on database error.
+     */
+    @Benchmark
+    public Page<RawUserDto> pagedWithCountAndRepaging() throws SQLException {
+
+        Pageable pageable = PageRequest.of(page, size);
+        List<RawUserDto> content = select(pageable.getOffset(), size);
+        count();
+        return PageTools.convertListToPage(content, pageable);
+    }
+
+    /**
+     * Current path: slice of one more row than the page size, mapped as is.
+     *
+     * @return Slice of users.
+     * @throws SQLException on database error.
+     */
+    @Benchmark
+    public Slice<RawUserDto> slice() throws SQLException {
+
+        Pageable pageable = PageRequest.of(page, size);
+        List<RawUserDto> content = select(pageable.getOffset(), size + 1);
+
+        boolean hasNext = content.size() > size;
+        return new SliceImpl<>(hasNext ? content.subList(0, size) : content, pageable, hasNext);
+    }
+
+    private List<RawUserDto> select(final long offset, final int limit) throws SQLException {
+
+        try (PreparedStatement select = connection.prepareStatement(SELECT)) {
+            select.setString(1, NAME_PREFIX + "%");
+            select.setLong(2, offset);
+            select.setInt(3, limit);
+
+            List<RawUserDto> users = new ArrayList<>(limit);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    users.add(new RawUserDto(rs.getLong(1), rs.getString(2), null,
+                            rs.getObject(3, LocalDate.class)));
+                }
+            }
+            return users;
+        }
+    }
+
+    private long count() throws SQLException {
+
+        try (PreparedStatement count = connection.prepareStatement(COUNT)) {
+            count.setString(1, NAME_PREFIX + "%");
+            try (ResultSet rs = count.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Not used.
+     * @throws RunnerException on benchmark error.
+     */
+    public static void main(String[] args) throws RunnerException {
+
+        new Runner(new OptionsBuilder()
+                .include(UserSearchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,119 @@
+package ru.spb.tksoft.banking.configuration;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.spb.tksoft.banking.exception.DatabaseBusyException;
+import ru.spb.tksoft.banking.service.DatabaseBulkhead;
+
+/**
+ * Transactions of requests passing a bulkhead of one permit without waiting, on in-memory H2.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class BulkheadJpaTransactionManagerTest {
+
+    private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+
+    private TransactionTemplate required;
+
+    private TransactionTemplate requiresNew;
+
+    /** Create the transaction manager. */
+    @BeforeEach
+    void setUp() {
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bulkhead;DB_CLOSE_DELAY=-1");
+
+        entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactory.setDataSource(dataSource);
+        entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactory.setPackagesToScan("ru.spb.tksoft.banking.none");
+        entityManagerFactory.afterPropertiesSet();
+
+        var bulkhead = new DatabaseBulkhead(true, 1, 10, Duration.ZERO,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        var transactionManager = new BulkheadJpaTransactionManager(
+                entityManagerFactory.getObject(), bulkhead);
+        transactionManager.afterPropertiesSet();
+
+        required = new TransactionTemplate(transactionManager);
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        RequestContextHolder.setRequestAttributes(
+                new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    /** Close the fabric. */
+    @AfterEach
+    void tearDown() {
+
+        RequestContextHolder.resetRequestAttributes();
+        entityManagerFactory.destroy();
+    }
+
+    private static void inRequest(final Runnable action) {
+
+        CompletableFuture.runAsync(() -> {
+            RequestContextHolder.setRequestAttributes(
+                    new ServletRequestAttributes(new MockHttpServletRequest()));
+            try {
+                action.run();
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+            }
+        }).join();
+    }
+
+    /** Permit is held by the transaction of a request only, inner ones run under it. */
+    @Test
+    void permitIsHeldForTransaction() {
+
+        required.executeWithoutResult(outer -> {
+            requiresNew.executeWithoutResult(inner -> {
+                // no second permit is needed
+            });
+
+            var rejected = Assertions.assertThrows(CompletionException.class,
+                    () -> inRequest(() -> required.executeWithoutResult(other -> {
+                    })));
+            Assertions.assertInstanceOf(DatabaseBusyException.class, rejected.getCause());
+
+            // Jobs and workers do not pass the bulkhead
+            CompletableFuture.runAsync(() -> required.executeWithoutResult(job -> {
+            })).join();
+        });
+
+        inRequest(() -> required.executeWithoutResult(next -> {
+        }));
+    }
+
+    /** Permit is released on rollback. */
+    @Test
+    void permitIsReleasedOnRollback() {
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> required.executeWithoutResult(status -> {
+                    throw new IllegalStateException("rollback");
+                }));
+
+        inRequest(() -> required.executeWithoutResult(next -> {
+        }));
+    }
+}
@@ -0,0 +1,59 @@
+package ru.spb.tksoft.banking.configuration;
+
+import java.math.BigDecimal;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import jakarta.persistence.EntityManager;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Money contributed to Hibernate by the service file, without settings of the fabric: a native
+ * query parameter is bound as NUMERIC. In-memory H2.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class MoneyTypeContributorTest {
+
+    private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+
+    /** Create the fabric. */
+    @BeforeEach
+    void setUp() {
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:money;DB_CLOSE_DELAY=-1");
+
+        entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactory.setDataSource(dataSource);
+        entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactory.setPackagesToScan("ru.spb.tksoft.banking.none");
+        entityManagerFactory.afterPropertiesSet();
+    }
+
+    /** Close the fabric. */
+    @AfterEach
+    void tearDown() {
+        entityManagerFactory.destroy();
+    }
+
+    /** Money is a parameter of a native query. */
+    @Test
+    void moneyIsNativeQueryParameter() {
+
+        EntityManager entityManager = entityManagerFactory.getObject().createEntityManager();
+        try {
+            Object result = entityManager
+                    .createNativeQuery("SELECT CAST(:amount AS NUMERIC(15, 2)) + 1")
+                    .setParameter("amount", Money.ofMinor(1_23))
+                    .getSingleResult();
+            Assertions.assertEquals(0, new BigDecimal("2.23").compareTo((BigDecimal) result));
+        } finally {
+            entityManager.close();
+        }
+    }
+}
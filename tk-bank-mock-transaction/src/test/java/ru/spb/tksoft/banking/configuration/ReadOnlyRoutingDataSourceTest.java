@@ -0,0 +1,74 @@
+package ru.spb.tksoft.banking.configuration;
+
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Routing of transactions between the primary and the replica, both in-memory H2 databases
+ * standing in for PostgreSQL. Every database has a table naming it.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class ReadOnlyRoutingDataSourceTest {
+
+    private JdbcTemplate jdbc;
+
+    private TransactionTemplate readWrite;
+
+    private TransactionTemplate readOnly;
+
+    private static DataSource database(final String name) {
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE IF NOT EXISTS node (name VARCHAR(16))");
+        jdbc.execute("DELETE FROM node");
+        jdbc.update("INSERT INTO node VALUES (?)", name);
+        return dataSource;
+    }
+
+    /** Create databases and the routing data source. */
+    @BeforeEach
+    void setUp() {
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(
+                new ReadOnlyRoutingDataSource(database("primary"), database("replica")));
+        var transactionManager = new DataSourceTransactionManager(dataSource);
+
+        jdbc = new JdbcTemplate(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    private String node() {
+        return jdbc.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    /** Read-only transactions go to the replica. */
+    @Test
+    void readOnlyTransactionGoesToReplica() {
+        Assertions.assertEquals("replica", readOnly.execute(status -> node()));
+    }
+
+    /** Read-write transactions go to the primary. */
+    @Test
+    void readWriteTransactionGoesToPrimary() {
+        Assertions.assertEquals("primary", readWrite.execute(status -> node()));
+    }
+
+    /** Statements outside of transactions go to the primary. */
+    @Test
+    void noTransactionGoesToPrimary() {
+        Assertions.assertEquals("primary", node());
+    }
+}
@@ -0,0 +1,174 @@
+package ru.spb.tksoft.banking.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.zaxxer.hikari.HikariDataSource;
+import ru.spb.tksoft.banking.service.ShardRouter;
+import ru.spb.tksoft.banking.tools.KeysetTools;
+
+/**
+ * Routing of users between shards, in-memory H2 databases standing in for PostgreSQL. Every
+ * database has a table of user IDs.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class ShardRoutingDataSourceTest {
+
+    private static final int SHARDS = 3;
+
+    private final List<JdbcTemplate> databases = new ArrayList<>();
+
+    private JdbcTemplate jdbc;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ShardRouter shardRouter;
+
+    private static DataSource database(final String name) {
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE IF NOT EXISTS person (id BIGINT PRIMARY KEY)");
+        jdbc.execute("DELETE FROM person");
+        return dataSource;
+    }
+
+    /** Create databases, the routing data source and the router. */
+    @BeforeEach
+    void setUp() {
+
+        List<DataSource> shards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            DataSource shard = database("shard" + i);
+            shards.add(shard);
+            databases.add(new JdbcTemplate(shard));
+        }
+
+        var routing = new ShardRoutingDataSource(shards);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        var transactionManager = new DataSourceTransactionManager(dataSource);
+
+        jdbc = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        shardRouter = new ShardRouter(routing, transactionManager, false);
+    }
+
+    /** Stop readers. */
+    @AfterEach
+    void tearDown() {
+        shardRouter.shutdown();
+    }
+
+    private void insert(final long userId) {
+
+        shardRouter.runFor(userId, () -> transactionTemplate.executeWithoutResult(
+                status -> jdbc.update("INSERT INTO person VALUES (?)", userId)));
+    }
+
+    /** Users are written to their shards, every shard gets some of them. */
+    @Test
+    void usersGoToTheirShards() {
+
+        for (long userId = 1; userId <= 30; userId++) {
+            insert(userId);
+        }
+
+        for (long userId = 1; userId <= 30; userId++) {
+            Integer found = databases.get(shardRouter.shardOf(userId)).queryForObject(
+                    "SELECT COUNT(*) FROM person WHERE id = ?", Integer.class, userId);
+            Assertions.assertEquals(1, found);
+        }
+        for (JdbcTemplate database : databases) {
+            Assertions.assertTrue(
+                    database.queryForObject("SELECT COUNT(*) FROM person", Integer.class) > 0);
+        }
+    }
+
+    /** Scattered reads query every shard once. */
+    @Test
+    void readAllQueriesEveryShard() {
+
+        for (long userId = 1; userId <= 30; userId++) {
+            insert(userId);
+        }
+
+        List<Long> counts = shardRouter.readAll(
+                () -> jdbc.queryForObject("SELECT COUNT(*) FROM person", Long.class));
+        Assertions.assertEquals(SHARDS, counts.size());
+        Assertions.assertEquals(30, counts.stream().mapToLong(Long::longValue).sum());
+    }
+
+    /** Keyset pages of shards are merged into one page in the order of IDs. */
+    @Test
+    void keysetPagesAreMerged() {
+
+        for (long userId = 1; userId <= 30; userId++) {
+            insert(userId);
+        }
+
+        int size = 10;
+        List<Long> page = KeysetTools.merge(shardRouter.readAll(
+                () -> jdbc.queryForList("SELECT id FROM person WHERE id > ? ORDER BY id LIMIT ?",
+                        Long.class, 5, size + 1)),
+                size, Long::longValue);
+
+        Assertions.assertEquals(size + 1, page.size());
+        for (int i = 0; i < page.size(); i++) {
+            Assertions.assertEquals(6 + i, page.get(i));
+        }
+    }
+
+    /** Pools of shards other than the first one are owned and closed, even if one fails. */
+    @Test
+    void closeClosesOwnedShards() throws Exception {
+
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            var pool = new HikariDataSource();
+            pool.setJdbcUrl("jdbc:h2:mem:pool" + i + ";DB_CLOSE_DELAY=-1");
+            pools.add(pool);
+        }
+        HikariDataSource failing = new HikariDataSource() {
+            @Override
+            public void close() {
+                throw new IllegalStateException("Close failed");
+            }
+        };
+
+        List<DataSource> shards = new ArrayList<>(pools);
+        shards.add(1, failing);
+        var routing = new ShardRoutingDataSource(shards);
+
+        Assertions.assertThrows(IllegalStateException.class, routing::close);
+        Assertions.assertFalse(pools.get(0).isClosed());
+        for (HikariDataSource pool : pools.subList(1, pools.size())) {
+            Assertions.assertTrue(pool.isClosed());
+        }
+        pools.get(0).close();
+    }
+
+    /** A transaction is bound to one shard. */
+    @Test
+    void otherShardWithinTransactionIsRejected() {
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> shardRouter.run(0, () -> transactionTemplate.executeWithoutResult(
+                        status -> shardRouter.run(1, () -> jdbc.execute("SELECT 1")))));
+
+        Assertions.assertDoesNotThrow(
+                () -> shardRouter.run(1, () -> transactionTemplate.executeWithoutResult(
+                        status -> shardRouter.run(1, () -> jdbc.execute("SELECT 1")))));
+    }
+}
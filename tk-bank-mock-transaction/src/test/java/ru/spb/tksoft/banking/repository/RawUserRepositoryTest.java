@@ -0,0 +1,108 @@
+package ru.spb.tksoft.banking.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import ru.spb.tksoft.banking.entity.RawUserEntity;
+
+/**
+ * User search queries on an in-memory H2 database: rows are read without the password.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class RawUserRepositoryTest {
+
+    private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+
+    private RawUserRepository repository;
+
+    /** Create the user table with three users. */
+    @BeforeEach
+    void setUp() {
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:user-search;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS "user" (
+                    "id" BIGINT PRIMARY KEY,
+                    "name" VARCHAR(500) NOT NULL UNIQUE,
+                    "password" VARCHAR(500) NOT NULL,
+                    "date_of_birth" DATE)""");
+        jdbc.execute("DELETE FROM \"user\"");
+        jdbc.update("""
+                INSERT INTO "user" ("id", "name", "password", "date_of_birth") VALUES
+                (1, 'Anton', '12345678', DATE '1990-01-01'),
+                (2, 'Anna', '12345678', DATE '1985-06-15'),
+                (3, 'Ivan', '12345678', DATE '2000-12-31')""");
+
+        entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactory.setDataSource(dataSource);
+        entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactory.setManagedTypes(
+                PersistenceManagedTypes.of(RawUserEntity.class.getName()));
+        entityManagerFactory.setJpaPropertyMap(Map.of(AvailableSettings.BEAN_CONTAINER,
+                new SpringBeanContainer(new DefaultListableBeanFactory())));
+        entityManagerFactory.afterPropertiesSet();
+
+        repository = new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(
+                entityManagerFactory.getObject())).getRepository(RawUserRepository.class);
+    }
+
+    /** Close the fabric. */
+    @AfterEach
+    void tearDown() {
+        entityManagerFactory.destroy();
+    }
+
+    /** Search by name prefix, ordered by name. */
+    @Test
+    void findByNamePrefix() {
+
+        Slice<UserSearchRow> found =
+                repository.findSliceByNameLike("An", PageRequest.of(0, 1));
+
+        Assertions.assertEquals(
+                List.of(new UserSearchRow(2, "Anna", LocalDate.of(1985, 6, 15))),
+                found.getContent());
+        Assertions.assertTrue(found.hasNext());
+    }
+
+    /** Search by date of birth, counted. */
+    @Test
+    void findByDateOfBirth() {
+
+        Page<UserSearchRow> found = repository.findByBirthDateBetween(
+                LocalDate.of(1986, 1, 1), LocalDate.of(2000, 12, 31), PageRequest.of(0, 10));
+
+        Assertions.assertEquals(List.of(1L, 3L),
+                found.map(UserSearchRow::id).getContent());
+        Assertions.assertEquals(2, found.getTotalElements());
+    }
+
+    /** Rows of the birth date index by ID. */
+    @Test
+    void findSearchRowsById() {
+
+        Assertions.assertEquals(List.of(new UserSearchRow(3, "Ivan", LocalDate.of(2000, 12, 31))),
+                repository.findSearchRowsById(List.of(3L, 4L)));
+    }
+}
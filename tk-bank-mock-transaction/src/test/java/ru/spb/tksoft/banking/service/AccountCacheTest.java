@@ -0,0 +1,68 @@
+package ru.spb.tksoft.banking.service;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.actuate.metrics.cache.CacheMetricsRegistrar;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import ru.spb.tksoft.banking.dto.KeysetPageDto;
+import ru.spb.tksoft.banking.dto.RawAccountDto;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Account caches holding one page: the index of pages follows the page cache.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class AccountCacheTest {
+
+    private CaffeineCacheManager cacheManager;
+
+    private AccountCache cache;
+
+    /** Create caches of one entry each. */
+    @BeforeEach
+    void setUp() {
+
+        cacheManager = new CaffeineCacheManager();
+        cache = new AccountCache(cacheManager, "maximumSize=1",
+                new DefaultListableBeanFactory().getBeanProvider(CacheMetricsRegistrar.class));
+    }
+
+    private static KeysetPageDto<RawAccountDto> pageOf(final long... userIds) {
+
+        List<RawAccountDto> content = Arrays.stream(userIds)
+                .mapToObj(id -> new RawAccountDto(id, id, Money.ofMinor(100), Money.ofMinor(1000)))
+                .toList();
+        return new KeysetPageDto<>(content, content.size(), null, null);
+    }
+
+    /** A page evicted by size is dropped from the index. */
+    @Test
+    void evictedPageIsUnindexed() {
+
+        cache.getPage("first", () -> pageOf(1, 2));
+        cache.getPage("second", () -> pageOf(3));
+        ((CaffeineCache) cacheManager.getCache(AccountCache.ACCOUNT_PAGE)).getNativeCache()
+                .cleanUp();
+
+        Assertions.assertEquals(1, cache.getIndexedUserCount());
+    }
+
+    /** A write evicts the page, drops it from the index of every user on it, and it reloads. */
+    @Test
+    void writeUnindexesPage() {
+
+        cache.getPage("first", () -> pageOf(1, 2));
+        cache.evict(List.of(1L));
+
+        Assertions.assertEquals(0, cache.getIndexedUserCount());
+        cache.getPage("first", () -> pageOf(4));
+        Assertions.assertEquals(4, cache.getPage("first", () -> pageOf(5))
+                .getContent().get(0).getUserId());
+    }
+}
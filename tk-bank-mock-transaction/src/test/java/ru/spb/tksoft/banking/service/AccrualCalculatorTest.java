@@ -0,0 +1,149 @@
+package ru.spb.tksoft.banking.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.spb.tksoft.banking.entity.RawAccountEntity;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Lazy autoincrement math, which must stay in sync with settlement in SQL, see
+ * {@link ru.spb.tksoft.banking.repository.RawAccountRepository#settleAccrual}, and with the BULK
+ * autoincrement it replaces.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class AccrualCalculatorTest {
+
+    private static final Instant LAST_ACCRUAL_AT = Instant.parse("2025-01-01T00:00:00Z");
+
+    private static AccrualCalculator calculator(final double rate, final String cron) {
+        return new AccrualCalculator(AccrualMode.LAZY, rate, cron);
+    }
+
+    private static RawAccountEntity account(final String balance, final String limit,
+            final Instant lastAccrualAt) {
+
+        var account = new RawAccountEntity();
+        account.setBalance(Money.valueOf(balance));
+        account.setBalanceAutoLimit(Money.valueOf(limit));
+        account.setLastAccrualAt(lastAccrualAt);
+        return account;
+    }
+
+    /** One period of BULK autoincrement: growth rounded to the column scale, capped. */
+    private static Money bulkStep(final Money balance, final Money limit, final BigDecimal rate) {
+
+        if (balance.signum() <= 0 || balance.compareTo(limit) >= 0) {
+            return balance;
+        }
+        return Money.of(balance.toBigDecimal().multiply(BigDecimal.ONE.add(rate)),
+                RoundingMode.HALF_UP).min(limit);
+    }
+
+    /** The period is the interval between two fire times of the cron. */
+    @Test
+    void periodIsDerivedFromCron() {
+
+        Assertions.assertEquals(30, calculator(0.1, "0/30 * * * * ?").getPeriodSeconds());
+        Assertions.assertEquals(3600, calculator(0.1, "0 0 * * * ?").getPeriodSeconds());
+        Assertions.assertEquals(86_400, calculator(0.1, "0 0 3 * * ?").getPeriodSeconds());
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> calculator(0, "0/30 * * * * ?"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> calculator(0.1, "not a cron"));
+    }
+
+    /** Only whole periods count; the number of periods is capped. */
+    @Test
+    void periodsAreWholeAndCapped() {
+
+        AccrualCalculator calculator = calculator(0.1, "0/30 * * * * ?");
+
+        Assertions.assertEquals(0, calculator.periods(LAST_ACCRUAL_AT, LAST_ACCRUAL_AT));
+        Assertions.assertEquals(0,
+                calculator.periods(LAST_ACCRUAL_AT, LAST_ACCRUAL_AT.minusSeconds(60)));
+        Assertions.assertEquals(0,
+                calculator.periods(LAST_ACCRUAL_AT, LAST_ACCRUAL_AT.plusSeconds(29)));
+        Assertions.assertEquals(3,
+                calculator.periods(LAST_ACCRUAL_AT, LAST_ACCRUAL_AT.plusSeconds(95)));
+
+        Instant farAway = LAST_ACCRUAL_AT.plus(Duration.ofSeconds(30).multipliedBy(
+                AccrualCalculator.MAX_PERIODS * 2));
+        Assertions.assertEquals(AccrualCalculator.MAX_PERIODS,
+                calculator.periods(LAST_ACCRUAL_AT, farAway));
+    }
+
+    /** Growth beyond minor units of a long is clamped to the limit before it is rounded. */
+    @Test
+    void growthIsClampedBeforeRounding() {
+
+        AccrualCalculator calculator = calculator(1.0, "* * * * * ?");
+        String maxAmount = Money.ofMinor(Long.MAX_VALUE).toString();
+        Instant farAway = LAST_ACCRUAL_AT.plusSeconds(AccrualCalculator.MAX_PERIODS * 10);
+
+        Assertions.assertEquals(Money.valueOf(maxAmount), calculator.effectiveBalance(
+                account("1.00", maxAmount, LAST_ACCRUAL_AT), farAway));
+        Assertions.assertEquals(Money.valueOf("150.00"), calculator.effectiveBalance(
+                account("100.00", "150.00", LAST_ACCRUAL_AT), LAST_ACCRUAL_AT.plusSeconds(1)));
+    }
+
+    /** Accounts without accrual time, with non-positive balance or at the limit do not grow. */
+    @Test
+    void ineligibleAccountsDoNotGrow() {
+
+        AccrualCalculator calculator = calculator(0.1, "0/30 * * * * ?");
+        Instant later = LAST_ACCRUAL_AT.plusSeconds(300);
+
+        Assertions.assertEquals(Money.valueOf("100.00"),
+                calculator.effectiveBalance(account("100.00", "1000.00", null), later));
+        Assertions.assertEquals(Money.ZERO, calculator.effectiveBalance(
+                account("0.00", "1000.00", LAST_ACCRUAL_AT), later));
+        Assertions.assertEquals(Money.valueOf("-5.00"), calculator.effectiveBalance(
+                account("-5.00", "1000.00", LAST_ACCRUAL_AT), later));
+        Assertions.assertEquals(Money.valueOf("1000.00"), calculator.effectiveBalance(
+                account("1000.00", "1000.00", LAST_ACCRUAL_AT), later));
+        Assertions.assertEquals(Money.valueOf("100.00"), calculator.effectiveBalance(
+                account("100.00", "1000.00", LAST_ACCRUAL_AT), LAST_ACCRUAL_AT.plusSeconds(29)));
+    }
+
+    /**
+     * Lazy growth matches stepwise BULK growth while steps need no rounding, and otherwise
+     * differs by less than a minor unit per period: BULK rounds every step, lazy growth once.
+     */
+    @Test
+    void lazyGrowthMatchesBulkGrowth() {
+
+        AccrualCalculator exact = calculator(0.1, "0/30 * * * * ?");
+        Money limit = Money.valueOf("1000.00");
+        Money bulk = Money.valueOf("100.00");
+        for (int periods = 1; periods <= 4; periods++) {
+            bulk = bulkStep(bulk, limit, exact.getRate());
+            Assertions.assertEquals(bulk, exact.effectiveBalance(
+                    account("100.00", "1000.00", LAST_ACCRUAL_AT),
+                    LAST_ACCRUAL_AT.plusSeconds(30L * periods)));
+        }
+
+        AccrualCalculator rounded = calculator(0.013, "0/30 * * * * ?");
+        bulk = Money.valueOf("123.45");
+        for (int periods = 1; periods <= 10; periods++) {
+            bulk = bulkStep(bulk, limit, rounded.getRate());
+            Money lazy = rounded.effectiveBalance(account("123.45", "1000.00", LAST_ACCRUAL_AT),
+                    LAST_ACCRUAL_AT.plusSeconds(30L * periods));
+            Assertions.assertTrue(Math.abs(lazy.getMinor() - bulk.getMinor()) <= periods,
+                    "periods: " + periods + ", lazy: " + lazy + ", bulk: " + bulk);
+        }
+
+        bulk = Money.valueOf("900.00");
+        for (int periods = 1; periods <= 3; periods++) {
+            bulk = bulkStep(bulk, limit, exact.getRate());
+            Assertions.assertEquals(bulk, exact.effectiveBalance(
+                    account("900.00", "1000.00", LAST_ACCRUAL_AT),
+                    LAST_ACCRUAL_AT.plusSeconds(30L * periods)));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.spb.tksoft.banking.entity.IdempotencyKeyEntity;
+import ru.spb.tksoft.banking.repository.IdempotencyKeyRepository;
+
+/**
+ * Claiming of idempotency keys by operations applied outside the database transaction, in an
+ * in-memory H2 database.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class IdempotencyStoreTest {
+
+    private static final long USER_ID = 1L;
+
+    private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+
+    private JdbcTemplate jdbc;
+
+    private IdempotencyStore store;
+
+    /** Create the key table and the store. */
+    @BeforeEach
+    void setUp() {
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:idempotency;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS "idempotency_key" (
+                    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+                    "user_id" BIGINT NOT NULL,
+                    "idempotency_key" VARCHAR(100) NOT NULL,
+                    "operation" VARCHAR(50) NOT NULL,
+                    "request_hash" VARCHAR(64) NOT NULL,
+                    "response" TEXT,
+                    "pending" BOOLEAN NOT NULL DEFAULT FALSE,
+                    "created_at" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    "expires_at" TIMESTAMP WITH TIME ZONE NOT NULL,
+                    UNIQUE ("user_id", "idempotency_key"))""");
+        jdbc.execute("DELETE FROM \"idempotency_key\"");
+
+        entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactory.setDataSource(dataSource);
+        entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactory.setManagedTypes(
+                PersistenceManagedTypes.of(IdempotencyKeyEntity.class.getName()));
+        entityManagerFactory.afterPropertiesSet();
+
+        var transactionManager = new JpaTransactionManager(entityManagerFactory.getObject());
+        transactionManager.afterPropertiesSet();
+        IdempotencyKeyRepository repository = new JpaRepositoryFactory(
+                SharedEntityManagerCreator.createSharedEntityManager(
+                        entityManagerFactory.getObject()))
+                .getRepository(IdempotencyKeyRepository.class);
+
+        store = new IdempotencyStore(repository, Mockito.mock(SchedulerLeaseService.class),
+                Mockito.mock(ShardRouter.class), new ObjectMapper(), transactionManager,
+                Duration.ofHours(1), 100, 100,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    /** Close the fabric. */
+    @AfterEach
+    void tearDown() {
+        entityManagerFactory.destroy();
+    }
+
+    private Integer pendingCount() {
+        return jdbc.queryForObject(
+                "SELECT COUNT(*) FROM \"idempotency_key\" WHERE \"pending\"", Integer.class);
+    }
+
+    /** A concurrent request with the key waits for the claiming one and gets its response. */
+    @Test
+    void concurrentRequestWaitsForOutcome() throws Exception {
+
+        var applied = new AtomicInteger();
+        var started = new CountDownLatch(1);
+        var finish = new CountDownLatch(1);
+
+        CompletableFuture<Integer> first = CompletableFuture.supplyAsync(
+                () -> store.executeClaimed(USER_ID, "key", "deposit", List.of(10),
+                        Integer.class, 10, () -> {
+                            started.countDown();
+                            await(finish);
+                            return applied.incrementAndGet();
+                        }));
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, pendingCount());
+
+        CompletableFuture<Integer> second = CompletableFuture.supplyAsync(
+                () -> store.executeClaimed(USER_ID, "key", "deposit", List.of(10),
+                        Integer.class, 10, applied::incrementAndGet));
+        Thread.sleep(100);
+        Assertions.assertFalse(second.isDone());
+
+        finish.countDown();
+        Assertions.assertEquals(1, first.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, second.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, applied.get());
+        Assertions.assertEquals(0, pendingCount());
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> store.executeClaimed(USER_ID, "key", "deposit", List.of(20),
+                        Integer.class, 10, applied::incrementAndGet));
+    }
+
+    /** A failed operation releases the key, so that the request may be retried. */
+    @Test
+    void failureReleasesKey() {
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> store.runClaimed(USER_ID, "key", "withdraw", List.of(10), 10, () -> {
+                    throw new IllegalArgumentException("Insufficient funds");
+                }));
+        Assertions.assertEquals(0, pendingCount());
+
+        var applied = new AtomicInteger();
+        store.runClaimed(USER_ID, "key", "withdraw", List.of(10), 10,
+                applied::incrementAndGet);
+        Assertions.assertEquals(1, applied.get());
+    }
+
+    /** An operation with unknown outcome keeps the key claimed: retries are rejected. */
+    @Test
+    void unknownOutcomeKeepsKeyClaimed() {
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> store.runClaimed(USER_ID, "key", "transfer", List.of(2, 10), 10, () -> {
+                    throw new IllegalStateException("Ledger operation timed out");
+                }));
+        Assertions.assertEquals(1, pendingCount());
+
+        var applied = new AtomicInteger();
+        Assertions.assertThrows(ConcurrencyFailureException.class,
+                () -> store.runClaimed(USER_ID, "key", "transfer", List.of(2, 10), 0,
+                        applied::incrementAndGet));
+        Assertions.assertThrows(ConcurrencyFailureException.class,
+                () -> store.run(USER_ID, "key", "transfer", List.of(2, 10), 0,
+                        applied::incrementAndGet));
+        Assertions.assertEquals(0, applied.get());
+    }
+
+    private static void await(final CountDownLatch latch) {
+
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
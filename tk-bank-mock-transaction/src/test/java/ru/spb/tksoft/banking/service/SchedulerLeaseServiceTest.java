@@ -0,0 +1,110 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.Duration;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import ru.spb.tksoft.banking.entity.SchedulerLeaseEntity;
+import ru.spb.tksoft.banking.repository.SchedulerLeaseRepository;
+
+/**
+ * Two nodes sharing job leases in one in-memory H2 database, without advisory locks.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class SchedulerLeaseServiceTest {
+
+    private static final Duration TTL = Duration.ofMillis(300);
+
+    private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+
+    private SchedulerLeaseService first;
+
+    private SchedulerLeaseService second;
+
+    /** Create the lease table and two nodes. */
+    @BeforeEach
+    void setUp() {
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:lease;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS "scheduler_lease" (
+                    "job_name" VARCHAR(100) PRIMARY KEY NOT NULL,
+                    "owner_id" VARCHAR(200) NOT NULL,
+                    "acquired_at" TIMESTAMP WITH TIME ZONE NOT NULL,
+                    "renewed_at" TIMESTAMP WITH TIME ZONE NOT NULL,
+                    "expires_at" TIMESTAMP WITH TIME ZONE NOT NULL)""");
+        jdbc.execute("DELETE FROM \"scheduler_lease\"");
+
+        entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactory.setDataSource(dataSource);
+        entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactory.setManagedTypes(
+                PersistenceManagedTypes.of(SchedulerLeaseEntity.class.getName()));
+        entityManagerFactory.afterPropertiesSet();
+
+        var transactionManager = new JpaTransactionManager(entityManagerFactory.getObject());
+        SchedulerLeaseRepository repository = new JpaRepositoryFactory(
+                SharedEntityManagerCreator.createSharedEntityManager(
+                        entityManagerFactory.getObject()))
+                .getRepository(SchedulerLeaseRepository.class);
+
+        first = new SchedulerLeaseService(repository, dataSource, transactionManager,
+                "first", TTL);
+        second = new SchedulerLeaseService(repository, dataSource, transactionManager,
+                "second", TTL);
+    }
+
+    /** Close the fabric. */
+    @AfterEach
+    void tearDown() {
+        entityManagerFactory.destroy();
+    }
+
+    /** The node creating the lease owns it and renews it, the other one skips. */
+    @Test
+    void leaseIsOwnedByOneNode() {
+
+        Assertions.assertTrue(first.tryAcquire("job"));
+        Assertions.assertFalse(second.tryAcquire("job"));
+        Assertions.assertTrue(first.tryAcquire("job"));
+        Assertions.assertFalse(second.tryAcquire("job"));
+
+        Assertions.assertTrue(second.tryAcquire("other-job"));
+        Assertions.assertEquals(2, first.getLeases().size());
+    }
+
+    /** Expired lease is taken over by the other node. */
+    @Test
+    void expiredLeaseIsTakenOver() throws InterruptedException {
+
+        Assertions.assertTrue(first.tryAcquire("job"));
+        Thread.sleep(TTL.multipliedBy(2));
+
+        Assertions.assertTrue(second.tryAcquire("job"));
+        Assertions.assertFalse(first.tryAcquire("job"));
+        Assertions.assertTrue(second.getLeases().get(0).isOwnedByThisNode());
+    }
+
+    /** Released lease is taken over at once. */
+    @Test
+    void releasedLeaseIsTakenOver() {
+
+        Assertions.assertTrue(first.tryAcquire("job"));
+        first.releaseAll();
+
+        Assertions.assertTrue(second.tryAcquire("job"));
+    }
+}
@@ -0,0 +1,344 @@
+package ru.spb.tksoft.banking.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityNotFoundException;
+import ru.spb.tksoft.banking.configuration.ShardRoutingDataSource;
+import ru.spb.tksoft.banking.entity.RawAccountEntity;
+import ru.spb.tksoft.banking.entity.ShardTransferEntity;
+import ru.spb.tksoft.banking.exception.InsufficientFundsException;
+import ru.spb.tksoft.banking.repository.RawAccountRepository;
+import ru.spb.tksoft.banking.repository.ShardTransferRepository;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Transfers between two shards, in-memory H2 databases standing in for PostgreSQL. Every
+ * database has accounts and transfer records; accounts are debited and credited by plain
+ * updates, without the account services.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class ShardTransferServiceTest {
+
+    private static final Money AMOUNT = Money.ofMinor(30_00);
+
+    private final List<JdbcTemplate> databases = new ArrayList<>();
+
+    private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+
+    private ShardRouter shardRouter;
+
+    private ShardTransferService service;
+
+    private long fromUserId;
+
+    private long toUserId;
+
+    /** Credits fail while true, as with the destination shard unavailable. */
+    private boolean destinationDown;
+
+    private static DataSource database(final String name) {
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name
+                + ";DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS account (
+                    user_id BIGINT PRIMARY KEY,
+                    balance DECIMAL(15, 2) NOT NULL)""");
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS "shard_transfer" (
+                    id UUID PRIMARY KEY NOT NULL,
+                    "from_user_id" BIGINT NOT NULL,
+                    "to_user_id" BIGINT NOT NULL,
+                    "amount" DECIMAL(15,2) NOT NULL CHECK ("amount" > 0),
+                    "status" VARCHAR(20) NOT NULL,
+                    "created_at" TIMESTAMP WITH TIME ZONE NOT NULL,
+                    "finished_at" TIMESTAMP WITH TIME ZONE)""");
+        jdbc.execute("DELETE FROM account");
+        jdbc.execute("DELETE FROM \"shard_transfer\"");
+        return dataSource;
+    }
+
+    /** Create shards, accounts of 100.00 and the service around them. */
+    @BeforeEach
+    void setUp() {
+
+        List<DataSource> shards = List.of(database("transfer0"), database("transfer1"));
+        shards.forEach(shard -> databases.add(new JdbcTemplate(shard)));
+
+        var routing = new ShardRoutingDataSource(shards);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+
+        entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactory.setDataSource(dataSource);
+        entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactory.setManagedTypes(
+                PersistenceManagedTypes.of(ShardTransferEntity.class.getName()));
+        entityManagerFactory.afterPropertiesSet();
+
+        var transactionManager = new JpaTransactionManager(entityManagerFactory.getObject());
+        transactionManager.afterPropertiesSet();
+        shardRouter = new ShardRouter(routing, transactionManager, false);
+
+        fromUserId = 1;
+        toUserId = fromUserId + 1;
+        while (shardRouter.shardOf(toUserId) == shardRouter.shardOf(fromUserId)) {
+            toUserId++;
+        }
+        for (long userId : List.of(fromUserId, toUserId)) {
+            databases.get(shardRouter.shardOf(userId))
+                    .update("INSERT INTO account VALUES (?, 100.00)", userId);
+        }
+
+        var meters = new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        service = new ShardTransferService(shardRouter,
+                new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(
+                        entityManagerFactory.getObject()))
+                        .getRepository(ShardTransferRepository.class),
+                accounts(jdbc), balances(jdbc), idempotency(transactionManager),
+                new TransactionRetrier(5, Duration.ofMillis(1), Duration.ofMillis(10), 0.1,
+                        100, meters),
+                stripes(),
+                new AccountAdmission(true, 16, 100, Duration.ofSeconds(2), meters),
+                leader(), transactionManager, Duration.ZERO, 100, Duration.ofDays(7), meters);
+    }
+
+    /** Stop readers and close the fabric. */
+    @AfterEach
+    void tearDown() {
+
+        shardRouter.shutdown();
+        entityManagerFactory.destroy();
+    }
+
+    /** Accounts found by plain queries on the current shard. */
+    private static RawAccountRepository accounts(final JdbcTemplate jdbc) {
+
+        var accounts = Mockito.mock(RawAccountRepository.class);
+        Mockito.when(accounts.findByUserId(ArgumentMatchers.anyLong()))
+                .thenAnswer(call -> jdbc.queryForObject(
+                        "SELECT COUNT(*) FROM account WHERE user_id = ?", Integer.class,
+                        (Long) call.getArgument(0)) > 0
+                                ? Optional.of(new RawAccountEntity())
+                                : Optional.empty());
+        return accounts;
+    }
+
+    /** Debits and credits by plain updates on the current shard. */
+    private RawAccountServiceCached balances(final JdbcTemplate jdbc) {
+
+        var balances = Mockito.mock(RawAccountServiceCached.class);
+        Mockito.doAnswer(call -> {
+            if (jdbc.update("UPDATE account SET balance = balance - ? "
+                    + "WHERE user_id = ? AND balance >= ?",
+                    amount(call.getArgument(1)), call.getArgument(0),
+                    amount(call.getArgument(1))) == 0) {
+                throw new InsufficientFundsException();
+            }
+            return null;
+        }).when(balances).transferOut(ArgumentMatchers.anyLong(), ArgumentMatchers.any());
+        Mockito.doAnswer(call -> {
+            if (destinationDown) {
+                throw new DataAccessResourceFailureException("shard is unavailable");
+            }
+            if (jdbc.update("UPDATE account SET balance = balance + ? WHERE user_id = ?",
+                    amount(call.getArgument(1)), call.getArgument(0)) == 0) {
+                throw new EntityNotFoundException("Account not found");
+            }
+            return null;
+        }).when(balances).transferIn(ArgumentMatchers.anyLong(), ArgumentMatchers.any());
+        return balances;
+    }
+
+    private static BigDecimal amount(final Money amount) {
+        return amount.toBigDecimal();
+    }
+
+    /**
+     * Operations with a key seen before are not executed again. With a key starting with
+     * "raced", the first call loses the race for the key to a concurrent request: its operation is
+     * rolled back, as by the store finding the key recorded on commit.
+     */
+    private static IdempotencyStore idempotency(
+            final PlatformTransactionManager transactionManager) {
+
+        Set<String> keys = new HashSet<>();
+        var store = Mockito.mock(IdempotencyStore.class);
+        Mockito.doAnswer(call -> {
+            String key = call.getArgument(1);
+            Runnable action = call.getArgument(5);
+            if (key == null) {
+                action.run();
+            } else if (keys.add(key)) {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    action.run();
+                    if (key.startsWith("raced")) {
+                        throw new ConcurrencyFailureException("key is being processed");
+                    }
+                });
+            }
+            return null;
+        }).when(store).run(ArgumentMatchers.anyLong(), ArgumentMatchers.any(),
+                ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyInt(),
+                ArgumentMatchers.any());
+        return store;
+    }
+
+    /** Accounts without sub-balances. */
+    private static AccountStripes stripes() {
+
+        var stripes = Mockito.mock(AccountStripes.class);
+        Mockito.doAnswer(call -> {
+            ((Runnable) call.getArgument(1)).run();
+            return null;
+        }).when(stripes).debitFolding(ArgumentMatchers.anyLong(), ArgumentMatchers.any());
+        return stripes;
+    }
+
+    /** This node owns every job lease. */
+    private static SchedulerLeaseService leader() {
+
+        var leases = Mockito.mock(SchedulerLeaseService.class);
+        Mockito.when(leases.runIfLeader(ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenAnswer(call -> {
+                    ((Runnable) call.getArgument(1)).run();
+                    return true;
+                });
+        return leases;
+    }
+
+    private BigDecimal balance(final long userId) {
+        return databases.get(shardRouter.shardOf(userId)).queryForObject(
+                "SELECT balance FROM account WHERE user_id = ?", BigDecimal.class, userId);
+    }
+
+    private List<String> statuses(final long userId) {
+        return databases.get(shardRouter.shardOf(userId)).queryForList(
+                "SELECT status FROM \"shard_transfer\"", String.class);
+    }
+
+    private static void assertBalance(final String expected, final BigDecimal actual) {
+        Assertions.assertEquals(0, new BigDecimal(expected).compareTo(actual),
+                () -> "balance " + actual);
+    }
+
+    /** Transfer is prepared, applied and committed at once. */
+    @Test
+    void transferIsCompleted() {
+
+        service.transfer(fromUserId, toUserId, AMOUNT, null);
+
+        assertBalance("70.00", balance(fromUserId));
+        assertBalance("130.00", balance(toUserId));
+        Assertions.assertEquals(List.of("COMMITTED"), statuses(fromUserId));
+        Assertions.assertEquals(List.of("APPLIED"), statuses(toUserId));
+    }
+
+    /** Transfer prepared before a failure is completed by the recovery job. */
+    @Test
+    void preparedTransferIsRecovered() {
+
+        destinationDown = true;
+        service.transfer(fromUserId, toUserId, AMOUNT, null);
+
+        assertBalance("70.00", balance(fromUserId));
+        assertBalance("100.00", balance(toUserId));
+        Assertions.assertEquals(List.of("PREPARED"), statuses(fromUserId));
+        Assertions.assertEquals(List.of(), statuses(toUserId));
+
+        destinationDown = false;
+        service.recover();
+        service.recover(); // nothing left to complete
+
+        assertBalance("70.00", balance(fromUserId));
+        assertBalance("130.00", balance(toUserId));
+        Assertions.assertEquals(List.of("COMMITTED"), statuses(fromUserId));
+        Assertions.assertEquals(List.of("APPLIED"), statuses(toUserId));
+    }
+
+    /** Debit is returned if the destination account is gone before the credit. */
+    @Test
+    void missingDestinationIsRefunded() {
+
+        destinationDown = true;
+        service.transfer(fromUserId, toUserId, AMOUNT, null);
+        databases.get(shardRouter.shardOf(toUserId))
+                .update("DELETE FROM account WHERE user_id = ?", toUserId);
+
+        destinationDown = false;
+        service.recover();
+
+        assertBalance("100.00", balance(fromUserId));
+        Assertions.assertEquals(List.of("ABORTED"), statuses(fromUserId));
+        Assertions.assertEquals(List.of(), statuses(toUserId));
+    }
+
+    /** Missing destination is rejected before the debit. */
+    @Test
+    void missingDestinationIsRejected() {
+
+        databases.get(shardRouter.shardOf(toUserId))
+                .update("DELETE FROM account WHERE user_id = ?", toUserId);
+
+        Assertions.assertThrows(EntityNotFoundException.class,
+                () -> service.transfer(fromUserId, toUserId, AMOUNT, null));
+        assertBalance("100.00", balance(fromUserId));
+        Assertions.assertEquals(List.of(), statuses(fromUserId));
+    }
+
+    /** Replay with the same idempotency key moves the money once. */
+    @Test
+    void replayIsAppliedOnce() {
+
+        service.transfer(fromUserId, toUserId, AMOUNT, "key");
+        service.transfer(fromUserId, toUserId, AMOUNT, "key");
+
+        assertBalance("70.00", balance(fromUserId));
+        assertBalance("130.00", balance(toUserId));
+        Assertions.assertEquals(List.of("COMMITTED"), statuses(fromUserId));
+        Assertions.assertEquals(List.of("APPLIED"), statuses(toUserId));
+    }
+
+    /** A debit rolled back on a race for the key and then replayed credits nothing. */
+    @Test
+    void rolledBackDebitIsNotCompleted() {
+
+        service.transfer(fromUserId, toUserId, AMOUNT, "raced-key");
+
+        assertBalance("100.00", balance(fromUserId));
+        assertBalance("100.00", balance(toUserId));
+        Assertions.assertEquals(List.of(), statuses(fromUserId));
+        Assertions.assertEquals(List.of(), statuses(toUserId));
+    }
+}
@@ -0,0 +1,109 @@
+package ru.spb.tksoft.banking.service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.spb.tksoft.banking.dto.transfer.TransferBatchRequestDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferBatchResultDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferItemDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferItemResultDto;
+import ru.spb.tksoft.banking.dto.transfer.TransferItemStatus;
+import ru.spb.tksoft.banking.exception.OperationNotAvailableException;
+import ru.spb.tksoft.banking.service.ledger.LedgerEngine;
+import ru.spb.tksoft.banking.service.ledger.LedgerRecord;
+import ru.spb.tksoft.banking.service.ledger.LedgerStore;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Batches of transfers in the ledger engine mode: executed by the engine one by one.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class TransferBatchServiceTest {
+
+    @TempDir
+    private Path walDirectory;
+
+    private LedgerEngine engine;
+
+    private TransferBatchService service;
+
+    /** Database with accounts 1 and 2 of 100.00. */
+    private static final class TwoAccountsStore implements LedgerStore {
+
+        @Override
+        public OptionalLong loadBalance(final long userId) {
+            return userId == 1 || userId == 2 ? OptionalLong.of(100_00) : OptionalLong.empty();
+        }
+
+        @Override
+        public long loadCheckpoint(final int shard) {
+            return 0;
+        }
+
+        @Override
+        public void write(final int shard, final List<LedgerRecord> records) {
+            // written
+        }
+    }
+
+    /** Start the engine. */
+    @BeforeEach
+    void setUp() {
+
+        engine = new LedgerEngine(new TwoAccountsStore(), true, AccrualMode.BULK, 2, 1024,
+                walDirectory.toString(), 1L << 20, 1, Duration.ofMillis(10),
+                Duration.ofSeconds(1), Duration.ofSeconds(5),
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        engine.start();
+        service = new TransferBatchService(null, null, null, null, null, engine, 10);
+    }
+
+    /** Stop the engine. */
+    @AfterEach
+    void tearDown() {
+        engine.stop();
+    }
+
+    private static TransferBatchRequestDto batch(final boolean atomic) {
+
+        return new TransferBatchRequestDto(atomic, List.of(
+                new TransferItemDto(2L, Money.ofMinor(60_00)),
+                new TransferItemDto(3L, Money.ofMinor(1_00)),
+                new TransferItemDto(2L, Money.ofMinor(60_00)),
+                new TransferItemDto(1L, Money.ofMinor(1_00))));
+    }
+
+    /** Failed transfers are skipped, the others are applied in order. */
+    @Test
+    void batchIsAppliedTransferByTransfer() {
+
+        TransferBatchResultDto result = service.transferBatchLedger(1L, batch(false));
+
+        Assertions.assertEquals(List.of(TransferItemStatus.APPLIED, TransferItemStatus.NOT_FOUND,
+                TransferItemStatus.INSUFFICIENT_FUNDS, TransferItemStatus.INVALID),
+                result.getItems().stream().map(TransferItemResultDto::getStatus).toList());
+        Assertions.assertEquals(1, result.getApplied());
+        Assertions.assertEquals(3, result.getFailed());
+        Assertions.assertEquals(Money.ofMinor(60_00), result.getTotalAmount());
+        Assertions.assertEquals(Money.ofMinor(40_00), engine.getBalance(1));
+        Assertions.assertEquals(Money.ofMinor(160_00), engine.getBalance(2));
+    }
+
+    /** Atomic batches are rejected without changes. */
+    @Test
+    void atomicBatchIsNotAvailable() {
+
+        Assertions.assertThrows(OperationNotAvailableException.class,
+                () -> service.transferBatchLedger(1L, batch(true)));
+        Assertions.assertEquals(Money.ofMinor(100_00), engine.getBalance(1));
+    }
+}
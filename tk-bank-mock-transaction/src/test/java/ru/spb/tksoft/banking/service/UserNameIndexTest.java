@@ -0,0 +1,83 @@
+package ru.spb.tksoft.banking.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.transaction.PlatformTransactionManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.spb.tksoft.banking.dto.RawUserDto;
+import ru.spb.tksoft.banking.entity.RawUserEntity;
+import ru.spb.tksoft.banking.repository.RawUserRepository;
+
+/**
+ * Users sharing a name, as users on different shards may, in the name index.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class UserNameIndexTest {
+
+    private static final LocalDate DATE_OF_BIRTH = LocalDate.of(1990, 1, 1);
+
+    private UserNameIndex index;
+
+    /** Create the index, built empty: the shard router visits no shards. */
+    @BeforeEach
+    void setUp() {
+
+        index = new UserNameIndex(Mockito.mock(RawUserRepository.class),
+                Mockito.mock(ShardRouter.class), Mockito.mock(PlatformTransactionManager.class),
+                true, new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        index.rebuild();
+    }
+
+    private static RawUserEntity user(final long id, final String name) {
+
+        var user = new RawUserEntity();
+        user.setId(id);
+        user.setName(name);
+        user.setDateOfBirth(DATE_OF_BIRTH);
+        return user;
+    }
+
+    private List<Long> idsByPrefix(final String namePrefix) {
+
+        Slice<RawUserDto> found = index.findByPrefix(namePrefix, PageRequest.of(0, 10), true)
+                .orElseThrow();
+        return found.getContent().stream().map(RawUserDto::getId).toList();
+    }
+
+    /** Users with the same name are all indexed, ordered by name and then by ID. */
+    @Test
+    void sameNamesAreKept() {
+
+        index.userSaved(user(300, "Ann"));
+        index.userSaved(user(2, "Ann"));
+        index.userSaved(user(1, "Anna"));
+
+        Assertions.assertEquals(List.of(2L, 300L, 1L), idsByPrefix("Ann"));
+        Assertions.assertEquals(List.of(1L), idsByPrefix("Anna"));
+        Assertions.assertEquals(3, index.getInfo().getEntries());
+    }
+
+    /** Removing or renaming a user keeps the other user with the same name. */
+    @Test
+    void removalKeepsNamesake() {
+
+        index.userSaved(user(1, "Ann"));
+        index.userSaved(user(2, "Ann"));
+
+        index.userSaved(user(1, "Bob"));
+        Assertions.assertEquals(List.of(2L), idsByPrefix("Ann"));
+        Assertions.assertEquals(List.of(1L), idsByPrefix("Bob"));
+
+        index.userRemoved(2);
+        Assertions.assertEquals(List.of(), idsByPrefix("Ann"));
+        Assertions.assertEquals(List.of(1L), idsByPrefix(""));
+    }
+}
@@ -0,0 +1,94 @@
+package ru.spb.tksoft.banking.service.ledger;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.spb.tksoft.banking.exception.NewBalanceLimitException;
+import ru.spb.tksoft.banking.service.AccrualMode;
+import ru.spb.tksoft.banking.tools.Money;
+
+/**
+ * Ledger engine with a database rejecting every write: the shard stops instead of retrying.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class LedgerEngineTest {
+
+    @TempDir
+    private Path walDirectory;
+
+    private LedgerEngine engine;
+
+    /** Database with accounts of 100.00 rejecting writes as violating a constraint. */
+    private static final class RejectingStore implements LedgerStore {
+
+        @Override
+        public OptionalLong loadBalance(final long userId) {
+            return OptionalLong.of(100_00);
+        }
+
+        @Override
+        public long loadCheckpoint(final int shard) {
+            return 0;
+        }
+
+        @Override
+        public void write(final int shard, final List<LedgerRecord> records) {
+            throw new DataIntegrityViolationException("check constraint violated");
+        }
+    }
+
+    private void start() {
+
+        engine = new LedgerEngine(new RejectingStore(), true, AccrualMode.BULK, 1, 1024,
+                walDirectory.toString(), 1L << 20, 1, Duration.ofMillis(10),
+                Duration.ofSeconds(1), Duration.ofSeconds(5),
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        engine.start();
+    }
+
+    /** Stop the engine. */
+    @AfterEach
+    void tearDown() {
+
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+    /** A rejected write stops the shard: later operations fail at once. */
+    @Test
+    void rejectedWriteStopsShard() {
+
+        start();
+        engine.deposit(1, Money.ofMinor(1)); // durable in the journal
+
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (;;) {
+                try {
+                    engine.deposit(1, Money.ofMinor(1));
+                    Thread.sleep(10);
+                } catch (IllegalStateException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    /** Balances are limited by the database column. */
+    @Test
+    void balanceOverColumnLimitIsRejected() {
+
+        start();
+        Assertions.assertThrows(NewBalanceLimitException.class,
+                () -> engine.deposit(1, Money.ofMinor(LedgerShard.MAX_BALANCE)));
+    }
+}
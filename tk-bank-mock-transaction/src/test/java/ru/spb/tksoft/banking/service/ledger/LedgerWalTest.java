@@ -0,0 +1,103 @@
+package ru.spb.tksoft.banking.service.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Journal of a shard recovered after a crash in the middle of a write.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class LedgerWalTest {
+
+    @TempDir
+    private Path directory;
+
+    private static LedgerRecord deposit(final long seq) {
+        return new LedgerRecord(seq, LedgerOperation.DEPOSIT, 1, 0, 100);
+    }
+
+    /** Write records 1..count into a new journal and close it. */
+    private Path write(final int count, final long segmentBytes) throws IOException {
+
+        try (LedgerWal wal = new LedgerWal(directory, 0, segmentBytes)) {
+            wal.recover(1);
+            for (long seq = 1; seq <= count; seq++) {
+                wal.append(deposit(seq));
+            }
+            wal.sync();
+        }
+        return directory.resolve("shard-0-1.wal");
+    }
+
+    private List<LedgerRecord> recover() throws IOException {
+
+        try (LedgerWal wal = new LedgerWal(directory, 0, 1L << 20)) {
+            return wal.recover(1);
+        }
+    }
+
+    /** A partly written record at the end is dropped and cut off the segment. */
+    @Test
+    void partialRecordIsDropped() throws IOException {
+
+        Path segment = write(3, 1L << 20);
+        Files.write(segment, new byte[LedgerWal.RECORD_BYTES / 2], StandardOpenOption.APPEND);
+
+        Assertions.assertEquals(List.of(deposit(1), deposit(2), deposit(3)), recover());
+        Assertions.assertEquals(3L * LedgerWal.RECORD_BYTES, Files.size(segment));
+    }
+
+    /** A record with a wrong checksum ends the journal. */
+    @Test
+    void corruptRecordIsDropped() throws IOException {
+
+        Path segment = write(3, 1L << 20);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}),
+                    2L * LedgerWal.RECORD_BYTES + Long.BYTES + 1);
+        }
+
+        Assertions.assertEquals(List.of(deposit(1), deposit(2)), recover());
+    }
+
+    /** Records appended after recovery follow the valid ones. */
+    @Test
+    void appendAfterRecoveryContinuesJournal() throws IOException {
+
+        Path segment = write(2, 1L << 20);
+        Files.write(segment, new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (LedgerWal wal = new LedgerWal(directory, 0, 1L << 20)) {
+            wal.recover(1);
+            wal.append(deposit(3));
+            wal.sync();
+        }
+
+        Assertions.assertEquals(List.of(deposit(1), deposit(2), deposit(3)), recover());
+    }
+
+    /** Records of closed segments are recovered, released segments are deleted. */
+    @Test
+    void segmentsAreRecoveredAndReleased() throws IOException {
+
+        write(1, LedgerWal.RECORD_BYTES);
+        try (LedgerWal wal = new LedgerWal(directory, 0, LedgerWal.RECORD_BYTES)) {
+            Assertions.assertEquals(List.of(deposit(1)), wal.recover(1));
+            wal.append(deposit(2));
+            wal.sync();
+            wal.release(1);
+        }
+
+        Assertions.assertFalse(Files.exists(directory.resolve("shard-0-1.wal")));
+        Assertions.assertEquals(List.of(deposit(2)), recover());
+    }
+}
@@ -0,0 +1,69 @@
+package ru.spb.tksoft.banking.tools;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Index of IDs by day: bulk load, changes and range queries.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class DayIndexTest {
+
+    private DayIndex index;
+
+    /** Load days 0..99 with IDs 3000 down to 1, thirty per day, in reverse order. */
+    @BeforeEach
+    void setUp() {
+
+        index = new DayIndex();
+        for (int id = 3000; id >= 1; id--) {
+            index.append((id - 1) / 30, id);
+        }
+        index.sort();
+    }
+
+    private long[] range(final int fromDay, final int toDay, final long offset, final int limit) {
+
+        long[] buffer = new long[limit];
+        return Arrays.copyOf(buffer, index.range(fromDay, toDay, offset, buffer));
+    }
+
+    /** Bulk loaded rows are ordered by day, then by ID. */
+    @Test
+    void rangeIsOrdered() {
+
+        Assertions.assertEquals(3000, index.size());
+        Assertions.assertEquals(100, index.dayCount());
+        Assertions.assertEquals(60, index.count(10, 11));
+        Assertions.assertArrayEquals(new long[] {301, 302, 303}, range(10, 11, 0, 3));
+        Assertions.assertArrayEquals(new long[] {359, 360}, range(10, 11, 58, 10));
+        Assertions.assertEquals(0, range(10, 11, 60, 10).length);
+        Assertions.assertEquals(0, index.count(11, 10));
+    }
+
+    /** Inserted rows take their place, removed rows are gone. */
+    @Test
+    void insertAndRemove() {
+
+        Assertions.assertTrue(index.insert(10, 5000));
+        Assertions.assertFalse(index.insert(10, 5000));
+        Assertions.assertTrue(index.contains(10, 5000));
+        Assertions.assertArrayEquals(new long[] {330, 5000, 331}, range(10, 11, 29, 3));
+
+        Assertions.assertTrue(index.removeId(5000));
+        Assertions.assertFalse(index.removeId(5000));
+        Assertions.assertFalse(index.contains(10, 5000));
+        Assertions.assertEquals(3000, index.size());
+    }
+
+    /** Queries on an index with unsorted rows fail. */
+    @Test
+    void unsortedIndexIsRejected() {
+
+        index.append(0, 1);
+        Assertions.assertThrows(IllegalStateException.class, () -> index.count(0, 1));
+    }
+}
@@ -0,0 +1,48 @@
+package ru.spb.tksoft.banking.tools;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Map of long keys to int values, over its growth.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class LongIntMapTest {
+
+    /** Values survive growth of the table, missing keys are reported. */
+    @Test
+    void putAndGet() {
+
+        LongIntMap map = new LongIntMap();
+        for (long key = 1; key <= 10_000; key++) {
+            map.put(key * 1024, (int) key);
+        }
+
+        Assertions.assertEquals(10_000, map.size());
+        for (long key = 1; key <= 10_000; key++) {
+            Assertions.assertEquals((int) key, map.get(key * 1024));
+        }
+        Assertions.assertEquals(LongIntMap.MISSING, map.get(1));
+        Assertions.assertEquals(LongIntMap.MISSING, map.get(-1024));
+    }
+
+    /** A put of an existing key replaces the value, zero is a value. */
+    @Test
+    void putReplacesValue() {
+
+        LongIntMap map = new LongIntMap();
+        map.put(0, 5);
+        map.put(0, 0);
+
+        Assertions.assertEquals(1, map.size());
+        Assertions.assertEquals(0, map.get(0));
+    }
+
+    /** Negative values are rejected. */
+    @Test
+    void negativeValueIsRejected() {
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new LongIntMap().put(1, -1));
+    }
+}
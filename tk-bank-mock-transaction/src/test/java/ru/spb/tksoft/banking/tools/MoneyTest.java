@@ -0,0 +1,97 @@
+package ru.spb.tksoft.banking.tools;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Amount of money: conversions, overflow and JSON.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class MoneyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** Exact conversion takes up to two fraction digits and rejects more. */
+    @Test
+    void valueOfRejectsExtraFractionDigits() {
+
+        Assertions.assertEquals(1230, Money.valueOf("12.3").getMinor());
+        Assertions.assertEquals(1234, Money.valueOf(new BigDecimal("12.340")).getMinor());
+
+        Assertions.assertThrows(ArithmeticException.class, () -> Money.valueOf("12.345"));
+        Assertions.assertThrows(ArithmeticException.class,
+                () -> Money.valueOf(new BigDecimal("0.001")));
+        Assertions.assertThrows(NumberFormatException.class, () -> Money.valueOf("12,34"));
+
+        Assertions.assertEquals(1235,
+                Money.of(new BigDecimal("12.345"), RoundingMode.HALF_UP).getMinor());
+        Assertions.assertEquals(1234,
+                Money.of(new BigDecimal("12.345"), RoundingMode.DOWN).getMinor());
+    }
+
+    /** Minor units beyond a long and overflowing arithmetic throw instead of wrapping around. */
+    @Test
+    void overflowThrows() {
+
+        Money max = Money.ofMinor(Long.MAX_VALUE);
+        Assertions.assertEquals(new BigDecimal("92233720368547758.07"), max.toBigDecimal());
+        Assertions.assertEquals(max, Money.valueOf("92233720368547758.07"));
+
+        Assertions.assertThrows(ArithmeticException.class,
+                () -> Money.valueOf("92233720368547758.08"));
+        Assertions.assertThrows(ArithmeticException.class, () -> max.add(Money.ofMinor(1)));
+        Assertions.assertThrows(ArithmeticException.class,
+                () -> Money.ofMinor(Long.MIN_VALUE).subtract(Money.ofMinor(1)));
+        Assertions.assertThrows(ArithmeticException.class,
+                () -> Money.ofMinor(Long.MIN_VALUE).negate());
+        Assertions.assertThrows(ArithmeticException.class,
+                () -> max.multiply(new BigDecimal("1.01"), RoundingMode.HALF_UP));
+    }
+
+    /** Negative amounts keep their sign through arithmetic and conversions. */
+    @Test
+    void negativeAmounts() {
+
+        Money debt = Money.valueOf("-5.1");
+        Assertions.assertEquals(-510, debt.getMinor());
+        Assertions.assertEquals(-1, debt.signum());
+        Assertions.assertFalse(debt.isPositive());
+        Assertions.assertEquals("-5.10", debt.toString());
+
+        Assertions.assertEquals(Money.valueOf("5.10"), debt.negate());
+        Assertions.assertEquals(Money.valueOf("-2.60"), debt.add(Money.valueOf("2.50")));
+        Assertions.assertEquals(Money.valueOf("-7.60"), debt.subtract(Money.valueOf("2.50")));
+        Assertions.assertEquals(debt, debt.min(Money.ZERO));
+        Assertions.assertTrue(debt.compareTo(Money.ZERO) < 0);
+
+        Assertions.assertEquals(-255,
+                debt.multiply(new BigDecimal("0.5"), RoundingMode.HALF_UP).getMinor());
+        Assertions.assertEquals(-3,
+                Money.ofMinor(-5).multiply(new BigDecimal("0.5"), RoundingMode.HALF_UP)
+                        .getMinor());
+    }
+
+    /** In JSON an amount is a decimal number with the scale, read back to the same amount. */
+    @Test
+    void jsonRoundTrip() throws Exception {
+
+        Money amount = Money.valueOf("1234.5");
+        String json = objectMapper.writeValueAsString(amount);
+        Assertions.assertEquals("1234.50", json);
+        Assertions.assertEquals(amount, objectMapper.readValue(json, Money.class));
+
+        Assertions.assertEquals(Money.valueOf("-0.01"),
+                objectMapper.readValue("-0.01", Money.class));
+        Assertions.assertEquals(Money.valueOf("7"), objectMapper.readValue("7", Money.class));
+        Assertions.assertEquals(Money.valueOf("7.25"),
+                objectMapper.readValue("\"7.25\"", Money.class));
+
+        Assertions.assertThrows(JsonMappingException.class,
+                () -> objectMapper.readValue("1.005", Money.class));
+    }
+}
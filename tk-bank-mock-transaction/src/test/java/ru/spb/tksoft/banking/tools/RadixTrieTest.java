@@ -0,0 +1,100 @@
+package ru.spb.tksoft.banking.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Radix tree against a sorted map, over random puts and removals.
+ *
+ * @author Konstantin Terskikh, kostus.online.1974@yandex.ru, 2025
+ */
+class RadixTrieTest {
+
+    private static final String[] WORDS = {"", "a", "ab", "abc", "abd", "b", "ba", "banana",
+            "band", "bandana", "can", "cane", "Ж", "Жанна"};
+
+    /** Prefix queries and paging agree with the sorted map. */
+    @Test
+    void prefixQueries() {
+
+        RadixTrie<String> trie = new RadixTrie<>();
+        TreeMap<String, String> expected = new TreeMap<>();
+        for (String word : WORDS) {
+            trie.put(word, word.toUpperCase());
+            expected.put(word, word.toUpperCase());
+        }
+
+        Assertions.assertEquals(WORDS.length, trie.size());
+        for (String prefix : List.of("", "a", "ab", "ban", "band", "c", "x", "Ж")) {
+            List<String> values = new ArrayList<>(expected.subMap(prefix,
+                    prefix + Character.MAX_VALUE).values());
+            Assertions.assertEquals(values.size(), trie.countPrefix(prefix), prefix);
+            Assertions.assertEquals(values, trie.findByPrefix(prefix, 0, 100), prefix);
+            if (values.size() > 1) {
+                Assertions.assertEquals(values.subList(1, 2), trie.findByPrefix(prefix, 1, 1));
+            }
+        }
+    }
+
+    /**
+     * After random changes the tree holds the same keys as the map, and its node count and
+     * footprint are those of a tree built from these keys at once.
+     */
+    @Test
+    void randomChanges() {
+
+        Random random = new Random(42);
+        RadixTrie<Integer> trie = new RadixTrie<>();
+        TreeMap<String, Integer> expected = new TreeMap<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            String key = Integer.toString(random.nextInt(3000), 7);
+            if (random.nextInt(3) == 0) {
+                Assertions.assertEquals(expected.remove(key), trie.remove(key));
+            } else {
+                Assertions.assertEquals(expected.put(key, i), trie.put(key, i));
+            }
+        }
+
+        List<String> keys = new ArrayList<>();
+        List<Integer> values = new ArrayList<>();
+        trie.forEach((key, value) -> {
+            keys.add(key);
+            values.add(value);
+        });
+        Assertions.assertEquals(new ArrayList<>(expected.keySet()), keys);
+        Assertions.assertEquals(new ArrayList<>(expected.values()), values);
+
+        List<String> shuffled = new ArrayList<>(expected.keySet());
+        Collections.shuffle(shuffled, random);
+        RadixTrie<Integer> rebuilt = new RadixTrie<>();
+        shuffled.forEach(key -> rebuilt.put(key, 0));
+
+        Assertions.assertEquals(rebuilt.nodeCount(), trie.nodeCount());
+        Assertions.assertEquals(rebuilt.estimatedBytes(), trie.estimatedBytes());
+    }
+
+    /** A tree emptied by removals is as small as a new one. */
+    @Test
+    void removalShrinksTree() {
+
+        RadixTrie<String> trie = new RadixTrie<>();
+        for (String word : WORDS) {
+            trie.put(word, word);
+        }
+        for (String word : WORDS) {
+            Assertions.assertEquals(word, trie.remove(word));
+        }
+
+        RadixTrie<String> empty = new RadixTrie<>();
+        Assertions.assertEquals(0, trie.size());
+        Assertions.assertEquals(empty.nodeCount(), trie.nodeCount());
+        Assertions.assertEquals(empty.estimatedBytes(), trie.estimatedBytes());
+        Assertions.assertNull(trie.get("a"));
+    }
+}